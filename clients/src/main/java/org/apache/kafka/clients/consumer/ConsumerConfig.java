@@ -144,6 +144,16 @@ public class ConsumerConfig extends AbstractConfig {
             "<code>max.message.bytes</code> (topic config). Note that the consumer performs multiple fetches in parallel.";
     public static final int DEFAULT_FETCH_MAX_BYTES = 50 * 1024 * 1024;
 
+    /**
+     * <code>fetch.decode.threads</code>
+     */
+    public static final String FETCH_DECODE_THREADS_CONFIG = "fetch.decode.threads";
+    private static final String FETCH_DECODE_THREADS_DOC = "The number of threads decompressing and deserializing the fetched records " +
+            "ahead of the calls to poll(). The fetches are decoded in parallel while the records of the previous fetches are returned, " +
+            "up to <code>" + FETCH_MAX_BYTES_CONFIG + "</code> of decompressed records at a time, and the records of each partition are still " +
+            "returned in order. With the default of 0, the records are decoded by the thread calling poll(). " +
+            "The key and value deserializers must be thread-safe when this is set above 0.";
+
     /**
      * <code>fetch.max.wait.ms</code>
      */
@@ -222,6 +232,17 @@ public class ConsumerConfig extends AbstractConfig {
     public static final String CHECK_CRCS_CONFIG = "check.crcs";
     private static final String CHECK_CRCS_DOC = "Automatically check the CRC32 of the records consumed. This ensures no on-the-wire or on-disk corruption to the messages occurred. This check adds some overhead, so it may be disabled in cases seeking extreme performance.";
 
+    /**
+     * <code>zstd.dictionary.files</code>
+     */
+    public static final String ZSTD_DICTIONARY_FILES_CONFIG = "zstd.dictionary.files";
+    private static final String ZSTD_DICTIONARY_FILES_DOC = "A list of the files of the zstd dictionaries the consumed records may be compressed with, " +
+            "as configured by the producers with <code>compression.zstd.dictionaries</code>. The records are decompressed with the " +
+            "dictionary referenced by its id in their batches, so that a dictionary trained again must be added to the list while " +
+            "the records compressed with the previous one are consumed. The consumer fails to return the records compressed with a " +
+            "dictionary which is not in the list with an <code>UnknownZstdDictionaryException</code>. The dictionaries are only " +
+            "supported by the Java clients, the other clients can't consume the records compressed with them.";
+
     /** <code>key.deserializer</code> */
     public static final String KEY_DESERIALIZER_CLASS_CONFIG = "key.deserializer";
     public static final String KEY_DESERIALIZER_CLASS_DOC = "Deserializer class for key that implements the <code>org.apache.kafka.common.serialization.Deserializer</code> interface.";
@@ -406,6 +427,12 @@ public class ConsumerConfig extends AbstractConfig {
                                         atLeast(0),
                                         Importance.MEDIUM,
                                         FETCH_MAX_BYTES_DOC)
+                                .define(FETCH_DECODE_THREADS_CONFIG,
+                                        Type.INT,
+                                        0,
+                                        atLeast(0),
+                                        Importance.LOW,
+                                        FETCH_DECODE_THREADS_DOC)
                                 .define(FETCH_MAX_WAIT_MS_CONFIG,
                                         Type.INT,
                                         500,
@@ -441,6 +468,12 @@ public class ConsumerConfig extends AbstractConfig {
                                         true,
                                         Importance.LOW,
                                         CHECK_CRCS_DOC)
+                                .define(ZSTD_DICTIONARY_FILES_CONFIG,
+                                        Type.LIST,
+                                        Collections.emptyList(),
+                                        new ConfigDef.NonNullValidator(),
+                                        Importance.LOW,
+                                        ZSTD_DICTIONARY_FILES_DOC)
                                 .define(METRICS_SAMPLE_WINDOW_MS_CONFIG,
                                         Type.LONG,
                                         30000,
@@ -39,6 +39,7 @@ import org.apache.kafka.common.MetricName;
 import org.apache.kafka.common.Node;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.compress.ZstdDictionaries;
 import org.apache.kafka.common.errors.CorruptRecordException;
 import org.apache.kafka.common.errors.InvalidTopicException;
 import org.apache.kafka.common.errors.RecordTooLargeException;
@@ -46,6 +47,7 @@ import org.apache.kafka.common.errors.RetriableException;
 import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.errors.TimeoutException;
 import org.apache.kafka.common.errors.TopicAuthorizationException;
+import org.apache.kafka.common.errors.UnknownZstdDictionaryException;
 import org.apache.kafka.common.header.Headers;
 import org.apache.kafka.common.header.internals.RecordHeaders;
 import org.apache.kafka.common.message.ListOffsetsRequestData.ListOffsetsPartition;
@@ -78,9 +80,9 @@ import org.apache.kafka.common.requests.OffsetsForLeaderEpochRequest;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.utils.CloseableIterator;
 import org.apache.kafka.common.utils.LogContext;
+import org.apache.kafka.common.utils.ThreadUtils;
 import org.apache.kafka.common.utils.Time;
 import org.apache.kafka.common.utils.Timer;
-import org.apache.kafka.common.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.helpers.MessageFormatter;
 
@@ -101,8 +103,14 @@ import java.util.Optional;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -128,6 +136,8 @@ import static java.util.Collections.emptyList;
  *     tracked and updated after processing the response. This ensures that any state (e.g. epoch)
  *     updated while processing responses on one thread are visible while creating the subsequent request
  *     on a different thread.</li>
+ *     <li>Completed fetches may be decoded ahead of the poll by the decoder threads, which decode a copy of the
+ *     fetch and only share the decoded records with the thread polling the consumer.</li>
  * </ul>
  */
 public class Fetcher<K, V> implements Closeable {
@@ -148,7 +158,11 @@ public class Fetcher<K, V> implements Closeable {
     private final FetchManagerMetrics sensors;
     private final SubscriptionState subscriptions;
     private final ConcurrentLinkedQueue<CompletedFetch> completedFetches;
-    private final BufferSupplier decompressionBufferSupplier = BufferSupplier.create();
+    private final BufferSupplier decompressionBufferSupplier;
+    private final ExecutorService decodeExecutor;
+    private final ThreadLocal<BufferSupplier> decoderBufferSupplier;
+    // the size of the records decoded ahead of the poll and not yet drained, bounded by the fetch max bytes
+    private final AtomicLong decodeAheadBytes = new AtomicLong(0);
     private final Deserializer<K> keyDeserializer;
     private final Deserializer<V> valueDeserializer;
     private final IsolationLevel isolationLevel;
@@ -170,7 +184,9 @@ public class Fetcher<K, V> implements Closeable {
                    int maxWaitMs,
                    int fetchSize,
                    int maxPollRecords,
+                   int decodeThreads,
                    boolean checkCrcs,
+                   ZstdDictionaries zstdDictionaries,
                    String clientRackId,
                    Deserializer<K> keyDeserializer,
                    Deserializer<V> valueDeserializer,
@@ -195,6 +211,8 @@ public class Fetcher<K, V> implements Closeable {
         this.fetchSize = fetchSize;
         this.maxPollRecords = maxPollRecords;
         this.checkCrcs = checkCrcs;
+        this.decompressionBufferSupplier = BufferSupplier.create(zstdDictionaries);
+        this.decoderBufferSupplier = ThreadLocal.withInitial(() -> BufferSupplier.create(zstdDictionaries));
         this.clientRackId = clientRackId;
         this.keyDeserializer = keyDeserializer;
         this.valueDeserializer = valueDeserializer;
@@ -207,6 +225,9 @@ public class Fetcher<K, V> implements Closeable {
         this.sessionHandlers = new HashMap<>();
         this.offsetsForLeaderEpochClient = new OffsetsForLeaderEpochClient(client, logContext);
         this.nodesWithPendingFetchRequests = new HashSet<>();
+        this.decodeExecutor = decodeThreads > 0 ?
+                Executors.newFixedThreadPool(decodeThreads, ThreadUtils.createThreadFactory("kafka-consumer-fetch-decoder-%d", true)) :
+                null;
     }
 
     /**
@@ -319,9 +340,11 @@ public class Fetcher<K, V> implements Closeable {
                                     short responseVersion = resp.requestHeader().apiVersion();
 
                                     completedFetches.add(new CompletedFetch(partition, partitionData,
-                                            metricAggregator, batches, fetchOffset, responseVersion));
+                                            metricAggregator, batches, fetchOffset, responseVersion,
+                                            decompressionBufferSupplier));
                                 }
                             }
+                            maybeDecodeAhead();
 
                             sensors.fetchLatency.record(resp.requestLatencyMs());
                         } finally {
@@ -624,6 +647,8 @@ public class Fetcher<K, V> implements Closeable {
                             }
                             throw e;
                         }
+                        if (nextInLineFetch == null)
+                            records.releaseDecodeAhead();
                     } else {
                         nextInLineFetch = records;
                     }
@@ -662,11 +687,57 @@ public class Fetcher<K, V> implements Closeable {
             // add any polled completed fetches for paused partitions back to the completed fetches queue to be
             // re-evaluated in the next poll
             completedFetches.addAll(pausedCompletedFetches);
+            maybeDecodeAhead();
         }
 
         return fetched;
     }
 
+    /**
+     * Decode the completed fetches ahead of the poll on the decoder threads, in the order of the fetches and up to
+     * the fetch max bytes of decoded records at a time. The size of the decoded records is that of the records once
+     * decompressed, and a decoder stops decoding a fetch when the records decoded ahead would exceed the fetch max
+     * bytes, unless no record is decoded ahead. The records of each fetch are then returned in order by the poll,
+     * which decodes the records not decoded ahead itself.
+     */
+    private void maybeDecodeAhead() {
+        if (decodeExecutor == null)
+            return;
+
+        synchronized (this) {
+            for (CompletedFetch completedFetch : completedFetches) {
+                if (!completedFetch.canDecodeAhead())
+                    continue;
+
+                if (decodeAheadBytes.get() >= maxBytes)
+                    break;
+
+                if (completedFetch.claimDecodeAhead()) {
+                    try {
+                        decodeExecutor.execute(() -> completedFetch.decodeAhead(decoderBufferSupplier.get()));
+                    } catch (RejectedExecutionException e) {
+                        // the fetcher is closed, the records are decoded by the poll if it is still polled
+                        completedFetch.decodedAhead.completeExceptionally(e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reserve the size of a record decoded ahead of the poll, if the records decoded ahead are still within the fetch
+     * max bytes with it or if no record is decoded ahead.
+     */
+    private boolean reserveDecodeAheadBytes(int sizeInBytes) {
+        long bytes;
+        do {
+            bytes = decodeAheadBytes.get();
+            if (bytes > 0 && bytes + sizeInBytes > maxBytes)
+                return false;
+        } while (!decodeAheadBytes.compareAndSet(bytes, bytes + sizeInBytes));
+        return true;
+    }
+
     private List<ConsumerRecord<K, V>> fetchRecords(CompletedFetch completedFetch, int maxRecords) {
         if (!subscriptions.isAssigned(completedFetch.partition)) {
             // this can happen when a rebalance happened before fetched records are returned to the consumer's poll call
@@ -1379,17 +1450,16 @@ public class Fetcher<K, V> implements Closeable {
             Optional<Integer> leaderEpoch = maybeLeaderEpoch(batch.partitionLeaderEpoch());
             TimestampType timestampType = batch.timestampType();
             Headers headers = new RecordHeaders(record.headers());
+            // the deserializers are passed views of the fetched bytes, which they copy only if they need to
             ByteBuffer keyBytes = record.key();
-            byte[] keyByteArray = keyBytes == null ? null : Utils.toArray(keyBytes);
-            K key = keyBytes == null ? null : this.keyDeserializer.deserialize(partition.topic(), headers, keyByteArray);
+            int keySize = keyBytes == null ? ConsumerRecord.NULL_SIZE : keyBytes.remaining();
+            K key = keyBytes == null ? null : this.keyDeserializer.deserialize(partition.topic(), headers, keyBytes);
             ByteBuffer valueBytes = record.value();
-            byte[] valueByteArray = valueBytes == null ? null : Utils.toArray(valueBytes);
-            V value = valueBytes == null ? null : this.valueDeserializer.deserialize(partition.topic(), headers, valueByteArray);
+            int valueSize = valueBytes == null ? ConsumerRecord.NULL_SIZE : valueBytes.remaining();
+            V value = valueBytes == null ? null : this.valueDeserializer.deserialize(partition.topic(), headers, valueBytes);
             return new ConsumerRecord<>(partition.topic(), partition.partition(), offset,
                                         timestamp, timestampType, record.checksumOrNull(),
-                                        keyByteArray == null ? ConsumerRecord.NULL_SIZE : keyByteArray.length,
-                                        valueByteArray == null ? ConsumerRecord.NULL_SIZE : valueByteArray.length,
-                                        key, value, headers, leaderEpoch);
+                                        keySize, valueSize, key, value, headers, leaderEpoch);
         } catch (RuntimeException e) {
             throw new SerializationException("Error deserializing key/value for partition " + partition +
                     " at offset " + record.offset() + ". If needed, please seek past the record to continue consumption.", e);
@@ -1451,6 +1521,47 @@ public class Fetcher<K, V> implements Closeable {
         return fetchThrottleTimeSensor;
     }
 
+    private enum DecodeState {
+        NOT_CLAIMED, DECODING_AHEAD, DECODING_ON_POLL, RELEASED
+    }
+
+    private static class DecodedRecord<K, V> {
+        private final ConsumerRecord<K, V> record;
+        private final int sizeInBytes;
+
+        private DecodedRecord(ConsumerRecord<K, V> record, int sizeInBytes) {
+            this.record = record;
+            this.sizeInBytes = sizeInBytes;
+        }
+    }
+
+    /**
+     * The records of a completed fetch decoded ahead of the poll. The decoding stops at the first record which
+     * cannot be decoded, so that the poll decodes the remaining records itself and raises the error.
+     */
+    private static class DecodedRecords<K, V> {
+        private final List<DecodedRecord<K, V>> records;
+        // whether all the records of the fetch are decoded, along with the position and epoch after the fetch
+        private final boolean complete;
+        private final long nextFetchOffset;
+        private final Optional<Integer> lastEpoch;
+        private int position = 0;
+
+        private DecodedRecords(List<DecodedRecord<K, V>> records,
+                               boolean complete,
+                               long nextFetchOffset,
+                               Optional<Integer> lastEpoch) {
+            this.records = records;
+            this.complete = complete;
+            this.nextFetchOffset = nextFetchOffset;
+            this.lastEpoch = lastEpoch;
+        }
+
+        private boolean hasNext() {
+            return position < records.size();
+        }
+    }
+
     private class CompletedFetch {
         private final TopicPartition partition;
         private final Iterator<? extends RecordBatch> batches;
@@ -1459,6 +1570,10 @@ public class Fetcher<K, V> implements Closeable {
         private final FetchResponse.PartitionData<Records> partitionData;
         private final FetchResponseMetricAggregator metricAggregator;
         private final short responseVersion;
+        private final long fetchOffset;
+        private final BufferSupplier bufferSupplier;
+        private final AtomicReference<DecodeState> decodeState = new AtomicReference<>(DecodeState.NOT_CLAIMED);
+        private final CompletableFuture<DecodedRecords<K, V>> decodedAhead = new CompletableFuture<>();
 
         private int recordsRead;
         private int bytesRead;
@@ -1471,19 +1586,26 @@ public class Fetcher<K, V> implements Closeable {
         private Exception cachedRecordException = null;
         private boolean corruptLastRecord = false;
         private boolean initialized = false;
+        private DecodedRecords<K, V> decodedRecords = null;
+        private boolean decodedRecordsTaken = false;
+        // the size of the records of the fetch decoded ahead, guarded by the fetch
+        private long decodedAheadBytes = 0;
 
         private CompletedFetch(TopicPartition partition,
                                FetchResponse.PartitionData<Records> partitionData,
                                FetchResponseMetricAggregator metricAggregator,
                                Iterator<? extends RecordBatch> batches,
                                Long fetchOffset,
-                               short responseVersion) {
+                               short responseVersion,
+                               BufferSupplier bufferSupplier) {
             this.partition = partition;
             this.partitionData = partitionData;
             this.metricAggregator = metricAggregator;
             this.batches = batches;
+            this.fetchOffset = fetchOffset;
             this.nextFetchOffset = fetchOffset;
             this.responseVersion = responseVersion;
+            this.bufferSupplier = bufferSupplier;
             this.lastEpoch = Optional.empty();
             this.abortedProducerIds = new HashSet<>();
             this.abortedTransactions = abortedTransactions(partitionData);
@@ -1493,6 +1615,8 @@ public class Fetcher<K, V> implements Closeable {
             if (!isConsumed) {
                 maybeCloseRecordStream();
                 cachedRecordException = null;
+                decodedRecords = null;
+                releaseDecodeAhead();
                 this.isConsumed = true;
                 this.metricAggregator.record(partition, bytesRead, recordsRead);
 
@@ -1545,7 +1669,6 @@ public class Fetcher<K, V> implements Closeable {
                         // fetching the same batch repeatedly).
                         if (currentBatch != null)
                             nextFetchOffset = currentBatch.nextOffset();
-                        drain();
                         return null;
                     }
 
@@ -1568,12 +1691,14 @@ public class Fetcher<K, V> implements Closeable {
                             log.debug("Skipping aborted record batch from partition {} with producerId {} and " +
                                           "offsets {} to {}",
                                       partition, producerId, currentBatch.baseOffset(), currentBatch.lastOffset());
-                            nextFetchOffset = currentBatch.nextOffset();
+                            // the batches are read again from the first one when the poll decodes the records
+                            // following the records decoded ahead, which must not move the offset back
+                            nextFetchOffset = Math.max(nextFetchOffset, currentBatch.nextOffset());
                             continue;
                         }
                     }
 
-                    records = currentBatch.streamingIterator(decompressionBufferSupplier);
+                    records = currentBatch.streamingIterator(bufferSupplier);
                 } else {
                     Record record = records.next();
                     // skip any records out of range
@@ -1596,13 +1721,15 @@ public class Fetcher<K, V> implements Closeable {
         private List<ConsumerRecord<K, V>> fetchRecords(int maxRecords) {
             // Error when fetching the next record before deserialization.
             if (corruptLastRecord)
-                throw new KafkaException("Received exception when fetching the next record from " + partition
-                                             + ". If needed, please seek past the record to "
-                                             + "continue consumption.", cachedRecordException);
+                throw fetchRecordException(cachedRecordException);
 
             if (isConsumed)
                 return Collections.emptyList();
 
+            DecodedRecords<K, V> decoded = takeDecodedRecords();
+            if (decoded != null && (decoded.hasNext() || decoded.complete))
+                return fetchDecodedRecords(decoded, maxRecords);
+
             List<ConsumerRecord<K, V>> records = new ArrayList<>();
             try {
                 for (int i = 0; i < maxRecords; i++) {
@@ -1613,8 +1740,10 @@ public class Fetcher<K, V> implements Closeable {
                         lastRecord = nextFetchedRecord();
                         corruptLastRecord = false;
                     }
-                    if (lastRecord == null)
+                    if (lastRecord == null) {
+                        drain();
                         break;
+                    }
                     records.add(parseRecord(partition, currentBatch, lastRecord));
                     recordsRead++;
                     bytesRead += lastRecord.sizeInBytes();
@@ -1630,13 +1759,118 @@ public class Fetcher<K, V> implements Closeable {
             } catch (KafkaException e) {
                 cachedRecordException = e;
                 if (records.isEmpty())
-                    throw new KafkaException("Received exception when fetching the next record from " + partition
-                                                 + ". If needed, please seek past the record to "
-                                                 + "continue consumption.", e);
+                    throw fetchRecordException(e);
             }
             return records;
         }
 
+        private KafkaException fetchRecordException(Exception e) {
+            if (e instanceof UnknownZstdDictionaryException) {
+                int dictionaryId = ((UnknownZstdDictionaryException) e).dictionaryId();
+                return new UnknownZstdDictionaryException("The records of " + partition + " at offset " + nextFetchOffset
+                    + " are compressed with the zstd dictionary " + Integer.toUnsignedString(dictionaryId)
+                    + ", which is not loaded by the consumer. Add the dictionary to "
+                    + ConsumerConfig.ZSTD_DICTIONARY_FILES_CONFIG + ", or seek past the records to continue consumption.",
+                    dictionaryId, e);
+            }
+            return new KafkaException("Received exception when fetching the next record from " + partition
+                                          + ". If needed, please seek past the record to "
+                                          + "continue consumption.", e);
+        }
+
+        private List<ConsumerRecord<K, V>> fetchDecodedRecords(DecodedRecords<K, V> decoded, int maxRecords) {
+            List<ConsumerRecord<K, V>> records = new ArrayList<>(Math.min(maxRecords, decoded.records.size() - decoded.position));
+            while (records.size() < maxRecords && decoded.hasNext()) {
+                DecodedRecord<K, V> decodedRecord = decoded.records.get(decoded.position++);
+                records.add(decodedRecord.record);
+                recordsRead++;
+                bytesRead += decodedRecord.sizeInBytes;
+                nextFetchOffset = decodedRecord.record.offset() + 1;
+                lastEpoch = decodedRecord.record.leaderEpoch();
+            }
+            if (!decoded.hasNext() && decoded.complete) {
+                nextFetchOffset = decoded.nextFetchOffset;
+                lastEpoch = decoded.lastEpoch;
+                drain();
+            }
+            return records;
+        }
+
+        /**
+         * Take the records decoded ahead of the poll, waiting for the decoding if it is not done yet.
+         *
+         * @return The decoded records, or null if the records are not decoded ahead
+         */
+        private DecodedRecords<K, V> takeDecodedRecords() {
+            if (!decodedRecordsTaken) {
+                decodedRecordsTaken = true;
+                if (!decodeState.compareAndSet(DecodeState.NOT_CLAIMED, DecodeState.DECODING_ON_POLL)) {
+                    try {
+                        decodedRecords = decodedAhead.join();
+                    } catch (CompletionException e) {
+                        log.debug("Decoding the records of partition {} at offset {} ahead of the poll failed",
+                                partition, fetchOffset, e.getCause());
+                    }
+                }
+            }
+            return decodedRecords;
+        }
+
+        private boolean canDecodeAhead() {
+            return decodeState.get() == DecodeState.NOT_CLAIMED && partitionData.error() == Errors.NONE &&
+                    partitionData.records() != null && partitionData.records().sizeInBytes() > 0;
+        }
+
+        private boolean claimDecodeAhead() {
+            return decodeState.compareAndSet(DecodeState.NOT_CLAIMED, DecodeState.DECODING_AHEAD);
+        }
+
+        /**
+         * Reserve the size of a record decoded ahead, unless the fetch is released.
+         */
+        private synchronized boolean reserveDecodeAhead(int sizeInBytes) {
+            if (decodeState.get() != DecodeState.DECODING_AHEAD || !reserveDecodeAheadBytes(sizeInBytes))
+                return false;
+            decodedAheadBytes += sizeInBytes;
+            return true;
+        }
+
+        private synchronized void releaseDecodeAhead() {
+            if (decodeState.compareAndSet(DecodeState.DECODING_AHEAD, DecodeState.RELEASED)) {
+                decodeAheadBytes.addAndGet(-decodedAheadBytes);
+                decodedAheadBytes = 0;
+            }
+        }
+
+        /**
+         * Decode the records of the fetch on a decoder thread. The records are read from a copy of the fetch, so
+         * that the poll can still decode the records not decoded ahead from the fetch itself. The decoding stops
+         * when the records decoded ahead of the poll reach the fetch max bytes.
+         */
+        private void decodeAhead(BufferSupplier decoderBufferSupplier) {
+            CompletedFetch fetch = new CompletedFetch(partition, partitionData, metricAggregator,
+                    partitionData.records().batches().iterator(), fetchOffset, responseVersion, decoderBufferSupplier);
+            List<DecodedRecord<K, V>> records = new ArrayList<>();
+            boolean complete = false;
+            try {
+                Record record = fetch.nextFetchedRecord();
+                while (record != null && reserveDecodeAhead(record.sizeInBytes())) {
+                    records.add(new DecodedRecord<>(parseRecord(partition, fetch.currentBatch, record), record.sizeInBytes()));
+                    record = fetch.nextFetchedRecord();
+                }
+                complete = record == null;
+            } catch (RuntimeException e) {
+                log.debug("Stopping the decoding of partition {} ahead of the poll at offset {}", partition,
+                        fetch.nextFetchOffset, e);
+            } catch (Error e) {
+                decodedAhead.completeExceptionally(e);
+                throw e;
+            } finally {
+                fetch.maybeCloseRecordStream();
+            }
+            decodedAhead.complete(new DecodedRecords<>(records, complete, fetch.nextFetchOffset, fetch.lastEpoch));
+        }
+
         private void consumeAbortedTransactionsUpTo(long offset) {
             if (abortedTransactions == null)
                 return;
@@ -1899,6 +2133,8 @@ public class Fetcher<K, V> implements Closeable {
         if (nextInLineFetch != null)
             nextInLineFetch.drain();
         decompressionBufferSupplier.close();
+        if (decodeExecutor != null)
+            decodeExecutor.shutdownNow();
     }
 
     private Set<String> topicsForPartitions(Collection<TopicPartition> partitions) {
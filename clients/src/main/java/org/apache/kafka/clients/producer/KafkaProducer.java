@@ -40,6 +40,7 @@ import org.apache.kafka.common.Metric;
 import org.apache.kafka.common.MetricName;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.compress.ZstdDictionary;
 import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.ApiException;
 import org.apache.kafka.common.errors.AuthenticationException;
@@ -75,9 +76,12 @@ import org.apache.kafka.common.utils.Time;
 import org.apache.kafka.common.utils.Utils;
 import org.slf4j.Logger;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -400,7 +404,9 @@ public class KafkaProducer<K, V> implements Producer<K, V> {
             this.transactionManager = configureTransactionState(config, logContext);
             this.accumulator = new RecordAccumulator(logContext,
                     config.getInt(ProducerConfig.BATCH_SIZE_CONFIG),
+                    config.getInt(ProducerConfig.BATCH_APPEND_STRIPES_CONFIG),
                     this.compressionType,
+                    configureZstdDictionaries(config, this.compressionType),
                     lingerMs(config),
                     retryBackoffMs,
                     deliveryTimeoutMs,
@@ -484,6 +490,36 @@ public class KafkaProducer<K, V> implements Producer<K, V> {
                 apiVersions);
     }
 
+    private static Map<String, ZstdDictionary> configureZstdDictionaries(ProducerConfig config, CompressionType compressionType) {
+        List<String> entries = config.getList(ProducerConfig.COMPRESSION_ZSTD_DICTIONARIES_CONFIG);
+        if (compressionType != CompressionType.ZSTD || entries.isEmpty())
+            return Collections.emptyMap();
+
+        Map<String, ZstdDictionary> dictionaries = new HashMap<>();
+        // the topics compressed with the dictionary of the same file share it
+        Map<String, ZstdDictionary> dictionaryFiles = new HashMap<>();
+        for (String entry : entries) {
+            // topic names cannot contain a colon, unlike some file paths
+            int separator = entry.indexOf(':');
+            if (separator <= 0 || separator == entry.length() - 1)
+                throw new ConfigException(ProducerConfig.COMPRESSION_ZSTD_DICTIONARIES_CONFIG, entry,
+                        "Expected an entry of the form <topic>:<dictionary file>");
+            String topic = entry.substring(0, separator);
+            String file = entry.substring(separator + 1);
+            ZstdDictionary dictionary = dictionaryFiles.get(file);
+            if (dictionary == null) {
+                try {
+                    dictionary = ZstdDictionary.load(Paths.get(file));
+                } catch (IOException e) {
+                    throw new KafkaException("Failed to load the zstd dictionary of topic " + topic + " from " + file, e);
+                }
+                dictionaryFiles.put(file, dictionary);
+            }
+            dictionaries.put(topic, dictionary);
+        }
+        return dictionaries;
+    }
+
     private static int lingerMs(ProducerConfig config) {
         return (int) Math.min(config.getLong(ProducerConfig.LINGER_MS_CONFIG), Integer.MAX_VALUE);
     }
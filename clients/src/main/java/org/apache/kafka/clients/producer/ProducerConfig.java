@@ -83,6 +83,14 @@ public class ProducerConfig extends AbstractConfig {
                                                  + "batching entirely). A very large batch size may use memory a bit more wastefully as we will always allocate a "
                                                  + "buffer of the specified batch size in anticipation of additional records.";
 
+    /** <code>batch.append.stripes</code> */
+    public static final String BATCH_APPEND_STRIPES_CONFIG = "batch.append.stripes";
+    private static final String BATCH_APPEND_STRIPES_DOC = "The number of batches of a partition that records can be appended to at the same time. "
+                                                           + "Each thread sending records appends them to the batch of one of the stripes, so that the threads sending "
+                                                           + "records to the same partition do not all wait for each other. The records sent by a thread to a partition "
+                                                           + "are sent in order, but more stripes mean smaller batches when few threads send records. "
+                                                           + "This configuration is ignored, a single batch being appended to, when idempotence is enabled.";
+
     /** <code>acks</code> */
     public static final String ACKS_CONFIG = "acks";
     private static final String ACKS_DOC = "The number of acknowledgments the producer requires the leader to have received before considering a request complete. This controls the "
@@ -183,6 +191,18 @@ public class ProducerConfig extends AbstractConfig {
                                                        + " values are <code>none</code>, <code>gzip</code>, <code>snappy</code>, <code>lz4</code>, or <code>zstd</code>. "
                                                        + "Compression is of full batches of data, so the efficacy of batching will also impact the compression ratio (more batching means better compression).";
 
+    /** <code>compression.zstd.dictionaries</code> */
+    public static final String COMPRESSION_ZSTD_DICTIONARIES_CONFIG = "compression.zstd.dictionaries";
+    private static final String COMPRESSION_ZSTD_DICTIONARIES_DOC = "A list of <code>&lt;topic&gt;:&lt;dictionary file&gt;</code> entries giving the zstd dictionary "
+                                                                    + "the records of a topic are compressed with when the compression type is <code>zstd</code>, the records of the other topics "
+                                                                    + "being compressed without dictionary. A dictionary trained from sample records of a topic gives a far better compression "
+                                                                    + "ratio to small batches of small records. The records are decompressed with the dictionary referenced by its id in their "
+                                                                    + "batches, so that the brokers and the consumers must load the dictionary with their <code>zstd.dictionary.files</code> "
+                                                                    + "configuration before the producers compress records with it, and the topic must enable the dictionaries with "
+                                                                    + "<code>zstd.dictionary.enable</code>. Otherwise the records are rejected with an "
+                                                                    + "<code>UnsupportedCompressionTypeException</code>. The dictionaries are only supported by the Java "
+                                                                    + "clients, the consumers of other clients can't decompress the records compressed with them.";
+
     /** <code>metrics.sample.window.ms</code> */
     public static final String METRICS_SAMPLE_WINDOW_MS_CONFIG = CommonClientConfigs.METRICS_SAMPLE_WINDOW_MS_CONFIG;
 
@@ -305,7 +325,14 @@ public class ProducerConfig extends AbstractConfig {
                                         Importance.HIGH,
                                         ACKS_DOC)
                                 .define(COMPRESSION_TYPE_CONFIG, Type.STRING, "none", Importance.HIGH, COMPRESSION_TYPE_DOC)
+                                .define(COMPRESSION_ZSTD_DICTIONARIES_CONFIG,
+                                        Type.LIST,
+                                        Collections.emptyList(),
+                                        new ConfigDef.NonNullValidator(),
+                                        Importance.LOW,
+                                        COMPRESSION_ZSTD_DICTIONARIES_DOC)
                                 .define(BATCH_SIZE_CONFIG, Type.INT, 16384, atLeast(0), Importance.MEDIUM, BATCH_SIZE_DOC)
+                                .define(BATCH_APPEND_STRIPES_CONFIG, Type.INT, 1, atLeast(1), Importance.LOW, BATCH_APPEND_STRIPES_DOC)
                                 .define(LINGER_MS_CONFIG, Type.LONG, 0, atLeast(0), Importance.MEDIUM, LINGER_MS_DOC)
                                 .define(DELIVERY_TIMEOUT_MS_CONFIG, Type.INT, 120 * 1000, atLeast(0), Importance.MEDIUM, DELIVERY_TIMEOUT_MS_DOC)
                                 .define(CLIENT_ID_CONFIG, Type.STRING, "", Importance.MEDIUM, CommonClientConfigs.CLIENT_ID_DOC)
@@ -19,7 +19,10 @@ package org.apache.kafka.clients.producer.internals;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -41,22 +44,32 @@ import org.apache.kafka.common.utils.Time;
  * prevents starvation or deadlock when a thread asks for a large chunk of memory and needs to block until multiple
  * buffers are deallocated.
  * </ol>
+ * The free list is split into several lock-free stripes and the unpooled memory is tracked with an atomic counter,
+ * so allocations and deallocations do not take a lock as long as no thread is blocked waiting for memory. Once a
+ * thread has to block, allocations go through the lock so that the waiting threads are served in order.
  */
 public class BufferPool {
 
     static final String WAIT_TIME_SENSOR_NAME = "bufferpool-wait-time";
 
+    private static final int MAX_FREE_STRIPES = 64;
+
     private final long totalMemory;
     private final int poolableSize;
     private final ReentrantLock lock;
-    private final Deque<ByteBuffer> free;
+    private final Queue<ByteBuffer>[] free;
+    private final int freeStripeMask;
     private final Deque<Condition> waiters;
+    /** The number of entries in waiters, readable without holding the lock. */
+    private volatile int waiting;
     /** Total available memory is the sum of nonPooledAvailableMemory and the number of byte buffers in free * poolableSize.  */
-    private long nonPooledAvailableMemory;
+    private final AtomicLong nonPooledAvailableMemory;
+    /** The stripe of the free list the next deallocated buffer is added to, races only affect the spreading. */
+    private int nextFreeStripe;
     private final Metrics metrics;
     private final Time time;
     private final Sensor waitTime;
-    private boolean closed;
+    private volatile boolean closed;
 
     /**
      * Create a new buffer pool
@@ -68,12 +81,22 @@ public class BufferPool {
      * @param metricGrpName logical group name for metrics
      */
     public BufferPool(long memory, int poolableSize, Metrics metrics, Time time, String metricGrpName) {
+        this(memory, poolableSize, metrics, time, metricGrpName, Runtime.getRuntime().availableProcessors());
+    }
+
+    // Visible for testing
+    @SuppressWarnings("unchecked")
+    BufferPool(long memory, int poolableSize, Metrics metrics, Time time, String metricGrpName, int freeStripes) {
         this.poolableSize = poolableSize;
         this.lock = new ReentrantLock();
-        this.free = new ArrayDeque<>();
+        int stripes = Integer.highestOneBit(Math.max(1, Math.min(freeStripes, MAX_FREE_STRIPES)));
+        this.free = new Queue[stripes];
+        for (int i = 0; i < stripes; i++)
+            this.free[i] = new ConcurrentLinkedQueue<>();
+        this.freeStripeMask = stripes - 1;
         this.waiters = new ArrayDeque<>();
         this.totalMemory = memory;
-        this.nonPooledAvailableMemory = memory;
+        this.nonPooledAvailableMemory = new AtomicLong(memory);
         this.metrics = metrics;
         this.time = time;
         this.waitTime = this.metrics.sensor(WAIT_TIME_SENSOR_NAME);
@@ -111,6 +134,21 @@ public class BufferPool {
                                                + this.totalMemory
                                                + " on memory allocations.");
 
+        if (this.closed)
+            throw new KafkaException("Producer closed while allocating memory");
+
+        // fast path: as long as nobody is waiting for memory there is no ordering to preserve, so take a pooled
+        // buffer or reserve unpooled memory without the lock
+        if (this.waiting == 0) {
+            if (size == this.poolableSize) {
+                ByteBuffer buffer = pollFree();
+                if (buffer != null)
+                    return buffer;
+            }
+            if (tryReserve(size))
+                return safeAllocateByteBuffer(size);
+        }
+
         ByteBuffer buffer = null;
         this.lock.lock();
 
@@ -121,27 +159,34 @@ public class BufferPool {
 
         try {
             // check if we have a free buffer of the right size pooled
-            if (size == poolableSize && !this.free.isEmpty())
-                return this.free.pollFirst();
+            if (size == poolableSize) {
+                buffer = pollFree();
+                if (buffer != null)
+                    return buffer;
+            }
 
             // now check if the request is immediately satisfiable with the
             // memory on hand or if we need to block
-            int freeListSize = freeSize() * this.poolableSize;
-            if (this.nonPooledAvailableMemory + freeListSize >= size) {
-                // we have enough unallocated or pooled memory to immediately
-                // satisfy the request, but need to allocate the buffer
-                freeUp(size);
-                this.nonPooledAvailableMemory -= size;
-            } else {
+            freeUp(size);
+            if (!tryReserve(size)) {
                 // we are out of memory and will have to block
                 int accumulated = 0;
                 Condition moreMemory = this.lock.newCondition();
                 try {
                     long remainingTimeToBlockNs = TimeUnit.MILLISECONDS.toNanos(maxTimeToBlockMs);
                     this.waiters.addLast(moreMemory);
+                    this.waiting = this.waiters.size();
                     // loop over and over until we have a buffer or have reserved
                     // enough memory to allocate one
                     while (accumulated < size) {
+                        // memory released without the lock before we were registered as a waiter did not signal
+                        // anybody, so the first waiter checks for it before blocking
+                        if (this.waiters.peekFirst() == moreMemory) {
+                            accumulated += takeMemory(size, accumulated);
+                            if (accumulated >= size)
+                                break;
+                        }
+
                         long startWaitNs = time.nanoseconds();
                         long timeNs;
                         boolean waitingTimeElapsed;
@@ -165,32 +210,30 @@ public class BufferPool {
 
                         // check if we can satisfy this request from the free list,
                         // otherwise allocate memory
-                        if (accumulated == 0 && size == this.poolableSize && !this.free.isEmpty()) {
-                            // just grab a buffer from the free list
-                            buffer = this.free.pollFirst();
+                        if (accumulated == 0 && size == this.poolableSize && (buffer = pollFree()) != null) {
+                            // just grabbed a buffer from the free list
                             accumulated = size;
                         } else {
                             // we'll need to allocate memory, but we may only get
                             // part of what we need on this iteration
-                            freeUp(size - accumulated);
-                            int got = (int) Math.min(size - accumulated, this.nonPooledAvailableMemory);
-                            this.nonPooledAvailableMemory -= got;
-                            accumulated += got;
+                            accumulated += takeMemory(size, accumulated);
                         }
                     }
                     // Don't reclaim memory on throwable since nothing was thrown
                     accumulated = 0;
                 } finally {
                     // When this loop was not able to successfully terminate don't loose available memory
-                    this.nonPooledAvailableMemory += accumulated;
+                    if (buffer == null)
+                        this.nonPooledAvailableMemory.addAndGet(accumulated);
                     this.waiters.remove(moreMemory);
+                    this.waiting = this.waiters.size();
                 }
             }
         } finally {
             // signal any additional waiters if there is more memory left
             // over for them
             try {
-                if (!(this.nonPooledAvailableMemory == 0 && this.free.isEmpty()) && !this.waiters.isEmpty())
+                if (!(this.nonPooledAvailableMemory.get() == 0 && !hasFree()) && !this.waiters.isEmpty())
                     this.waiters.peekFirst().signal();
             } finally {
                 // Another finally... otherwise find bugs complains
@@ -204,6 +247,36 @@ public class BufferPool {
             return buffer;
     }
 
+    /**
+     * Take as much of the memory still missing for an allocation of the given size as is available, which must be
+     * called with the lock held. A pooled buffer is only used as a whole if nothing has been accumulated yet, this
+     * is handled by the caller.
+     *
+     * @return The number of bytes taken
+     */
+    private int takeMemory(int size, int accumulated) {
+        freeUp(size - accumulated);
+        while (true) {
+            long available = this.nonPooledAvailableMemory.get();
+            int got = (int) Math.min(size - accumulated, Math.max(0L, available));
+            if (got == 0 || this.nonPooledAvailableMemory.compareAndSet(available, available - got))
+                return got;
+        }
+    }
+
+    /**
+     * Reserve the given amount of unpooled memory if it is available.
+     */
+    private boolean tryReserve(int size) {
+        while (true) {
+            long available = this.nonPooledAvailableMemory.get();
+            if (available < size)
+                return false;
+            if (this.nonPooledAvailableMemory.compareAndSet(available, available - size))
+                return true;
+        }
+    }
+
     // Protected for testing
     protected void recordWaitTime(long timeNs) {
         this.waitTime.record(timeNs, time.milliseconds());
@@ -221,14 +294,8 @@ public class BufferPool {
             return buffer;
         } finally {
             if (error) {
-                this.lock.lock();
-                try {
-                    this.nonPooledAvailableMemory += size;
-                    if (!this.waiters.isEmpty())
-                        this.waiters.peekFirst().signal();
-                } finally {
-                    this.lock.unlock();
-                }
+                this.nonPooledAvailableMemory.addAndGet(size);
+                signalFirstWaiter();
             }
         }
     }
@@ -243,8 +310,41 @@ public class BufferPool {
      * buffers (if needed)
      */
     private void freeUp(int size) {
-        while (!this.free.isEmpty() && this.nonPooledAvailableMemory < size)
-            this.nonPooledAvailableMemory += this.free.pollLast().capacity();
+        ByteBuffer buffer;
+        while (this.nonPooledAvailableMemory.get() < size && (buffer = pollFree()) != null)
+            this.nonPooledAvailableMemory.addAndGet(buffer.capacity());
+    }
+
+    /**
+     * Take a buffer from the free list, starting with the stripe of the current thread.
+     */
+    private ByteBuffer pollFree() {
+        int start = (int) Thread.currentThread().getId();
+        for (int i = 0; i <= this.freeStripeMask; i++) {
+            ByteBuffer buffer = this.free[(start + i) & this.freeStripeMask].poll();
+            if (buffer != null)
+                return buffer;
+        }
+        return null;
+    }
+
+    private boolean hasFree() {
+        for (Queue<ByteBuffer> stripe : this.free) {
+            if (!stripe.isEmpty())
+                return true;
+        }
+        return false;
+    }
+
+    private void signalFirstWaiter() {
+        this.lock.lock();
+        try {
+            Condition moreMem = this.waiters.peekFirst();
+            if (moreMem != null)
+                moreMem.signal();
+        } finally {
+            this.lock.unlock();
+        }
     }
 
     /**
@@ -256,20 +356,17 @@ public class BufferPool {
      *             since the buffer may re-allocate itself during in-place compression
      */
     public void deallocate(ByteBuffer buffer, int size) {
-        lock.lock();
-        try {
-            if (size == this.poolableSize && size == buffer.capacity()) {
-                buffer.clear();
-                this.free.add(buffer);
-            } else {
-                this.nonPooledAvailableMemory += size;
-            }
-            Condition moreMem = this.waiters.peekFirst();
-            if (moreMem != null)
-                moreMem.signal();
-        } finally {
-            lock.unlock();
+        if (size == this.poolableSize && size == buffer.capacity()) {
+            buffer.clear();
+            // spread the buffers over the stripes since they are usually all deallocated by the sender thread
+            int stripe = this.nextFreeStripe++ & this.freeStripeMask;
+            this.free[stripe].add(buffer);
+        } else {
+            this.nonPooledAvailableMemory.addAndGet(size);
         }
+        // a thread which registers as a waiter after this check will find the memory before it blocks
+        if (this.waiting > 0)
+            signalFirstWaiter();
     }
 
     public void deallocate(ByteBuffer buffer) {
@@ -280,29 +377,22 @@ public class BufferPool {
      * the total free memory both unallocated and in the free list
      */
     public long availableMemory() {
-        lock.lock();
-        try {
-            return this.nonPooledAvailableMemory + freeSize() * (long) this.poolableSize;
-        } finally {
-            lock.unlock();
-        }
+        return this.nonPooledAvailableMemory.get() + freeSize() * (long) this.poolableSize;
     }
 
     // Protected for testing.
     protected int freeSize() {
-        return this.free.size();
+        int size = 0;
+        for (Queue<ByteBuffer> stripe : this.free)
+            size += stripe.size();
+        return size;
     }
 
     /**
      * Get the unallocated memory (not in the free list or in use)
      */
     public long unallocatedMemory() {
-        lock.lock();
-        try {
-            return this.nonPooledAvailableMemory;
-        } finally {
-            lock.unlock();
-        }
+        return this.nonPooledAvailableMemory.get();
     }
 
     /**
@@ -20,9 +20,12 @@ import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.common.utils.ProducerIdAndEpoch;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.compress.ZstdDictionaries;
+import org.apache.kafka.common.compress.ZstdDictionary;
 import org.apache.kafka.common.errors.RecordBatchTooLargeException;
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.record.AbstractRecords;
+import org.apache.kafka.common.record.BufferSupplier;
 import org.apache.kafka.common.record.CompressionRatioEstimator;
 import org.apache.kafka.common.record.CompressionType;
 import org.apache.kafka.common.record.MemoryRecords;
@@ -32,6 +35,7 @@ import org.apache.kafka.common.record.Record;
 import org.apache.kafka.common.record.RecordBatch;
 import org.apache.kafka.common.record.TimestampType;
 import org.apache.kafka.common.requests.ProduceResponse;
+import org.apache.kafka.common.utils.CloseableIterator;
 import org.apache.kafka.common.utils.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +43,7 @@ import org.slf4j.LoggerFactory;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
@@ -76,6 +81,8 @@ public final class ProducerBatch {
     private long drainedMs;
     private boolean retry;
     private boolean reopened;
+    // the stripe of the partition the batch was appended to, which it is re-enqueued to
+    private int appendStripe;
 
     public ProducerBatch(TopicPartition tp, MemoryRecordsBuilder recordsBuilder, long createdMs) {
         this(tp, recordsBuilder, createdMs, false);
@@ -259,18 +266,21 @@ public final class ProducerBatch {
         // And we also Retain the create time of the original batch.
         ProducerBatch batch = null;
 
-        for (Record record : recordBatch) {
-            assert thunkIter.hasNext();
-            Thunk thunk = thunkIter.next();
-            if (batch == null)
-                batch = createBatchOffAccumulatorForRecord(record, splitBatchSize);
-
-            // A newly created batch can always host the first message.
-            if (!batch.tryAppendForSplit(record.timestamp(), record.key(), record.value(), record.headers(), thunk)) {
-                batches.add(batch);
-                batch.closeForRecordAppends();
-                batch = createBatchOffAccumulatorForRecord(record, splitBatchSize);
-                batch.tryAppendForSplit(record.timestamp(), record.key(), record.value(), record.headers(), thunk);
+        try (CloseableIterator<Record> records = recordBatch.streamingIterator(decompressionBufferSupplier())) {
+            while (records.hasNext()) {
+                Record record = records.next();
+                assert thunkIter.hasNext();
+                Thunk thunk = thunkIter.next();
+                if (batch == null)
+                    batch = createBatchOffAccumulatorForRecord(record, splitBatchSize);
+
+                // A newly created batch can always host the first message.
+                if (!batch.tryAppendForSplit(record.timestamp(), record.key(), record.value(), record.headers(), thunk)) {
+                    batches.add(batch);
+                    batch.closeForRecordAppends();
+                    batch = createBatchOffAccumulatorForRecord(record, splitBatchSize);
+                    batch.tryAppendForSplit(record.timestamp(), record.key(), record.value(), record.headers(), thunk);
+                }
             }
         }
 
@@ -294,6 +304,15 @@ public final class ProducerBatch {
         return batches;
     }
 
+    /**
+     * The buffer supplier to decompress the batch with, which has the zstd dictionary the batch is compressed with, if any.
+     */
+    private BufferSupplier decompressionBufferSupplier() {
+        ZstdDictionary zstdDictionary = recordsBuilder.zstdDictionary();
+        return zstdDictionary == null ? BufferSupplier.NO_CACHING
+                : BufferSupplier.noCaching(ZstdDictionaries.of(Collections.singleton(zstdDictionary)));
+    }
+
     private ProducerBatch createBatchOffAccumulatorForRecord(Record record, int batchSize) {
         int initialSize = Math.max(AbstractRecords.estimateSizeInBytesUpperBound(magic(),
                 recordsBuilder.compressionType(), record.key(), record.value(), record.headers()), batchSize);
@@ -303,8 +322,10 @@ public final class ProducerBatch {
         // for the newly created batch. This will be set when the batch is dequeued for sending (which is consistent
         // with how normal batches are handled).
         MemoryRecordsBuilder builder = MemoryRecords.builder(buffer, magic(), recordsBuilder.compressionType(),
-                TimestampType.CREATE_TIME, 0L);
-        return new ProducerBatch(topicPartition, builder, this.createdMs, true);
+                recordsBuilder.zstdDictionary(), TimestampType.CREATE_TIME, 0L);
+        ProducerBatch batch = new ProducerBatch(topicPartition, builder, this.createdMs, true);
+        batch.appendStripe = this.appendStripe;
+        return batch;
     }
 
     public boolean isCompressed() {
@@ -341,6 +362,14 @@ public final class ProducerBatch {
         return attempts.get();
     }
 
+    int appendStripe() {
+        return appendStripe;
+    }
+
+    void appendStripe(int appendStripe) {
+        this.appendStripe = appendStripe;
+    }
+
     void reenqueued(long now) {
         attempts.getAndIncrement();
         lastAttemptMs = Math.max(lastAppendTime, now);
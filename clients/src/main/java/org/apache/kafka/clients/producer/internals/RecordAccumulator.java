@@ -38,6 +38,7 @@ import org.apache.kafka.common.MetricName;
 import org.apache.kafka.common.Node;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.compress.ZstdDictionary;
 import org.apache.kafka.common.errors.UnsupportedVersionException;
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.metrics.Measurable;
@@ -62,6 +63,13 @@ import org.slf4j.Logger;
  * <p>
  * The accumulator uses a bounded amount of memory and append calls will block when that memory is exhausted, unless
  * this behavior is explicitly disabled.
+ * <p>
+ * The batches of a partition may be striped, each appending thread appending its records to the last batch of the
+ * deque of one of the stripes of the partition, so that the threads appending to the same partition do not all contend
+ * for the same deque. The first stripe of a partition is its deque of {@link #batches()}. The re-enqueued batches are
+ * added back to the stripe they were appended to, and the batches of the partition are drained from the stripe whose
+ * first batch is the oldest. A re-enqueued batch backing off holds back the batches of all the stripes of its
+ * partition, so that they are not sent before it.
  */
 public final class RecordAccumulator {
 
@@ -70,7 +78,9 @@ public final class RecordAccumulator {
     private final AtomicInteger flushesInProgress;
     private final AtomicInteger appendsInProgress;
     private final int batchSize;
+    private final int appendStripes;
     private final CompressionType compression;
+    private final Map<String, ZstdDictionary> zstdDictionaries;
     private final int lingerMs;
     private final long retryBackoffMs;
     private final int deliveryTimeoutMs;
@@ -78,6 +88,8 @@ public final class RecordAccumulator {
     private final Time time;
     private final ApiVersions apiVersions;
     private final ConcurrentMap<TopicPartition, Deque<ProducerBatch>> batches;
+    // the deques of the stripes of each partition, the first being the deque of the partition in batches
+    private final ConcurrentMap<TopicPartition, List<Deque<ProducerBatch>>> stripes;
     private final IncompleteBatches incomplete;
     // The following variables are only accessed by the sender thread, so we don't need to protect them.
     private final Set<TopicPartition> muted;
@@ -90,7 +102,11 @@ public final class RecordAccumulator {
      *
      * @param logContext The log context used for logging
      * @param batchSize The size to use when allocating {@link MemoryRecords} instances
+     * @param appendStripes The number of batches of a partition that records can be appended to at the same time,
+     *                      a single batch being appended to if there is a transaction manager
      * @param compression The compression codec for the records
+     * @param zstdDictionaries The zstd dictionaries the records of each topic are compressed with if the compression
+     *                         codec is zstd, the records of the other topics being compressed without dictionary
      * @param lingerMs An artificial delay time to add before declaring a records instance that isn't full ready for
      *        sending. This allows time for more records to arrive. Setting a non-zero lingerMs will trade off some
      *        latency for potentially better throughput due to more batching (and hence fewer, larger requests).
@@ -104,7 +120,9 @@ public final class RecordAccumulator {
      */
     public RecordAccumulator(LogContext logContext,
                              int batchSize,
+                             int appendStripes,
                              CompressionType compression,
+                             Map<String, ZstdDictionary> zstdDictionaries,
                              int lingerMs,
                              long retryBackoffMs,
                              int deliveryTimeoutMs,
@@ -120,11 +138,15 @@ public final class RecordAccumulator {
         this.flushesInProgress = new AtomicInteger(0);
         this.appendsInProgress = new AtomicInteger(0);
         this.batchSize = batchSize;
+        // the sequence numbers of the batches of a partition are only kept in order with a single stripe
+        this.appendStripes = transactionManager == null ? appendStripes : 1;
         this.compression = compression;
+        this.zstdDictionaries = zstdDictionaries;
         this.lingerMs = lingerMs;
         this.retryBackoffMs = retryBackoffMs;
         this.deliveryTimeoutMs = deliveryTimeoutMs;
         this.batches = new CopyOnWriteMap<>();
+        this.stripes = new CopyOnWriteMap<>();
         this.free = bufferPool;
         this.incomplete = new IncompleteBatches();
         this.muted = new HashSet<>();
@@ -193,7 +215,8 @@ public final class RecordAccumulator {
         if (headers == null) headers = Record.EMPTY_HEADERS;
         try {
             // check if we have an in-progress batch
-            Deque<ProducerBatch> dq = getOrCreateDeque(tp);
+            int stripe = appendStripe();
+            Deque<ProducerBatch> dq = getOrCreateDeque(tp, stripe);
             synchronized (dq) {
                 if (closed)
                     throw new KafkaException("Producer closed while send in progress");
@@ -226,8 +249,9 @@ public final class RecordAccumulator {
                     return appendResult;
                 }
 
-                MemoryRecordsBuilder recordsBuilder = recordsBuilder(buffer, maxUsableMagic);
+                MemoryRecordsBuilder recordsBuilder = recordsBuilder(buffer, maxUsableMagic, tp.topic());
                 ProducerBatch batch = new ProducerBatch(tp, recordsBuilder, nowMs);
+                batch.appendStripe(stripe);
                 FutureRecordMetadata future = Objects.requireNonNull(batch.tryAppend(timestamp, key, value, headers,
                         callback, nowMs));
 
@@ -245,12 +269,14 @@ public final class RecordAccumulator {
         }
     }
 
-    private MemoryRecordsBuilder recordsBuilder(ByteBuffer buffer, byte maxUsableMagic) {
+    private MemoryRecordsBuilder recordsBuilder(ByteBuffer buffer, byte maxUsableMagic, String topic) {
         if (transactionManager != null && maxUsableMagic < RecordBatch.MAGIC_VALUE_V2) {
             throw new UnsupportedVersionException("Attempting to use idempotence with a broker which does not " +
                 "support the required message format (v2). The broker must be version 0.11 or later.");
         }
-        return MemoryRecords.builder(buffer, maxUsableMagic, compression, TimestampType.CREATE_TIME, 0L);
+        // the dictionaries are only looked up with zstd, as zstd-jni is only a runtime dependency
+        ZstdDictionary zstdDictionary = compression == CompressionType.ZSTD ? zstdDictionaries.get(topic) : null;
+        return MemoryRecords.builder(buffer, maxUsableMagic, compression, zstdDictionary, TimestampType.CREATE_TIME, 0L);
     }
 
     /**
@@ -299,18 +325,19 @@ public final class RecordAccumulator {
     public List<ProducerBatch> expiredBatches(long now) {
         List<ProducerBatch> expiredBatches = new ArrayList<>();
         for (Map.Entry<TopicPartition, Deque<ProducerBatch>> entry : this.batches.entrySet()) {
-            // expire the batches in the order of sending
-            Deque<ProducerBatch> deque = entry.getValue();
-            synchronized (deque) {
-                while (!deque.isEmpty()) {
-                    ProducerBatch batch = deque.getFirst();
-                    if (batch.hasReachedDeliveryTimeout(deliveryTimeoutMs, now)) {
-                        deque.poll();
-                        batch.abortRecordAppends();
-                        expiredBatches.add(batch);
-                    } else {
-                        maybeUpdateNextBatchExpiryTime(batch);
-                        break;
+            for (Deque<ProducerBatch> deque : stripes(entry.getKey(), entry.getValue())) {
+                // expire the batches in the order of sending
+                synchronized (deque) {
+                    while (!deque.isEmpty()) {
+                        ProducerBatch batch = deque.getFirst();
+                        if (batch.hasReachedDeliveryTimeout(deliveryTimeoutMs, now)) {
+                            deque.poll();
+                            batch.abortRecordAppends();
+                            expiredBatches.add(batch);
+                        } else {
+                            maybeUpdateNextBatchExpiryTime(batch);
+                            break;
+                        }
                     }
                 }
             }
@@ -328,7 +355,7 @@ public final class RecordAccumulator {
      */
     public void reenqueue(ProducerBatch batch, long now) {
         batch.reenqueued(now);
-        Deque<ProducerBatch> deque = getOrCreateDeque(batch.topicPartition);
+        Deque<ProducerBatch> deque = getOrCreateDeque(batch.topicPartition, batch.appendStripe());
         synchronized (deque) {
             if (transactionManager != null)
                 insertInSequenceOrder(deque, batch);
@@ -349,7 +376,7 @@ public final class RecordAccumulator {
                                                 Math.max(1.0f, (float) bigBatch.compressionRatio()));
         Deque<ProducerBatch> dq = bigBatch.split(this.batchSize);
         int numSplitBatches = dq.size();
-        Deque<ProducerBatch> partitionDequeue = getOrCreateDeque(bigBatch.topicPartition);
+        Deque<ProducerBatch> partitionDequeue = getOrCreateDeque(bigBatch.topicPartition, bigBatch.appendStripe());
         while (!dq.isEmpty()) {
             ProducerBatch batch = dq.pollLast();
             incomplete.add(batch);
@@ -447,33 +474,42 @@ public final class RecordAccumulator {
 
         boolean exhausted = this.free.queued() > 0;
         for (Map.Entry<TopicPartition, Deque<ProducerBatch>> entry : this.batches.entrySet()) {
-            Deque<ProducerBatch> deque = entry.getValue();
-            synchronized (deque) {
-                // When producing to a large number of partitions, this path is hot and deques are often empty.
-                // We check whether a batch exists first to avoid the more expensive checks whenever possible.
-                ProducerBatch batch = deque.peekFirst();
-                if (batch != null) {
-                    TopicPartition part = entry.getKey();
-                    Node leader = cluster.leaderFor(part);
-                    if (leader == null) {
-                        // This is a partition for which leader is not known, but messages are available to send.
-                        // Note that entries are currently not removed from batches when deque is empty.
-                        unknownLeaderTopics.add(part.topic());
-                    } else if (!readyNodes.contains(leader) && !isMuted(part)) {
-                        long waitedTimeMs = batch.waitedTimeMs(nowMs);
-                        boolean backingOff = batch.attempts() > 0 && waitedTimeMs < retryBackoffMs;
-                        long timeToWaitMs = backingOff ? retryBackoffMs : lingerMs;
-                        boolean full = deque.size() > 1 || batch.isFull();
-                        boolean expired = waitedTimeMs >= timeToWaitMs;
-                        boolean sendable = full || expired || exhausted || closed || flushInProgress();
-                        if (sendable && !backingOff) {
-                            readyNodes.add(leader);
-                        } else {
-                            long timeLeftMs = Math.max(timeToWaitMs - waitedTimeMs, 0);
-                            // Note that this results in a conservative estimate since an un-sendable partition may have
-                            // a leader that will later be found to have sendable data. However, this is good enough
-                            // since we'll just wake up and then sleep again for the remaining time.
-                            nextReadyCheckDelayMs = Math.min(timeLeftMs, nextReadyCheckDelayMs);
+            TopicPartition part = entry.getKey();
+            List<Deque<ProducerBatch>> partitionStripes = stripes(part, entry.getValue());
+            if (partitionStripes.size() > 1) {
+                long retryBackoffLeftMs = retryBackoffLeftMs(partitionStripes, nowMs);
+                if (retryBackoffLeftMs > 0) {
+                    nextReadyCheckDelayMs = Math.min(retryBackoffLeftMs, nextReadyCheckDelayMs);
+                    continue;
+                }
+            }
+            for (Deque<ProducerBatch> deque : partitionStripes) {
+                synchronized (deque) {
+                    // When producing to a large number of partitions, this path is hot and deques are often empty.
+                    // We check whether a batch exists first to avoid the more expensive checks whenever possible.
+                    ProducerBatch batch = deque.peekFirst();
+                    if (batch != null) {
+                        Node leader = cluster.leaderFor(part);
+                        if (leader == null) {
+                            // This is a partition for which leader is not known, but messages are available to send.
+                            // Note that entries are currently not removed from batches when deque is empty.
+                            unknownLeaderTopics.add(part.topic());
+                        } else if (!readyNodes.contains(leader) && !isMuted(part)) {
+                            long waitedTimeMs = batch.waitedTimeMs(nowMs);
+                            boolean backingOff = batch.attempts() > 0 && waitedTimeMs < retryBackoffMs;
+                            long timeToWaitMs = backingOff ? retryBackoffMs : lingerMs;
+                            boolean full = deque.size() > 1 || batch.isFull();
+                            boolean expired = waitedTimeMs >= timeToWaitMs;
+                            boolean sendable = full || expired || exhausted || closed || flushInProgress();
+                            if (sendable && !backingOff) {
+                                readyNodes.add(leader);
+                            } else {
+                                long timeLeftMs = Math.max(timeToWaitMs - waitedTimeMs, 0);
+                                // Note that this results in a conservative estimate since an un-sendable partition may have
+                                // a leader that will later be found to have sendable data. However, this is good enough
+                                // since we'll just wake up and then sleep again for the remaining time.
+                                nextReadyCheckDelayMs = Math.min(timeLeftMs, nextReadyCheckDelayMs);
+                            }
                         }
                     }
                 }
@@ -487,10 +523,11 @@ public final class RecordAccumulator {
      */
     public boolean hasUndrained() {
         for (Map.Entry<TopicPartition, Deque<ProducerBatch>> entry : this.batches.entrySet()) {
-            Deque<ProducerBatch> deque = entry.getValue();
-            synchronized (deque) {
-                if (!deque.isEmpty())
-                    return true;
+            for (Deque<ProducerBatch> deque : stripes(entry.getKey(), entry.getValue())) {
+                synchronized (deque) {
+                    if (!deque.isEmpty())
+                        return true;
+                }
             }
         }
         return false;
@@ -553,7 +590,7 @@ public final class RecordAccumulator {
             if (isMuted(tp))
                 continue;
 
-            Deque<ProducerBatch> deque = getDeque(tp);
+            Deque<ProducerBatch> deque = drainDeque(tp, now);
             if (deque == null)
                 continue;
 
@@ -642,6 +679,105 @@ public final class RecordAccumulator {
         return batches.get(tp);
     }
 
+    /**
+     * Get the deques of the stripes of the given topic-partition, given its deque.
+     */
+    private List<Deque<ProducerBatch>> stripes(TopicPartition tp, Deque<ProducerBatch> deque) {
+        // the stripes of the partition are not known yet while they are created
+        List<Deque<ProducerBatch>> partitionStripes = appendStripes > 1 ? stripes.get(tp) : null;
+        return partitionStripes != null ? partitionStripes : Collections.singletonList(deque);
+    }
+
+    /**
+     * Get the deque of the stripe to drain a batch of the given topic-partition from, the stripe whose first batch is
+     * the oldest, or null if the first batch of one of the stripes is backing off.
+     */
+    private Deque<ProducerBatch> drainDeque(TopicPartition tp, long now) {
+        Deque<ProducerBatch> deque = getDeque(tp);
+        if (deque == null || appendStripes == 1)
+            return deque;
+
+        List<Deque<ProducerBatch>> partitionStripes = stripes(tp, deque);
+        // the batches of the other stripes may have been appended after the batch backing off by the same thread
+        if (retryBackoffLeftMs(partitionStripes, now) > 0)
+            return null;
+
+        Deque<ProducerBatch> drainDeque = deque;
+        long oldestCreatedMs = Long.MAX_VALUE;
+        for (Deque<ProducerBatch> stripe : partitionStripes) {
+            synchronized (stripe) {
+                ProducerBatch first = stripe.peekFirst();
+                if (first != null && first.createdMs < oldestCreatedMs) {
+                    drainDeque = stripe;
+                    oldestCreatedMs = first.createdMs;
+                }
+            }
+        }
+        return drainDeque;
+    }
+
+    /**
+     * Get the time left before the retry of the re-enqueued batch backing off at the head of one of the given stripes,
+     * or 0 if there is none.
+     */
+    private long retryBackoffLeftMs(List<Deque<ProducerBatch>> partitionStripes, long now) {
+        long retryBackoffLeftMs = 0;
+        for (Deque<ProducerBatch> stripe : partitionStripes) {
+            synchronized (stripe) {
+                ProducerBatch first = stripe.peekFirst();
+                if (first != null && first.attempts() > 0)
+                    retryBackoffLeftMs = Math.max(retryBackoffLeftMs, retryBackoffMs - first.waitedTimeMs(now));
+            }
+        }
+        return retryBackoffLeftMs;
+    }
+
+    /**
+     * Get the stripe of the partitions that the calling thread appends to.
+     */
+    private int appendStripe() {
+        return appendStripes == 1 ? 0 : (int) (Thread.currentThread().getId() % appendStripes);
+    }
+
+    /**
+     * Get the deque of the given stripe of the given topic-partition, creating the stripes if necessary.
+     */
+    private Deque<ProducerBatch> getOrCreateDeque(TopicPartition tp, int stripe) {
+        Deque<ProducerBatch> d = getOrCreateDeque(tp);
+        if (appendStripes == 1)
+            return d;
+
+        List<Deque<ProducerBatch>> partitionStripes = this.stripes.get(tp);
+        if (partitionStripes == null) {
+            partitionStripes = new ArrayList<>(appendStripes);
+            partitionStripes.add(d);
+            for (int i = 1; i < appendStripes; i++)
+                partitionStripes.add(new ArrayDeque<>());
+            List<Deque<ProducerBatch>> previous = this.stripes.putIfAbsent(tp, partitionStripes);
+            if (previous != null)
+                partitionStripes = previous;
+        }
+        return partitionStripes.get(stripe);
+    }
+
+    /**
+     * Get the deque of the stripe of the partition of the given batch that holds the batch, or the deque of the
+     * partition if none does.
+     */
+    private Deque<ProducerBatch> getDeque(ProducerBatch batch) {
+        Deque<ProducerBatch> deque = getDeque(batch.topicPartition);
+        if (appendStripes == 1)
+            return deque;
+
+        for (Deque<ProducerBatch> stripe : stripes(batch.topicPartition, deque)) {
+            synchronized (stripe) {
+                if (stripe.contains(batch))
+                    return stripe;
+            }
+        }
+        return deque;
+    }
+
     /**
      * Get the deque for the given topic-partition, creating it if necessary.
      */
@@ -739,6 +875,7 @@ public final class RecordAccumulator {
         // batch appended by the last appending thread.
         abortBatches();
         this.batches.clear();
+        this.stripes.clear();
     }
 
     /**
@@ -753,7 +890,7 @@ public final class RecordAccumulator {
      */
     void abortBatches(final RuntimeException reason) {
         for (ProducerBatch batch : incomplete.copyAll()) {
-            Deque<ProducerBatch> dq = getDeque(batch.topicPartition);
+            Deque<ProducerBatch> dq = getDeque(batch);
             synchronized (dq) {
                 batch.abortRecordAppends();
                 dq.remove(batch);
@@ -768,7 +905,7 @@ public final class RecordAccumulator {
      */
     void abortUndrainedBatches(RuntimeException reason) {
         for (ProducerBatch batch : incomplete.copyAll()) {
-            Deque<ProducerBatch> dq = getDeque(batch.topicPartition);
+            Deque<ProducerBatch> dq = getDeque(batch);
             boolean aborted = false;
             synchronized (dq) {
                 if ((transactionManager != null && !batch.hasSequence()) || (transactionManager == null && !batch.isClosed())) {
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.compress;
+
+import org.apache.kafka.common.utils.ByteBufferOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * An output stream buffering the uncompressed records of a batch, which are compressed as a whole into the buffer
+ * stream of the batch once the stream is closed. The records of a batch may be appended by several threads, so the
+ * compression context of a codec can only be taken from the thread closing the stream.
+ */
+abstract class BlockCompressionOutputStream extends OutputStream {
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+
+    private final ByteBufferOutputStream out;
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int size = 0;
+
+    BlockCompressionOutputStream(ByteBufferOutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity(size + 1);
+        buffer[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        ensureCapacity(size + len);
+        System.arraycopy(bytes, off, buffer, size, len);
+        size += len;
+    }
+
+    private void ensureCapacity(int capacity) throws IOException {
+        if (buffer == null)
+            throw new IOException("Stream closed");
+        if (capacity > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer != null) {
+            try {
+                compress(buffer, size, out);
+            } finally {
+                buffer = null;
+            }
+        }
+    }
+
+    /**
+     * Compress the records of the batch into the buffer stream of the batch.
+     *
+     * @param src The uncompressed records
+     * @param length The size of the uncompressed records
+     * @param out The buffer stream to write the compressed records to
+     */
+    protected abstract void compress(byte[] src, int length, ByteBufferOutputStream out) throws IOException;
+}
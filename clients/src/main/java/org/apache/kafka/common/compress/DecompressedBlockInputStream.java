@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.compress;
+
+import java.io.InputStream;
+
+/**
+ * An input stream of the records of a batch decompressed as a whole into a buffer borrowed from the thread
+ * decompressing them, which is returned to the closing thread once the stream is closed.
+ * <p>
+ * Each thread caches a single buffer of at most {@link #MAX_SIZE} bytes, the batches decompressing to more bytes being
+ * decompressed as streams instead, so that decompressing a batch of unbounded size cannot exhaust the memory.
+ */
+final class DecompressedBlockInputStream extends InputStream {
+    /**
+     * The maximum size of the records of a batch decompressed as a whole.
+     */
+    static final int MAX_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> CACHED_BUFFER = new ThreadLocal<>();
+
+    private byte[] buffer;
+    private final int size;
+    private int position = 0;
+
+    /**
+     * @param buffer A buffer borrowed with {@link #borrowBuffer(int)}, holding the decompressed records
+     * @param size The size of the decompressed records
+     */
+    DecompressedBlockInputStream(byte[] buffer, int size) {
+        this.buffer = buffer;
+        this.size = size;
+    }
+
+    /**
+     * Borrow the buffer cached by the calling thread if it is large enough, or allocate a new buffer otherwise.
+     */
+    static byte[] borrowBuffer(int size) {
+        byte[] cached = CACHED_BUFFER.get();
+        if (cached != null && cached.length >= size) {
+            CACHED_BUFFER.set(null);
+            return cached;
+        }
+        return new byte[size];
+    }
+
+    /**
+     * Cache a buffer for the calling thread, unless it caches a larger one.
+     */
+    static void releaseBuffer(byte[] buffer) {
+        byte[] cached = CACHED_BUFFER.get();
+        if (cached == null || cached.length < buffer.length)
+            CACHED_BUFFER.set(buffer);
+    }
+
+    @Override
+    public int read() {
+        if (position >= size)
+            return -1;
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) {
+        if (len == 0)
+            return 0;
+        if (position >= size)
+            return -1;
+
+        len = Math.min(len, size - position);
+        System.arraycopy(buffer, position, bytes, off, len);
+        position += len;
+        return len;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, size - position));
+        position += (int) skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return size - position;
+    }
+
+    @Override
+    public void close() {
+        if (buffer != null) {
+            releaseBuffer(buffer);
+            buffer = null;
+            position = size;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.compress;
+
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.utils.ByteBufferInputStream;
+import org.apache.kafka.common.utils.ByteBufferOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the records of a batch as a single gzip member, and decompresses the batches of a single gzip member, with
+ * the deflater and inflater of the calling thread instead of initializing new ones for each batch. The other batches
+ * are decompressed as streams.
+ */
+public final class GzipFactory {
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int HEADER_SIZE = 10;
+    private static final int TRAILER_SIZE = 8;
+    private static final byte[] HEADER = {
+        (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+    // the flags of the optional fields of the header
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final ThreadLocal<Deflater> DEFLATER =
+        ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<CRC32> CRC = ThreadLocal.withInitial(CRC32::new);
+
+    private GzipFactory() { }
+
+    public static OutputStream wrapForOutput(ByteBufferOutputStream buffer) {
+        return new BlockCompressionOutputStream(buffer) {
+            @Override
+            protected void compress(byte[] src, int length, ByteBufferOutputStream out) {
+                GzipFactory.compress(src, length, out);
+            }
+        };
+    }
+
+    public static InputStream wrapForInput(ByteBuffer buffer) {
+        InputStream block = decompress(buffer);
+        if (block != null)
+            return block;
+
+        try {
+            // Set output buffer (uncompressed) to 16 KB (none by default) and input buffer (compressed) to
+            // 8 KB (0.5 KB by default) to ensure reasonable performance in cases where the caller reads a small
+            // number of bytes (potentially a single byte)
+            return new BufferedInputStream(new GZIPInputStream(new ByteBufferInputStream(buffer), 8 * 1024),
+                    16 * 1024);
+        } catch (Exception e) {
+            throw new KafkaException(e);
+        }
+    }
+
+    private static void compress(byte[] src, int length, ByteBufferOutputStream out) {
+        Deflater deflater = DEFLATER.get();
+        CRC32 crc = CRC.get();
+        deflater.reset();
+        crc.reset();
+        crc.update(src, 0, length);
+
+        out.write(HEADER, 0, HEADER.length);
+        deflater.setInput(src, 0, length);
+        deflater.finish();
+        byte[] chunk = null;
+        while (!deflater.finished()) {
+            // deflate directly into the buffer of the batch, which is only expanded once it is full, as the callers
+            // writing into a buffer of their own expect it to be expanded only if the batch does not fit
+            if (!out.buffer().hasRemaining())
+                out.ensureRemaining(Math.max(length / 2, 512));
+            ByteBuffer dst = out.buffer();
+            if (dst.hasArray()) {
+                int deflated = deflater.deflate(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                dst.position(dst.position() + deflated);
+            } else {
+                if (chunk == null)
+                    chunk = new byte[8 * 1024];
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+        }
+
+        out.ensureRemaining(TRAILER_SIZE);
+        ByteBuffer dst = out.buffer();
+        ByteOrder order = dst.order();
+        dst.order(ByteOrder.LITTLE_ENDIAN);
+        dst.putInt((int) crc.getValue());
+        dst.putInt(length);
+        dst.order(order);
+    }
+
+    /**
+     * Decompress a batch of a single gzip member whose size is at most {@link DecompressedBlockInputStream#MAX_SIZE},
+     * or return null for the batch to be decompressed as a stream, including when it is corrupt.
+     */
+    private static InputStream decompress(ByteBuffer buffer) {
+        if (!buffer.hasArray() || buffer.remaining() < HEADER_SIZE + TRAILER_SIZE)
+            return null;
+        byte[] src = buffer.array();
+        int offset = buffer.arrayOffset() + buffer.position();
+        int end = buffer.arrayOffset() + buffer.limit();
+
+        int dataOffset = dataOffset(src, offset, end);
+        // the size of the member modulo 2^32, which is also its size if there are no other members
+        int size = readIntLE(src, end - 4);
+        if (dataOffset < 0 || size <= 0 || size > DecompressedBlockInputStream.MAX_SIZE)
+            return null;
+
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(src, dataOffset, end - dataOffset);
+        byte[] decompressed = DecompressedBlockInputStream.borrowBuffer(size);
+        try {
+            int inflated = inflater.inflate(decompressed, 0, size);
+            if (inflated == size && inflater.finished() && inflater.getRemaining() == TRAILER_SIZE) {
+                CRC32 crc = CRC.get();
+                crc.reset();
+                crc.update(decompressed, 0, size);
+                if (readIntLE(src, end - TRAILER_SIZE) == (int) crc.getValue())
+                    return new DecompressedBlockInputStream(decompressed, size);
+            }
+        } catch (DataFormatException e) {
+            // the stream raises the error once the batch is read
+        }
+        DecompressedBlockInputStream.releaseBuffer(decompressed);
+        return null;
+    }
+
+    /**
+     * The offset of the deflated data of a gzip member, after its header, or -1 if the header is not valid.
+     */
+    private static int dataOffset(byte[] src, int offset, int end) {
+        if (readShortLE(src, offset) != GZIP_MAGIC || src[offset + 2] != Deflater.DEFLATED)
+            return -1;
+        int flags = src[offset + 3] & 0xff;
+        int position = offset + HEADER_SIZE;
+        if ((flags & FEXTRA) != 0) {
+            if (position + 2 > end)
+                return -1;
+            position += 2 + readShortLE(src, position);
+        }
+        if ((flags & FNAME) != 0)
+            position = skipZeroTerminated(src, position, end);
+        if ((flags & FCOMMENT) != 0)
+            position = skipZeroTerminated(src, position, end);
+        if ((flags & FHCRC) != 0 && position >= 0)
+            position += 2;
+        return position >= 0 && position + TRAILER_SIZE <= end ? position : -1;
+    }
+
+    private static int skipZeroTerminated(byte[] src, int position, int end) {
+        if (position < 0)
+            return -1;
+        while (position < end) {
+            if (src[position++] == 0)
+                return position;
+        }
+        return -1;
+    }
+
+    private static int readIntLE(byte[] src, int offset) {
+        return readShortLE(src, offset) | readShortLE(src, offset + 2) << 16;
+    }
+
+    private static int readShortLE(byte[] src, int offset) {
+        return src[offset] & 0xff | (src[offset + 1] & 0xff) << 8;
+    }
+}
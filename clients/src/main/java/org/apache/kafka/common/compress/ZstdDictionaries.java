@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.compress;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The zstd dictionaries of a client or of a broker, by id, which the batches compressed with a {@link ZstdDictionary}
+ * are decompressed with. They are passed to the decompression through the
+ * {@link org.apache.kafka.common.record.BufferSupplier} the batches are decompressed with, so that the dictionaries
+ * loaded by a client are not seen by the other clients of the process.
+ */
+public final class ZstdDictionaries {
+    public static final ZstdDictionaries EMPTY = new ZstdDictionaries(Collections.emptyMap());
+
+    private final Map<Integer, ZstdDictionary> dictionaries;
+
+    private ZstdDictionaries(Map<Integer, ZstdDictionary> dictionaries) {
+        this.dictionaries = dictionaries;
+    }
+
+    /**
+     * @throws IllegalArgumentException If two different dictionaries have the same id
+     */
+    public static ZstdDictionaries of(Collection<ZstdDictionary> dictionaries) {
+        if (dictionaries.isEmpty())
+            return EMPTY;
+        Map<Integer, ZstdDictionary> byId = new HashMap<>(dictionaries.size());
+        for (ZstdDictionary dictionary : dictionaries) {
+            ZstdDictionary previous = byId.putIfAbsent(dictionary.id(), dictionary);
+            // the batches only reference their dictionary by its id, they would be decompressed with the wrong dictionary
+            if (previous != null && !previous.sameAs(dictionary))
+                throw new IllegalArgumentException("Two different zstd dictionaries have the dictionary id "
+                    + Integer.toUnsignedString(dictionary.id()));
+        }
+        return new ZstdDictionaries(byId);
+    }
+
+    /**
+     * Load the dictionaries of the given files.
+     *
+     * @throws IOException If a file can't be read or is not a zstd dictionary with an id, or if two different
+     *                     dictionaries have the same id
+     */
+    public static ZstdDictionaries load(Collection<String> files) throws IOException {
+        List<ZstdDictionary> dictionaries = new ArrayList<>(files.size());
+        for (String file : files)
+            dictionaries.add(ZstdDictionary.load(Paths.get(file)));
+        try {
+            return of(dictionaries);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("The zstd dictionaries of the files " + files + " can't be loaded: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The dictionary with the given id, or null if there is none.
+     */
+    public ZstdDictionary forId(int id) {
+        return dictionaries.get(id);
+    }
+
+    public boolean isEmpty() {
+        return dictionaries.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ZstdDictionaries(" + dictionaries.values() + ")";
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.compress;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdException;
+import org.apache.kafka.common.KafkaException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A zstd dictionary, usually trained from sample records of a topic, which the batches of small records are compressed
+ * with to get a far better compression ratio than with zstd alone.
+ * <p>
+ * The frames compressed with a dictionary reference it by its id in their header, and are decompressed with the
+ * dictionary of that id among the {@link ZstdDictionaries} of the client or of the broker. The dictionaries must then
+ * be loaded by the brokers and the consumers before the producers compress batches with them. A dictionary trained
+ * again has another id, the batches compressed with the previous one being decompressed with it as long as it
+ * remains loaded.
+ * <p>
+ * This class is only loaded once a dictionary is, since zstd-jni is only a runtime dependency.
+ */
+public final class ZstdDictionary {
+    private final int id;
+    private final byte[] dictionary;
+    private final ZstdDictDecompress decompressDictionary;
+    private final ThreadLocal<ZstdCompressCtx> compressCtx;
+    private final ThreadLocal<ZstdDecompressCtx> decompressCtx;
+
+    private ZstdDictionary(int id, byte[] dictionary) {
+        ZstdDictCompress compressDictionary = new ZstdDictCompress(dictionary, ZstdFactory.COMPRESSION_LEVEL);
+        this.id = id;
+        this.dictionary = dictionary;
+        this.decompressDictionary = new ZstdDictDecompress(dictionary);
+        this.compressCtx = ThreadLocal.withInitial(() -> new ZstdCompressCtx().loadDict(compressDictionary));
+        this.decompressCtx = ThreadLocal.withInitial(() -> new ZstdDecompressCtx().loadDict(decompressDictionary));
+    }
+
+    /**
+     * Load a dictionary.
+     *
+     * @throws IllegalArgumentException If this is not a zstd dictionary with an id, such as a raw content dictionary
+     */
+    public static ZstdDictionary load(byte[] dictionary) {
+        int id = (int) Zstd.getDictIdFromDict(dictionary);
+        if (id == 0)
+            throw new IllegalArgumentException("Not a zstd dictionary with a dictionary id");
+        return new ZstdDictionary(id, dictionary);
+    }
+
+    /**
+     * Load the dictionary of a file.
+     *
+     * @throws IOException If the file can't be read or is not a zstd dictionary with an id
+     */
+    public static ZstdDictionary load(Path file) throws IOException {
+        try {
+            return load(Files.readAllBytes(file));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("The zstd dictionary of the file " + file + " can't be loaded: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Train a dictionary of at most the given size from sample records, each sample being the records of a batch
+     * (such as the value of a record) as they would be compressed.
+     */
+    public static byte[] train(Collection<byte[]> samples, int dictionarySize) {
+        int samplesSize = 0;
+        for (byte[] sample : samples)
+            samplesSize += sample.length;
+        ZstdDictTrainer trainer = new ZstdDictTrainer(samplesSize, dictionarySize);
+        for (byte[] sample : samples)
+            trainer.addSample(sample);
+        try {
+            return trainer.trainSamples();
+        } catch (ZstdException e) {
+            throw new KafkaException("Failed to train a zstd dictionary from " + samples.size() + " samples", e);
+        }
+    }
+
+    public int id() {
+        return id;
+    }
+
+    /**
+     * Whether the other dictionary has the same content, and then the same id.
+     */
+    boolean sameAs(ZstdDictionary other) {
+        return id == other.id && Arrays.equals(dictionary, other.dictionary);
+    }
+
+    ZstdCompressCtx compressCtx() {
+        return compressCtx.get();
+    }
+
+    ZstdDecompressCtx decompressCtx() {
+        return decompressCtx.get();
+    }
+
+    ZstdDictDecompress decompressDictionary() {
+        return decompressDictionary;
+    }
+
+    @Override
+    public String toString() {
+        return "ZstdDictionary(id=" + Integer.toUnsignedString(id) + ")";
+    }
+}
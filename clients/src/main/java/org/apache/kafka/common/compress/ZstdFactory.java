@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.compress;
+
+import com.github.luben.zstd.BufferPool;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdException;
+import com.github.luben.zstd.ZstdInputStream;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.UnknownZstdDictionaryException;
+import org.apache.kafka.common.record.BufferSupplier;
+import org.apache.kafka.common.utils.ByteBufferInputStream;
+import org.apache.kafka.common.utils.ByteBufferOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses the records of a batch as a single zstd frame, and decompresses the batches of a single frame of known
+ * content size, with the compression and decompression contexts of the calling thread instead of initializing new
+ * ones for each batch. The other batches, such as the batches of the frames written by the streams of older clients,
+ * are decompressed as streams.
+ * <p>
+ * The batches may be compressed with a {@link ZstdDictionary}, and are then decompressed with the dictionary of the
+ * id written in the header of their frame among the {@link ZstdDictionaries} of the decompression buffer supplier.
+ * <p>
+ * This class is only loaded once zstd is used, since zstd-jni is only a runtime dependency.
+ */
+public final class ZstdFactory {
+    // the default level of the zstd streams
+    static final int COMPRESSION_LEVEL = 3;
+    private static final int MAGIC = 0xFD2FB528;
+
+    private static final ThreadLocal<ZstdCompressCtx> COMPRESS_CTX =
+        ThreadLocal.withInitial(() -> new ZstdCompressCtx().setLevel(COMPRESSION_LEVEL));
+    private static final ThreadLocal<ZstdDecompressCtx> DECOMPRESS_CTX = ThreadLocal.withInitial(ZstdDecompressCtx::new);
+    // the buffer the batches which may not fit in the remaining bytes of their buffer are compressed into, which is
+    // only cached up to the bound of the largest batch decompressed as a whole to bound the memory of each thread
+    private static final ThreadLocal<byte[]> COMPRESS_BUFFER = new ThreadLocal<>();
+    private static final int MAX_CACHED_COMPRESS_BUFFER_SIZE =
+        (int) Zstd.compressBound(DecompressedBlockInputStream.MAX_SIZE);
+
+    private ZstdFactory() { }
+
+    public static OutputStream wrapForOutput(ByteBufferOutputStream buffer) {
+        return wrapForOutput(buffer, null);
+    }
+
+    /**
+     * @param dictionary The dictionary to compress the records with, or null to compress them without dictionary
+     */
+    public static OutputStream wrapForOutput(ByteBufferOutputStream buffer, ZstdDictionary dictionary) {
+        return new BlockCompressionOutputStream(buffer) {
+            @Override
+            protected void compress(byte[] src, int length, ByteBufferOutputStream out) {
+                ZstdFactory.compress(src, length, out, dictionary == null ? COMPRESS_CTX.get() : dictionary.compressCtx());
+            }
+        };
+    }
+
+    public static InputStream wrapForInput(ByteBuffer buffer, BufferSupplier decompressionBufferSupplier) {
+        ZstdDictionary dictionary = dictionary(buffer, decompressionBufferSupplier.zstdDictionaries());
+        InputStream block = decompress(buffer, dictionary == null ? DECOMPRESS_CTX.get() : dictionary.decompressCtx());
+        if (block != null)
+            return block;
+
+        try {
+            // The buffers of the stream are taken from the decompression buffer supplier, which may reuse them.
+            // Set output buffer (uncompressed) to 16 KB (none by default) to ensure reasonable performance
+            // in cases where the caller reads a small number of bytes (potentially a single byte)
+            BufferPool bufferPool = new BufferPool() {
+                @Override
+                public ByteBuffer get(int capacity) {
+                    return decompressionBufferSupplier.get(capacity);
+                }
+
+                @Override
+                public void release(ByteBuffer buffer) {
+                    decompressionBufferSupplier.release(buffer);
+                }
+            };
+            ZstdInputStream in = new ZstdInputStream(new ByteBufferInputStream(buffer), bufferPool);
+            if (dictionary != null)
+                in.setDict(dictionary.decompressDictionary());
+            return new BufferedInputStream(in, 16 * 1024);
+        } catch (Throwable e) {
+            throw new KafkaException(e);
+        }
+    }
+
+    private static void compress(byte[] src, int length, ByteBufferOutputStream out, ZstdCompressCtx ctx) {
+        int bound = (int) Zstd.compressBound(length);
+        ByteBuffer dst = out.buffer();
+        // the buffer is only expanded if the compressed batch does not fit, as for the gzip batches
+        if (dst.hasArray() && dst.remaining() >= bound) {
+            int compressed = ctx.compressByteArray(dst.array(), dst.arrayOffset() + dst.position(), bound, src, 0,
+                length);
+            dst.position(dst.position() + compressed);
+        } else {
+            // the bound exceeds the size of the records, so a full batch usually takes this path
+            byte[] compressed = compressBuffer(bound);
+            out.write(compressed, 0, ctx.compressByteArray(compressed, 0, bound, src, 0, length));
+        }
+    }
+
+    /**
+     * The buffer cached by the calling thread to compress a batch into, which is enlarged to the given size if needed.
+     */
+    static byte[] compressBuffer(int size) {
+        byte[] cached = COMPRESS_BUFFER.get();
+        if (cached != null && cached.length >= size)
+            return cached;
+        byte[] buffer = new byte[size];
+        if (size <= MAX_CACHED_COMPRESS_BUFFER_SIZE)
+            COMPRESS_BUFFER.set(buffer);
+        return buffer;
+    }
+
+    /**
+     * Decompress a batch of a single frame whose content size is known and at most
+     * {@link DecompressedBlockInputStream#MAX_SIZE}, or return null for the batch to be decompressed as a stream,
+     * including when it is corrupt.
+     */
+    private static InputStream decompress(ByteBuffer buffer, ZstdDecompressCtx ctx) {
+        if (!buffer.hasArray() || !buffer.hasRemaining())
+            return null;
+        byte[] src = buffer.array();
+        int offset = buffer.arrayOffset() + buffer.position();
+
+        // the content size is 0 if the frame does not declare it
+        long size = Zstd.decompressedSize(src, offset);
+        if (size <= 0 || size > DecompressedBlockInputStream.MAX_SIZE)
+            return null;
+
+        byte[] decompressed = DecompressedBlockInputStream.borrowBuffer((int) size);
+        try {
+            // the batches of several frames fail to be decompressed into the content size of the first frame
+            int decompressedSize = ctx.decompressByteArray(decompressed, 0, (int) size, src, offset, buffer.remaining());
+            if (decompressedSize == size)
+                return new DecompressedBlockInputStream(decompressed, decompressedSize);
+        } catch (ZstdException e) {
+            // the stream raises the error once the batch is read
+        }
+        DecompressedBlockInputStream.releaseBuffer(decompressed);
+        return null;
+    }
+
+    /**
+     * The dictionary of the first frame of a batch, or null if it is compressed without dictionary.
+     *
+     * @throws UnknownZstdDictionaryException If the frame is compressed with a dictionary which is not among the given
+     *                                        dictionaries
+     */
+    private static ZstdDictionary dictionary(ByteBuffer buffer, ZstdDictionaries dictionaries) {
+        int position = buffer.position();
+        if (buffer.remaining() < 6 || readLE(buffer, position, 4) != MAGIC)
+            return null;
+
+        // the size of the dictionary id is given by the lowest two bits of the frame header descriptor, and the id is
+        // preceded by the window descriptor unless the single segment flag is set
+        int descriptor = buffer.get(position + 4) & 0xff;
+        int idSize = (descriptor & 3) == 3 ? 4 : descriptor & 3;
+        int idPosition = position + ((descriptor & 0x20) != 0 ? 5 : 6);
+        if (idSize == 0 || idPosition + idSize > buffer.limit())
+            return null;
+
+        int id = readLE(buffer, idPosition, idSize);
+        ZstdDictionary dictionary = dictionaries.forId(id);
+        if (dictionary == null)
+            throw new UnknownZstdDictionaryException("The batch is compressed with the zstd dictionary "
+                + Integer.toUnsignedString(id) + ", which is not loaded", id);
+        return dictionary;
+    }
+
+    private static int readLE(ByteBuffer buffer, int position, int size) {
+        int value = 0;
+        for (int i = 0; i < size; i++)
+            value |= (buffer.get(position + i) & 0xff) << (8 * i);
+        return value;
+    }
+}
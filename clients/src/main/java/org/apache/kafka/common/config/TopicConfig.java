@@ -181,4 +181,11 @@ public class TopicConfig {
         "broker will not perform down-conversion for consumers expecting an older message format. The broker responds " +
         "with <code>UNSUPPORTED_VERSION</code> error for consume requests from such older clients. This configuration" +
         "does not apply to any message format conversion that might be required for replication to followers.";
+
+    public static final String ZSTD_DICTIONARY_ENABLE_CONFIG = "zstd.dictionary.enable";
+    public static final String ZSTD_DICTIONARY_ENABLE_DOC = "Whether the records produced to the topic may be " +
+        "compressed with a zstd dictionary, as configured by the producers with <code>compression.zstd.dictionaries</code>. " +
+        "The broker must load the dictionary with <code>zstd.dictionary.files</code> to validate the records. The broker " +
+        "responds with <code>UNSUPPORTED_COMPRESSION_TYPE</code> error for produce requests with records compressed with " +
+        "a zstd dictionary when this is <code>false</code> or when the broker does not load the dictionary.";
 }
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.errors;
+
+import org.apache.kafka.common.KafkaException;
+
+/**
+ * Records compressed with a zstd dictionary could not be decompressed, since the dictionary is not loaded with the
+ * <code>zstd.dictionary.files</code> configuration.
+ */
+public class UnknownZstdDictionaryException extends KafkaException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int dictionaryId;
+
+    public UnknownZstdDictionaryException(String message, int dictionaryId) {
+        super(message);
+        this.dictionaryId = dictionaryId;
+    }
+
+    public UnknownZstdDictionaryException(String message, int dictionaryId, Throwable cause) {
+        super(message, cause);
+        this.dictionaryId = dictionaryId;
+    }
+
+    /**
+     * The id of the dictionary which is not loaded, to be read as an unsigned integer.
+     */
+    public int dictionaryId() {
+        return dictionaryId;
+    }
+}
@@ -79,7 +79,7 @@ public class SimpleMemoryPool implements MemoryPool {
             return null;
         }
 
-        ByteBuffer allocated = ByteBuffer.allocate(sizeBytes);
+        ByteBuffer allocated = allocateBuffer(sizeBytes);
         bufferToBeReturned(allocated);
         return allocated;
     }
@@ -109,6 +109,11 @@ public class SimpleMemoryPool implements MemoryPool {
         return availableMemory.get() <= 0;
     }
 
+    //allows subclasses to provide the memory of a buffer once the memory was reserved, the buffer capacity must be sizeBytes.
+    protected ByteBuffer allocateBuffer(int sizeBytes) {
+        return ByteBuffer.allocate(sizeBytes);
+    }
+
     //allows subclasses to do their own bookkeeping (and validation) _before_ memory is returned to client code.
     protected void bufferToBeReturned(ByteBuffer justAllocated) {
         log.trace("allocated buffer of size {} ", justAllocated.capacity());
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.memory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.utils.Utils;
+
+/**
+ * An extension of SimpleMemoryPool that recycles the buffers it allocates instead of allocating a new buffer for
+ * every allocation, which avoids creating large amounts of short-lived garbage when the pool is used to receive
+ * requests.
+ * <p>
+ * Allocations are rounded up to a size class and served from the free list of that class if a buffer of the same
+ * class was released earlier. The size classes are spaced by a quarter of a power of two between
+ * {@link #MIN_POOLED_BUFFER_SIZE} and maxPooledBufferSize, so that less than 20% of a pooled buffer is unused. The
+ * buffers returned have the requested size as limit, but the size of their class as capacity, which is also the
+ * amount of memory accounted for them. Smaller and larger allocations are not pooled, they fall back to allocating
+ * a heap buffer of the exact size as SimpleMemoryPool does.
+ * <p>
+ * Released buffers are kept in the free lists as long as the free lists hold at most maxIdleBytes, the others are
+ * left to the garbage collector. Since a released buffer is handed out again, a buffer and any view of it must not
+ * be accessed once it is released.
+ */
+public class SizeClassedMemoryPool extends SimpleMemoryPool {
+
+    /**
+     * The size of the smallest pooled buffers, smaller buffers are cheap to allocate and not worth pooling
+     */
+    public static final int MIN_POOLED_BUFFER_SIZE = 1024;
+
+    private static final int SIZE_CLASSES_PER_POWER_OF_TWO = 4;
+
+    private final boolean direct;
+    private final long maxIdleBytes;
+    private final int[] sizeClasses;
+    private final Queue<ByteBuffer>[] freeLists;
+    private final AtomicLong idleBytes = new AtomicLong();
+    private final LongAdder recycledAllocations = new LongAdder();
+    private final LongAdder newPooledAllocations = new LongAdder();
+    private final LongAdder unpooledAllocations = new LongAdder();
+
+    /**
+     * @param sizeInBytes The total size of the pool
+     * @param maxSingleAllocationBytes The maximum size of an allocation
+     * @param strict Whether memory is only allocated if the requested size is available, see SimpleMemoryPool
+     * @param oomPeriodSensor The sensor recording the time periods during which the pool is out of memory
+     * @param maxPooledBufferSize The size above which allocations are not pooled
+     * @param maxIdleBytes The maximum amount of memory kept in the free lists
+     * @param direct Whether the pooled buffers are direct buffers
+     */
+    @SuppressWarnings("unchecked")
+    public SizeClassedMemoryPool(long sizeInBytes, int maxSingleAllocationBytes, boolean strict, Sensor oomPeriodSensor,
+                                 int maxPooledBufferSize, long maxIdleBytes, boolean direct) {
+        super(sizeInBytes, maxSingleAllocationBytes, strict, oomPeriodSensor);
+        if (maxIdleBytes < 0)
+            throw new IllegalArgumentException("must provide a non-negative max idle bytes, provided " + maxIdleBytes);
+        this.direct = direct;
+        this.maxIdleBytes = maxIdleBytes;
+        this.sizeClasses = sizeClasses(Math.min(maxPooledBufferSize, maxSingleAllocationBytes));
+        this.freeLists = new Queue[sizeClasses.length];
+        for (int i = 0; i < freeLists.length; i++)
+            freeLists[i] = new ConcurrentLinkedQueue<>();
+    }
+
+    // Visible for testing
+    static int[] sizeClasses(int maxPooledBufferSize) {
+        List<Integer> sizes = new ArrayList<>();
+        for (long powerOfTwo = MIN_POOLED_BUFFER_SIZE; powerOfTwo <= maxPooledBufferSize; powerOfTwo *= 2) {
+            long step = powerOfTwo / SIZE_CLASSES_PER_POWER_OF_TWO;
+            for (long size = powerOfTwo; size < 2 * powerOfTwo && size <= maxPooledBufferSize; size += step)
+                sizes.add((int) size);
+        }
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Override
+    public ByteBuffer tryAllocate(int sizeBytes) {
+        int sizeClass = sizeClassOf(sizeBytes);
+        if (sizeClass < 0)
+            return super.tryAllocate(sizeBytes);
+
+        ByteBuffer buffer = super.tryAllocate(sizeClasses[sizeClass]);
+        if (buffer != null)
+            buffer.limit(sizeBytes);
+        return buffer;
+    }
+
+    @Override
+    protected ByteBuffer allocateBuffer(int sizeBytes) {
+        int sizeClass = Arrays.binarySearch(sizeClasses, sizeBytes);
+        if (sizeClass < 0) {
+            unpooledAllocations.increment();
+            return ByteBuffer.allocate(sizeBytes);
+        }
+
+        ByteBuffer buffer = freeLists[sizeClass].poll();
+        if (buffer != null) {
+            idleBytes.addAndGet(-sizeBytes);
+            recycledAllocations.increment();
+            return buffer;
+        }
+        newPooledAllocations.increment();
+        return direct ? ByteBuffer.allocateDirect(sizeBytes) : ByteBuffer.allocate(sizeBytes);
+    }
+
+    @Override
+    public void release(ByteBuffer previouslyAllocated) {
+        super.release(previouslyAllocated);
+
+        int capacity = previouslyAllocated.capacity();
+        int sizeClass = Arrays.binarySearch(sizeClasses, capacity);
+        if (sizeClass < 0 || previouslyAllocated.isDirect() != direct)
+            return;
+        if (idleBytes.addAndGet(capacity) <= maxIdleBytes) {
+            previouslyAllocated.clear();
+            freeLists[sizeClass].offer(previouslyAllocated);
+        } else {
+            idleBytes.addAndGet(-capacity);
+        }
+    }
+
+    /**
+     * Returns the index of the smallest size class that fits the given size or -1 if the size is not pooled
+     */
+    private int sizeClassOf(int sizeBytes) {
+        if (sizeClasses.length == 0 || sizeBytes < sizeClasses[0])
+            return -1;
+        int index = Arrays.binarySearch(sizeClasses, sizeBytes);
+        if (index >= 0)
+            return index;
+        int insertionPoint = -index - 1;
+        return insertionPoint < sizeClasses.length ? insertionPoint : -1;
+    }
+
+    /**
+     * Returns the amount of memory held by the released buffers kept for reuse
+     */
+    public long idleBytes() {
+        return idleBytes.get();
+    }
+
+    /**
+     * Returns the number of allocations served with a released buffer
+     */
+    public long recycledAllocations() {
+        return recycledAllocations.sum();
+    }
+
+    /**
+     * Returns the number of allocations of a pooled size for which no released buffer was available
+     */
+    public long newPooledAllocations() {
+        return newPooledAllocations.sum();
+    }
+
+    /**
+     * Returns the number of allocations too small or too large to be pooled
+     */
+    public long unpooledAllocations() {
+        return unpooledAllocations.sum();
+    }
+
+    @Override
+    public String toString() {
+        long allocated = sizeBytes - availableMemory.get();
+        return "SizeClassedMemoryPool{" + Utils.formatBytes(allocated) + "/" + Utils.formatBytes(sizeBytes) + " used, " +
+            Utils.formatBytes(idleBytes.get()) + " idle}";
+    }
+}
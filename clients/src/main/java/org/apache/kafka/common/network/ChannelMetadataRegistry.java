@@ -35,6 +35,17 @@ public interface ChannelMetadataRegistry extends Closeable {
      */
     CipherInformation cipherInformation();
 
+    /**
+     * Register the way the data sent on the SSL connection is encrypted.
+     * Re-registering the information will overwrite the previous one.
+     */
+    void registerSslTransmitPath(SslTransmitPath sslTransmitPath);
+
+    /**
+     * Get the currently registered SSL transmit path.
+     */
+    SslTransmitPath sslTransmitPath();
+
     /**
      * Register information about the client client we are using.
      * Depending on the clients, the ApiVersionsRequest could be received
@@ -18,6 +18,7 @@ package org.apache.kafka.common.network;
 
 public class DefaultChannelMetadataRegistry implements ChannelMetadataRegistry {
     private CipherInformation cipherInformation;
+    private SslTransmitPath sslTransmitPath;
     private ClientInformation clientInformation;
 
     @Override
@@ -32,6 +33,16 @@ public class DefaultChannelMetadataRegistry implements ChannelMetadataRegistry {
         return this.cipherInformation;
     }
 
+    @Override
+    public void registerSslTransmitPath(final SslTransmitPath sslTransmitPath) {
+        this.sslTransmitPath = sslTransmitPath;
+    }
+
+    @Override
+    public SslTransmitPath sslTransmitPath() {
+        return this.sslTransmitPath;
+    }
+
     @Override
     public void registerClientInformation(final ClientInformation clientInformation) {
         this.clientInformation = clientInformation;
@@ -45,6 +56,7 @@ public class DefaultChannelMetadataRegistry implements ChannelMetadataRegistry {
     @Override
     public void close() {
         this.cipherInformation = null;
+        this.sslTransmitPath = null;
         this.clientInformation = null;
     }
 }
@@ -246,7 +246,7 @@ public class SaslChannelBuilder implements ChannelBuilder, ListenerReconfigurabl
             return SslTransportLayer.create(id, key,
                 sslFactory.createSslEngine(socketChannel.socket().getInetAddress().getHostName(),
                     socketChannel.socket().getPort()),
-                metadataRegistry);
+                metadataRegistry, sslFactory.kernelTlsProvider());
         } else {
             return new PlaintextTransportLayer(key);
         }
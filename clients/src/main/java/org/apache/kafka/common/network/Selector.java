@@ -1058,6 +1058,7 @@ public class Selector implements Selectable, AutoCloseable {
 
     class SelectorChannelMetadataRegistry implements ChannelMetadataRegistry {
         private CipherInformation cipherInformation;
+        private SslTransmitPath sslTransmitPath;
         private ClientInformation clientInformation;
 
         @Override
@@ -1077,6 +1078,23 @@ public class Selector implements Selectable, AutoCloseable {
             return cipherInformation;
         }
 
+        @Override
+        public void registerSslTransmitPath(final SslTransmitPath sslTransmitPath) {
+            if (this.sslTransmitPath != null) {
+                if (this.sslTransmitPath == sslTransmitPath)
+                    return;
+                sensors.connectionsBySslTransmitPath.decrement(this.sslTransmitPath);
+            }
+
+            this.sslTransmitPath = sslTransmitPath;
+            sensors.connectionsBySslTransmitPath.increment(sslTransmitPath);
+        }
+
+        @Override
+        public SslTransmitPath sslTransmitPath() {
+            return sslTransmitPath;
+        }
+
         @Override
         public void registerClientInformation(final ClientInformation clientInformation) {
             if (this.clientInformation != null) {
@@ -1101,6 +1119,11 @@ public class Selector implements Selectable, AutoCloseable {
                 this.cipherInformation = null;
             }
 
+            if (this.sslTransmitPath != null) {
+                sensors.connectionsBySslTransmitPath.decrement(this.sslTransmitPath);
+                this.sslTransmitPath = null;
+            }
+
             if (this.clientInformation != null) {
                 sensors.connectionsByClient.decrement(this.clientInformation);
                 this.clientInformation = null;
@@ -1131,6 +1154,7 @@ public class Selector implements Selectable, AutoCloseable {
         public final Sensor selectTime;
         public final Sensor ioTime;
         public final IntGaugeSuite<CipherInformation> connectionsByCipher;
+        public final IntGaugeSuite<SslTransmitPath> connectionsBySslTransmitPath;
         public final IntGaugeSuite<ClientInformation> connectionsByClient;
 
         /* Names of metrics that are not registered through sensors */
@@ -1237,6 +1261,15 @@ public class Selector implements Selectable, AutoCloseable {
                     return metrics.metricName("connections", metricGrpName, "The number of connections with this SSL cipher and protocol.", tags);
                 }, 100);
 
+            this.connectionsBySslTransmitPath = new IntGaugeSuite<>(log, "sslTransmitPaths", metrics,
+                sslTransmitPath -> {
+                    Map<String, String> tags = new LinkedHashMap<>();
+                    tags.put("sslTransmitPath", sslTransmitPath.tagValue());
+                    tags.putAll(metricTags);
+                    return metrics.metricName("connections", metricGrpName, "The number of SSL connections whose " +
+                        "outgoing data is encrypted by the SSL engine (engine) or by the kernel (kernel).", tags);
+                }, 2);
+
             this.connectionsByClient = new IntGaugeSuite<>(log, "clients", metrics,
                 clientInformation -> {
                     Map<String, String> tags = new LinkedHashMap<>();
@@ -1368,6 +1401,7 @@ public class Selector implements Selectable, AutoCloseable {
             for (Sensor sensor : sensors)
                 metrics.removeSensor(sensor.name());
             connectionsByCipher.close();
+            connectionsBySslTransmitPath.close();
             connectionsByClient.close();
         }
     }
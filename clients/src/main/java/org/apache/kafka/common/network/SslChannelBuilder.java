@@ -124,7 +124,7 @@ public class SslChannelBuilder implements ChannelBuilder, ListenerReconfigurable
                                                     String host, ChannelMetadataRegistry metadataRegistry) throws IOException {
         SocketChannel socketChannel = (SocketChannel) key.channel();
         return SslTransportLayer.create(id, key, sslFactory.createSslEngine(host, socketChannel.socket().getPort()),
-            metadataRegistry);
+            metadataRegistry, sslFactory.kernelTlsProvider());
     }
 
     /**
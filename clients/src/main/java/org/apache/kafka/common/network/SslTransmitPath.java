@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.network;
+
+/**
+ * The way the data sent on an SSL connection is encrypted.
+ */
+public enum SslTransmitPath {
+    /**
+     * The data is encrypted by the <code>SSLEngine</code>, data sent from files is copied through heap buffers.
+     */
+    ENGINE("engine"),
+    /**
+     * The data is encrypted by the kernel, data sent from files is transferred with zero-copy.
+     */
+    KERNEL("kernel");
+
+    private final String tagValue;
+
+    SslTransmitPath(String tagValue) {
+        this.tagValue = tagValue;
+    }
+
+    /**
+     * The value of the tag identifying the path in the metrics.
+     */
+    public String tagValue() {
+        return tagValue;
+    }
+}
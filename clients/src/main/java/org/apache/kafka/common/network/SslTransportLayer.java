@@ -38,6 +38,7 @@ import javax.net.ssl.SSLSession;
 
 import org.apache.kafka.common.errors.SslAuthenticationException;
 import org.apache.kafka.common.security.auth.KafkaPrincipal;
+import org.apache.kafka.common.security.auth.KernelTlsProvider;
 import org.apache.kafka.common.utils.ByteUtils;
 import org.apache.kafka.common.utils.LogContext;
 import org.apache.kafka.common.utils.ByteBufferUnmapper;
@@ -53,6 +54,12 @@ import org.slf4j.Logger;
  *   "TLS also allows other messages to be sent after the main handshake.
  *   These messages use a handshake content type and are encrypted under
  *   the appropriate application traffic key."
+ *
+ * Kernel TLS notes:
+ *   If a KernelTlsProvider is configured, the encryption of the data sent is offloaded to the kernel once the
+ *   handshake has completed if the provider supports it for the connection. The data sent, including data sent
+ *   from files with `transferFrom`, is then written to the socket as is and no longer wrapped by the SSLEngine.
+ *   The data received is always unwrapped by the SSLEngine.
  */
 public class SslTransportLayer implements TransportLayer {
     private enum State {
@@ -76,6 +83,7 @@ public class SslTransportLayer implements TransportLayer {
     private final SelectionKey key;
     private final SocketChannel socketChannel;
     private final ChannelMetadataRegistry metadataRegistry;
+    private final KernelTlsProvider kernelTlsProvider;
     private final Logger log;
 
     private HandshakeStatus handshakeStatus;
@@ -87,21 +95,36 @@ public class SslTransportLayer implements TransportLayer {
     private ByteBuffer appReadBuffer;
     private ByteBuffer fileChannelBuffer;
     private boolean hasBytesBuffered;
+    // True if the data sent is encrypted by the kernel instead of the SSLEngine
+    private boolean kernelTlsEnabled;
 
     public static SslTransportLayer create(String channelId, SelectionKey key, SSLEngine sslEngine,
                                            ChannelMetadataRegistry metadataRegistry) throws IOException {
-        return new SslTransportLayer(channelId, key, sslEngine, metadataRegistry);
+        return create(channelId, key, sslEngine, metadataRegistry, null);
+    }
+
+    public static SslTransportLayer create(String channelId, SelectionKey key, SSLEngine sslEngine,
+                                           ChannelMetadataRegistry metadataRegistry,
+                                           KernelTlsProvider kernelTlsProvider) throws IOException {
+        return new SslTransportLayer(channelId, key, sslEngine, metadataRegistry, kernelTlsProvider);
     }
 
     // Prefer `create`, only use this in tests
     SslTransportLayer(String channelId, SelectionKey key, SSLEngine sslEngine,
                       ChannelMetadataRegistry metadataRegistry) {
+        this(channelId, key, sslEngine, metadataRegistry, null);
+    }
+
+    // Prefer `create`, only use this in tests
+    SslTransportLayer(String channelId, SelectionKey key, SSLEngine sslEngine,
+                      ChannelMetadataRegistry metadataRegistry, KernelTlsProvider kernelTlsProvider) {
         this.channelId = channelId;
         this.key = key;
         this.socketChannel = (SocketChannel) key.channel();
         this.sslEngine = sslEngine;
         this.state = State.NOT_INITIALIZED;
         this.metadataRegistry = metadataRegistry;
+        this.kernelTlsProvider = kernelTlsProvider;
 
         final LogContext logContext = new LogContext(String.format("[SslTransportLayer channelId=%s key=%s] ", channelId, key));
         this.log = logContext.logger(getClass());
@@ -178,7 +201,9 @@ public class SslTransportLayer implements TransportLayer {
         state = State.CLOSING;
         sslEngine.closeOutbound();
         try {
-            if (prevState != State.NOT_INITIALIZED && isConnected()) {
+            // The SSLEngine can't wrap the close message once the kernel encrypts the data sent since the record
+            // sequence number of the engine is stale, the socket is closed without sending it.
+            if (prevState != State.NOT_INITIALIZED && isConnected() && !kernelTlsEnabled) {
                 if (!flush(netWriteBuffer)) {
                     throw new IOException("Remaining data in the network buffer, can't send SSL close message.");
                 }
@@ -453,6 +478,8 @@ public class SslTransportLayer implements TransportLayer {
                         session.getPeerHost(), session.getPeerPort(), peerPrincipal(), session.getCipherSuite());
                 metadataRegistry.registerCipherInformation(
                     new CipherInformation(session.getCipherSuite(),  session.getProtocol()));
+                maybeEnableKernelTls();
+                metadataRegistry.registerSslTransmitPath(kernelTlsEnabled ? SslTransmitPath.KERNEL : SslTransmitPath.ENGINE);
             }
 
             log.trace("SSLHandshake FINISHED channelId {}, appReadBuffer pos {}, netReadBuffer pos {}, netWriteBuffer pos {} ",
@@ -462,6 +489,28 @@ public class SslTransportLayer implements TransportLayer {
         }
     }
 
+    /**
+     * Offloads the encryption of the data sent to the kernel if a provider is configured and supports it for this
+     * connection. The SSLEngine keeps encrypting the data sent if the offload could not be enabled.
+     */
+    private void maybeEnableKernelTls() {
+        if (kernelTlsProvider == null)
+            return;
+        // The engine must not have any handshake record left to wrap since it won't be able to send it afterwards
+        if (sslEngine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING) {
+            log.debug("Kernel TLS is not enabled since the SSL engine is still handshaking with status {}",
+                    sslEngine.getHandshakeStatus());
+            return;
+        }
+        try {
+            kernelTlsEnabled = kernelTlsProvider.enableTransmitOffload(socketChannel, sslEngine);
+            log.debug("Kernel TLS {} for protocol {} cipherSuite {}", kernelTlsEnabled ? "enabled" : "not supported",
+                    sslEngine.getSession().getProtocol(), sslEngine.getSession().getCipherSuite());
+        } catch (Exception e) {
+            log.warn("Failed to enable kernel TLS, the data sent will be encrypted by the SSL engine", e);
+        }
+    }
+
     /**
     * Performs the WRAP function
     * @param doWrite boolean
@@ -692,6 +741,8 @@ public class SslTransportLayer implements TransportLayer {
             throw closingException();
         if (!ready())
             return 0;
+        if (kernelTlsEnabled)
+            return socketChannel.write(src);
 
         int written = 0;
         while (flush(netWriteBuffer) && src.hasRemaining()) {
@@ -731,6 +782,8 @@ public class SslTransportLayer implements TransportLayer {
     public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
         if ((offset < 0) || (length < 0) || (offset > srcs.length - length))
             throw new IndexOutOfBoundsException();
+        if (kernelTlsEnabled && state != State.CLOSING)
+            return socketChannel.write(srcs, offset, length);
         int totalWritten = 0;
         int i = offset;
         while (i < length) {
@@ -921,6 +974,13 @@ public class SslTransportLayer implements TransportLayer {
             throw handshakeException;
     }
 
+    /**
+     * Returns true if the data sent is encrypted by the kernel instead of the SSLEngine.
+     */
+    public boolean kernelTlsEnabled() {
+        return kernelTlsEnabled;
+    }
+
     @Override
     public boolean isMute() {
         return key.isValid() && (key.interestOps() & SelectionKey.OP_READ) == 0;
@@ -952,6 +1012,10 @@ public class SslTransportLayer implements TransportLayer {
         if (!flush(netWriteBuffer))
             return 0;
 
+        // The kernel encrypts the data, so it can be transferred from the file without copying it
+        if (kernelTlsEnabled)
+            return fileChannel.transferTo(position, count, socketChannel);
+
         long channelSize = fileChannel.size();
         if (position > channelSize)
             return 0;
@@ -17,6 +17,8 @@
 
 package org.apache.kafka.common.record;
 
+import org.apache.kafka.common.compress.ZstdDictionaries;
+
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.Deque;
@@ -28,24 +30,44 @@ import java.util.Map;
  * a given KafkaConsumer reuses the same decompression buffer when iterating over fetched records. For small record
  * batches, allocating a potentially large buffer (64 KB for LZ4) will dominate the cost of decompressing and
  * iterating over the records in the batch.
+ * <p>
+ * The supplier also carries the zstd dictionaries of the client or of the broker, which the batches compressed with
+ * a zstd dictionary are decompressed with.
  */
 public abstract class BufferSupplier implements AutoCloseable {
 
-    public static final BufferSupplier NO_CACHING = new BufferSupplier() {
-        @Override
-        public ByteBuffer get(int capacity) {
-            return ByteBuffer.allocate(capacity);
-        }
+    public static final BufferSupplier NO_CACHING = new NoCachingSupplier(ZstdDictionaries.EMPTY);
 
-        @Override
-        public void release(ByteBuffer buffer) {}
+    private final ZstdDictionaries zstdDictionaries;
 
-        @Override
-        public void close() {}
-    };
+    protected BufferSupplier() {
+        this(ZstdDictionaries.EMPTY);
+    }
+
+    protected BufferSupplier(ZstdDictionaries zstdDictionaries) {
+        this.zstdDictionaries = zstdDictionaries;
+    }
 
     public static BufferSupplier create() {
-        return new DefaultSupplier();
+        return create(ZstdDictionaries.EMPTY);
+    }
+
+    public static BufferSupplier create(ZstdDictionaries zstdDictionaries) {
+        return new DefaultSupplier(zstdDictionaries);
+    }
+
+    /**
+     * A supplier which does not cache the buffers, like {@link #NO_CACHING}, with the given zstd dictionaries.
+     */
+    public static BufferSupplier noCaching(ZstdDictionaries zstdDictionaries) {
+        return zstdDictionaries.isEmpty() ? NO_CACHING : new NoCachingSupplier(zstdDictionaries);
+    }
+
+    /**
+     * The zstd dictionaries the batches decompressed with this supplier may be compressed with.
+     */
+    public ZstdDictionaries zstdDictionaries() {
+        return zstdDictionaries;
     }
 
     /**
@@ -63,10 +85,31 @@ public abstract class BufferSupplier implements AutoCloseable {
      */
     public abstract void close();
 
+    private static class NoCachingSupplier extends BufferSupplier {
+        NoCachingSupplier(ZstdDictionaries zstdDictionaries) {
+            super(zstdDictionaries);
+        }
+
+        @Override
+        public ByteBuffer get(int capacity) {
+            return ByteBuffer.allocate(capacity);
+        }
+
+        @Override
+        public void release(ByteBuffer buffer) {}
+
+        @Override
+        public void close() {}
+    }
+
     private static class DefaultSupplier extends BufferSupplier {
         // We currently use a single block size, so optimise for that case
         private final Map<Integer, Deque<ByteBuffer>> bufferMap = new HashMap<>(1);
 
+        DefaultSupplier(ZstdDictionaries zstdDictionaries) {
+            super(zstdDictionaries);
+        }
+
         @Override
         public ByteBuffer get(int size) {
             Deque<ByteBuffer> bufferQueue = bufferMap.get(size);
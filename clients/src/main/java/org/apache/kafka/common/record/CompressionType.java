@@ -17,19 +17,17 @@
 package org.apache.kafka.common.record;
 
 import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.compress.GzipFactory;
+import org.apache.kafka.common.compress.ZstdFactory;
 import org.apache.kafka.common.utils.ByteBufferInputStream;
 import org.apache.kafka.common.utils.ByteBufferOutputStream;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.nio.ByteBuffer;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * The compression type to use
@@ -50,27 +48,12 @@ public enum CompressionType {
     GZIP(1, "gzip", 1.0f) {
         @Override
         public OutputStream wrapForOutput(ByteBufferOutputStream buffer, byte messageVersion) {
-            try {
-                // Set input buffer (uncompressed) to 16 KB (none by default) and output buffer (compressed) to
-                // 8 KB (0.5 KB by default) to ensure reasonable performance in cases where the caller passes a small
-                // number of bytes to write (potentially a single byte)
-                return new BufferedOutputStream(new GZIPOutputStream(buffer, 8 * 1024), 16 * 1024);
-            } catch (Exception e) {
-                throw new KafkaException(e);
-            }
+            return GzipFactory.wrapForOutput(buffer);
         }
 
         @Override
         public InputStream wrapForInput(ByteBuffer buffer, byte messageVersion, BufferSupplier decompressionBufferSupplier) {
-            try {
-                // Set output buffer (uncompressed) to 16 KB (none by default) and input buffer (compressed) to
-                // 8 KB (0.5 KB by default) to ensure reasonable performance in cases where the caller reads a small
-                // number of bytes (potentially a single byte)
-                return new BufferedInputStream(new GZIPInputStream(new ByteBufferInputStream(buffer), 8 * 1024),
-                        16 * 1024);
-            } catch (Exception e) {
-                throw new KafkaException(e);
-            }
+            return GzipFactory.wrapForInput(buffer);
         }
     },
 
@@ -118,24 +101,12 @@ public enum CompressionType {
     ZSTD(4, "zstd", 1.0f) {
         @Override
         public OutputStream wrapForOutput(ByteBufferOutputStream buffer, byte messageVersion) {
-            try {
-                // Set input buffer (uncompressed) to 16 KB (none by default) to ensure reasonable performance
-                // in cases where the caller passes a small number of bytes to write (potentially a single byte)
-                return new BufferedOutputStream((OutputStream) ZstdConstructors.OUTPUT.invoke(buffer), 16 * 1024);
-            } catch (Throwable e) {
-                throw new KafkaException(e);
-            }
+            return ZstdFactory.wrapForOutput(buffer);
         }
 
         @Override
         public InputStream wrapForInput(ByteBuffer buffer, byte messageVersion, BufferSupplier decompressionBufferSupplier) {
-            try {
-                // Set output buffer (uncompressed) to 16 KB (none by default) to ensure reasonable performance
-                // in cases where the caller reads a small number of bytes (potentially a single byte)
-                return new BufferedInputStream((InputStream) ZstdConstructors.INPUT.invoke(new ByteBufferInputStream(buffer)), 16 * 1024);
-            } catch (Throwable e) {
-                throw new KafkaException(e);
-            }
+            return ZstdFactory.wrapForInput(buffer, decompressionBufferSupplier);
         }
     };
 
@@ -205,9 +176,11 @@ public enum CompressionType {
     // We should only have a runtime dependency on compression algorithms in case the native libraries don't support
     // some platforms.
     //
-    // For Snappy and Zstd, we dynamically load the classes and rely on the initialization-on-demand holder idiom to ensure
+    // For Snappy, we dynamically load the classes and rely on the initialization-on-demand holder idiom to ensure
     // they're only loaded if used.
     //
+    // For Zstd, the classes are only loaded once ZstdFactory is, which only happens if Zstd is actually used.
+    //
     // For LZ4 we are using org.apache.kafka classes, which should always be in the classpath, and would not trigger
     // an error until KafkaLZ4BlockInputStream is initialized, which only happens if LZ4 is actually used.
 
@@ -218,13 +191,6 @@ public enum CompressionType {
                 MethodType.methodType(void.class, OutputStream.class));
     }
 
-    private static class ZstdConstructors {
-        static final MethodHandle INPUT = findConstructor("com.github.luben.zstd.ZstdInputStream",
-            MethodType.methodType(void.class, InputStream.class));
-        static final MethodHandle OUTPUT = findConstructor("com.github.luben.zstd.ZstdOutputStream",
-            MethodType.methodType(void.class, OutputStream.class));
-    }
-
     private static MethodHandle findConstructor(String className, MethodType methodType) {
         try {
             return MethodHandles.publicLookup().findConstructor(Class.forName(className), methodType);
@@ -169,10 +169,38 @@ public class FileRecords extends AbstractRecords implements Closeable {
     }
 
     /**
-     * Commit all written data to the physical disk
+     * Append the records of another file to the file. The bytes are transferred between the channels of the files,
+     * without copying them through the heap. This method is not thread-safe and must be protected with a lock.
+     *
+     * @param records The records to append, usually a slice of another file
+     * @return the number of bytes written to the underlying file
+     */
+    public int append(FileRecords records) throws IOException {
+        int sizeInBytes = records.sizeInBytes();
+        if (sizeInBytes > Integer.MAX_VALUE - size.get())
+            throw new IllegalArgumentException("Append of size " + sizeInBytes +
+                    " bytes is too large for segment with current file position at " + size.get());
+
+        long position = records.start;
+        long end = records.start + sizeInBytes;
+        while (position < end) {
+            long transferred = records.channel.transferTo(position, end - position, channel);
+            // the source file is shorter than the records
+            if (transferred <= 0)
+                throw new KafkaException(String.format("Failed to append %d bytes of %s at position %d: end of file reached",
+                        sizeInBytes, records.file.getAbsolutePath(), position));
+            position += transferred;
+        }
+        size.getAndAdd(sizeInBytes);
+        return sizeInBytes;
+    }
+
+    /**
+     * Commit all written data to the physical disk. The file is only appended to, so the metadata needed to read the
+     * data (i.e. the size of the file) is all that is committed along with the data, as with fdatasync.
      */
     public void flush() throws IOException {
-        channel.force(true);
+        channel.force(false);
     }
 
     /**
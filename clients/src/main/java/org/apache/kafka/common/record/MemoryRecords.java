@@ -17,6 +17,7 @@
 package org.apache.kafka.common.record;
 
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.compress.ZstdDictionary;
 import org.apache.kafka.common.errors.CorruptRecordException;
 import org.apache.kafka.common.message.LeaderChangeMessage;
 import org.apache.kafka.common.network.TransferableChannel;
@@ -150,23 +151,57 @@ public class MemoryRecords extends AbstractRecords {
      */
     public FilterResult filterTo(TopicPartition partition, RecordFilter filter, ByteBuffer destinationBuffer,
                                  int maxRecordBatchSize, BufferSupplier decompressionBufferSupplier) {
-        return filterTo(partition, batches(), filter, destinationBuffer, maxRecordBatchSize, decompressionBufferSupplier);
+        return filterTo(partition, batches(), filter, destinationBuffer, maxRecordBatchSize, decompressionBufferSupplier,
+                true);
+    }
+
+    /**
+     * Filter the records into the provided ByteBuffer, optionally leaving out the batches whose records are all
+     * retained. Such batches are retained as they are: instead of being copied to the destination buffer, they are
+     * listed by {@link FilterResult#unchangedBatches()} so that the caller can copy them from where the records
+     * were read, e.g. from file to file without copying them through memory.
+     *
+     * @param partition                   The partition that is filtered (used only for logging)
+     * @param filter                      The filter function
+     * @param destinationBuffer           The byte buffer to write the filtered records to
+     * @param maxRecordBatchSize          The maximum record batch size, see
+     *                                    {@link #filterTo(TopicPartition, RecordFilter, ByteBuffer, int, BufferSupplier)}
+     * @param decompressionBufferSupplier The supplier of ByteBuffer(s) used for decompression if supported
+     * @param copyUnchangedBatches        Whether to copy the unchanged batches to the destination buffer
+     * @return A FilterResult with a summary of the output (for metrics), the unchanged batches which were not copied
+     *         and potentially an overflow buffer
+     */
+    public FilterResult filterTo(TopicPartition partition, RecordFilter filter, ByteBuffer destinationBuffer,
+                                 int maxRecordBatchSize, BufferSupplier decompressionBufferSupplier,
+                                 boolean copyUnchangedBatches) {
+        return filterTo(partition, batches(), filter, destinationBuffer, maxRecordBatchSize, decompressionBufferSupplier,
+                copyUnchangedBatches);
     }
 
     private static FilterResult filterTo(TopicPartition partition, Iterable<MutableRecordBatch> batches,
                                          RecordFilter filter, ByteBuffer destinationBuffer, int maxRecordBatchSize,
-                                         BufferSupplier decompressionBufferSupplier) {
+                                         BufferSupplier decompressionBufferSupplier, boolean copyUnchangedBatches) {
         FilterResult filterResult = new FilterResult(destinationBuffer);
         ByteBufferOutputStream bufferOutputStream = new ByteBufferOutputStream(destinationBuffer);
 
         for (MutableRecordBatch batch : batches) {
             long maxOffset = -1L;
             BatchRetention batchRetention = filter.checkBatchRetention(batch);
+            int batchPosition = filterResult.bytesRead;
             filterResult.bytesRead += batch.sizeInBytes();
 
             if (batchRetention == BatchRetention.DELETE)
                 continue;
 
+            if (batchRetention == BatchRetention.RETAIN_ALL) {
+                retainAllRecords(batch, batchPosition, filterResult, bufferOutputStream, copyUnchangedBatches);
+                if (bufferOutputStream.buffer() != destinationBuffer) {
+                    filterResult.outputBuffer = bufferOutputStream.buffer();
+                    return filterResult;
+                }
+                continue;
+            }
+
             // We use the absolute offset to decide whether to retain the message or not. Due to KAFKA-4298, we have to
             // allow for the possibility that a previous version corrupted the log by writing a compressed record batch
             // with a magic value not matching the magic of the records (magic < 2). This will be fixed as we
@@ -199,32 +234,14 @@ public class MemoryRecords extends AbstractRecords {
 
             if (!retainedRecords.isEmpty()) {
                 if (writeOriginalBatch) {
-                    batch.writeTo(bufferOutputStream);
-                    filterResult.updateRetainedBatchMetadata(batch, retainedRecords.size(), false);
+                    retainOriginalBatch(batch, batchPosition, retainedRecords.size(), filterResult, bufferOutputStream,
+                            copyUnchangedBatches);
                 } else {
-                    MemoryRecordsBuilder builder = buildRetainedRecordsInto(batch, retainedRecords, bufferOutputStream);
-                    MemoryRecords records = builder.build();
-                    int filteredBatchSize = records.sizeInBytes();
-                    if (filteredBatchSize > batch.sizeInBytes() && filteredBatchSize > maxRecordBatchSize)
-                        log.warn("Record batch from {} with last offset {} exceeded max record batch size {} after cleaning " +
-                                        "(new size is {}). Consumers with version earlier than 0.10.1.0 may need to " +
-                                        "increase their fetch sizes.",
-                                partition, batch.lastOffset(), maxRecordBatchSize, filteredBatchSize);
-
-                    MemoryRecordsBuilder.RecordsInfo info = builder.info();
-                    filterResult.updateRetainedBatchMetadata(info.maxTimestamp, info.shallowOffsetOfMaxTimestamp,
-                            maxOffset, retainedRecords.size(), filteredBatchSize);
+                    retainRecords(partition, batch, retainedRecords, maxOffset, maxRecordBatchSize, filterResult,
+                            bufferOutputStream);
                 }
             } else if (batchRetention == BatchRetention.RETAIN_EMPTY) {
-                if (batchMagic < RecordBatch.MAGIC_VALUE_V2)
-                    throw new IllegalStateException("Empty batches are only supported for magic v2 and above");
-
-                bufferOutputStream.ensureRemaining(DefaultRecordBatch.RECORD_BATCH_OVERHEAD);
-                DefaultRecordBatch.writeEmptyHeader(bufferOutputStream.buffer(), batchMagic, batch.producerId(),
-                        batch.producerEpoch(), batch.baseSequence(), batch.baseOffset(), batch.lastOffset(),
-                        batch.partitionLeaderEpoch(), batch.timestampType(), batch.maxTimestamp(),
-                        batch.isTransactional(), batch.isControlBatch());
-                filterResult.updateRetainedBatchMetadata(batch, 0, true);
+                retainEmptyBatch(batch, filterResult, bufferOutputStream);
             }
 
             // If we had to allocate a new buffer to fit the filtered buffer (see KAFKA-5316), return early to
@@ -239,6 +256,58 @@ public class MemoryRecords extends AbstractRecords {
         return filterResult;
     }
 
+    private static void retainRecords(TopicPartition partition, MutableRecordBatch batch, List<Record> retainedRecords,
+                                      long maxOffset, int maxRecordBatchSize, FilterResult filterResult,
+                                      ByteBufferOutputStream bufferOutputStream) {
+        MemoryRecordsBuilder builder = buildRetainedRecordsInto(batch, retainedRecords, bufferOutputStream);
+        MemoryRecords records = builder.build();
+        int filteredBatchSize = records.sizeInBytes();
+        if (filteredBatchSize > batch.sizeInBytes() && filteredBatchSize > maxRecordBatchSize)
+            log.warn("Record batch from {} with last offset {} exceeded max record batch size {} after cleaning " +
+                            "(new size is {}). Consumers with version earlier than 0.10.1.0 may need to " +
+                            "increase their fetch sizes.",
+                    partition, batch.lastOffset(), maxRecordBatchSize, filteredBatchSize);
+
+        MemoryRecordsBuilder.RecordsInfo info = builder.info();
+        filterResult.updateRetainedBatchMetadata(info.maxTimestamp, info.shallowOffsetOfMaxTimestamp,
+                maxOffset, retainedRecords.size(), filteredBatchSize);
+    }
+
+    private static void retainEmptyBatch(MutableRecordBatch batch, FilterResult filterResult,
+                                         ByteBufferOutputStream bufferOutputStream) {
+        byte batchMagic = batch.magic();
+        if (batchMagic < RecordBatch.MAGIC_VALUE_V2)
+            throw new IllegalStateException("Empty batches are only supported for magic v2 and above");
+
+        bufferOutputStream.ensureRemaining(DefaultRecordBatch.RECORD_BATCH_OVERHEAD);
+        DefaultRecordBatch.writeEmptyHeader(bufferOutputStream.buffer(), batchMagic, batch.producerId(),
+                batch.producerEpoch(), batch.baseSequence(), batch.baseOffset(), batch.lastOffset(),
+                batch.partitionLeaderEpoch(), batch.timestampType(), batch.maxTimestamp(),
+                batch.isTransactional(), batch.isControlBatch());
+        filterResult.updateRetainedBatchMetadata(batch, 0, true);
+    }
+
+    private static void retainAllRecords(MutableRecordBatch batch, int batchPosition, FilterResult filterResult,
+                                         ByteBufferOutputStream bufferOutputStream, boolean copyUnchangedBatches) {
+        if (batch.magic() < RecordBatch.MAGIC_VALUE_V2)
+            throw new IllegalStateException("Batches are only retained without inspecting records for magic v2 and above");
+
+        int numRecords = batch.countOrNull();
+        filterResult.messagesRead += numRecords;
+        retainOriginalBatch(batch, batchPosition, numRecords, filterResult, bufferOutputStream, copyUnchangedBatches);
+    }
+
+    private static void retainOriginalBatch(MutableRecordBatch batch, int batchPosition, int numRecords,
+                                            FilterResult filterResult, ByteBufferOutputStream bufferOutputStream,
+                                            boolean copyUnchangedBatches) {
+        if (copyUnchangedBatches)
+            batch.writeTo(bufferOutputStream);
+        else
+            filterResult.unchangedBatches.add(new UnchangedBatch(batchPosition, batch.sizeInBytes(),
+                    bufferOutputStream.position()));
+        filterResult.updateRetainedBatchMetadata(batch, numRecords, false);
+    }
+
     private static MemoryRecordsBuilder buildRetainedRecordsInto(RecordBatch originalBatch,
                                                                  List<Record> retainedRecords,
                                                                  ByteBufferOutputStream bufferOutputStream) {
@@ -306,7 +375,8 @@ public class MemoryRecords extends AbstractRecords {
         public enum BatchRetention {
             DELETE, // Delete the batch without inspecting records
             RETAIN_EMPTY, // Retain the batch even if it is empty
-            DELETE_EMPTY  // Delete the batch if it is empty
+            DELETE_EMPTY, // Delete the batch if it is empty
+            RETAIN_ALL    // Retain the batch and all its records without inspecting records (magic v2 and above only)
         }
 
         /**
@@ -334,6 +404,7 @@ public class MemoryRecords extends AbstractRecords {
         private long maxOffset = -1L;
         private long maxTimestamp = RecordBatch.NO_TIMESTAMP;
         private long shallowOffsetOfMaxTimestamp = -1L;
+        private final List<UnchangedBatch> unchangedBatches = new ArrayList<>();
 
         private FilterResult(ByteBuffer outputBuffer) {
             this.outputBuffer = outputBuffer;
@@ -395,6 +466,55 @@ public class MemoryRecords extends AbstractRecords {
         public long shallowOffsetOfMaxTimestamp() {
             return shallowOffsetOfMaxTimestamp;
         }
+
+        /**
+         * The retained batches which were not copied to the output buffer, in the order of the filtered records.
+         * Empty unless the records were filtered without copying the unchanged batches.
+         */
+        public List<UnchangedBatch> unchangedBatches() {
+            return unchangedBatches;
+        }
+    }
+
+    /**
+     * A batch retained without change by {@link #filterTo(TopicPartition, RecordFilter, ByteBuffer, int, BufferSupplier, boolean)}
+     * and not copied to the output buffer.
+     */
+    public static class UnchangedBatch {
+        private final int position;
+        private final int sizeInBytes;
+        private final int outputPosition;
+
+        private UnchangedBatch(int position, int sizeInBytes, int outputPosition) {
+            this.position = position;
+            this.sizeInBytes = sizeInBytes;
+            this.outputPosition = outputPosition;
+        }
+
+        /**
+         * The position of the batch in the filtered records
+         */
+        public int position() {
+            return position;
+        }
+
+        public int sizeInBytes() {
+            return sizeInBytes;
+        }
+
+        /**
+         * The position of the output buffer the batch would have been copied to, the batch comes after the
+         * batches written to the output buffer before this position
+         */
+        public int outputPosition() {
+            return outputPosition;
+        }
+
+        @Override
+        public String toString() {
+            return "UnchangedBatch(position=" + position + ", sizeInBytes=" + sizeInBytes +
+                    ", outputPosition=" + outputPosition + ")";
+        }
     }
 
     public static MemoryRecords readableRecords(ByteBuffer buffer) {
@@ -442,6 +562,25 @@ public class MemoryRecords extends AbstractRecords {
                 RecordBatch.NO_PARTITION_LEADER_EPOCH);
     }
 
+    /**
+     * Create a builder of a batch whose records are compressed with a zstd dictionary, or without dictionary if it is
+     * null.
+     */
+    public static MemoryRecordsBuilder builder(ByteBuffer buffer,
+                                               byte magic,
+                                               CompressionType compressionType,
+                                               ZstdDictionary zstdDictionary,
+                                               TimestampType timestampType,
+                                               long baseOffset) {
+        long logAppendTime = RecordBatch.NO_TIMESTAMP;
+        if (timestampType == TimestampType.LOG_APPEND_TIME)
+            logAppendTime = System.currentTimeMillis();
+        return new MemoryRecordsBuilder(new ByteBufferOutputStream(buffer), magic, compressionType, timestampType,
+                baseOffset, logAppendTime, RecordBatch.NO_PRODUCER_ID, RecordBatch.NO_PRODUCER_EPOCH,
+                RecordBatch.NO_SEQUENCE, false, false, RecordBatch.NO_PARTITION_LEADER_EPOCH, buffer.remaining(),
+                zstdDictionary);
+    }
+
     public static MemoryRecordsBuilder builder(ByteBuffer buffer,
                                                byte magic,
                                                CompressionType compressionType,
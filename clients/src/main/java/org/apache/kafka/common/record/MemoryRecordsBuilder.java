@@ -17,6 +17,8 @@
 package org.apache.kafka.common.record;
 
 import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.compress.ZstdDictionary;
+import org.apache.kafka.common.compress.ZstdFactory;
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.message.LeaderChangeMessage;
 import org.apache.kafka.common.protocol.ByteBufferAccessor;
@@ -52,6 +54,7 @@ public class MemoryRecordsBuilder implements AutoCloseable {
 
     private final TimestampType timestampType;
     private final CompressionType compressionType;
+    private final ZstdDictionary zstdDictionary;
     // Used to hold a reference to the underlying ByteBuffer so that we can write the record batch header and access
     // the written bytes. ByteBufferOutputStream allocates a new ByteBuffer if the existing one is not large enough,
     // so it's not safe to hold a direct reference to the underlying ByteBuffer.
@@ -99,6 +102,24 @@ public class MemoryRecordsBuilder implements AutoCloseable {
                                 boolean isControlBatch,
                                 int partitionLeaderEpoch,
                                 int writeLimit) {
+        this(bufferStream, magic, compressionType, timestampType, baseOffset, logAppendTime, producerId, producerEpoch,
+                baseSequence, isTransactional, isControlBatch, partitionLeaderEpoch, writeLimit, null);
+    }
+
+    public MemoryRecordsBuilder(ByteBufferOutputStream bufferStream,
+                                byte magic,
+                                CompressionType compressionType,
+                                TimestampType timestampType,
+                                long baseOffset,
+                                long logAppendTime,
+                                long producerId,
+                                short producerEpoch,
+                                int baseSequence,
+                                boolean isTransactional,
+                                boolean isControlBatch,
+                                int partitionLeaderEpoch,
+                                int writeLimit,
+                                ZstdDictionary zstdDictionary) {
         if (magic > RecordBatch.MAGIC_VALUE_V0 && timestampType == TimestampType.NO_TIMESTAMP_TYPE)
             throw new IllegalArgumentException("TimestampType must be set for magic >= 0");
         if (magic < RecordBatch.MAGIC_VALUE_V2) {
@@ -109,10 +130,13 @@ public class MemoryRecordsBuilder implements AutoCloseable {
             if (compressionType == CompressionType.ZSTD)
                 throw new IllegalArgumentException("ZStandard compression is not supported for magic " + magic);
         }
+        if (zstdDictionary != null && compressionType != CompressionType.ZSTD)
+            throw new IllegalArgumentException("A zstd dictionary is not supported for compression type " + compressionType);
 
         this.magic = magic;
         this.timestampType = timestampType;
         this.compressionType = compressionType;
+        this.zstdDictionary = zstdDictionary;
         this.baseOffset = baseOffset;
         this.logAppendTime = logAppendTime;
         this.numRecords = 0;
@@ -131,7 +155,8 @@ public class MemoryRecordsBuilder implements AutoCloseable {
 
         bufferStream.position(initialPosition + batchHeaderSizeInBytes);
         this.bufferStream = bufferStream;
-        this.appendStream = new DataOutputStream(compressionType.wrapForOutput(this.bufferStream, magic));
+        this.appendStream = new DataOutputStream(zstdDictionary == null ? compressionType.wrapForOutput(this.bufferStream, magic)
+                : ZstdFactory.wrapForOutput(this.bufferStream, zstdDictionary));
     }
 
     /**
@@ -188,6 +213,13 @@ public class MemoryRecordsBuilder implements AutoCloseable {
         return compressionType;
     }
 
+    /**
+     * The dictionary the records are compressed with, or null if there is none.
+     */
+    public ZstdDictionary zstdDictionary() {
+        return zstdDictionary;
+    }
+
     public boolean isControlBatch() {
         return isControlBatch;
     }
@@ -39,7 +39,7 @@ public abstract class AbstractResponse implements AbstractRequestResponse {
         this.apiKey = apiKey;
     }
 
-    public final Send toSend(ResponseHeader header, short version) {
+    public Send toSend(ResponseHeader header, short version) {
         return SendBuilder.buildResponseSend(header, data(), version);
     }
 
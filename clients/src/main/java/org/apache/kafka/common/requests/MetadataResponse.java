@@ -25,9 +25,13 @@ import org.apache.kafka.common.message.MetadataResponseData;
 import org.apache.kafka.common.message.MetadataResponseData.MetadataResponseBroker;
 import org.apache.kafka.common.message.MetadataResponseData.MetadataResponsePartition;
 import org.apache.kafka.common.message.MetadataResponseData.MetadataResponseTopic;
+import org.apache.kafka.common.network.ByteBufferSend;
+import org.apache.kafka.common.network.Send;
 import org.apache.kafka.common.protocol.ApiKeys;
 import org.apache.kafka.common.protocol.ByteBufferAccessor;
 import org.apache.kafka.common.protocol.Errors;
+import org.apache.kafka.common.protocol.MessageUtil;
+import org.apache.kafka.common.protocol.ObjectSerializationCache;
 import org.apache.kafka.common.utils.Utils;
 
 import java.nio.ByteBuffer;
@@ -63,15 +67,63 @@ public class MetadataResponse extends AbstractResponse {
     private final MetadataResponseData data;
     private volatile Holder holder;
     private final boolean hasReliableLeaderEpochs;
+    // the data serialized at serializedVersion and the throttle time to send with it, see preSerialized()
+    private final ByteBuffer serializedData;
+    private final short serializedVersion;
+    private final int throttleTimeMs;
 
     public MetadataResponse(MetadataResponseData data, short version) {
         this(data, hasReliableLeaderEpochs(version));
     }
 
     MetadataResponse(MetadataResponseData data, boolean hasReliableLeaderEpochs) {
+        this(data, hasReliableLeaderEpochs, null, (short) -1, DEFAULT_THROTTLE_TIME);
+    }
+
+    private MetadataResponse(MetadataResponseData data, boolean hasReliableLeaderEpochs, ByteBuffer serializedData,
+                             short serializedVersion, int throttleTimeMs) {
         super(ApiKeys.METADATA);
         this.data = data;
         this.hasReliableLeaderEpochs = hasReliableLeaderEpochs;
+        this.serializedData = serializedData;
+        this.serializedVersion = serializedVersion;
+        this.throttleTimeMs = throttleTimeMs;
+    }
+
+    /**
+     * Create a response which is sent from data that has already been serialized, so that the same response can be
+     * sent to many clients without encoding it every time. Only the throttle time is written for each response.
+     *
+     * @param data The response data, which is shared and must not be modified
+     * @param version The version the data was serialized with
+     * @param serializedData The data serialized with a throttle time of zero, see {@link MessageUtil#toByteBuffer}
+     * @param throttleTimeMs The throttle time of this response
+     */
+    public static MetadataResponse preSerialized(MetadataResponseData data, short version, ByteBuffer serializedData,
+                                                 int throttleTimeMs) {
+        return new MetadataResponse(data, hasReliableLeaderEpochs(version), serializedData.asReadOnlyBuffer(),
+            version, throttleTimeMs);
+    }
+
+    @Override
+    public Send toSend(ResponseHeader header, short version) {
+        if (serializedData == null || version != serializedVersion)
+            return super.toSend(header, version);
+
+        // the throttle time is the first field of the response from version 3 on
+        int throttleTimeSize = version >= 3 ? 4 : 0;
+        ObjectSerializationCache serializationCache = new ObjectSerializationCache();
+        int headerSize = header.size(serializationCache);
+        ByteBuffer prefix = ByteBuffer.allocate(4 + headerSize + throttleTimeSize);
+        prefix.putInt(headerSize + serializedData.remaining());
+        header.write(prefix, serializationCache);
+        if (throttleTimeSize > 0)
+            prefix.putInt(throttleTimeMs);
+        prefix.flip();
+
+        ByteBuffer body = serializedData.duplicate();
+        body.position(body.position() + throttleTimeSize);
+        return new ByteBufferSend(prefix, body);
     }
 
     @Override
@@ -81,7 +133,7 @@ public class MetadataResponse extends AbstractResponse {
 
     @Override
     public int throttleTimeMs() {
-        return data.throttleTimeMs();
+        return serializedData == null ? data.throttleTimeMs() : throttleTimeMs;
     }
 
     /**
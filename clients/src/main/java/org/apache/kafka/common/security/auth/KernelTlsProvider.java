@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.security.auth;
+
+import org.apache.kafka.common.Configurable;
+
+import javax.net.ssl.SSLEngine;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Plugin interface for offloading the encryption of the data sent on SSL connections to the kernel, for example with
+ * Linux kernel TLS (kTLS). Once the offload is enabled on a connection, the kernel encrypts the data written to the
+ * socket, which allows data to be sent from files with zero-copy transfers (<code>FileChannel.transferTo</code>) as
+ * on PLAINTEXT connections instead of being copied through the <code>SSLEngine</code>.
+ * <p>
+ * Enabling the offload requires the traffic keys and the record sequence number of the TLS session, which are not
+ * exposed by the JDK <code>SSLEngine</code>. Implementations are therefore typically backed by a native library and
+ * used along with an {@link SslEngineFactory} creating engines that expose the key material to the provider.
+ * </p>
+ * <p>
+ * Only the data sent on a connection is offloaded, the data received is still decrypted by the <code>SSLEngine</code>.
+ * Connections for which the offload is not enabled keep using the <code>SSLEngine</code> to encrypt the data sent.
+ * </p>
+ */
+public interface KernelTlsProvider extends Configurable, Closeable {
+
+    /**
+     * Enables the offload of the encryption of the data sent on a connection to the kernel. This is called once the
+     * SSL handshake of the connection has completed, after all the handshake records were written to the socket and
+     * before any application data is encrypted by the engine.
+     * <p>
+     * If the offload is not enabled, either because it is not supported for the connection (for example for the
+     * negotiated protocol or cipher suite, or by the kernel) or because an exception is thrown, the connection keeps
+     * using the <code>SSLEngine</code>. The socket must then be left unmodified.
+     * </p>
+     *
+     * @param socketChannel The socket channel of the connection
+     * @param sslEngine     The engine which completed the handshake of the connection
+     * @return True if the kernel encrypts the data written to the socket from now on, false otherwise.
+     * @throws IOException If the offload could not be enabled.
+     */
+    boolean enableTransmitOffload(SocketChannel socketChannel, SSLEngine sslEngine) throws IOException;
+}
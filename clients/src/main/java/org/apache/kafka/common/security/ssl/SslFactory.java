@@ -22,6 +22,7 @@ import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.config.SslConfigs;
 import org.apache.kafka.common.config.internals.BrokerSecurityConfigs;
 import org.apache.kafka.common.network.Mode;
+import org.apache.kafka.common.security.auth.KernelTlsProvider;
 import org.apache.kafka.common.security.auth.SslEngineFactory;
 import org.apache.kafka.common.utils.Utils;
 import org.slf4j.Logger;
@@ -57,6 +58,7 @@ public class SslFactory implements Reconfigurable, Closeable {
     private String endpointIdentification;
     private SslEngineFactory sslEngineFactory;
     private Map<String, Object> sslEngineFactoryConfig;
+    private KernelTlsProvider kernelTlsProvider;
 
     public SslFactory(Mode mode) {
         this(mode, null, false);
@@ -102,6 +104,7 @@ public class SslFactory implements Reconfigurable, Closeable {
             }
         }
         this.sslEngineFactory = builder;
+        this.kernelTlsProvider = instantiateKernelTlsProvider(nextConfigs);
     }
 
     @Override
@@ -125,6 +128,18 @@ public class SslFactory implements Reconfigurable, Closeable {
         }
     }
 
+    private KernelTlsProvider instantiateKernelTlsProvider(Map<String, Object> configs) {
+        @SuppressWarnings("unchecked")
+        Class<? extends KernelTlsProvider> kernelTlsProviderClass =
+                (Class<? extends KernelTlsProvider>) configs.get(SslConfigs.SSL_KERNEL_TLS_PROVIDER_CLASS_CONFIG);
+        if (kernelTlsProviderClass == null)
+            return null;
+        KernelTlsProvider kernelTlsProvider = Utils.newInstance(kernelTlsProviderClass);
+        kernelTlsProvider.configure(configs);
+        log.info("Created {} kernel TLS provider {}", mode, kernelTlsProviderClass.getName());
+        return kernelTlsProvider;
+    }
+
     private SslEngineFactory instantiateSslEngineFactory(Map<String, Object> configs) {
         @SuppressWarnings("unchecked")
         Class<? extends SslEngineFactory> sslEngineFactoryClass =
@@ -198,6 +213,14 @@ public class SslFactory implements Reconfigurable, Closeable {
         return sslEngineFactory;
     }
 
+    /**
+     * Returns the provider offloading the encryption of the data sent on connections to the kernel,
+     * or null if the offload is not enabled.
+     */
+    public KernelTlsProvider kernelTlsProvider() {
+        return kernelTlsProvider;
+    }
+
     /**
      * Copy entries from one map into another.
      *
@@ -235,6 +258,7 @@ public class SslFactory implements Reconfigurable, Closeable {
     @Override
     public void close() {
         Utils.closeQuietly(sslEngineFactory, "close engine factory");
+        Utils.closeQuietly(kernelTlsProvider, "close kernel TLS provider");
     }
 
     static class CertificateEntries {
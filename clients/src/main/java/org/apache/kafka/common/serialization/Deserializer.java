@@ -17,8 +17,10 @@
 package org.apache.kafka.common.serialization;
 
 import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.utils.Utils;
 
 import java.io.Closeable;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 /**
@@ -60,6 +62,24 @@ public interface Deserializer<T> extends Closeable {
         return deserialize(topic, data);
     }
 
+    /**
+     * Deserialize a record value from a buffer into a value or object. The consumer deserializes the keys and values
+     * of the records with this method, passing a view of the bytes in the fetched data, so that a deserializer
+     * overriding it can read the bytes without copying them first. By default, the bytes are copied into an array
+     * deserialized with {@link #deserialize(String, Headers, byte[])}.
+     * <p>
+     * The bytes of the buffer, from its position to its limit, must not be modified. The buffer refers to the data of
+     * the whole fetch, which is retained as long as the buffer or a view of it is referenced.
+     *
+     * @param topic topic associated with the data
+     * @param headers headers associated with the record; may be empty.
+     * @param data serialized bytes; may be null; implementations are recommended to handle null by returning a value or null rather than throwing an exception.
+     * @return deserialized typed data; may be null
+     */
+    default T deserialize(String topic, Headers headers, ByteBuffer data) {
+        return deserialize(topic, headers, data == null ? null : Utils.toArray(data));
+    }
+
     /**
      * Close this deserializer.
      * <p>
@@ -37,6 +37,7 @@ import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.MetricName;
 import org.apache.kafka.common.Node;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.compress.ZstdDictionaries;
 import org.apache.kafka.common.config.SslConfigs;
 import org.apache.kafka.common.errors.AuthenticationException;
 import org.apache.kafka.common.errors.InterruptException;
@@ -2345,7 +2346,9 @@ public class KafkaConsumerTest {
                 maxWaitMs,
                 fetchSize,
                 maxPollRecords,
+                0,
                 checkCrcs,
+                ZstdDictionaries.EMPTY,
                 "",
                 keyDeserializer,
                 valueDeserializer,
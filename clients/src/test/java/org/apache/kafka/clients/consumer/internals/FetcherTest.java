@@ -40,6 +40,7 @@ import org.apache.kafka.common.MetricNameTemplate;
 import org.apache.kafka.common.Node;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.compress.ZstdDictionaries;
 import org.apache.kafka.common.errors.InvalidTopicException;
 import org.apache.kafka.common.errors.RecordTooLargeException;
 import org.apache.kafka.common.errors.SerializationException;
@@ -89,6 +90,7 @@ import org.apache.kafka.common.requests.OffsetsForLeaderEpochRequest;
 import org.apache.kafka.common.requests.OffsetsForLeaderEpochResponse;
 import org.apache.kafka.common.requests.RequestTestUtils;
 import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteBufferViewDeserializer;
 import org.apache.kafka.common.serialization.BytesDeserializer;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
@@ -170,6 +172,7 @@ public class FetcherTest {
     private int maxBytes = Integer.MAX_VALUE;
     private int maxWaitMs = 0;
     private int fetchSize = 1000;
+    private int decodeThreads = 0;
     private long retryBackoffMs = 100;
     private long requestTimeoutMs = 30000;
     private MockTime time = new MockTime(1);
@@ -472,6 +475,36 @@ public class FetcherTest {
         }
     }
 
+    @Test
+    public void testFetchedRecordsDeserializedFromViewsOfTheFetchedData() {
+        ByteBufferViewDeserializer deserializer = new ByteBufferViewDeserializer() {
+            @Override
+            public ByteBuffer deserialize(String topic, byte[] data) {
+                throw new AssertionError("The fetched bytes should not be copied");
+            }
+        };
+        buildFetcher(deserializer, deserializer);
+
+        assignFromUser(singleton(tp0));
+        subscriptions.seek(tp0, 1);
+        client.prepareResponse(matchesOffset(tp0, 1), fullFetchResponse(tp0, this.records, Errors.NONE, 100L, 0));
+        assertEquals(1, fetcher.sendFetches());
+        consumerClient.poll(time.timer(0));
+
+        List<ConsumerRecord<ByteBuffer, ByteBuffer>> records = this.<ByteBuffer, ByteBuffer>fetchedRecords().get(tp0);
+        assertEquals(3, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<ByteBuffer, ByteBuffer> record = records.get(i);
+            byte[] value = ("value-" + (i + 1)).getBytes();
+            assertEquals(ByteBuffer.wrap("key".getBytes()), record.key());
+            assertEquals(ByteBuffer.wrap(value), record.value());
+            assertTrue(record.value().isReadOnly());
+            assertEquals(3, record.serializedKeySize());
+            assertEquals(value.length, record.serializedValueSize());
+        }
+        assertEquals(4L, subscriptions.position(tp0).offset);
+    }
+
     @Test
     public void testParseCorruptedRecord() throws Exception {
         buildFetcher();
@@ -720,6 +753,113 @@ public class FetcherTest {
         assertEquals(5, records.get(1).offset());
     }
 
+    @Test
+    public void testFetchedRecordsDecodedAheadOfPoll() {
+        decodeThreads = 2;
+        buildFetcher(4);
+
+        List<TopicPartition> partitions = Arrays.asList(tp0, tp1, tp2);
+        assignFromUser(new HashSet<>(partitions));
+        LinkedHashMap<TopicPartition, FetchResponse.PartitionData<MemoryRecords>> partitionData = new LinkedHashMap<>();
+        for (TopicPartition tp : partitions) {
+            subscriptions.seek(tp, 0);
+            partitionData.put(tp, new FetchResponse.PartitionData<>(Errors.NONE, 100L, FetchResponse.INVALID_LAST_STABLE_OFFSET,
+                    0L, null, buildCompressedRecords(0L, 3, 5)));
+        }
+
+        assertEquals(1, fetcher.sendFetches());
+        client.prepareResponse(new FetchResponse<>(Errors.NONE, partitionData, 0, INVALID_SESSION_ID));
+        consumerClient.poll(time.timer(0));
+
+        Map<TopicPartition, List<ConsumerRecord<byte[], byte[]>>> fetched = new HashMap<>();
+        Map<TopicPartition, List<ConsumerRecord<byte[], byte[]>>> recordsByPartition = fetchedRecords();
+        while (!recordsByPartition.isEmpty()) {
+            recordsByPartition.forEach((tp, records) -> fetched.computeIfAbsent(tp, p -> new ArrayList<>()).addAll(records));
+            recordsByPartition = fetchedRecords();
+        }
+
+        for (TopicPartition tp : partitions) {
+            List<ConsumerRecord<byte[], byte[]>> records = fetched.get(tp);
+            assertEquals(15, records.size());
+            for (int offset = 0; offset < 15; offset++) {
+                assertEquals(offset, records.get(offset).offset());
+                assertEquals("value-" + offset, new String(records.get(offset).value(), StandardCharsets.UTF_8));
+            }
+            assertEquals(15L, subscriptions.position(tp).offset);
+        }
+    }
+
+    @Test
+    public void testRecordsDecodedAheadOfPollBoundedByFetchMaxBytes() {
+        decodeThreads = 2;
+        // a single record is decoded ahead at a time, the poll decodes the other records
+        maxBytes = 1;
+        Thread pollThread = Thread.currentThread();
+        AtomicInteger decodedAhead = new AtomicInteger();
+        Deserializer<byte[]> deserializer = (topic, data) -> {
+            if (Thread.currentThread() != pollThread)
+                decodedAhead.incrementAndGet();
+            return data;
+        };
+        buildFetcher(deserializer, deserializer);
+
+        List<TopicPartition> partitions = Arrays.asList(tp0, tp1, tp2);
+        assignFromUser(new HashSet<>(partitions));
+        LinkedHashMap<TopicPartition, FetchResponse.PartitionData<MemoryRecords>> partitionData = new LinkedHashMap<>();
+        for (TopicPartition tp : partitions) {
+            subscriptions.seek(tp, 0);
+            partitionData.put(tp, new FetchResponse.PartitionData<>(Errors.NONE, 100L, FetchResponse.INVALID_LAST_STABLE_OFFSET,
+                    0L, null, buildCompressedRecords(0L, 3, 5)));
+        }
+
+        assertEquals(1, fetcher.sendFetches());
+        client.prepareResponse(new FetchResponse<>(Errors.NONE, partitionData, 0, INVALID_SESSION_ID));
+        consumerClient.poll(time.timer(0));
+
+        Map<TopicPartition, List<ConsumerRecord<byte[], byte[]>>> fetched = new HashMap<>();
+        Map<TopicPartition, List<ConsumerRecord<byte[], byte[]>>> recordsByPartition = fetchedRecords();
+        while (!recordsByPartition.isEmpty()) {
+            recordsByPartition.forEach((tp, records) -> fetched.computeIfAbsent(tp, p -> new ArrayList<>()).addAll(records));
+            recordsByPartition = fetchedRecords();
+        }
+
+        // the key and the value of at most one record of each fetch
+        assertTrue(decodedAhead.get() <= 2 * partitions.size());
+        for (TopicPartition tp : partitions) {
+            List<ConsumerRecord<byte[], byte[]>> records = fetched.get(tp);
+            assertEquals(15, records.size());
+            for (int offset = 0; offset < 15; offset++)
+                assertEquals(offset, records.get(offset).offset());
+            assertEquals(15L, subscriptions.position(tp).offset);
+        }
+    }
+
+    @Test
+    public void testFetchedRecordsDecodedAheadOfPollRaisesOnSerializationErrors() {
+        decodeThreads = 1;
+        Deserializer<byte[]> deserializer = (topic, data) -> {
+            if ("value-3".equals(new String(data, StandardCharsets.UTF_8)))
+                throw new SerializationException();
+            return data;
+        };
+        buildFetcher(deserializer, deserializer);
+
+        assignFromUser(singleton(tp0));
+        subscriptions.seek(tp0, 0);
+        client.prepareResponse(matchesOffset(tp0, 0), fullFetchResponse(tp0, buildCompressedRecords(0L, 2, 3), Errors.NONE, 100L, 0));
+        assertEquals(1, fetcher.sendFetches());
+        consumerClient.poll(time.timer(0));
+
+        // the records decoded ahead are returned, then the poll decodes the record which cannot be decoded
+        List<ConsumerRecord<byte[], byte[]>> records = this.<byte[], byte[]>fetchedRecords().get(tp0);
+        assertEquals(3, records.size());
+        assertEquals(3L, subscriptions.position(tp0).offset);
+        for (int i = 0; i < 2; i++) {
+            assertThrows(SerializationException.class, () -> fetcher.fetchedRecords());
+            assertEquals(3L, subscriptions.position(tp0).offset);
+        }
+    }
+
     /**
      * Test the scenario where a partition with fetched but not consumed records (i.e. max.poll.records is
      * less than the number of fetched records) is unassigned and a different partition is assigned. This is a
@@ -3285,7 +3425,9 @@ public class FetcherTest {
                 maxWaitMs,
                 fetchSize,
                 2 * numPartitions,
+                0,
                 true,
+                ZstdDictionaries.EMPTY,
                 "",
                 new ByteArrayDeserializer(),
                 new ByteArrayDeserializer(),
@@ -3505,6 +3647,19 @@ public class FetcherTest {
         return builder.build();
     }
 
+    private MemoryRecords buildCompressedRecords(long baseOffset, int numBatches, int recordsPerBatch) {
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * numBatches);
+        long offset = baseOffset;
+        for (int i = 0; i < numBatches; i++) {
+            MemoryRecordsBuilder builder = MemoryRecords.builder(buffer, CompressionType.GZIP, TimestampType.CREATE_TIME, offset);
+            for (int j = 0; j < recordsPerBatch; j++, offset++)
+                builder.append(0L, "key".getBytes(), ("value-" + offset).getBytes());
+            builder.close();
+        }
+        buffer.flip();
+        return MemoryRecords.readableRecords(buffer);
+    }
+
     private int appendTransactionalRecords(ByteBuffer buffer, long pid, long baseOffset, int baseSequence, SimpleRecord... records) {
         MemoryRecordsBuilder builder = MemoryRecords.builder(buffer, RecordBatch.CURRENT_MAGIC_VALUE, CompressionType.NONE,
                 TimestampType.CREATE_TIME, baseOffset, time.milliseconds(), pid, (short) 0, baseSequence, true,
@@ -4590,7 +4745,9 @@ public class FetcherTest {
                 maxWaitMs,
                 fetchSize,
                 maxPollRecords,
+                decodeThreads,
                 true, // check crc
+                ZstdDictionaries.EMPTY,
                 "",
                 keyDeserializer,
                 valueDeserializer,
@@ -306,6 +306,52 @@ public class BufferPoolTest {
         assertEquals(totalMemory, pool.availableMemory());
     }
 
+    @Test
+    public void testStressfulSituationWithStripedFreeList() throws Exception {
+        int numThreads = 10;
+        final int iterations = 50000;
+        final int poolableSize = 1024;
+        final long totalMemory = numThreads / 2 * poolableSize;
+        final BufferPool pool = new BufferPool(totalMemory, poolableSize, metrics, time, metricGroup, 4);
+        List<StressTestThread> threads = new ArrayList<StressTestThread>();
+        for (int i = 0; i < numThreads; i++)
+            threads.add(new StressTestThread(pool, iterations));
+        for (StressTestThread thread : threads)
+            thread.start();
+        for (StressTestThread thread : threads)
+            thread.join();
+        for (StressTestThread thread : threads)
+            assertTrue("Thread should have completed all iterations successfully.", thread.success.get());
+        assertEquals(totalMemory, pool.availableMemory());
+        assertEquals(0, pool.queued());
+    }
+
+    @Test
+    public void testPooledBuffersAreReusedAcrossStripes() throws Exception {
+        BufferPool pool = new BufferPool(4, 1, metrics, time, metricGroup, 4);
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            buffers.add(pool.allocate(1, maxBlockTimeMs));
+        assertEquals(0, pool.availableMemory());
+        for (ByteBuffer buffer : buffers)
+            pool.deallocate(buffer);
+        assertEquals(4, pool.freeSize());
+        assertEquals(0, pool.unallocatedMemory());
+
+        // all pooled buffers are found by a single thread regardless of the stripe they were returned to
+        for (int i = 0; i < 4; i++)
+            assertTrue(buffers.contains(pool.allocate(1, maxBlockTimeMs)));
+        assertEquals(0, pool.freeSize());
+
+        // a non-poolable allocation frees up pooled buffers from every stripe
+        for (ByteBuffer buffer : buffers)
+            pool.deallocate(buffer);
+        ByteBuffer large = pool.allocate(4, maxBlockTimeMs);
+        assertEquals(0, pool.availableMemory());
+        pool.deallocate(large);
+        assertEquals(4, pool.unallocatedMemory());
+    }
+
     @Test
     public void testLargeAvailableMemory() throws Exception {
         long memory = 20_000_000_000L;
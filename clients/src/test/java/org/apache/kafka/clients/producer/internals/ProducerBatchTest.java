@@ -20,8 +20,11 @@ import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.compress.ZstdDictionaries;
+import org.apache.kafka.common.compress.ZstdDictionary;
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.record.BufferSupplier;
 import org.apache.kafka.common.record.CompressionType;
 import org.apache.kafka.common.record.LegacyRecord;
 import org.apache.kafka.common.record.MemoryRecords;
@@ -29,16 +32,23 @@ import org.apache.kafka.common.record.MemoryRecordsBuilder;
 import org.apache.kafka.common.record.Record;
 import org.apache.kafka.common.record.RecordBatch;
 import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.utils.CloseableIterator;
+import org.apache.kafka.common.utils.Utils;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 import static org.apache.kafka.common.record.RecordBatch.MAGIC_VALUE_V0;
 import static org.apache.kafka.common.record.RecordBatch.MAGIC_VALUE_V1;
 import static org.apache.kafka.common.record.RecordBatch.MAGIC_VALUE_V2;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -228,6 +238,41 @@ public class ProducerBatchTest {
         }
     }
 
+    @Test
+    public void testSplitWithZstdDictionary() {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            samples.add(value(i));
+        ZstdDictionary dictionary = ZstdDictionary.load(ZstdDictionary.train(samples, 1024));
+
+        MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(1024), MAGIC_VALUE_V2,
+                CompressionType.ZSTD, dictionary, TimestampType.CREATE_TIME, 0L);
+        ProducerBatch batch = new ProducerBatch(new TopicPartition("topic", 1), builder, now);
+        int count = 0;
+        while (batch.tryAppend(now, null, value(count), Record.EMPTY_HEADERS, null, now) != null)
+            count++;
+
+        Deque<ProducerBatch> batches = batch.split(256);
+        assertTrue(batches.size() >= 2);
+
+        BufferSupplier bufferSupplier = BufferSupplier.create(ZstdDictionaries.of(Collections.singleton(dictionary)));
+        int index = 0;
+        for (ProducerBatch splitProducerBatch : batches) {
+            for (RecordBatch splitBatch : splitProducerBatch.records().batches()) {
+                try (CloseableIterator<Record> records = splitBatch.streamingIterator(bufferSupplier)) {
+                    while (records.hasNext())
+                        assertArrayEquals(value(index++), Utils.toArray(records.next().value()));
+                }
+            }
+        }
+        assertEquals(count, index);
+    }
+
+    private static byte[] value(int i) {
+        return String.format("{\"user\":\"user-%d\",\"event\":\"page_view\",\"page\":\"/products/%d\"}", i % 97, i % 13)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
     /**
      * A {@link ProducerBatch} configured using a timestamp preceding its create time is interpreted correctly
      * as not expired by {@link ProducerBatch#hasReachedDeliveryTimeout(long, long)}.
@@ -289,6 +289,61 @@ public class RecordAccumulatorTest {
             t.join();
     }
 
+    @Test
+    public void testStripedAppendsDrainedInOrderOfEachThread() throws Exception {
+        final int numThreads = 4;
+        final int msgs = 5000;
+        final RecordAccumulator accum = createTestRecordAccumulator(3200,
+            1024 + DefaultRecordBatch.RECORD_BATCH_OVERHEAD, numThreads, 10 * 1024, CompressionType.NONE, 0);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            final int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < msgs; i++) {
+                    ByteBuffer threadValue = ByteBuffer.allocate(8).putInt(thread).putInt(i);
+                    try {
+                        // the time slept while the retried batches back off must not time out the appends
+                        accum.append(tp1, 0L, key, threadValue.array(), Record.EMPTY_HEADERS, null, Long.MAX_VALUE, false, time.milliseconds());
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            }));
+        }
+        for (Thread t : threads)
+            t.start();
+
+        // the records of each thread are drained in the order they were appended in, even when their batches are retried
+        int[] nextRecords = new int[numThreads];
+        int read = 0;
+        int drained = 0;
+        while (read < numThreads * msgs) {
+            Set<Node> nodes = accum.ready(cluster, time.milliseconds()).readyNodes;
+            List<ProducerBatch> batches = accum.drain(cluster, nodes, 5 * 1024, time.milliseconds()).get(node1.id());
+            if (batches == null || batches.isEmpty()) {
+                // let the retried batches back off
+                time.sleep(10);
+            } else {
+                for (ProducerBatch batch : batches) {
+                    if (++drained % 5 == 0 && batch.attempts() == 0) {
+                        accum.reenqueue(batch, time.milliseconds());
+                        continue;
+                    }
+                    for (Record record : batch.records().records()) {
+                        int thread = record.value().getInt(0);
+                        assertEquals(nextRecords[thread]++, record.value().getInt(4));
+                        read++;
+                    }
+                    accum.deallocate(batch);
+                }
+            }
+        }
+
+        for (Thread t : threads)
+            t.join();
+        assertFalse(accum.hasUndrained());
+        assertFalse(accum.hasIncomplete());
+    }
 
     @Test
     public void testNextReadyCheckDelay() throws Exception {
@@ -338,8 +393,9 @@ public class RecordAccumulatorTest {
         int batchSize = 1024 + DefaultRecordBatch.RECORD_BATCH_OVERHEAD;
         String metricGrpName = "producer-metrics";
 
-        final RecordAccumulator accum = new RecordAccumulator(logContext, batchSize,
-            CompressionType.NONE, lingerMs, retryBackoffMs, deliveryTimeoutMs, metrics, metricGrpName, time, new ApiVersions(), null,
+        final RecordAccumulator accum = new RecordAccumulator(logContext, batchSize, 1,
+            CompressionType.NONE, Collections.emptyMap(), lingerMs, retryBackoffMs, deliveryTimeoutMs, metrics, metricGrpName, time,
+            new ApiVersions(), null,
             new BufferPool(totalSize, batchSize, metrics, time, metricGrpName));
 
         long now = time.milliseconds();
@@ -707,8 +763,9 @@ public class RecordAccumulatorTest {
 
         apiVersions.update("foobar", NodeApiVersions.create(ApiKeys.PRODUCE.id, (short) 0, (short) 2));
         TransactionManager transactionManager = new TransactionManager(new LogContext(), null, 0, 100L, new ApiVersions(), false);
-        RecordAccumulator accum = new RecordAccumulator(logContext, batchSize + DefaultRecordBatch.RECORD_BATCH_OVERHEAD,
-            CompressionType.NONE, lingerMs, retryBackoffMs, deliveryTimeoutMs, metrics, metricGrpName, time, apiVersions, transactionManager,
+        RecordAccumulator accum = new RecordAccumulator(logContext, batchSize + DefaultRecordBatch.RECORD_BATCH_OVERHEAD, 1,
+            CompressionType.NONE, Collections.emptyMap(), lingerMs, retryBackoffMs, deliveryTimeoutMs, metrics, metricGrpName, time,
+            apiVersions, transactionManager,
             new BufferPool(totalSize, batchSize, metrics, time, metricGrpName));
         assertThrows(UnsupportedVersionException.class,
             () -> accum.append(tp1, 0L, key, value, Record.EMPTY_HEADERS, null, 0, false, time.milliseconds()));
@@ -1091,13 +1148,23 @@ public class RecordAccumulatorTest {
      * Return a test RecordAccumulator instance
      */
     private RecordAccumulator createTestRecordAccumulator(int deliveryTimeoutMs, int batchSize, long totalSize, CompressionType type, int lingerMs) {
+        return createTestRecordAccumulator(deliveryTimeoutMs, batchSize, 1, totalSize, type, lingerMs);
+    }
+
+    /**
+     * Return a test RecordAccumulator instance appending to the given number of batches of a partition
+     */
+    private RecordAccumulator createTestRecordAccumulator(int deliveryTimeoutMs, int batchSize, int appendStripes, long totalSize,
+                                                          CompressionType type, int lingerMs) {
         long retryBackoffMs = 100L;
         String metricGrpName = "producer-metrics";
 
         return new RecordAccumulator(
             logContext,
             batchSize,
+            appendStripes,
             type,
+            Collections.emptyMap(),
             lingerMs,
             retryBackoffMs,
             deliveryTimeoutMs,
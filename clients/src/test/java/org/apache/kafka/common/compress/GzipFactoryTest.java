@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.compress;
+
+import org.apache.kafka.common.utils.ByteBufferInputStream;
+import org.apache.kafka.common.utils.ByteBufferOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class GzipFactoryTest {
+
+    @Test
+    public void testCompressedBatchIsGzipMember() throws IOException {
+        byte[] records = records(10000);
+        ByteBufferOutputStream out = new ByteBufferOutputStream(64);
+        try (OutputStream compressing = GzipFactory.wrapForOutput(out)) {
+            compressing.write(records, 0, 100);
+            compressing.write(records, 100, records.length - 100);
+        }
+        ByteBuffer compressed = (ByteBuffer) out.buffer().flip();
+
+        assertArrayEquals(records, readAll(new GZIPInputStream(new ByteBufferInputStream(compressed.duplicate()))));
+        InputStream in = GzipFactory.wrapForInput(compressed);
+        assertTrue(in instanceof DecompressedBlockInputStream);
+        assertArrayEquals(records, readAll(in));
+    }
+
+    @Test
+    public void testBatchCompressedAfterOtherDataOfTheBuffer() throws IOException {
+        byte[] records = records(1000);
+        ByteBufferOutputStream out = new ByteBufferOutputStream(ByteBuffer.allocate(16));
+        out.write(new byte[10], 0, 10);
+        try (OutputStream compressing = GzipFactory.wrapForOutput(out)) {
+            compressing.write(records, 0, records.length);
+        }
+        ByteBuffer buffer = (ByteBuffer) out.buffer().flip();
+        buffer.position(10);
+
+        ByteBuffer compressed = buffer.slice();
+        InputStream in = GzipFactory.wrapForInput(compressed);
+        assertTrue(in instanceof DecompressedBlockInputStream);
+        assertArrayEquals(records, readAll(in));
+    }
+
+    @Test
+    public void testGzipMemberWithOptionalHeaderFieldsIsDecompressedAsBlock() throws IOException {
+        byte[] records = records(1000);
+        byte[] member = gzip(records);
+        byte[] extra = {2, 0, 'a', 'b'};
+        byte[] name = {'n', 0};
+        byte[] comment = {'c', 'c', 0};
+        ByteBuffer buffer = ByteBuffer.allocate(member.length + extra.length + name.length + comment.length);
+        buffer.put(member, 0, 10).put(extra).put(name).put(comment).put(member, 10, member.length - 10).flip();
+        // FEXTRA | FNAME | FCOMMENT
+        buffer.put(3, (byte) (4 | 8 | 16));
+
+        assertArrayEquals(records, readAll(new GZIPInputStream(new ByteBufferInputStream(buffer.duplicate()))));
+        InputStream in = GzipFactory.wrapForInput(buffer);
+        assertTrue(in instanceof DecompressedBlockInputStream);
+        assertArrayEquals(records, readAll(in));
+    }
+
+    @Test
+    public void testConcatenatedMembersAreDecompressedAsStream() throws IOException {
+        byte[] records = records(1000);
+        byte[] member = gzip(records);
+        ByteBuffer buffer = ByteBuffer.allocate(member.length * 2).put(member).put(member);
+        buffer.flip();
+
+        InputStream in = GzipFactory.wrapForInput(buffer);
+        assertFalse(in instanceof DecompressedBlockInputStream);
+        byte[] expected = new byte[records.length * 2];
+        System.arraycopy(records, 0, expected, 0, records.length);
+        System.arraycopy(records, 0, expected, records.length, records.length);
+        assertArrayEquals(expected, readAll(in));
+    }
+
+    @Test
+    public void testBufferOnlyExpandedIfBatchDoesNotFit() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+        ByteBufferOutputStream out = new ByteBufferOutputStream(buffer);
+        try (OutputStream compressing = GzipFactory.wrapForOutput(out)) {
+            compressing.write(records(1000));
+        }
+        assertSame(buffer, out.buffer());
+
+        try (OutputStream compressing = GzipFactory.wrapForOutput(out)) {
+            compressing.write(records(100000));
+        }
+        assertNotSame(buffer, out.buffer());
+    }
+
+    @Test
+    public void testLargeBatchIsDecompressedAsStream() throws IOException {
+        byte[] records = records(DecompressedBlockInputStream.MAX_SIZE + 1);
+        InputStream in = GzipFactory.wrapForInput(ByteBuffer.wrap(gzip(records)));
+        assertFalse(in instanceof DecompressedBlockInputStream);
+        assertArrayEquals(records, readAll(in));
+    }
+
+    @Test
+    public void testCorruptBatchRaisesOnRead() throws IOException {
+        byte[] member = gzip(records(1000));
+        member[member.length - 10] ^= 0xff;
+
+        InputStream in = GzipFactory.wrapForInput(ByteBuffer.wrap(member));
+        assertFalse(in instanceof DecompressedBlockInputStream);
+        assertThrows(IOException.class, () -> readAll(in));
+    }
+
+    static byte[] records(int size) {
+        // compressible data, as the usual records
+        Random random = new Random(42);
+        byte[] records = new byte[size];
+        for (int i = 0; i < size; i++)
+            records[i] = (byte) ('a' + random.nextInt(8));
+        return records;
+    }
+
+    static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1000];
+        int read;
+        while ((read = in.read(chunk, 0, chunk.length)) != -1)
+            out.write(chunk, 0, read);
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(records);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.compress;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.apache.kafka.common.errors.UnknownZstdDictionaryException;
+import org.apache.kafka.common.record.BufferSupplier;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.Record;
+import org.apache.kafka.common.record.RecordBatch;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.utils.ByteBufferOutputStream;
+import org.apache.kafka.common.utils.CloseableIterator;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.apache.kafka.common.compress.GzipFactoryTest.readAll;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ZstdDictionaryTest {
+
+    @Test
+    public void testDictionariesWithSameDictionary() {
+        byte[] dictionary = ZstdDictionary.train(samples(1000, 0), 4096);
+        ZstdDictionary loaded = ZstdDictionary.load(dictionary);
+        assertNotEquals(0, loaded.id());
+        ZstdDictionaries dictionaries = ZstdDictionaries.of(Arrays.asList(loaded, ZstdDictionary.load(dictionary.clone())));
+        assertSame(loaded, dictionaries.forId(loaded.id()));
+        assertNull(ZstdDictionaries.EMPTY.forId(loaded.id()));
+    }
+
+    @Test
+    public void testDictionariesWithOtherDictionaryWithSameId() {
+        byte[] dictionary = ZstdDictionary.train(samples(1000, 3), 4096);
+        ZstdDictionary loaded = ZstdDictionary.load(dictionary);
+
+        // the content of the dictionary is at its end, after its id and its entropy tables
+        byte[] other = dictionary.clone();
+        other[other.length - 1]++;
+        ZstdDictionary otherLoaded = ZstdDictionary.load(other);
+        assertEquals(loaded.id(), otherLoaded.id());
+        assertThrows(IllegalArgumentException.class, () -> ZstdDictionaries.of(Arrays.asList(loaded, otherLoaded)));
+
+        // the dictionaries of different clients are independent
+        assertSame(otherLoaded, ZstdDictionaries.of(Collections.singleton(otherLoaded)).forId(loaded.id()));
+    }
+
+    @Test
+    public void testLoadNotADictionary() {
+        assertThrows(IllegalArgumentException.class, () -> ZstdDictionary.load(sample(new Random(0), 0)));
+    }
+
+    @Test
+    public void testRecordsCompressedWithDictionary() {
+        ZstdDictionary dictionary = ZstdDictionary.load(ZstdDictionary.train(samples(1000, 0), 4096));
+        List<byte[]> values = samples(5, 1);
+
+        MemoryRecords withDictionary = build(values, dictionary);
+        MemoryRecords withoutDictionary = build(values, null);
+        assertTrue("Expected " + withDictionary.sizeInBytes() + " bytes to be less than " + withoutDictionary.sizeInBytes(),
+            withDictionary.sizeInBytes() < withoutDictionary.sizeInBytes());
+
+        List<byte[]> decompressed = new ArrayList<>();
+        BufferSupplier bufferSupplier = BufferSupplier.create(ZstdDictionaries.of(Collections.singleton(dictionary)));
+        for (RecordBatch batch : withDictionary.batches()) {
+            try (CloseableIterator<Record> records = batch.streamingIterator(bufferSupplier)) {
+                records.forEachRemaining(record -> decompressed.add(Utils.toArray(record.value())));
+            }
+        }
+        assertEquals(values.size(), decompressed.size());
+        for (int i = 0; i < values.size(); i++)
+            assertArrayEquals(values.get(i), decompressed.get(i));
+    }
+
+    @Test
+    public void testStreamCompressedWithDictionaryIsDecompressedAsStream() throws IOException {
+        byte[] bytes = ZstdDictionary.train(samples(1000, 0), 4096);
+        ZstdDictionaries dictionaries = ZstdDictionaries.of(Collections.singleton(ZstdDictionary.load(bytes)));
+        byte[] records = sample(new Random(1), 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZstdOutputStream zstd = new ZstdOutputStream(out)) {
+            zstd.setDict(bytes);
+            zstd.write(records);
+        }
+        InputStream in = ZstdFactory.wrapForInput(ByteBuffer.wrap(out.toByteArray()), BufferSupplier.noCaching(dictionaries));
+        assertFalse(in instanceof DecompressedBlockInputStream);
+        assertArrayEquals(records, readAll(in));
+    }
+
+    @Test
+    public void testBatchCompressedWithDictionaryWhichIsNotLoaded() throws IOException {
+        byte[] bytes = ZstdDictionary.train(samples(1000, 2), 4096);
+        // a dictionary trained from other samples has another id
+        BufferSupplier bufferSupplier = BufferSupplier.noCaching(
+            ZstdDictionaries.of(Collections.singleton(ZstdDictionary.load(ZstdDictionary.train(samples(1000, 0), 4096)))));
+        ByteBufferOutputStream out = new ByteBufferOutputStream(64);
+        try (OutputStream compressing = new BlockCompressionOutputStream(out) {
+            @Override
+            protected void compress(byte[] src, int length, ByteBufferOutputStream out) {
+                byte[] compressed = new ZstdCompressCtx().loadDict(bytes).compress(Arrays.copyOf(src, length));
+                out.write(compressed, 0, compressed.length);
+            }
+        }) {
+            compressing.write(sample(new Random(1), 0));
+        }
+
+        ByteBuffer buffer = (ByteBuffer) out.buffer().flip();
+        for (BufferSupplier supplier : Arrays.asList(BufferSupplier.NO_CACHING, bufferSupplier)) {
+            UnknownZstdDictionaryException e = assertThrows(UnknownZstdDictionaryException.class,
+                () -> ZstdFactory.wrapForInput(buffer.duplicate(), supplier));
+            assertEquals((int) Zstd.getDictIdFromDict(bytes), e.dictionaryId());
+        }
+    }
+
+    @Test
+    public void testDictionaryOnlySupportedWithZstd() {
+        ZstdDictionary dictionary = ZstdDictionary.load(ZstdDictionary.train(samples(1000, 0), 4096));
+        assertThrows(IllegalArgumentException.class, () -> MemoryRecords.builder(ByteBuffer.allocate(1024),
+            RecordBatch.CURRENT_MAGIC_VALUE, CompressionType.LZ4, dictionary, TimestampType.CREATE_TIME, 0L));
+    }
+
+    private static MemoryRecords build(List<byte[]> values, ZstdDictionary dictionary) {
+        MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(1024), RecordBatch.CURRENT_MAGIC_VALUE,
+            CompressionType.ZSTD, dictionary, TimestampType.CREATE_TIME, 0L);
+        for (byte[] value : values)
+            builder.append(0L, null, value);
+        return builder.build();
+    }
+
+    private static List<byte[]> samples(int count, int kind) {
+        Random random = new Random(kind);
+        List<byte[]> samples = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            samples.add(sample(random, kind));
+        return samples;
+    }
+
+    /**
+     * A small json record, whose fields depend on the kind of the records.
+     */
+    private static byte[] sample(Random random, int kind) {
+        String json = kind == 2
+            ? String.format("{\"order\":%d,\"customer\":\"%08x\",\"items\":[{\"sku\":\"SKU-%05d\",\"quantity\":%d}]," +
+                "\"shipping\":{\"method\":\"%s\",\"country\":\"%s\"},\"total\":%d.%02d}", random.nextInt(1000000),
+                random.nextInt(), random.nextInt(100000), 1 + random.nextInt(5),
+                random.nextBoolean() ? "standard" : "express", random.nextBoolean() ? "FR" : "DE",
+                random.nextInt(1000), random.nextInt(100))
+            : String.format("{\"timestamp\":%d,\"user\":\"user-%d\",\"session\":\"%08x\",\"event\":\"%s\"," +
+                "\"page\":\"/products/%d\",\"referrer\":\"%s\",\"device\":{\"os\":\"%s\",\"browser\":\"%s\"}}",
+                1600000000000L + random.nextInt(1000000), random.nextInt(10000), random.nextInt(),
+                random.nextBoolean() ? "page_view" : "add_to_cart", random.nextInt(5000),
+                random.nextBoolean() ? "https://www.example.com/search" : "https://www.example.com/home",
+                random.nextBoolean() ? "android" : "ios", random.nextBoolean() ? "chrome" : "safari");
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
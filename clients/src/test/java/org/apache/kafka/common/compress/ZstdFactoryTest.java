@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.compress;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.apache.kafka.common.record.BufferSupplier;
+import org.apache.kafka.common.utils.ByteBufferInputStream;
+import org.apache.kafka.common.utils.ByteBufferOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static org.apache.kafka.common.compress.GzipFactoryTest.readAll;
+import static org.apache.kafka.common.compress.GzipFactoryTest.records;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ZstdFactoryTest {
+
+    @Test
+    public void testCompressedBatchIsZstdFrame() throws IOException {
+        byte[] records = records(10000);
+        ByteBufferOutputStream out = new ByteBufferOutputStream(ByteBuffer.allocate(16));
+        out.write(new byte[10], 0, 10);
+        try (OutputStream compressing = ZstdFactory.wrapForOutput(out)) {
+            compressing.write(records, 0, 100);
+            compressing.write(records, 100, records.length - 100);
+        }
+        ByteBuffer buffer = (ByteBuffer) out.buffer().flip();
+        buffer.position(10);
+        ByteBuffer compressed = buffer.slice();
+
+        assertArrayEquals(records, readAll(new ZstdInputStream(new ByteBufferInputStream(compressed.duplicate()))));
+        InputStream in = ZstdFactory.wrapForInput(compressed, BufferSupplier.NO_CACHING);
+        assertTrue(in instanceof DecompressedBlockInputStream);
+        assertArrayEquals(records, readAll(in));
+    }
+
+    @Test
+    public void testFrameOfUnknownContentSizeIsDecompressedAsStream() throws IOException {
+        byte[] records = records(1000);
+        BufferSupplier bufferSupplier = BufferSupplier.create();
+        for (int i = 0; i < 2; i++) {
+            InputStream in = ZstdFactory.wrapForInput(ByteBuffer.wrap(zstdStream(records)), bufferSupplier);
+            assertFalse(in instanceof DecompressedBlockInputStream);
+            assertArrayEquals(records, readAll(in));
+        }
+    }
+
+    @Test
+    public void testConcatenatedFramesAreDecompressedAsStream() throws IOException {
+        byte[] records = records(1000);
+        byte[] frame = zstdFrame(records);
+        ByteBuffer buffer = ByteBuffer.allocate(frame.length * 2).put(frame).put(frame);
+        buffer.flip();
+
+        InputStream in = ZstdFactory.wrapForInput(buffer, BufferSupplier.NO_CACHING);
+        assertFalse(in instanceof DecompressedBlockInputStream);
+        byte[] expected = new byte[records.length * 2];
+        System.arraycopy(records, 0, expected, 0, records.length);
+        System.arraycopy(records, 0, expected, records.length, records.length);
+        assertArrayEquals(expected, readAll(in));
+    }
+
+    @Test
+    public void testBufferOnlyExpandedIfBatchDoesNotFit() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+        ByteBufferOutputStream out = new ByteBufferOutputStream(buffer);
+        try (OutputStream compressing = ZstdFactory.wrapForOutput(out)) {
+            compressing.write(records(1000));
+        }
+        assertSame(buffer, out.buffer());
+
+        try (OutputStream compressing = ZstdFactory.wrapForOutput(out)) {
+            compressing.write(records(100000));
+        }
+        assertNotSame(buffer, out.buffer());
+    }
+
+    @Test
+    public void testCompressBufferReusedByThread() throws IOException {
+        byte[] buffer = ZstdFactory.compressBuffer(1000);
+        assertSame(buffer, ZstdFactory.compressBuffer(500));
+        assertSame(buffer, ZstdFactory.compressBuffer(1000));
+
+        byte[] enlarged = ZstdFactory.compressBuffer(2000);
+        assertNotSame(buffer, enlarged);
+        assertSame(enlarged, ZstdFactory.compressBuffer(1000));
+
+        // a buffer larger than the bound of the largest batch decompressed as a whole is not cached
+        int largeSize = 2 * DecompressedBlockInputStream.MAX_SIZE;
+        assertNotSame(ZstdFactory.compressBuffer(largeSize), ZstdFactory.compressBuffer(largeSize));
+        assertSame(enlarged, ZstdFactory.compressBuffer(1000));
+
+        // a full batch is compressed into the cached buffer, and copied into its buffer
+        byte[] records = records(1000);
+        ByteBufferOutputStream out = new ByteBufferOutputStream(ByteBuffer.allocate(records.length));
+        try (OutputStream compressing = ZstdFactory.wrapForOutput(out)) {
+            compressing.write(records);
+        }
+        ByteBuffer batch = (ByteBuffer) out.buffer().flip();
+        assertArrayEquals(records, readAll(ZstdFactory.wrapForInput(batch, BufferSupplier.NO_CACHING)));
+        assertSame(enlarged, ZstdFactory.compressBuffer(1000));
+    }
+
+    @Test
+    public void testLargeBatchIsDecompressedAsStream() throws IOException {
+        byte[] records = records(DecompressedBlockInputStream.MAX_SIZE + 1);
+        InputStream in = ZstdFactory.wrapForInput(ByteBuffer.wrap(zstdFrame(records)), BufferSupplier.NO_CACHING);
+        assertFalse(in instanceof DecompressedBlockInputStream);
+        assertArrayEquals(records, readAll(in));
+    }
+
+    @Test
+    public void testTruncatedBatchRaisesOnRead() throws IOException {
+        byte[] frame = zstdFrame(records(1000));
+
+        InputStream in = ZstdFactory.wrapForInput(ByteBuffer.wrap(frame, 0, frame.length - 5), BufferSupplier.NO_CACHING);
+        assertFalse(in instanceof DecompressedBlockInputStream);
+        assertThrows(IOException.class, () -> readAll(in));
+    }
+
+    private static byte[] zstdFrame(byte[] records) throws IOException {
+        ByteBufferOutputStream out = new ByteBufferOutputStream(64);
+        try (OutputStream compressing = ZstdFactory.wrapForOutput(out)) {
+            compressing.write(records);
+        }
+        ByteBuffer buffer = (ByteBuffer) out.buffer().flip();
+        byte[] frame = new byte[buffer.remaining()];
+        buffer.get(frame);
+        return frame;
+    }
+
+    private static byte[] zstdStream(byte[] records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZstdOutputStream zstd = new ZstdOutputStream(out)) {
+            zstd.write(records);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.memory;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class SizeClassedMemoryPoolTest {
+
+    @Test
+    public void testSizeClasses() {
+        assertArrayEquals(new int[] {1024, 1280, 1536, 1792, 2048, 2560, 3072, 3584, 4096},
+            SizeClassedMemoryPool.sizeClasses(4096));
+        assertArrayEquals(new int[] {1024, 1280, 1536, 1792, 2048, 2560},
+            SizeClassedMemoryPool.sizeClasses(3000));
+        assertArrayEquals(new int[0], SizeClassedMemoryPool.sizeClasses(1000));
+    }
+
+    @Test
+    public void testNegativeMaxIdleBytes() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new SizeClassedMemoryPool(10000, 4096, false, null, 4096, -1, false));
+    }
+
+    @Test
+    public void testAllocationIsRoundedUpToSizeClass() {
+        SizeClassedMemoryPool pool = new SizeClassedMemoryPool(10000, 4096, false, null, 4096, 10000, false);
+        ByteBuffer buffer = pool.tryAllocate(1300);
+        assertEquals(1536, buffer.capacity());
+        assertEquals(1300, buffer.limit());
+        assertEquals(10000 - 1536, pool.availableMemory());
+        assertEquals(1, pool.newPooledAllocations());
+
+        pool.release(buffer);
+        assertEquals(10000, pool.availableMemory());
+        assertEquals(1536, pool.idleBytes());
+    }
+
+    @Test
+    public void testReleasedBufferIsRecycled() {
+        SizeClassedMemoryPool pool = new SizeClassedMemoryPool(10000, 4096, false, null, 4096, 10000, false);
+        ByteBuffer buffer = pool.tryAllocate(2000);
+        buffer.putInt(1);
+        pool.release(buffer);
+
+        ByteBuffer recycled = pool.tryAllocate(1900);
+        assertSame(buffer, recycled);
+        assertEquals(0, recycled.position());
+        assertEquals(1900, recycled.limit());
+        assertEquals(0, pool.idleBytes());
+        assertEquals(1, pool.recycledAllocations());
+        assertEquals(1, pool.newPooledAllocations());
+
+        // a buffer of another size class is not reused
+        ByteBuffer other = pool.tryAllocate(3000);
+        assertEquals(3072, other.capacity());
+        assertEquals(2, pool.newPooledAllocations());
+    }
+
+    @Test
+    public void testIdleBytesAreBounded() {
+        SizeClassedMemoryPool pool = new SizeClassedMemoryPool(10000, 4096, false, null, 4096, 5000, false);
+        ByteBuffer first = pool.tryAllocate(4096);
+        ByteBuffer second = pool.tryAllocate(4096);
+        pool.release(first);
+        pool.release(second);
+        assertEquals(4096, pool.idleBytes());
+        assertEquals(10000, pool.availableMemory());
+
+        assertSame(first, pool.tryAllocate(4096));
+        assertNotSame(second, pool.tryAllocate(4096));
+    }
+
+    @Test
+    public void testUnpooledAllocations() {
+        SizeClassedMemoryPool pool = new SizeClassedMemoryPool(100000, 8192, false, null, 4096, 100000, true);
+        ByteBuffer small = pool.tryAllocate(100);
+        assertEquals(100, small.capacity());
+        assertFalse(small.isDirect());
+        ByteBuffer large = pool.tryAllocate(5000);
+        assertEquals(5000, large.capacity());
+        assertFalse(large.isDirect());
+        assertEquals(2, pool.unpooledAllocations());
+
+        pool.release(small);
+        pool.release(large);
+        assertEquals(0, pool.idleBytes());
+        assertEquals(100000, pool.availableMemory());
+    }
+
+    @Test
+    public void testDirectBuffers() {
+        SizeClassedMemoryPool pool = new SizeClassedMemoryPool(10000, 4096, false, null, 4096, 10000, true);
+        ByteBuffer buffer = pool.tryAllocate(2048);
+        assertTrue(buffer.isDirect());
+        pool.release(buffer);
+        assertSame(buffer, pool.tryAllocate(2048));
+    }
+
+    @Test
+    public void testSizeClassesAreBoundedByMaxSingleAllocation() {
+        SizeClassedMemoryPool pool = new SizeClassedMemoryPool(2000, 2000, true, null, 4096, 10000, false);
+        // 1900 bytes is larger than the largest size class not exceeding the max single allocation
+        ByteBuffer unpooled = pool.tryAllocate(1900);
+        assertEquals(1900, unpooled.capacity());
+        pool.release(unpooled);
+
+        ByteBuffer pooled = pool.tryAllocate(1700);
+        assertEquals(1792, pooled.capacity());
+        // in strict mode the memory of the size class must be available, not only the requested size
+        assertNull(pool.tryAllocate(1100));
+        assertEquals(2000 - 1792, pool.availableMemory());
+    }
+}
@@ -145,6 +145,14 @@ public class NioEchoServer extends Thread {
         throw new IllegalStateException("Metric not found, " + name + ", found=" + metrics.metrics().keySet());
     }
 
+    public double metricValue(String name, Map<String, String> tags) {
+        for (Map.Entry<MetricName, KafkaMetric> entry : metrics.metrics().entrySet()) {
+            if (entry.getKey().name().equals(name) && entry.getKey().tags().entrySet().containsAll(tags.entrySet()))
+                return ((Number) entry.getValue().metricValue()).doubleValue();
+        }
+        throw new IllegalStateException("Metric not found, " + name + " with tags " + tags + ", found=" + metrics.metrics().keySet());
+    }
+
     public void verifyAuthenticationMetrics(int successfulAuthentications, final int failedAuthentications)
             throws InterruptedException {
         waitForMetrics("successful-authentication", successfulAuthentications,
@@ -24,6 +24,7 @@ import org.apache.kafka.common.errors.InvalidConfigurationException;
 import org.apache.kafka.common.memory.MemoryPool;
 import org.apache.kafka.common.metrics.Metrics;
 import org.apache.kafka.common.security.TestSecurityConfig;
+import org.apache.kafka.common.security.auth.KernelTlsProvider;
 import org.apache.kafka.common.security.auth.SecurityProtocol;
 import org.apache.kafka.common.security.ssl.DefaultSslEngineFactory;
 import org.apache.kafka.common.security.ssl.SslFactory;
@@ -1211,6 +1212,70 @@ public class SslTransportLayerTest {
         assertThrows(KafkaException.class, () -> createSelector(sslClientConfigs));
     }
 
+    /**
+     * Tests that connections keep using the SSLEngine if the kernel TLS provider doesn't support the offload
+     */
+    @Test
+    public void testKernelTlsNotSupported() throws Exception {
+        sslServerConfigs.put(SslConfigs.SSL_KERNEL_TLS_PROVIDER_CLASS_CONFIG, UnsupportedKernelTlsProvider.class);
+        verifyKernelTlsFallback();
+    }
+
+    /**
+     * Tests that connections keep using the SSLEngine if the kernel TLS provider fails to enable the offload
+     */
+    @Test
+    public void testKernelTlsProviderFailure() throws Exception {
+        sslServerConfigs.put(SslConfigs.SSL_KERNEL_TLS_PROVIDER_CLASS_CONFIG, FailingKernelTlsProvider.class);
+        verifyKernelTlsFallback();
+    }
+
+    /**
+     * Tests invalid ssl.kernel.tls.provider plugin class
+     */
+    @Test
+    public void testInvalidKernelTlsProvider() {
+        sslClientConfigs.put(SslConfigs.SSL_KERNEL_TLS_PROVIDER_CLASS_CONFIG, String.class);
+        assertThrows(KafkaException.class, () -> createSelector(sslClientConfigs));
+    }
+
+    private void verifyKernelTlsFallback() throws Exception {
+        TestKernelTlsProvider.OFFLOAD_ATTEMPTS.set(0);
+        verifySslConfigs();
+        assertEquals(1, TestKernelTlsProvider.OFFLOAD_ATTEMPTS.get());
+        Map<String, String> engineTags = Collections.singletonMap("sslTransmitPath", SslTransmitPath.ENGINE.tagValue());
+        assertEquals(1.0, server.metricValue("connections", engineTags), 0.0);
+    }
+
+    public static class TestKernelTlsProvider implements KernelTlsProvider {
+        static final AtomicInteger OFFLOAD_ATTEMPTS = new AtomicInteger();
+
+        @Override
+        public void configure(Map<String, ?> configs) {
+        }
+
+        @Override
+        public boolean enableTransmitOffload(SocketChannel socketChannel, SSLEngine sslEngine) throws IOException {
+            OFFLOAD_ATTEMPTS.incrementAndGet();
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static class UnsupportedKernelTlsProvider extends TestKernelTlsProvider {
+    }
+
+    public static class FailingKernelTlsProvider extends TestKernelTlsProvider {
+        @Override
+        public boolean enableTransmitOffload(SocketChannel socketChannel, SSLEngine sslEngine) throws IOException {
+            super.enableTransmitOffload(socketChannel, sslEngine);
+            throw new IOException("Kernel TLS is not available");
+        }
+    }
+
     private void verifyInvalidReconfigure(ListenerReconfigurable reconfigurable,
                                           Map<String, Object>  invalidConfigs, String errorMessage) {
         try {
@@ -231,6 +231,36 @@ public class FileRecordsTest {
                 Collections.singletonList(second), batches(read));
     }
 
+    /**
+     * Test appending the records of a slice of another file.
+     */
+    @Test
+    public void testAppendFileRecords() throws IOException {
+        List<RecordBatch> items = batches(fileRecords);
+        RecordBatch first = items.get(0);
+        RecordBatch second = items.get(1);
+
+        FileRecords appended = FileRecords.open(tempFile());
+        appended.append(fileRecords.slice(first.sizeInBytes(), second.sizeInBytes()));
+        assertEquals(second.sizeInBytes(), appended.sizeInBytes());
+        assertEquals(second.sizeInBytes(), appended.channel().position());
+
+        // appends of memory records and file records can be mixed
+        append(appended, new byte[][] {"extra".getBytes()});
+        int sizeInBytes = appended.sizeInBytes();
+        appended.append(fileRecords.slice(0, first.sizeInBytes()));
+        assertEquals(sizeInBytes + first.sizeInBytes(), appended.sizeInBytes());
+
+        List<RecordBatch> appendedItems = batches(appended);
+        assertEquals(3, appendedItems.size());
+        assertEquals(second.baseOffset(), appendedItems.get(0).baseOffset());
+        assertEquals(second.checksum(), appendedItems.get(0).checksum());
+        assertEquals(ByteBuffer.wrap("extra".getBytes()), appendedItems.get(1).iterator().next().value());
+        assertEquals(first.baseOffset(), appendedItems.get(2).baseOffset());
+        assertEquals(first.checksum(), appendedItems.get(2).checksum());
+        appended.close();
+    }
+
     /**
      * Test the MessageSet.searchFor API.
      */
@@ -889,6 +889,71 @@ public class MemoryRecordsTest {
         }
     }
 
+    @Test
+    public void testFilterToWithoutCopyingUnchangedBatches() {
+        assumeAtLeastV2OrNotZstd();
+
+        ByteBuffer buffer = ByteBuffer.allocate(2048);
+        MemoryRecordsBuilder builder = MemoryRecords.builder(buffer, magic, compression, TimestampType.CREATE_TIME, 0L);
+        builder.append(10L, "0".getBytes(), "a".getBytes());
+        builder.close();
+
+        builder = MemoryRecords.builder(buffer, magic, compression, TimestampType.CREATE_TIME, 1L);
+        builder.append(11L, "1".getBytes(), "b".getBytes());
+        builder.append(12L, null, "c".getBytes());
+        builder.close();
+
+        builder = MemoryRecords.builder(buffer, magic, compression, TimestampType.CREATE_TIME, 3L);
+        builder.append(13L, "3".getBytes(), "d".getBytes());
+        builder.close();
+
+        builder = MemoryRecords.builder(buffer, magic, compression, TimestampType.CREATE_TIME, 4L);
+        builder.append(14L, null, "e".getBytes());
+        builder.close();
+
+        builder = MemoryRecords.builder(buffer, magic, compression, TimestampType.CREATE_TIME, 5L);
+        builder.append(15L, "5".getBytes(), "f".getBytes());
+        builder.close();
+
+        buffer.flip();
+        MemoryRecords records = MemoryRecords.readableRecords(buffer);
+
+        ByteBuffer copied = ByteBuffer.allocate(2048);
+        MemoryRecords.FilterResult copiedResult = records.filterTo(new TopicPartition("foo", 0),
+                new RetainNonNullKeysFilter(), copied, Integer.MAX_VALUE, BufferSupplier.NO_CACHING);
+        assertTrue(copiedResult.unchangedBatches().isEmpty());
+
+        ByteBuffer filtered = ByteBuffer.allocate(2048);
+        MemoryRecords.FilterResult result = records.filterTo(new TopicPartition("foo", 0),
+                new RetainNonNullKeysFilter(), filtered, Integer.MAX_VALUE, BufferSupplier.NO_CACHING, false);
+        assertFalse(result.unchangedBatches().isEmpty());
+        assertTrue(filtered.position() < copied.position());
+        assertEquals(copiedResult.messagesRetained(), result.messagesRetained());
+        assertEquals(copiedResult.bytesRetained(), result.bytesRetained());
+        assertEquals(copiedResult.maxOffset(), result.maxOffset());
+        assertEquals(copiedResult.maxTimestamp(), result.maxTimestamp());
+        assertEquals(copiedResult.shallowOffsetOfMaxTimestamp(), result.shallowOffsetOfMaxTimestamp());
+
+        // the unchanged batches interleaved with the batches written to the output buffer are the copied batches
+        ByteBuffer reassembled = ByteBuffer.allocate(2048);
+        int outputPosition = 0;
+        for (MemoryRecords.UnchangedBatch batch : result.unchangedBatches()) {
+            reassembled.put(slice(filtered, outputPosition, batch.outputPosition()));
+            reassembled.put(slice(buffer, batch.position(), batch.position() + batch.sizeInBytes()));
+            outputPosition = batch.outputPosition();
+        }
+        reassembled.put(slice(filtered, outputPosition, filtered.position()));
+        copied.flip();
+        reassembled.flip();
+        assertEquals(copied, reassembled);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int limit) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(limit).position(position);
+        return slice;
+    }
+
     @Test
     public void testNextBatchSize() {
         assumeAtLeastV2OrNotZstd();
@@ -124,6 +124,7 @@ import org.apache.kafka.common.message.ListOffsetsResponseData.ListOffsetsPartit
 import org.apache.kafka.common.message.ListOffsetsResponseData.ListOffsetsTopicResponse;
 import org.apache.kafka.common.message.ListPartitionReassignmentsRequestData;
 import org.apache.kafka.common.message.ListPartitionReassignmentsResponseData;
+import org.apache.kafka.common.message.MetadataResponseData;
 import org.apache.kafka.common.message.OffsetCommitRequestData;
 import org.apache.kafka.common.message.OffsetCommitResponseData;
 import org.apache.kafka.common.message.OffsetDeleteRequestData;
@@ -163,6 +164,7 @@ import org.apache.kafka.common.network.Send;
 import org.apache.kafka.common.protocol.ApiKeys;
 import org.apache.kafka.common.protocol.ByteBufferAccessor;
 import org.apache.kafka.common.protocol.Errors;
+import org.apache.kafka.common.protocol.MessageUtil;
 import org.apache.kafka.common.protocol.ObjectSerializationCache;
 import org.apache.kafka.common.quota.ClientQuotaAlteration;
 import org.apache.kafka.common.quota.ClientQuotaEntity;
@@ -208,6 +210,7 @@ import static org.apache.kafka.common.protocol.ApiKeys.FETCH;
 import static org.apache.kafka.common.protocol.ApiKeys.JOIN_GROUP;
 import static org.apache.kafka.common.protocol.ApiKeys.LIST_GROUPS;
 import static org.apache.kafka.common.protocol.ApiKeys.LIST_OFFSETS;
+import static org.apache.kafka.common.protocol.ApiKeys.METADATA;
 import static org.apache.kafka.common.protocol.ApiKeys.SYNC_GROUP;
 import static org.apache.kafka.common.requests.FetchMetadata.INVALID_SESSION_ID;
 import static org.junit.Assert.assertEquals;
@@ -747,6 +750,35 @@ public class RequestResponseTest {
         }
     }
 
+    @Test
+    public void testPreSerializedMetadataResponse() throws Exception {
+        for (short version = 0; version <= METADATA.latestVersion(); version++) {
+            MetadataResponseData data = createMetadataResponse().data().duplicate();
+            data.setThrottleTimeMs(0);
+            ByteBuffer serializedData = MessageUtil.toByteBuffer(data, version);
+            MetadataResponse preSerialized = MetadataResponse.preSerialized(data, version, serializedData, 100);
+            assertEquals(100, preSerialized.throttleTimeMs());
+
+            MetadataResponseData expectedData = data.duplicate();
+            if (version >= 3)
+                expectedData.setThrottleTimeMs(100);
+            ResponseHeader header = new ResponseHeader(15, METADATA.responseHeaderVersion(version));
+            assertEquals(sendBytes(new MetadataResponse(expectedData, version).toSend(header, version)),
+                sendBytes(preSerialized.toSend(header, version)));
+            // the serialized data can be sent several times
+            assertEquals(sendBytes(new MetadataResponse(expectedData, version).toSend(header, version)),
+                sendBytes(preSerialized.toSend(header, version)));
+        }
+    }
+
+    private ByteBuffer sendBytes(Send send) throws Exception {
+        ByteBufferChannel channel = new ByteBufferChannel(send.size());
+        while (!send.completed())
+            send.writeTo(channel);
+        channel.close();
+        return channel.buffer();
+    }
+
     private void verifyFetchResponseFullWrite(short apiVersion, FetchResponse<MemoryRecords> fetchResponse) throws Exception {
         int correlationId = 15;
 
@@ -21,6 +21,7 @@ import org.apache.kafka.common.utils.Bytes;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -32,6 +33,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class SerializationTest {
 
@@ -169,6 +171,36 @@ public class SerializationTest {
         }
     }
 
+    @Test
+    public void deserializersShouldDeserializeBuffers() {
+        ByteBuffer data = ByteBuffer.wrap("xxmy stringxx".getBytes());
+        data.position(2).limit(11);
+        try (Deserializer<String> deserializer = new StringDeserializer()) {
+            assertEquals("my string", deserializer.deserialize(topic, null, data));
+            assertEquals(2, data.position());
+            assertThat(deserializer.deserialize(topic, null, (ByteBuffer) null), nullValue());
+        }
+    }
+
+    @Test
+    public void byteBufferViewDeserializerShouldReturnReadOnlyViews() {
+        ByteBuffer data = ByteBuffer.wrap("xxmy stringxx".getBytes());
+        data.position(2).limit(11);
+        try (Deserializer<ByteBuffer> deserializer = new ByteBufferViewDeserializer()) {
+            ByteBuffer view = deserializer.deserialize(topic, null, data);
+            assertTrue(view.isReadOnly());
+            assertEquals(data, view);
+            assertThrows(ReadOnlyBufferException.class, () -> view.put(0, (byte) 0));
+
+            // the view shares the bytes of the buffer
+            data.put(2, (byte) 'M');
+            assertEquals('M', view.get(2));
+
+            assertEquals(ByteBuffer.wrap("my string".getBytes()), deserializer.deserialize(topic, "my string".getBytes()));
+            assertThat(deserializer.deserialize(topic, null, (ByteBuffer) null), nullValue());
+        }
+    }
+
     private Serde<String> getStringSerde(String encoder) {
         Map<String, Object> serializerConfigs = new HashMap<String, Object>();
         serializerConfigs.put("key.serializer.encoding", encoder);
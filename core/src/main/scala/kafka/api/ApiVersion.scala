@@ -112,7 +112,9 @@ object ApiVersion {
     // Flexible versioning on ListOffsets, WriteTxnMarkers and OffsetsForLeaderEpoch.
     KAFKA_2_8_IV0,
     // Introduced topic IDs to LeaderAndIsr and UpdateMetadata requests/responses (KIP-516)
-    KAFKA_2_8_IV1
+    KAFKA_2_8_IV1,
+    // Producer state snapshots of version 2, written by incremental producer state snapshots
+    KAFKA_2_8_IV2
   )
 
   // Map keys are the union of the short and full versions
@@ -196,6 +198,8 @@ sealed trait ApiVersion extends Ordered[ApiVersion] {
 
   def isAlterIsrSupported: Boolean = this >= KAFKA_2_7_IV2
 
+  def isIncrementalProducerSnapshotSupported: Boolean = this >= KAFKA_2_8_IV2
+
   override def compare(that: ApiVersion): Int =
     ApiVersion.orderingByVersion.compare(this, that)
 
@@ -446,6 +450,13 @@ case object KAFKA_2_8_IV1 extends DefaultApiVersion {
   val id: Int = 32
 }
 
+case object KAFKA_2_8_IV2 extends DefaultApiVersion {
+  val shortVersion: String = "2.8"
+  val subVersion = "IV2"
+  val recordVersion = RecordVersion.V2
+  val id: Int = 33
+}
+
 object ApiVersionValidator extends Validator {
 
   override def ensureValid(name: String, value: Any): Unit = {
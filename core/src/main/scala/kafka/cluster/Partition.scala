@@ -1065,7 +1065,8 @@ class Partition(val topicPartition: TopicPartition,
                   maxBytes: Int,
                   fetchIsolation: FetchIsolation,
                   fetchOnlyFromLeader: Boolean,
-                  minOneMessage: Boolean): LogReadInfo = inReadLock(leaderIsrUpdateLock) {
+                  minOneMessage: Boolean,
+                  readFromTailCache: Boolean): LogReadInfo = inReadLock(leaderIsrUpdateLock) {
     // decide whether to only fetch from leader
     val localLog = localLogWithEpochOrException(currentLeaderEpoch, fetchOnlyFromLeader)
 
@@ -1110,7 +1111,7 @@ class Partition(val topicPartition: TopicPartition,
       }
     }
 
-    val fetchedData = localLog.read(fetchOffset, maxBytes, fetchIsolation, minOneMessage)
+    val fetchedData = localLog.read(fetchOffset, maxBytes, fetchIsolation, minOneMessage, readFromTailCache)
     LogReadInfo(
       fetchedData = fetchedData,
       divergingEpoch = None,
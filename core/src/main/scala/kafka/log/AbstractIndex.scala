@@ -34,9 +34,11 @@ import org.apache.kafka.common.utils.{ByteBufferUnmapper, OperatingSystem, Utils
  * @param _file The index file
  * @param baseOffset the base offset of the segment that this index is corresponding to.
  * @param maxIndexSize The maximum index size in bytes.
+ * @param warmSectionBytes The size in bytes of the warm section of the index, see the comment on _warmEntries
  */
 abstract class AbstractIndex(@volatile private var _file: File, val baseOffset: Long, val maxIndexSize: Int = -1,
-                             val writable: Boolean) extends Closeable {
+                             val writable: Boolean, val warmSectionBytes: Int = AbstractIndex.DefaultWarmSectionBytes)
+  extends Closeable {
   import AbstractIndex._
 
   // Length of the index file
@@ -97,11 +99,11 @@ abstract class AbstractIndex(@volatile private var _file: File, val baseOffset:
    We can't set make N (_warmEntries) to be larger than 8192, as there is no simple way to guarantee all the "warm"
    section pages are really warm (touched in every lookup) on a typical 4KB-page host.
 
-   In there future, we may use a backend thread to periodically touch the entire warm section. So that, we can
-   1) support larger warm section
-   2) make sure the warm section of low QPS topic-partitions are really warm.
+   When the IndexWarmer is enabled, a background thread periodically touches the entire warm section (see warm()). So
+   the warm section of low QPS topic-partitions is really warm, and N can be configured to be larger than 8192 through
+   log.index.warm.section.bytes, which the log manager passes to the indexes of its logs when the warmer is enabled.
  */
-  protected def _warmEntries: Int = 8192 / entrySize
+  protected def _warmEntries: Int = warmSectionBytes / entrySize
 
   protected val lock = new ReentrantLock
 
@@ -289,6 +291,35 @@ abstract class AbstractIndex(@volatile private var _file: File, val baseOffset:
     resize(maxIndexSize)
   }
 
+  /**
+   * Touch every page of the warm section of this index, or of all its entries if `entireIndex` is true, so that
+   * those pages are loaded into the page cache.
+   *
+   * @param entireIndex Whether to touch all the entries of the index instead of only the warm section
+   * @return The number of bytes of the index that were touched
+   */
+  def warm(entireIndex: Boolean): Int = {
+    val end = _entries * entrySize
+    val start = if (entireIndex) 0 else Math.max(0, _entries - 1 - _warmEntries) * entrySize
+    var position = start - start % PageSize
+    while (position < end) {
+      val touched = inLock(lock) {
+        val idx = mmap
+        // the index may have been closed or shrunk concurrently, an unmapped buffer must not be accessed
+        if (idx == null || position >= idx.limit())
+          false
+        else {
+          warmSink = idx.get(position)
+          true
+        }
+      }
+      if (!touched)
+        return Math.max(0, position - start)
+      position += PageSize
+    }
+    end - start
+  }
+
   /**
    * Get offset relative to base offset of this index
    * @throws IndexOffsetOverflowException
@@ -431,6 +462,15 @@ abstract class AbstractIndex(@volatile private var _file: File, val baseOffset:
 
 object AbstractIndex extends Logging {
   override val loggerName: String = classOf[AbstractIndex].getName
+
+  /* the default size of the warm section of an index, see the comment on _warmEntries */
+  val DefaultWarmSectionBytes = 8192
+
+  /* the smallest page size of the supported platforms, used as the stride when touching index pages */
+  private val PageSize = 4096
+
+  /* written by warm() so that the reads of index pages are not optimized away */
+  @volatile private[log] var warmSink: Byte = 0
 }
 
 sealed trait IndexSearchType
@@ -28,6 +28,9 @@ package kafka.log
  * @param backOffMs The amount of time to wait before rechecking if no logs are eligible for cleaning
  * @param enableCleaner Allows completely disabling the log cleaner
  * @param hashAlgorithm The hash algorithm to use in key comparison.
+ * @param dedupeBufferType The type of offset map used for log deduplication, one of [[OffsetMap.Types]]
+ * @param threadsPerLog The number of threads each cleaner thread uses to clean the segments of a log in parallel
+ * @param keySummaryCacheSize The maximum memory used by the key summaries of the cleaned segments, 0 to disable them
  */
 case class CleanerConfig(numThreads: Int = 1,
                          dedupeBufferSize: Long = 4*1024*1024L,
@@ -37,5 +40,8 @@ case class CleanerConfig(numThreads: Int = 1,
                          maxIoBytesPerSecond: Double = Double.MaxValue,
                          backOffMs: Long = 15 * 1000,
                          enableCleaner: Boolean = true,
-                         hashAlgorithm: String = "MD5") {
+                         hashAlgorithm: String = "MD5",
+                         dedupeBufferType: String = OffsetMap.HeapType,
+                         threadsPerLog: Int = 1,
+                         keySummaryCacheSize: Long = 32*1024*1024L) {
 }
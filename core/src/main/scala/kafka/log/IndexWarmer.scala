@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.util.concurrent.TimeUnit
+
+import kafka.metrics.KafkaMetricsGroup
+import kafka.server.KafkaConfig
+import kafka.utils.{ShutdownableThread, Throttler}
+import org.apache.kafka.common.utils.Time
+
+/**
+ * A background thread which periodically touches the warm section of the offset and time indexes of the active
+ * segment of every log, so that index lookups on low QPS partitions do not stall on page faults after the index pages
+ * have been evicted from the page cache. See the comment on `AbstractIndex._warmEntries` for details on the warm
+ * section. Since the whole warm section is kept in the page cache by this thread, the log manager makes the warm
+ * section of the indexes larger than the default when the warmer is enabled.
+ *
+ * @param config The index warmer configuration
+ * @param logManager The log manager whose logs are warmed
+ * @param time A way to control the passage of time
+ */
+class IndexWarmer(config: IndexWarmerConfig,
+                  logManager: LogManager,
+                  time: Time = Time.SYSTEM)
+  extends ShutdownableThread(name = "kafka-index-warmer", isInterruptible = false) with KafkaMetricsGroup {
+
+  /* a throttle used to limit the number of index bytes touched per second */
+  private val throttler = new Throttler(desiredRatePerSec = config.maxBytesPerSecond,
+                                        checkIntervalMs = 300,
+                                        throttleDown = true,
+                                        "index-warmer-io",
+                                        "bytes",
+                                        time = time)
+
+  @volatile private var lastPassTimeMs = 0L
+
+  /* a metric to track the number of indexes touched */
+  private val warmedIndexesRate = newMeter("WarmedIndexesPerSec", "indexes", TimeUnit.SECONDS)
+
+  /* a metric to track how long the last pass over all the logs took */
+  newGauge("LastWarmPassTimeMs", () => lastPassTimeMs)
+
+  override def start(): Unit = {
+    info(s"Starting the index warmer with a period of ${config.intervalMs} ms")
+    super.start()
+  }
+
+  override def shutdown(): Unit = {
+    super.shutdown()
+    removeMetric("WarmedIndexesPerSec")
+    removeMetric("LastWarmPassTimeMs")
+  }
+
+  override def doWork(): Unit = {
+    warmAll()
+    pause(config.intervalMs, TimeUnit.MILLISECONDS)
+  }
+
+  /**
+   * Touch the indexes of the active segment of every log once.
+   */
+  private[log] def warmAll(): Unit = {
+    val startMs = time.milliseconds
+    val logs = logManager.allLogs.iterator
+    while (logs.hasNext && !isShutdownInitiated)
+      warm(logs.next())
+    lastPassTimeMs = time.milliseconds - startMs
+  }
+
+  private def warm(log: Log): Unit = {
+    try {
+      val segment = log.activeSegment
+      // indexes which have not been loaded yet are not looked up either, so there is nothing to keep warm
+      val indexes = segment.lazyOffsetIndex.getIfLoaded ++ segment.lazyTimeIndex.getIfLoaded
+      indexes.foreach { index =>
+        throttler.maybeThrottle(index.warm(config.warmEntireActiveSegment))
+        warmedIndexesRate.mark()
+      }
+    } catch {
+      // the segment may be rolled, deleted or its log directory may fail concurrently, the next pass will catch up
+      case e: Exception => debug(s"Failed to warm the indexes of ${log.topicPartition}", e)
+    }
+  }
+}
+
+object IndexWarmer {
+  def warmerConfig(config: KafkaConfig): IndexWarmerConfig = {
+    IndexWarmerConfig(enableWarmer = config.logIndexWarmerEnable,
+      intervalMs = config.logIndexWarmerIntervalMs,
+      maxBytesPerSecond = config.logIndexWarmerMaxBytesPerSecond,
+      warmEntireActiveSegment = config.logIndexWarmerEntireActiveSegment)
+  }
+}
@@ -0,0 +1,32 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+/**
+ * Configuration parameters for the index warmer
+ *
+ * @param enableWarmer Whether the index warmer thread should be started
+ * @param intervalMs The amount of time to wait between two passes over all the logs
+ * @param maxBytesPerSecond The maximum number of index bytes the warmer is allowed to touch per second
+ * @param warmEntireActiveSegment Whether to touch the whole indexes of the active segment instead of the warm section
+ */
+case class IndexWarmerConfig(enableWarmer: Boolean = false,
+                             intervalMs: Long = 30 * 1000L,
+                             maxBytesPerSecond: Double = Double.MaxValue,
+                             warmEntireActiveSegment: Boolean = false) {
+}
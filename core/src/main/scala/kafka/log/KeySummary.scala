@@ -0,0 +1,295 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.nio.ByteBuffer
+import java.util
+
+import kafka.utils.{nonthreadsafe, threadsafe}
+import org.apache.kafka.common.TopicPartition
+import org.apache.kafka.common.record.RecordBatch
+
+import scala.collection.mutable
+
+/**
+ * A summary of the keys of the record batches of a cleaned segment, written by the cleaner when it cleans the segment.
+ * For each batch, it holds a 32-bit fingerprint of the key of each record and whether the batch has records without
+ * key or value. The next cleanings of the log retain a batch of the segment without reading its records when none of
+ * the fingerprints of the batch are in the [[KeyFingerprintFilter]] of the keys of the offset map.
+ *
+ * The batches are identified by their base offset and checksum, so that a summary which no longer matches the
+ * segment, e.g. after the segment was truncated, is not used for the batches which changed.
+ */
+private[log] class SegmentKeySummary private (baseOffsets: Array[Long],
+                                              checksums: Array[Long],
+                                              private val flags: Array[Byte],
+                                              fingerprintEnds: Array[Int],
+                                              fingerprints: Array[Int]) {
+  import SegmentKeySummary._
+
+  def numBatches: Int = baseOffsets.length
+
+  def sizeInBytes: Long =
+    EntryOverhead + baseOffsets.length * BytesPerBatch + fingerprints.length.toLong * BytesPerFingerprint
+
+  /**
+   * Find the summary of a batch.
+   * @return the index of the summary of the batch, or -1 if the batch is not summarized
+   */
+  def indexOf(batch: RecordBatch): Int = {
+    val index = util.Arrays.binarySearch(baseOffsets, batch.baseOffset)
+    if (index >= 0 && checksums(index) == batch.checksum) index else -1
+  }
+
+  def numFingerprints(index: Int): Int = fingerprintEnds(index) - fingerprintStart(index)
+
+  def fingerprint(index: Int, i: Int): Int = fingerprints(fingerprintStart(index) + i)
+
+  def hasUnkeyedRecords(index: Int): Boolean = (flags(index) & UnkeyedRecordsFlag) != 0
+
+  def hasTombstones(index: Int): Boolean = (flags(index) & TombstonesFlag) != 0
+
+  private def fingerprintStart(index: Int): Int = if (index == 0) 0 else fingerprintEnds(index - 1)
+}
+
+private[log] object SegmentKeySummary {
+  private val UnkeyedRecordsFlag: Byte = 1
+  private val TombstonesFlag: Byte = 2
+
+  private val EntryOverhead = 128L
+  // base offset, checksum, flags and end of the fingerprints of a batch
+  private val BytesPerBatch = 8 + 8 + 1 + 4
+  private val BytesPerFingerprint = 4
+
+  /**
+   * The fingerprint of a key, the same for the summaries and the filter of the keys of the offset map
+   */
+  def fingerprint(key: ByteBuffer): Int = {
+    // the MurmurHash3 finalizer over the content hash of the buffer
+    var h = key.hashCode
+    h ^= h >>> 16
+    h *= 0x85ebca6b
+    h ^= h >>> 13
+    h *= 0xc2b2ae35
+    h ^ (h >>> 16)
+  }
+
+  /**
+   * Builds the summary of a cleaned segment. The summary of a batch is written as the batch is filtered, before it
+   * is known whether the batch is retained as is, rebuilt or removed: the pending summaries are resolved once the
+   * batches are written with the checksums of the rebuilt batches.
+   */
+  @nonthreadsafe
+  class Builder {
+    private val baseOffsets = mutable.ArrayBuffer[Long]()
+    private val checksums = mutable.ArrayBuffer[Long]()
+    private val flags = mutable.ArrayBuffer[Byte]()
+    private val fingerprintEnds = mutable.ArrayBuffer[Int]()
+    private val fingerprints = mutable.ArrayBuffer[Int]()
+
+    private val pending = mutable.ArrayBuffer[PendingBatch]()
+    private var current: PendingBatch = _
+
+    /**
+     * Start the summary of a batch, the batches of older formats and control batches are not summarized.
+     */
+    def startBatch(batch: RecordBatch): Unit = {
+      current =
+        if (batch.magic < RecordBatch.MAGIC_VALUE_V2 || batch.isControlBatch) null
+        else {
+          val pendingBatch = new PendingBatch(batch.baseOffset, batch.checksum)
+          pending += pendingBatch
+          pendingBatch
+        }
+    }
+
+    /**
+     * Add a record of the current batch to the summary.
+     *
+     * @param key The key of the record, null if the record has no key
+     * @param hasValue Whether the record has a value
+     * @param retained Whether the record is retained
+     */
+    def addRecord(key: ByteBuffer, hasValue: Boolean, retained: Boolean): Unit = {
+      if (current != null) {
+        current.numRecords += 1
+        if (retained) {
+          current.numRetained += 1
+          if (key == null) current.flags = (current.flags | UnkeyedRecordsFlag).toByte
+          else current.fingerprints += fingerprint(key)
+          if (!hasValue) current.flags = (current.flags | TombstonesFlag).toByte
+        }
+      }
+    }
+
+    /**
+     * Add the records of the current batch, retained without reading them, from the summary of the source batch.
+     */
+    def addRecords(summary: SegmentKeySummary, index: Int, numRecords: Int): Unit = {
+      if (current != null) {
+        (0 until summary.numFingerprints(index)).foreach(i => current.fingerprints += summary.fingerprint(index, i))
+        current.numRecords += numRecords
+        current.numRetained += numRecords
+        current.flags = summary.flags(index)
+      }
+    }
+
+    /**
+     * Resolve the pending summaries of the filtered batches once they are written.
+     *
+     * @param rebuiltChecksums The checksums of the batches rebuilt with their retained records, by base offset
+     */
+    def resolve(rebuiltChecksums: collection.Map[Long, Long]): Unit = {
+      pending.foreach { batch =>
+        // a batch whose records are all retained is written as it is, the others are rebuilt or removed
+        val checksum =
+          if (batch.numRecords > 0 && batch.numRetained == batch.numRecords) Some(batch.checksum)
+          else rebuiltChecksums.get(batch.baseOffset)
+        checksum.foreach { batchChecksum =>
+          baseOffsets += batch.baseOffset
+          checksums += batchChecksum
+          flags += batch.flags
+          fingerprints ++= batch.fingerprints
+          fingerprintEnds += fingerprints.size
+        }
+      }
+      pending.clear()
+      current = null
+    }
+
+    def build(): SegmentKeySummary = {
+      resolve(Map.empty)
+      new SegmentKeySummary(baseOffsets.toArray, checksums.toArray, flags.toArray, fingerprintEnds.toArray,
+        fingerprints.toArray)
+    }
+  }
+
+  private class PendingBatch(val baseOffset: Long, val checksum: Long) {
+    var numRecords = 0
+    var numRetained = 0
+    var flags: Byte = 0
+    val fingerprints = mutable.ArrayBuffer[Int]()
+  }
+}
+
+/**
+ * A Bloom filter of the fingerprints of the keys put in the offset map of a cleaning, along with the lowest offset put
+ * in the map. A batch below the lowest offset has no record which is the latest for its key in the map, so that its
+ * records are all retained when the filter doesn't contain any of their fingerprints.
+ *
+ * @param expectedKeys The maximum number of keys in the offset map
+ */
+@nonthreadsafe
+private[log] class KeyFingerprintFilter(expectedKeys: Int) {
+  import KeyFingerprintFilter._
+
+  private val numBits = {
+    val desiredBits = math.max(expectedKeys.toLong * BitsPerKey, 64L)
+    math.min(java.lang.Long.highestOneBit(desiredBits - 1) << 1, MaxBits)
+  }
+  private val bits = new Array[Long]((numBits >>> 6).toInt)
+  private val mask = numBits - 1
+  private var lowestOffset = Long.MaxValue
+
+  def clear(): Unit = {
+    util.Arrays.fill(bits, 0L)
+    lowestOffset = Long.MaxValue
+  }
+
+  def add(key: ByteBuffer, offset: Long): Unit = {
+    val fingerprint = SegmentKeySummary.fingerprint(key)
+    var i = 0
+    while (i < NumProbes) {
+      val bit = probe(fingerprint, i)
+      bits((bit >>> 6).toInt) |= 1L << bit
+      i += 1
+    }
+    lowestOffset = math.min(lowestOffset, offset)
+  }
+
+  def mightContain(fingerprint: Int): Boolean = {
+    var i = 0
+    while (i < NumProbes) {
+      val bit = probe(fingerprint, i)
+      if ((bits((bit >>> 6).toInt) & (1L << bit)) == 0)
+        return false
+      i += 1
+    }
+    true
+  }
+
+  /**
+   * The lowest offset put in the offset map, Long.MaxValue if the map is empty
+   */
+  def minOffset: Long = lowestOffset
+
+  def sizeInBytes: Long = bits.length * 8L
+
+  private def probe(fingerprint: Int, i: Int): Long = {
+    // double hashing, with a second hash derived from the fingerprint
+    val h1 = fingerprint & 0xffffffffL
+    val h2 = (Integer.rotateLeft(fingerprint * 0x9e3779b9, 16) | 1) & 0xffffffffL
+    (h1 + i * h2) & mask
+  }
+}
+
+private[log] object KeyFingerprintFilter {
+  // about 0.2% false positives with four probes when the offset map is full
+  private val BitsPerKey = 16
+  private val NumProbes = 4
+  private val MaxBits = 1L << 32
+}
+
+/**
+ * A cache of the key summaries of the segments cleaned by the cleaner threads, bounded by the size of the summaries.
+ * The summaries of the least recently cleaned segments are evicted first, a segment without summary is cleaned by
+ * reading its records.
+ *
+ * @param maxBytes The maximum size of the summaries in the cache
+ */
+@threadsafe
+private[log] class KeySummaryCache(val maxBytes: Long) {
+  // the summaries in the order of their last access
+  private val summaries = new util.LinkedHashMap[(TopicPartition, Long), SegmentKeySummary](16, 0.75f, true)
+  private var sizeInBytes = 0L
+
+  def get(topicPartition: TopicPartition, baseOffset: Long): Option[SegmentKeySummary] = synchronized {
+    Option(summaries.get((topicPartition, baseOffset)))
+  }
+
+  def put(topicPartition: TopicPartition, baseOffset: Long, summary: SegmentKeySummary): Unit = synchronized {
+    remove(topicPartition, baseOffset)
+    if (summary.sizeInBytes <= maxBytes) {
+      summaries.put((topicPartition, baseOffset), summary)
+      sizeInBytes += summary.sizeInBytes
+      val iterator = summaries.values.iterator
+      while (sizeInBytes > maxBytes) {
+        sizeInBytes -= iterator.next().sizeInBytes
+        iterator.remove()
+      }
+    }
+  }
+
+  def remove(topicPartition: TopicPartition, baseOffset: Long): Unit = synchronized {
+    val removed = summaries.remove((topicPartition, baseOffset))
+    if (removed != null)
+      sizeInBytes -= removed.sizeInBytes
+  }
+
+  def size: Long = synchronized(sizeInBytes)
+}
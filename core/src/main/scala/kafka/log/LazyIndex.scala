@@ -52,6 +52,16 @@ class LazyIndex[T <: AbstractIndex] private (@volatile private var indexWrapper:
 
   def file: File = indexWrapper.file
 
+  /**
+   * Return the index if it has already been loaded, without loading it otherwise.
+   */
+  def getIfLoaded: Option[T] = {
+    indexWrapper match {
+      case indexValue: IndexValue[T] => Some(indexValue.index)
+      case _: IndexFile => None
+    }
+  }
+
   def get: T = {
     indexWrapper match {
       case indexValue: IndexValue[T] => indexValue.index
@@ -102,11 +112,13 @@ class LazyIndex[T <: AbstractIndex] private (@volatile private var indexWrapper:
 
 object LazyIndex {
 
-  def forOffset(file: File, baseOffset: Long, maxIndexSize: Int = -1, writable: Boolean = true): LazyIndex[OffsetIndex] =
-    new LazyIndex(new IndexFile(file), file => new OffsetIndex(file, baseOffset, maxIndexSize, writable))
+  def forOffset(file: File, baseOffset: Long, maxIndexSize: Int = -1, writable: Boolean = true,
+                warmSectionBytes: Int = AbstractIndex.DefaultWarmSectionBytes): LazyIndex[OffsetIndex] =
+    new LazyIndex(new IndexFile(file), file => new OffsetIndex(file, baseOffset, maxIndexSize, writable, warmSectionBytes))
 
-  def forTime(file: File, baseOffset: Long, maxIndexSize: Int = -1, writable: Boolean = true): LazyIndex[TimeIndex] =
-    new LazyIndex(new IndexFile(file), file => new TimeIndex(file, baseOffset, maxIndexSize, writable))
+  def forTime(file: File, baseOffset: Long, maxIndexSize: Int = -1, writable: Boolean = true,
+              warmSectionBytes: Int = AbstractIndex.DefaultWarmSectionBytes): LazyIndex[TimeIndex] =
+    new LazyIndex(new IndexFile(file), file => new TimeIndex(file, baseOffset, maxIndexSize, writable, warmSectionBytes))
 
   private sealed trait IndexWrapper {
 
@@ -24,7 +24,7 @@ import java.text.NumberFormat
 import java.util.Map.{Entry => JEntry}
 import java.util.Optional
 import java.util.concurrent.atomic._
-import java.util.concurrent.{ConcurrentNavigableMap, ConcurrentSkipListMap, TimeUnit}
+import java.util.concurrent.{Callable, CompletableFuture, ConcurrentNavigableMap, ConcurrentSkipListMap, ExecutionException, ExecutorService, Future, TimeUnit}
 import java.util.regex.Pattern
 import kafka.api.{ApiVersion, KAFKA_0_10_0_IV0}
 import kafka.common.{LogSegmentOffsetOverflowException, LongRef, OffsetsOutOfOrderException, UnexpectedAppendOffsetException}
@@ -34,6 +34,7 @@ import kafka.server.checkpoints.LeaderEpochCheckpointFile
 import kafka.server.epoch.LeaderEpochFileCache
 import kafka.server.{BrokerTopicStats, FetchDataInfo, FetchHighWatermark, FetchIsolation, FetchLogEnd, FetchTxnCommitted, LogDirFailureChannel, LogOffsetMetadata, OffsetAndEpoch, PartitionMetadataFile}
 import kafka.utils._
+import org.apache.kafka.common.compress.ZstdDictionaries
 import org.apache.kafka.common.errors._
 import org.apache.kafka.common.message.FetchResponseData
 import org.apache.kafka.common.record.FileRecords.TimestampAndOffset
@@ -96,6 +97,8 @@ object LeaderHwChange {
  * @param lastOffsetOfFirstBatch The last offset of the first batch
  * @param leaderHwChange Incremental if the high watermark needs to be increased after appending record.
  *                       Same if high watermark is not changed. None is the default value and it means append failed
+ * @param flushCompletion The completion of the flush of the log requested by the append to the flush service of the
+ *                        log directory, if any
  *
  */
 case class LogAppendInfo(var firstOffset: Option[Long],
@@ -114,7 +117,8 @@ case class LogAppendInfo(var firstOffset: Option[Long],
                          lastOffsetOfFirstBatch: Long,
                          recordErrors: Seq[RecordError] = List(),
                          errorMessage: String = null,
-                         leaderHwChange: LeaderHwChange = LeaderHwChange.None) {
+                         leaderHwChange: LeaderHwChange = LeaderHwChange.None,
+                         var flushCompletion: Option[CompletableFuture[Void]] = None) {
   /**
    * Get the first offset if it exists, else get the last offset of the first batch
    * For magic versions 2 and newer, this method will return first offset. For magic versions
@@ -235,6 +239,15 @@ case object SegmentDeletion extends LogStartOffsetIncrementReason {
  * @param producerIdExpirationCheckIntervalMs How often to check for producer ids which need to be expired
  * @param hadCleanShutdown boolean flag to indicate if the Log had a clean/graceful shutdown last time. true means
  *                         clean shutdown whereas false means a crash.
+ * @param recovery The loading of the log directory this log is loaded with, which provides the executor recovering
+ *                 the segments of the log in parallel and tracks the progress of the recovery
+ * @param tailCache The cache of the records most recently appended to the logs, if enabled
+ * @param flushService The service flushing the logs of the log directory, if enabled. The log is flushed by the service
+ *                     when the appends reach the flush interval and when it rolls, otherwise by the appending thread
+ *                     and the scheduler respectively
+ * @param indexWarmSectionBytes The size in bytes of the warm section of the indexes of the segments of the log
+ * @param zstdDictionaries The zstd dictionaries of the broker, which the appended batches compressed with a zstd
+ *                         dictionary are decompressed with to be validated if the topic enables them
  */
 @threadsafe
 class Log(@volatile private var _dir: File,
@@ -249,7 +262,12 @@ class Log(@volatile private var _dir: File,
           val topicPartition: TopicPartition,
           val producerStateManager: ProducerStateManager,
           logDirFailureChannel: LogDirFailureChannel,
-          private val hadCleanShutdown: Boolean = true) extends Logging with KafkaMetricsGroup {
+          private val hadCleanShutdown: Boolean = true,
+          recovery: Option[LogDirRecovery] = None,
+          tailCache: Option[LogTailCache] = None,
+          flushService: Option[LogFlushService] = None,
+          val indexWarmSectionBytes: Int = AbstractIndex.DefaultWarmSectionBytes,
+          val zstdDictionaries: ZstdDictionaries = ZstdDictionaries.EMPTY) extends Logging with KafkaMetricsGroup {
 
   import kafka.log.Log._
 
@@ -258,6 +276,9 @@ class Log(@volatile private var _dir: File,
   /* A lock that guards all modifications to the log */
   private val lock = new Object
 
+  /* The records most recently appended to the active segment, if the tail cache is enabled */
+  private val tailCacheEntry = tailCache.map(_.forLog(topicPartition))
+
   // The memory mapped buffer for index files of this log will be closed with either delete() or closeHandlers()
   // After memory mapped buffer is closed, no disk IO operation should be performed for this log
   @volatile private var isMemoryMappedBufferClosed = false
@@ -547,6 +568,13 @@ class Log(@volatile private var _dir: File,
   val producerExpireCheck = scheduler.schedule(name = "PeriodicProducerExpirationCheck", fun = () => {
     lock synchronized {
       producerStateManager.removeExpiredProducers(time.milliseconds)
+      if (producerStateManager.maxIncrementalSnapshots > 0) {
+        maybeHandleIOException(s"Error while taking producer snapshot for $topicPartition in dir ${dir.getParent}") {
+          producerStateManager.maybeTakeIncrementalSnapshot()
+          // the snapshots taken between the segment base offsets are not deleted with the segments
+          producerStateManager.deleteSnapshotsBefore(logStartOffset)
+        }
+      }
     }
   }, period = producerIdExpirationCheckIntervalMs, delay = producerIdExpirationCheckIntervalMs, unit = TimeUnit.MILLISECONDS)
 
@@ -677,7 +705,8 @@ class Log(@volatile private var _dir: File,
           baseOffset = baseOffset,
           config,
           time = time,
-          fileAlreadyExists = true)
+          fileAlreadyExists = true,
+          indexWarmSectionBytes = indexWarmSectionBytes)
 
         try segment.sanityCheck(timeIndexFileNewlyCreated)
         catch {
@@ -703,14 +732,24 @@ class Log(@volatile private var _dir: File,
    * @throws LogSegmentOffsetOverflowException if the segment contains messages that cause index offset overflow
    */
   private def recoverSegment(segment: LogSegment,
-                             leaderEpochCache: Option[LeaderEpochFileCache] = None): Int = lock synchronized {
+                             leaderEpochCache: Option[LeaderEpochFileCache] = None): Int =
+    recoverWithProducerState(segment)(segment.recover(_, leaderEpochCache))
+
+  /**
+   * Recover the transaction index and the producer state of a segment whose indexes were recovered with
+   * `LogSegment.recoverIndexes`, updating the leader epoch cache.
+   */
+  private def recoverSegmentProducerState(segment: LogSegment): Unit =
+    recoverWithProducerState(segment)(segment.recoverProducerState(_, leaderEpochCache))
+
+  private def recoverWithProducerState[T](segment: LogSegment)(recover: ProducerStateManager => T): T = lock synchronized {
     val producerStateManager = new ProducerStateManager(topicPartition, dir, maxProducerIdExpirationMs)
     rebuildProducerState(segment.baseOffset, reloadFromCleanShutdown = false, producerStateManager)
-    val bytesTruncated = segment.recover(producerStateManager, leaderEpochCache)
+    val result = recover(producerStateManager)
     // once we have recovered the segment's data, take a snapshot to ensure that we won't
     // need to reload the same segment again while recovering another segment.
     producerStateManager.takeSnapshot()
-    bytesTruncated
+    result
   }
 
   /**
@@ -731,7 +770,8 @@ class Log(@volatile private var _dir: File,
         baseOffset = baseOffset,
         config,
         time = time,
-        fileSuffix = SwapFileSuffix)
+        fileSuffix = SwapFileSuffix,
+        indexWarmSectionBytes = indexWarmSectionBytes)
       info(s"Found log file ${swapFile.getPath} from interrupted swap operation, repairing.")
       recoverSegment(swapSegment)
 
@@ -793,7 +833,8 @@ class Log(@volatile private var _dir: File,
             baseOffset = 0,
             config,
             time = time,
-            initFileSize = this.initFileSize))
+            initFileSize = this.initFileSize,
+            indexWarmSectionBytes = indexWarmSectionBytes))
        }
       0
     }
@@ -835,30 +876,25 @@ class Log(@volatile private var _dir: File,
     // if we have the clean shutdown marker, skip recovery
     if (!hadCleanShutdown) {
       // okay we need to actually recover this log
-      val unflushed = logSegments(this.recoveryPoint, Long.MaxValue).iterator
-      var truncated = false
+      val unflushed = logSegments(this.recoveryPoint, Long.MaxValue).toIndexedSeq
+      val unflushedBytes = unflushed.map(_.size.toLong)
+      var numRecovered = 0
+      def segmentsRecovered(numSegments: Int): Unit = {
+        recovery.foreach(_.segmentsRecovered(numSegments, unflushedBytes.slice(numRecovered, numRecovered + numSegments).sum))
+        numRecovered += numSegments
+      }
 
-      while (unflushed.hasNext && !truncated) {
-        val segment = unflushed.next()
-        info(s"Recovering unflushed segment ${segment.baseOffset}")
-        val truncatedBytes =
-          try {
-            recoverSegment(segment, leaderEpochCache)
-          } catch {
-            case _: InvalidOffsetException =>
-              val startOffset = segment.baseOffset
-              warn("Found invalid offset during recovery. Deleting the corrupt segment and " +
-                s"creating an empty one with starting offset $startOffset")
-              segment.truncateTo(startOffset)
-          }
-        if (truncatedBytes > 0) {
-          // we had an invalid message, delete all remaining log
-          warn(s"Corruption found in segment ${segment.baseOffset}, truncating to offset ${segment.readNextOffset}")
-          removeAndDeleteSegments(unflushed.toList,
-            asyncDelete = true,
-            reason = LogRecovery)
-          truncated = true
+      recovery.foreach(_.logRecoveryStarted(unflushed.size, unflushedBytes.sum))
+      try {
+        recovery.flatMap(recovery => recovery.segmentRecoveryExecutor.map(_ -> recovery.segmentRecoveryPipelineDepth)) match {
+          case Some((executor, pipelineDepth)) if unflushed.size > 1 =>
+            recoverSegmentsPipelined(unflushed, executor, pipelineDepth, () => segmentsRecovered(1))
+          case _ =>
+            recoverSegments(unflushed, () => segmentsRecovered(1))
         }
+      } finally {
+        // the segments deleted after a corrupt segment, or left unrecovered after an error, are done as well
+        segmentsRecovered(unflushed.size - numRecovered)
       }
     }
 
@@ -880,13 +916,111 @@ class Log(@volatile private var _dir: File,
         config,
         time = time,
         initFileSize = this.initFileSize,
-        preallocate = config.preallocate))
+        preallocate = config.preallocate,
+        indexWarmSectionBytes = indexWarmSectionBytes))
     }
 
     recoveryPoint = activeSegment.readNextOffset
     recoveryPoint
   }
 
+  /**
+   * Recover the given unflushed segments one after the other, deleting the segments after the first corrupt segment.
+   */
+  private def recoverSegments(unflushed: Seq[LogSegment], segmentRecovered: () => Unit): Unit = {
+    val iter = unflushed.iterator
+    var truncated = false
+
+    while (iter.hasNext && !truncated) {
+      val segment = iter.next()
+      info(s"Recovering unflushed segment ${segment.baseOffset}")
+      val truncatedBytes = truncateIfInvalidOffset(segment) {
+        recoverSegment(segment, leaderEpochCache)
+      }
+      segmentRecovered()
+      if (truncatedBytes > 0) {
+        deleteSegmentsAfterCorruption(segment, iter.toList)
+        truncated = true
+      }
+    }
+  }
+
+  /**
+   * Recover the given unflushed segments, deleting the segments after the first corrupt segment. The indexes of up to
+   * `pipelineDepth` segments are rebuilt by the executor while the calling thread recovers the producer state and the
+   * transaction index of the segments in offset order, which has to be done one segment after the other.
+   */
+  private def recoverSegmentsPipelined(unflushed: Seq[LogSegment],
+                                       executor: ExecutorService,
+                                       pipelineDepth: Int,
+                                       segmentRecovered: () => Unit): Unit = {
+    val inFlight = mutable.Queue[(LogSegment, Future[Int])]()
+    val remaining = unflushed.iterator
+
+    def submitNext(): Unit = {
+      if (remaining.hasNext) {
+        val segment = remaining.next()
+        inFlight += segment -> executor.submit(new Callable[Int] {
+          override def call(): Int = truncateIfInvalidOffset(segment)(segment.recoverIndexes())
+        })
+      }
+    }
+
+    // the segments must not be recovered by the executor anymore once this method returns
+    def awaitInFlight(): Unit = inFlight.foreach { case (_, future) =>
+      try future.get
+      catch {
+        case _: ExecutionException =>
+      }
+    }
+
+    try {
+      (0 until math.max(1, pipelineDepth)).foreach(_ => submitNext())
+      var truncated = false
+
+      while (inFlight.nonEmpty && !truncated) {
+        val (segment, future) = inFlight.dequeue()
+        info(s"Recovering unflushed segment ${segment.baseOffset}")
+        val truncatedBytes =
+          try future.get
+          catch {
+            case e: ExecutionException => throw e.getCause
+          }
+        recoverSegmentProducerState(segment)
+        segmentRecovered()
+        if (truncatedBytes > 0) {
+          awaitInFlight()
+          deleteSegmentsAfterCorruption(segment, inFlight.map(_._1).toList ++ remaining)
+          truncated = true
+        } else {
+          submitNext()
+        }
+      }
+    } finally {
+      awaitInFlight()
+    }
+  }
+
+  private def truncateIfInvalidOffset(segment: LogSegment)(recover: => Int): Int = {
+    try {
+      recover
+    } catch {
+      case _: InvalidOffsetException =>
+        val startOffset = segment.baseOffset
+        warn("Found invalid offset during recovery. Deleting the corrupt segment and " +
+          s"creating an empty one with starting offset $startOffset")
+        segment.truncateTo(startOffset)
+    }
+  }
+
+  private def deleteSegmentsAfterCorruption(segment: LogSegment, segmentsToDelete: List[LogSegment]): Unit = {
+    // we had an invalid message, delete all remaining log
+    warn(s"Corruption found in segment ${segment.baseOffset}, truncating to offset ${segment.readNextOffset}")
+    removeAndDeleteSegments(segmentsToDelete,
+      asyncDelete = true,
+      reason = LogRecovery)
+  }
+
   // Rebuild producer state until lastOffset. This method may be called from the recovery code path, and thus must be
   // free of all side-effects, i.e. it must not update any log-specific state.
   private def rebuildProducerState(lastOffset: Long,
@@ -1006,6 +1140,7 @@ class Log(@volatile private var _dir: File,
         producerStateManager.takeSnapshot()
         logSegments.foreach(_.close())
       }
+      tailCacheEntry.foreach(_.clear())
     }
   }
 
@@ -1040,6 +1175,7 @@ class Log(@volatile private var _dir: File,
     debug("Closing handlers")
     lock synchronized {
       logSegments.foreach(_.closeHandlers())
+      tailCacheEntry.foreach(_.clear())
       isMemoryMappedBufferClosed = true
     }
   }
@@ -1110,58 +1246,29 @@ class Log(@volatile private var _dir: File,
       // trim any invalid bytes or partial messages before appending it to the on-disk log
       var validRecords = trimInvalidBytes(records, appendInfo)
 
+      // The offsets of batches in the v2 message format are deltas from the base offset of the batch, which is not
+      // covered by the batch CRC. Such batches are validated (and possibly recompressed) before taking the lock with
+      // offsets starting from 0, so that concurrent appends to the partition only serialize on shifting the offsets
+      // to the log end offset and on the write to the segment.
+      // read the config once so that a concurrent update of the message format cannot change the format of the
+      // records validated before taking the lock
+      val appendConfig = config
+      val validateBeforeLock = assignOffsets && appendConfig.messageFormatVersion.recordVersion.value >= RecordBatch.MAGIC_VALUE_V2
+      if (validateBeforeLock)
+        validRecords = validateAndAssignOffsets(appendConfig, records, validRecords, appendInfo, firstOffset = 0L,
+          leaderEpoch, origin, interBrokerProtocolVersion, ignoreRecordSize)
+
       // they are valid, insert them in the log
       lock synchronized {
         maybeHandleIOException(s"Error while appending records to $topicPartition in dir ${dir.getParent}") {
           checkIfMemoryMappedBufferClosed()
 
-          if (assignOffsets) {
-            // assign offsets to the message set
-            val offset = new LongRef(nextOffsetMetadata.messageOffset)
-            appendInfo.firstOffset = Some(offset.value)
-            val now = time.milliseconds
-            val validateAndOffsetAssignResult = try {
-              LogValidator.validateMessagesAndAssignOffsets(validRecords,
-                topicPartition,
-                offset,
-                time,
-                now,
-                appendInfo.sourceCodec,
-                appendInfo.targetCodec,
-                config.compact,
-                config.messageFormatVersion.recordVersion.value,
-                config.messageTimestampType,
-                config.messageTimestampDifferenceMaxMs,
-                leaderEpoch,
-                origin,
-                interBrokerProtocolVersion,
-                brokerTopicStats)
-            } catch {
-              case e: IOException =>
-                throw new KafkaException(s"Error validating messages while appending to log $name", e)
-            }
-            validRecords = validateAndOffsetAssignResult.validatedRecords
-            appendInfo.maxTimestamp = validateAndOffsetAssignResult.maxTimestamp
-            appendInfo.offsetOfMaxTimestamp = validateAndOffsetAssignResult.shallowOffsetOfMaxTimestamp
-            appendInfo.lastOffset = offset.value - 1
-            appendInfo.recordConversionStats = validateAndOffsetAssignResult.recordConversionStats
-            if (config.messageTimestampType == TimestampType.LOG_APPEND_TIME)
-              appendInfo.logAppendTime = now
-
-            // re-validate message sizes if there's a possibility that they have changed (due to re-compression or message
-            // format conversion)
-            if (!ignoreRecordSize && validateAndOffsetAssignResult.messageSizeMaybeChanged) {
-              validRecords.batches.forEach { batch =>
-                if (batch.sizeInBytes > config.maxMessageSize) {
-                  // we record the original message set size instead of the trimmed size
-                  // to be consistent with pre-compression bytesRejectedRate recording
-                  brokerTopicStats.topicStats(topicPartition.topic).bytesRejectedRate.mark(records.sizeInBytes)
-                  brokerTopicStats.allTopicsStats.bytesRejectedRate.mark(records.sizeInBytes)
-                  throw new RecordTooLargeException(s"Message batch size is ${batch.sizeInBytes} bytes in append to" +
-                    s"partition $topicPartition which exceeds the maximum configured size of ${config.maxMessageSize}.")
-                }
-              }
-            }
+          if (validateBeforeLock) {
+            shiftOffsets(validRecords, appendInfo, nextOffsetMetadata.messageOffset)
+          } else if (assignOffsets) {
+            validRecords = validateAndAssignOffsets(appendConfig, records, validRecords, appendInfo,
+              firstOffset = nextOffsetMetadata.messageOffset, leaderEpoch, origin, interBrokerProtocolVersion,
+              ignoreRecordSize)
           } else {
             // we are taking the offsets we are given
             if (!appendInfo.offsetsMonotonic)
@@ -1232,6 +1339,7 @@ class Log(@volatile private var _dir: File,
                 largestTimestamp = appendInfo.maxTimestamp,
                 shallowOffsetOfMaxTimestamp = appendInfo.offsetOfMaxTimestamp,
                 records = validRecords)
+              tailCacheEntry.foreach(_.append(segment.baseOffset, logOffsetMetadata.relativePositionInSegment, validRecords))
 
               // Increment the log end offset. We do this immediately after the append because a
               // write to the transaction index below may fail and we want to ensure that the offsets
@@ -1264,7 +1372,12 @@ class Log(@volatile private var _dir: File,
                 s"next offset: ${nextOffsetMetadata.messageOffset}, " +
                 s"and messages: $validRecords")
 
-              if (unflushedMessages >= config.flushInterval) flush()
+              if (unflushedMessages >= config.flushInterval) {
+                flushService match {
+                  case Some(service) => appendInfo.flushCompletion = Some(service.requestFlush(this, logEndOffset))
+                  case None => flush()
+                }
+              }
           }
           appendInfo
         }
@@ -1272,6 +1385,91 @@ class Log(@volatile private var _dir: File,
     }
   }
 
+  /**
+   * Validate the records of a leader append and assign them offsets starting from the given offset. The records may
+   * be converted to the message format of the log or recompressed, in which case new records are returned.
+   *
+   * @param config The config of the log the records are validated against
+   * @param records The records of the append, before trimming any invalid bytes
+   * @param validRecords The trimmed records to validate
+   * @param appendInfo The information about the append, which is updated with the assigned offsets and timestamps
+   * @param firstOffset The offset assigned to the first record
+   * @throws RecordTooLargeException If a batch exceeds the max message size after conversion or recompression
+   * @return The validated records
+   */
+  private def validateAndAssignOffsets(config: LogConfig,
+                                       records: MemoryRecords,
+                                       validRecords: MemoryRecords,
+                                       appendInfo: LogAppendInfo,
+                                       firstOffset: Long,
+                                       leaderEpoch: Int,
+                                       origin: AppendOrigin,
+                                       interBrokerProtocolVersion: ApiVersion,
+                                       ignoreRecordSize: Boolean): MemoryRecords = {
+    // assign offsets to the message set
+    val offset = new LongRef(firstOffset)
+    appendInfo.firstOffset = Some(offset.value)
+    val now = time.milliseconds
+    val validateAndOffsetAssignResult = try {
+      LogValidator.validateMessagesAndAssignOffsets(validRecords,
+        topicPartition,
+        offset,
+        time,
+        now,
+        appendInfo.sourceCodec,
+        appendInfo.targetCodec,
+        config.compact,
+        config.messageFormatVersion.recordVersion.value,
+        config.messageTimestampType,
+        config.messageTimestampDifferenceMaxMs,
+        leaderEpoch,
+        origin,
+        interBrokerProtocolVersion,
+        brokerTopicStats,
+        if (config.zstdDictionaryEnable) zstdDictionaries else ZstdDictionaries.EMPTY)
+    } catch {
+      case e: IOException =>
+        throw new KafkaException(s"Error validating messages while appending to log $name", e)
+    }
+    val validatedRecords = validateAndOffsetAssignResult.validatedRecords
+    appendInfo.maxTimestamp = validateAndOffsetAssignResult.maxTimestamp
+    appendInfo.offsetOfMaxTimestamp = validateAndOffsetAssignResult.shallowOffsetOfMaxTimestamp
+    appendInfo.lastOffset = offset.value - 1
+    appendInfo.recordConversionStats = validateAndOffsetAssignResult.recordConversionStats
+    if (config.messageTimestampType == TimestampType.LOG_APPEND_TIME)
+      appendInfo.logAppendTime = now
+
+    // re-validate message sizes if there's a possibility that they have changed (due to re-compression or message
+    // format conversion)
+    if (!ignoreRecordSize && validateAndOffsetAssignResult.messageSizeMaybeChanged) {
+      validatedRecords.batches.forEach { batch =>
+        if (batch.sizeInBytes > config.maxMessageSize) {
+          // we record the original message set size instead of the trimmed size
+          // to be consistent with pre-compression bytesRejectedRate recording
+          brokerTopicStats.topicStats(topicPartition.topic).bytesRejectedRate.mark(records.sizeInBytes)
+          brokerTopicStats.allTopicsStats.bytesRejectedRate.mark(records.sizeInBytes)
+          throw new RecordTooLargeException(s"Message batch size is ${batch.sizeInBytes} bytes in append to" +
+            s"partition $topicPartition which exceeds the maximum configured size of ${config.maxMessageSize}.")
+        }
+      }
+    }
+    validatedRecords
+  }
+
+  /**
+   * Shift the offsets of records validated with offsets starting from 0 so that they start from the given offset.
+   * This only rewrites the base offset of the batches, so it must only be used for the v2 message format.
+   */
+  private def shiftOffsets(validRecords: MemoryRecords, appendInfo: LogAppendInfo, firstOffset: Long): Unit = {
+    validRecords.batches.forEach { batch =>
+      batch.setLastOffset(batch.lastOffset + firstOffset)
+    }
+    appendInfo.firstOffset = appendInfo.firstOffset.map(_ + firstOffset)
+    appendInfo.lastOffset += firstOffset
+    if (appendInfo.offsetOfMaxTimestamp >= 0)
+      appendInfo.offsetOfMaxTimestamp += firstOffset
+  }
+
   private def checkForLogDirFailure(): Unit = {
     if (logDirOffline) {
       throw new KafkaStorageException(s"The log dir $parentDir is offline due to a previous IO exception.");
@@ -1504,6 +1702,22 @@ class Log(@volatile private var _dir: File,
       abortedTransactions = abortedTransactions)
   }
 
+  /**
+   * Read messages from the log, from the tail cache if it has them.
+   *
+   * @param startOffset The offset to begin reading at
+   * @param maxLength The maximum number of bytes to read
+   * @param isolation The fetch isolation, which controls the maximum offset we are allowed to read
+   * @param minOneMessage If this is true, the first message will be returned even if it exceeds `maxLength` (if one exists)
+   * @throws OffsetOutOfRangeException If startOffset is beyond the log end offset or before the log start offset
+   * @return The fetch data information including fetch starting offset metadata and messages read.
+   */
+  def read(startOffset: Long,
+           maxLength: Int,
+           isolation: FetchIsolation,
+           minOneMessage: Boolean): FetchDataInfo =
+    read(startOffset, maxLength, isolation, minOneMessage, readFromTailCache = true)
+
   /**
    * Read messages from the log.
    *
@@ -1511,13 +1725,15 @@ class Log(@volatile private var _dir: File,
    * @param maxLength The maximum number of bytes to read
    * @param isolation The fetch isolation, which controls the maximum offset we are allowed to read
    * @param minOneMessage If this is true, the first message will be returned even if it exceeds `maxLength` (if one exists)
+   * @param readFromTailCache Whether the messages may be read from the tail cache instead of from the segment
    * @throws OffsetOutOfRangeException If startOffset is beyond the log end offset or before the log start offset
    * @return The fetch data information including fetch starting offset metadata and messages read.
    */
   def read(startOffset: Long,
            maxLength: Int,
            isolation: FetchIsolation,
-           minOneMessage: Boolean): FetchDataInfo = {
+           minOneMessage: Boolean,
+           readFromTailCache: Boolean): FetchDataInfo = {
     maybeHandleIOException(s"Exception while reading from $topicPartition in dir ${dir.getParent}") {
       trace(s"Reading maximum $maxLength bytes at offset $startOffset from log with " +
         s"total length $size bytes")
@@ -1546,34 +1762,42 @@ class Log(@volatile private var _dir: File,
       else if (startOffset > maxOffsetMetadata.messageOffset)
         emptyFetchDataInfo(convertToOffsetMetadataOrThrow(startOffset), includeAbortedTxns)
       else {
-        // Do the read on the segment with a base offset less than the target offset
-        // but if that segment doesn't contain any messages with an offset greater than that
-        // continue to read from successive segments until we get some messages or we reach the end of the log
-        var done = segmentEntry == null
-        var fetchDataInfo: FetchDataInfo = null
-        while (!done) {
-          val segment = segmentEntry.getValue
-
-          val maxPosition =
-            // Use the max offset position if it is on this segment; otherwise, the segment size is the limit.
-            if (maxOffsetMetadata.segmentBaseOffset == segment.baseOffset) maxOffsetMetadata.relativePositionInSegment
-            else segment.size
-
-          fetchDataInfo = segment.read(startOffset, maxLength, maxPosition, minOneMessage)
-          if (fetchDataInfo != null) {
-            if (includeAbortedTxns)
-              fetchDataInfo = addAbortedTransactions(startOffset, segmentEntry, fetchDataInfo)
-          } else segmentEntry = segments.higherEntry(segmentEntry.getKey)
-
-          done = fetchDataInfo != null || segmentEntry == null
-        }
+        // Read from the tail cache if it has the records at the start offset, they are then in the active segment
+        val cachedFetchDataInfo = tailCacheEntry.filter(_ => readFromTailCache)
+          .flatMap(_.read(startOffset, maxLength, maxOffsetMetadata, minOneMessage))
+        cachedFetchDataInfo.map { fetchDataInfo =>
+          if (includeAbortedTxns) addAbortedTransactions(startOffset, segmentEntry, fetchDataInfo)
+          else fetchDataInfo
+        }.getOrElse {
+          // Do the read on the segment with a base offset less than the target offset
+          // but if that segment doesn't contain any messages with an offset greater than that
+          // continue to read from successive segments until we get some messages or we reach the end of the log
+          var done = segmentEntry == null
+          var fetchDataInfo: FetchDataInfo = null
+          while (!done) {
+            val segment = segmentEntry.getValue
+
+            val maxPosition =
+              // Use the max offset position if it is on this segment; otherwise, the segment size is the limit.
+              if (maxOffsetMetadata.segmentBaseOffset == segment.baseOffset) maxOffsetMetadata.relativePositionInSegment
+              else segment.size
+
+            fetchDataInfo = segment.read(startOffset, maxLength, maxPosition, minOneMessage)
+            if (fetchDataInfo != null) {
+              if (includeAbortedTxns)
+                fetchDataInfo = addAbortedTransactions(startOffset, segmentEntry, fetchDataInfo)
+            } else segmentEntry = segments.higherEntry(segmentEntry.getKey)
+
+            done = fetchDataInfo != null || segmentEntry == null
+          }
 
-        if (fetchDataInfo != null) fetchDataInfo
-        else {
-          // okay we are beyond the end of the last segment with no data fetched although the start offset is in range,
-          // this can happen when all messages with offset larger than start offsets have been deleted.
-          // In this case, we will return the empty set with log end offset metadata
-          FetchDataInfo(nextOffsetMetadata, MemoryRecords.EMPTY)
+          if (fetchDataInfo != null) fetchDataInfo
+          else {
+            // okay we are beyond the end of the last segment with no data fetched although the start offset is in range,
+            // this can happen when all messages with offset larger than start offsets have been deleted.
+            // In this case, we will return the empty set with log end offset metadata
+            FetchDataInfo(nextOffsetMetadata, MemoryRecords.EMPTY)
+          }
         }
       }
     }
@@ -1977,15 +2201,21 @@ class Log(@volatile private var _dir: File,
           config,
           time = time,
           initFileSize = initFileSize,
-          preallocate = config.preallocate)
+          preallocate = config.preallocate,
+          indexWarmSectionBytes = indexWarmSectionBytes)
         addSegment(segment)
+        // the cache only has records of the active segment
+        tailCacheEntry.foreach(_.clear())
 
         // We need to update the segment base offset and append position data of the metadata when log rolls.
         // The next offset should not change.
         updateLogEndOffset(nextOffsetMetadata.messageOffset)
 
         // schedule an asynchronous flush of the old segment
-        scheduler.schedule("flush-log", () => flush(newOffset), delay = 0L)
+        flushService match {
+          case Some(service) => service.requestFlush(this, newOffset)
+          case None => scheduler.schedule("flush-log", () => flush(newOffset), delay = 0L)
+        }
 
         info(s"Rolled new log segment at offset $newOffset in ${time.hiResClockMs() - start} ms.")
 
@@ -2039,6 +2269,7 @@ class Log(@volatile private var _dir: File,
         checkIfMemoryMappedBufferClosed()
         producerExpireCheck.cancel(true)
         removeAndDeleteSegments(logSegments, asyncDelete = false, LogDeletion)
+        tailCacheEntry.foreach(_.clear())
         leaderEpochCache.foreach(_.clear())
         Utils.delete(dir)
         // File handlers will be closed if this log is deleted
@@ -2129,7 +2360,8 @@ class Log(@volatile private var _dir: File,
           config = config,
           time = time,
           initFileSize = initFileSize,
-          preallocate = config.preallocate))
+          preallocate = config.preallocate,
+          indexWarmSectionBytes = indexWarmSectionBytes))
         leaderEpochCache.foreach(_.clearAndFlush())
         producerStateManager.truncateFullyAndStartAt(newOffset)
 
@@ -2145,6 +2377,7 @@ class Log(@volatile private var _dir: File,
     startOffset: Long,
     endOffset: Long
   ): Unit = {
+    tailCacheEntry.foreach(_.clear())
     logStartOffset = startOffset
     nextOffsetMetadata = LogOffsetMetadata(endOffset, activeSegment.baseOffset, activeSegment.size)
     recoveryPoint = math.min(recoveryPoint, endOffset)
@@ -2316,6 +2549,7 @@ class Log(@volatile private var _dir: File,
    */
   private[log] def replaceSegments(newSegments: Seq[LogSegment], oldSegments: Seq[LogSegment], isRecoveredSwapFile: Boolean = false): Unit = {
     lock synchronized {
+      tailCacheEntry.foreach(_.clear())
       val sortedNewSegments = newSegments.sortBy(_.baseOffset)
       // Some old segments may have been removed from index and scheduled for async deletion after the caller reads segments
       // but before this method is executed. We want to filter out those segments to avoid calling asyncDeleteSegment()
@@ -2520,11 +2754,19 @@ object Log {
             maxProducerIdExpirationMs: Int,
             producerIdExpirationCheckIntervalMs: Int,
             logDirFailureChannel: LogDirFailureChannel,
-            lastShutdownClean: Boolean = true): Log = {
+            lastShutdownClean: Boolean = true,
+            recovery: Option[LogDirRecovery] = None,
+            maxIncrementalProducerSnapshots: Int = 0,
+            tailCache: Option[LogTailCache] = None,
+            flushService: Option[LogFlushService] = None,
+            indexWarmSectionBytes: Int = AbstractIndex.DefaultWarmSectionBytes,
+            zstdDictionaries: ZstdDictionaries = ZstdDictionaries.EMPTY): Log = {
     val topicPartition = Log.parseTopicPartitionName(dir)
-    val producerStateManager = new ProducerStateManager(topicPartition, dir, maxProducerIdExpirationMs)
+    val producerStateManager = new ProducerStateManager(topicPartition, dir, maxProducerIdExpirationMs,
+      maxIncrementalProducerSnapshots)
     new Log(dir, config, logStartOffset, recoveryPoint, scheduler, brokerTopicStats, time, maxProducerIdExpirationMs,
-      producerIdExpirationCheckIntervalMs, topicPartition, producerStateManager, logDirFailureChannel, lastShutdownClean)
+      producerIdExpirationCheckIntervalMs, topicPartition, producerStateManager, logDirFailureChannel, lastShutdownClean,
+      recovery, tailCache, flushService, indexWarmSectionBytes, zstdDictionaries)
   }
 
   /**
@@ -20,7 +20,8 @@ package kafka.log
 import java.io.{File, IOException}
 import java.nio._
 import java.util.Date
-import java.util.concurrent.TimeUnit
+import java.util.concurrent.{ArrayBlockingQueue, BlockingQueue, Callable, ExecutionException, ExecutorService, Executors, Future, LinkedBlockingQueue, ThreadFactory, TimeUnit}
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong, AtomicReference}
 
 import kafka.common._
 import kafka.metrics.KafkaMetricsGroup
@@ -28,11 +29,12 @@ import kafka.server.{BrokerReconfigurable, KafkaConfig, LogDirFailureChannel}
 import kafka.utils._
 import org.apache.kafka.common.{KafkaException, TopicPartition}
 import org.apache.kafka.common.config.ConfigException
+import org.apache.kafka.common.compress.ZstdDictionaries
 import org.apache.kafka.common.errors.{CorruptRecordException, KafkaStorageException}
-import org.apache.kafka.common.record.MemoryRecords.RecordFilter
+import org.apache.kafka.common.record.MemoryRecords.{FilterResult, RecordFilter}
 import org.apache.kafka.common.record.MemoryRecords.RecordFilter.BatchRetention
 import org.apache.kafka.common.record._
-import org.apache.kafka.common.utils.Time
+import org.apache.kafka.common.utils.{ByteBufferUnmapper, KafkaThread, Time}
 
 import scala.jdk.CollectionConverters._
 import scala.collection.mutable.ListBuffer
@@ -88,12 +90,15 @@ import scala.util.control.ControlThrowable
  * @param logDirs The directories where offset checkpoints reside
  * @param logs The pool of logs
  * @param time A way to control the passage of time
+ * @param zstdDictionaries The zstd dictionaries of the broker, which the batches compressed with a zstd dictionary are
+ *                         decompressed with to be cleaned
  */
 class LogCleaner(initialConfig: CleanerConfig,
                  val logDirs: Seq[File],
                  val logs: Pool[TopicPartition, Log],
                  val logDirFailureChannel: LogDirFailureChannel,
-                 time: Time = Time.SYSTEM) extends Logging with KafkaMetricsGroup with BrokerReconfigurable
+                 time: Time = Time.SYSTEM,
+                 zstdDictionaries: ZstdDictionaries = ZstdDictionaries.EMPTY) extends Logging with KafkaMetricsGroup with BrokerReconfigurable
 {
 
   /* Log cleaner configuration which may be dynamically updated */
@@ -112,6 +117,9 @@ class LogCleaner(initialConfig: CleanerConfig,
 
   private[log] val cleaners = mutable.ArrayBuffer[CleanerThread]()
 
+  /* the key summaries of the segments written by the cleaner threads, recreated with the threads */
+  @volatile private var keySummaryCache: Option[KeySummaryCache] = None
+
   /**
    * scala 2.12 does not support maxOption so we handle the empty manually.
    * @param f to compute the result
@@ -136,6 +144,10 @@ class LogCleaner(initialConfig: CleanerConfig,
   newGauge("max-clean-time-secs",
     () => maxOverCleanerThreads(_.lastStats.elapsedSecs))
 
+  /* a metric to track the maximum average number of threads that cleaned the log of each thread's last cleaning */
+  newGauge("max-log-cleaning-parallelism-percent",
+    () => maxOverCleanerThreads(_.lastStats.parallelism * 100))
+
 
   // a metric to track delay between the time when a log is required to be compacted
   // as determined by max compaction lag and the time of last cleaner run.
@@ -151,6 +163,9 @@ class LogCleaner(initialConfig: CleanerConfig,
    */
   def startup(): Unit = {
     info("Starting the log cleaner")
+    keySummaryCache = keySummaryCache.filter(_.maxBytes == config.keySummaryCacheSize).orElse {
+      if (config.keySummaryCacheSize > 0) Some(new KeySummaryCache(config.keySummaryCacheSize)) else None
+    }
     (0 until config.numThreads).foreach { i =>
       val cleaner = new CleanerThread(i)
       cleaners += cleaner
@@ -292,18 +307,27 @@ class LogCleaner(initialConfig: CleanerConfig,
 
     protected override def loggerName = classOf[LogCleaner].getName
 
-    if (config.dedupeBufferSize / config.numThreads > Int.MaxValue)
-      warn("Cannot use more than 2G of cleaner buffer space per cleaner thread, ignoring excess buffer space...")
+    private val offsetMap: OffsetMap = config.dedupeBufferType match {
+      case OffsetMap.OffHeapType =>
+        new OffHeapOffsetMap(memory = config.dedupeBufferSize / config.numThreads)
+      case _ =>
+        if (config.dedupeBufferSize / config.numThreads > Int.MaxValue)
+          warn("Cannot use more than 2G of cleaner buffer space per cleaner thread, ignoring excess buffer space...")
+        new SkimpyOffsetMap(memory = math.min(config.dedupeBufferSize / config.numThreads, Int.MaxValue).toInt,
+                            hashAlgorithm = config.hashAlgorithm)
+    }
 
     val cleaner = new Cleaner(id = threadId,
-                              offsetMap = new SkimpyOffsetMap(memory = math.min(config.dedupeBufferSize / config.numThreads, Int.MaxValue).toInt,
-                                                              hashAlgorithm = config.hashAlgorithm),
+                              offsetMap = offsetMap,
                               ioBufferSize = config.ioBufferSize / config.numThreads / 2,
                               maxIoBufferSize = config.maxMessageSize,
                               dupBufferLoadFactor = config.dedupeBufferLoadFactor,
                               throttler = throttler,
                               time = time,
-                              checkDone = checkDone)
+                              checkDone = checkDone,
+                              threadsPerLog = config.threadsPerLog,
+                              keySummaries = keySummaryCache,
+                              zstdDictionaries = zstdDictionaries)
 
     @volatile var lastStats: CleanerStats = new CleanerStats()
     @volatile var lastPreCleanStats: PreCleanStats = new PreCleanStats()
@@ -314,6 +338,12 @@ class LogCleaner(initialConfig: CleanerConfig,
       cleanerManager.checkCleaningAborted(topicPartition)
     }
 
+    override def shutdown(): Unit = {
+      super.shutdown()
+      cleaner.close()
+      offsetMap.close()
+    }
+
     /**
      * The main loop for the cleaner thread
      * Clean a log if there is a dirty log available, otherwise sleep for a bit
@@ -409,11 +439,13 @@ class LogCleaner(initialConfig: CleanerConfig,
                                                                                            mb(stats.mapBytesRead.toDouble) / stats.elapsedIndexSecs,
                                                                                            100 * stats.elapsedIndexSecs / stats.elapsedSecs) +
         "\tBuffer utilization: %.1f%%%n".format(100 * stats.bufferUtilization) +
+        "\tParallelism: %.1f threads%n".format(stats.parallelism) +
         "\tCleaned %,.1f MB in %.1f seconds (%,.1f Mb/sec, %.1f%% of total time)%n".format(mb(stats.bytesRead.toDouble),
                                                                                            stats.elapsedSecs - stats.elapsedIndexSecs,
                                                                                            mb(stats.bytesRead.toDouble) / (stats.elapsedSecs - stats.elapsedIndexSecs), 100 * (stats.elapsedSecs - stats.elapsedIndexSecs) / stats.elapsedSecs) +
         "\tStart size: %,.1f MB (%,d messages)%n".format(mb(stats.bytesRead.toDouble), stats.messagesRead) +
         "\tEnd size: %,.1f MB (%,d messages)%n".format(mb(stats.bytesWritten.toDouble), stats.messagesWritten) +
+        "\tRetained %,d messages without reading them%n".format(stats.messagesRetainedUnread) +
         "\t%.1f%% size reduction (%.1f%% fewer messages)%n".format(100.0 * (1.0 - stats.bytesWritten.toDouble/stats.bytesRead),
                                                                    100.0 * (1.0 - stats.messagesWritten.toDouble/stats.messagesRead))
       info(message)
@@ -433,6 +465,9 @@ object LogCleaner {
     KafkaConfig.LogCleanerThreadsProp,
     KafkaConfig.LogCleanerDedupeBufferSizeProp,
     KafkaConfig.LogCleanerDedupeBufferLoadFactorProp,
+    KafkaConfig.LogCleanerDedupeBufferTypeProp,
+    KafkaConfig.LogCleanerThreadsPerLogProp,
+    KafkaConfig.LogCleanerKeySummaryCacheSizeProp,
     KafkaConfig.LogCleanerIoBufferSizeProp,
     KafkaConfig.MessageMaxBytesProp,
     KafkaConfig.LogCleanerIoMaxBytesPerSecondProp,
@@ -447,14 +482,18 @@ object LogCleaner {
       maxMessageSize = config.messageMaxBytes,
       maxIoBytesPerSecond = config.logCleanerIoMaxBytesPerSecond,
       backOffMs = config.logCleanerBackoffMs,
-      enableCleaner = config.logCleanerEnable)
+      enableCleaner = config.logCleanerEnable,
+      dedupeBufferType = config.logCleanerDedupeBufferType,
+      threadsPerLog = config.logCleanerThreadsPerLog,
+      keySummaryCacheSize = config.logCleanerKeySummaryCacheSize)
 
   }
 
   def createNewCleanedSegment(log: Log, baseOffset: Long): LogSegment = {
     LogSegment.deleteIfExists(log.dir, baseOffset, fileSuffix = Log.CleanedFileSuffix)
     LogSegment.open(log.dir, baseOffset, log.config, Time.SYSTEM,
-      fileSuffix = Log.CleanedFileSuffix, initFileSize = log.initFileSize, preallocate = log.config.preallocate)
+      fileSuffix = Log.CleanedFileSuffix, initFileSize = log.initFileSize, preallocate = log.config.preallocate,
+      indexWarmSectionBytes = log.indexWarmSectionBytes)
   }
 
 }
@@ -469,6 +508,11 @@ object LogCleaner {
  * @param throttler The throttler instance to use for limiting I/O rate.
  * @param time The time instance
  * @param checkDone Check if the cleaning for a partition is finished or aborted.
+ * @param threadsPerLog The number of threads cleaning the segments of a log in parallel. Each thread has its own read
+ *                      and write buffers.
+ * @param keySummaries The cache of the key summaries of the cleaned segments, used to retain the batches without
+ *                     reading their records when none of their keys are in the offset map
+ * @param zstdDictionaries The zstd dictionaries the batches compressed with a zstd dictionary are decompressed with
  */
 private[log] class Cleaner(val id: Int,
                            val offsetMap: OffsetMap,
@@ -477,22 +521,64 @@ private[log] class Cleaner(val id: Int,
                            dupBufferLoadFactor: Double,
                            throttler: Throttler,
                            time: Time,
-                           checkDone: TopicPartition => Unit) extends Logging {
+                           checkDone: TopicPartition => Unit,
+                           threadsPerLog: Int = 1,
+                           keySummaries: Option[KeySummaryCache] = None,
+                           zstdDictionaries: ZstdDictionaries = ZstdDictionaries.EMPTY) extends Logging {
 
   protected override def loggerName = classOf[LogCleaner].getName
 
   this.logIdent = s"Cleaner $id: "
 
-  /* buffer used for read i/o */
-  private var readBuffer = ByteBuffer.allocate(ioBufferSize)
+  /* buffer used for read i/o, direct so that segments are read into it without an intermediate copy */
+  private var readBuffer = ByteBuffer.allocateDirect(ioBufferSize)
 
-  /* buffer used for write i/o */
-  private var writeBuffer = ByteBuffer.allocate(ioBufferSize)
+  /* buffer used for write i/o of the filtered batches, the batches retained unchanged are transferred from file to file */
+  private var writeBuffer = ByteBuffer.allocateDirect(ioBufferSize)
 
-  private val decompressionBufferSupplier = BufferSupplier.create();
+  private val decompressionBufferSupplier = BufferSupplier.create(zstdDictionaries)
+
+  /* the fingerprints of the keys of the offset map, checked against the key summaries of the segments being cleaned */
+  private lazy val keyFilter = keySummaries.map(_ => new KeyFingerprintFilter((offsetMap.slots * dupBufferLoadFactor).toInt))
 
   require(offsetMap.slots * dupBufferLoadFactor > 1, "offset map is too small to fit in even a single message, so log cleaning will never make progress. You can increase log.cleaner.dedupe.buffer.size or decrease log.cleaner.threads")
 
+  /* the cleaners whose buffers are used by the segment tasks, the tasks reading or cleaning segments of a log in parallel */
+  private val segmentCleaners = new LinkedBlockingQueue[Cleaner]()
+
+  private val segmentExecutor: Option[ExecutorService] =
+    if (threadsPerLog > 1) {
+      (0 until threadsPerLog).foreach { _ =>
+        segmentCleaners.add(new Cleaner(id, offsetMap, ioBufferSize, maxIoBufferSize, dupBufferLoadFactor, throttler,
+          time, checkSegmentTaskDone, keySummaries = keySummaries, zstdDictionaries = zstdDictionaries))
+      }
+      val threadId = new AtomicInteger(0)
+      Some(Executors.newFixedThreadPool(threadsPerLog, new ThreadFactory {
+        override def newThread(r: Runnable): Thread =
+          KafkaThread.daemon(s"kafka-log-cleaner-thread-$id-segment-${threadId.getAndIncrement()}", r)
+      }))
+    } else None
+
+  /* set once a segment task of the current cleaning failed or is no longer needed, to stop the other tasks */
+  @volatile private var segmentTasksCancelled = false
+  private val segmentTaskFailure = new AtomicReference[Throwable]()
+
+  /* the time the segment tasks of the current cleaning spent reading or cleaning segments */
+  private val segmentTaskTimeNs = new AtomicLong()
+  /* the time the cleaning thread spent waiting for the segment tasks of the current cleaning */
+  private var segmentTaskWaitNs = 0L
+
+  /**
+   * Stop the threads cleaning the segments of a log in parallel. The threads are not interrupted since an interrupted
+   * read closes the channel of the segment it reads.
+   */
+  def close(): Unit = {
+    segmentExecutor.foreach { executor =>
+      executor.shutdown()
+      executor.awaitTermination(Long.MaxValue, TimeUnit.MILLISECONDS)
+    }
+  }
+
   /**
    * Clean the given log
    *
@@ -517,11 +603,14 @@ private[log] class Cleaner(val id: Int,
 
     val log = cleanable.log
     val stats = new CleanerStats()
+    val startNs = time.nanoseconds
+    segmentTaskTimeNs.set(0L)
+    segmentTaskWaitNs = 0L
 
     // build the offset map
     info("Building offset map for %s...".format(cleanable.log.name))
     val upperBoundOffset = cleanable.firstUncleanableOffset
-    buildOffsetMap(log, cleanable.firstDirtyOffset, upperBoundOffset, offsetMap, stats)
+    buildOffsetMap(log, cleanable.firstDirtyOffset, upperBoundOffset, offsetMap, stats, keyFilter)
     val endOffset = offsetMap.latestOffset + 1
     stats.indexDone()
 
@@ -531,16 +620,26 @@ private[log] class Cleaner(val id: Int,
 
     // group the segments and clean the groups
     info("Cleaning log %s (cleaning prior to %s, discarding tombstones prior to %s)...".format(log.name, new Date(cleanableHorizonMs), new Date(deleteHorizonMs)))
-    val transactionMetadata = new CleanedTransactionMetadata
-
     val groupedSegments = groupSegmentsBySize(log.logSegments(0, endOffset), log.config.segmentSize,
       log.config.maxIndexSize, cleanable.firstUncleanableOffset)
-    for (group <- groupedSegments)
-      cleanSegments(log, group, offsetMap, deleteHorizonMs, stats, transactionMetadata)
+    segmentExecutor match {
+      case Some(executor) if groupedSegments.size > 1 =>
+        cleanSegmentGroupsInParallel(log, groupedSegments, offsetMap, deleteHorizonMs, stats, executor)
+      case _ =>
+        val transactionMetadata = new CleanedTransactionMetadata
+        for (group <- groupedSegments)
+          cleanSegments(log, group, offsetMap, deleteHorizonMs, stats, transactionMetadata, keyFilter)
+    }
 
     // record buffer utilization
     stats.bufferUtilization = offsetMap.utilization
 
+    // record the average number of threads working on the log: the cleaning thread when it is not waiting for the
+    // segment tasks, and the segment tasks
+    val elapsedNs = time.nanoseconds - startNs
+    if (segmentExecutor.isDefined && elapsedNs > 0)
+      stats.parallelism = (elapsedNs - segmentTaskWaitNs + segmentTaskTimeNs.get).toDouble / elapsedNs
+
     stats.allDone()
 
     (endOffset, stats)
@@ -556,16 +655,19 @@ private[log] class Cleaner(val id: Int,
    * @param stats Collector for cleaning statistics
    * @param transactionMetadata State of ongoing transactions which is carried between the cleaning
    *                            of the grouped segments
+   * @param keyFilter The fingerprints of the keys of the offset map, if it was built with them
    */
   private[log] def cleanSegments(log: Log,
                                  segments: Seq[LogSegment],
                                  map: OffsetMap,
                                  deleteHorizonMs: Long,
                                  stats: CleanerStats,
-                                 transactionMetadata: CleanedTransactionMetadata): Unit = {
+                                 transactionMetadata: CleanedTransactionMetadata,
+                                 keyFilter: Option[KeyFingerprintFilter] = None): Unit = {
     // create a new segment with a suffix appended to the name of the log and indexes
     val cleaned = LogCleaner.createNewCleanedSegment(log, segments.head.baseOffset)
     transactionMetadata.cleanedIndex = Some(cleaned.txnIndex)
+    val keySummaryBuilder = keySummaries.map(_ => new SegmentKeySummary.Builder)
 
     try {
       // clean segments into the new destination segment
@@ -587,9 +689,12 @@ private[log] class Cleaner(val id: Int,
           s"with deletion horizon $deleteHorizonMs, " +
           s"${if(retainDeletesAndTxnMarkers) "retaining" else "discarding"} deletes.")
 
+        // the batches of the segment can only be retained without reading them if the segment was cleaned before
+        val keySummary = keyFilter.flatMap(_ => keySummaries.flatMap(_.get(log.topicPartition, currentSegment.baseOffset)))
+
         try {
           cleanInto(log.topicPartition, currentSegment.log, cleaned, map, retainDeletesAndTxnMarkers, log.config.maxMessageSize,
-            transactionMetadata, lastOffsetOfActiveProducers, stats)
+            transactionMetadata, lastOffsetOfActiveProducers, stats, keyFilter, keySummary, keySummaryBuilder)
         } catch {
           case e: LogSegmentOffsetOverflowException =>
             // Split the current segment. It's also safest to abort the current cleaning process, so that we retry from
@@ -612,6 +717,11 @@ private[log] class Cleaner(val id: Int,
       // swap in new segment
       info(s"Swapping in cleaned segment $cleaned for segment(s) $segments in log $log")
       log.replaceSegments(List(cleaned), segments)
+
+      keySummaries.foreach { cache =>
+        segments.foreach(segment => cache.remove(log.topicPartition, segment.baseOffset))
+        keySummaryBuilder.foreach(builder => cache.put(log.topicPartition, cleaned.baseOffset, builder.build()))
+      }
     } catch {
       case e: LogCleaningAbortedException =>
         try cleaned.deleteIfExists()
@@ -622,6 +732,68 @@ private[log] class Cleaner(val id: Int,
     }
   }
 
+  /**
+   * Clean groups of segments into their replacement segments in parallel. Each group is cleaned with the state of the
+   * transactions it would have been cleaned with after the previous groups, which is found by reading the batch
+   * headers of the previous groups. The cleaned segments are swapped into the log as they become available, not
+   * necessarily in offset order.
+   *
+   * @param log The log being cleaned
+   * @param groupedSegments The groups of segments being cleaned
+   * @param map The offset map to use for cleaning segments
+   * @param deleteHorizonMs The time to retain delete tombstones
+   * @param stats Collector for cleaning statistics
+   * @param executor The executor running the segment tasks
+   */
+  private def cleanSegmentGroupsInParallel(log: Log,
+                                           groupedSegments: Seq[Seq[LogSegment]],
+                                           map: OffsetMap,
+                                           deleteHorizonMs: Long,
+                                           stats: CleanerStats,
+                                           executor: ExecutorService): Unit = {
+    val transactionMetadata = new CleanedTransactionMetadata
+    val groupTransactionMetadata = transactionMetadata.copy() +: groupedSegments.init.map { group =>
+      readTransactionMetadata(log, group, map, transactionMetadata)
+      transactionMetadata.copy()
+    }
+
+    startSegmentTasks()
+    val tasks = groupedSegments.zip(groupTransactionMetadata).map { case (group, groupMetadata) =>
+      val mapReader = map.reader()
+      executor.submit(new Callable[CleanerStats] {
+        override def call(): CleanerStats = runSegmentTask { cleaner =>
+          val groupStats = new CleanerStats(time)
+          cleaner.cleanSegments(log, group, mapReader, deleteHorizonMs, groupStats, groupMetadata, keyFilter)
+          groupStats
+        }
+      })
+    }
+    val groupStats = awaitSegmentTasks(tasks)
+    Option(segmentTaskFailure.get).foreach(e => throw e)
+    groupStats.foreach(stats.add)
+  }
+
+  /**
+   * Update the state of the transactions with the batches of a group of segments, as `cleanSegments` would when
+   * cleaning the group, without reading the records of the batches other than the transaction markers.
+   */
+  private def readTransactionMetadata(log: Log,
+                                      segments: Seq[LogSegment],
+                                      map: OffsetMap,
+                                      transactionMetadata: CleanedTransactionMetadata): Unit = {
+    for ((segment, i) <- segments.zipWithIndex) {
+      checkDone(log.topicPartition)
+      val upperBoundOffset = if (i < segments.size - 1) segments(i + 1).baseOffset else map.latestOffset + 1
+      transactionMetadata.addAbortedTransactions(log.collectAbortedTransactions(segment.baseOffset, upperBoundOffset))
+      for (batch <- segment.log.batches.asScala) {
+        if (batch.isControlBatch)
+          transactionMetadata.onControlBatchRead(batch)
+        else
+          transactionMetadata.onBatchRead(batch)
+      }
+    }
+  }
+
   /**
    * Clean the given source log segment into the destination segment using the key=>offset mapping
    * provided
@@ -633,6 +805,9 @@ private[log] class Cleaner(val id: Int,
    * @param retainDeletesAndTxnMarkers Should tombstones and markers be retained while cleaning this segment
    * @param maxLogMessageSize The maximum message size of the corresponding topic
    * @param stats Collector for cleaning statistics
+   * @param keyFilter The fingerprints of the keys of the offset map, if it was built with them
+   * @param keySummary The key summary of the source segment, if it is known
+   * @param keySummaryBuilder The builder of the key summary of the cleaned segment, if it is kept
    */
   private[log] def cleanInto(topicPartition: TopicPartition,
                              sourceRecords: FileRecords,
@@ -642,11 +817,29 @@ private[log] class Cleaner(val id: Int,
                              maxLogMessageSize: Int,
                              transactionMetadata: CleanedTransactionMetadata,
                              lastRecordsOfActiveProducers: Map[Long, LastRecord],
-                             stats: CleanerStats): Unit = {
+                             stats: CleanerStats,
+                             keyFilter: Option[KeyFingerprintFilter] = None,
+                             keySummary: Option[SegmentKeySummary] = None,
+                             keySummaryBuilder: Option[SegmentKeySummary.Builder] = None): Unit = {
+    /*
+     * A batch whose records are all known from the key summary of the segment to have a key, and a value unless
+     * deletes are retained, is retained without reading its records if none of its keys are in the offset map: the
+     * records below the lowest offset of the map are not the latest for any of its keys.
+     */
+    def canRetainUnread(batch: RecordBatch): Boolean = keyFilter.exists { filter =>
+      batch.lastOffset < filter.minOffset && keySummary.exists { summary =>
+        val index = summary.indexOf(batch)
+        index >= 0 && summary.numFingerprints(index) > 0 && !summary.hasUnkeyedRecords(index) &&
+          (retainDeletesAndTxnMarkers || !summary.hasTombstones(index)) &&
+          (0 until summary.numFingerprints(index)).forall(i => !filter.mightContain(summary.fingerprint(index, i)))
+      }
+    }
+
     val logCleanerFilter: RecordFilter = new RecordFilter {
       var discardBatchRecords: Boolean = _
 
       override def checkBatchRetention(batch: RecordBatch): BatchRetention = {
+        keySummaryBuilder.foreach(_.startBatch(batch))
         // we piggy-back on the tombstone retention logic to delay deletion of transaction markers.
         // note that we will never delete a marker until all the records from that transaction are removed.
         discardBatchRecords = shouldDiscardBatch(batch, transactionMetadata, retainTxnMarkers = retainDeletesAndTxnMarkers)
@@ -666,7 +859,11 @@ private[log] class Cleaner(val id: Int,
           }
         }
 
-        if (batch.hasProducerId && isBatchLastRecordOfProducer)
+        if (!discardBatchRecords && !batch.isControlBatch && canRetainUnread(batch)) {
+          stats.retainUnreadMessages(batch.countOrNull)
+          keySummaryBuilder.foreach(_.addRecords(keySummary.get, keySummary.get.indexOf(batch), batch.countOrNull))
+          BatchRetention.RETAIN_ALL
+        } else if (batch.hasProducerId && isBatchLastRecordOfProducer)
           BatchRetention.RETAIN_EMPTY
         else if (discardBatchRecords)
           BatchRetention.DELETE
@@ -675,11 +872,14 @@ private[log] class Cleaner(val id: Int,
       }
 
       override def shouldRetainRecord(batch: RecordBatch, record: Record): Boolean = {
-        if (discardBatchRecords)
-          // The batch is only retained to preserve producer sequence information; the records can be removed
-          false
-        else
-          Cleaner.this.shouldRetainRecord(map, retainDeletesAndTxnMarkers, batch, record, stats)
+        val retained =
+          if (discardBatchRecords)
+            // The batch is only retained to preserve producer sequence information; the records can be removed
+            false
+          else
+            Cleaner.this.shouldRetainRecord(map, retainDeletesAndTxnMarkers, batch, record, stats)
+        keySummaryBuilder.foreach(_.addRecord(if (record.hasKey) record.key else null, record.hasValue, retained))
+        retained
       }
     }
 
@@ -693,26 +893,38 @@ private[log] class Cleaner(val id: Int,
       sourceRecords.readInto(readBuffer, position)
       val records = MemoryRecords.readableRecords(readBuffer)
       throttler.maybeThrottle(records.sizeInBytes)
-      val result = records.filterTo(topicPartition, logCleanerFilter, writeBuffer, maxLogMessageSize, decompressionBufferSupplier)
+      // the batches retained unchanged are not copied to the write buffer, they are transferred from the source segment
+      val result = records.filterTo(topicPartition, logCleanerFilter, writeBuffer, maxLogMessageSize,
+        decompressionBufferSupplier, false)
       stats.readMessages(result.messagesRead, result.bytesRead)
       stats.recopyMessages(result.messagesRetained, result.bytesRetained)
 
-      position += result.bytesRead
+      // the batches rebuilt by the filter are summarized with their new checksum
+      keySummaryBuilder.foreach { builder =>
+        val rebuiltChecksums = mutable.Map[Long, Long]()
+        val output = result.outputBuffer.duplicate()
+        output.flip()
+        MemoryRecords.readableRecords(output).batches.forEach { batch =>
+          if (batch.magic >= RecordBatch.MAGIC_VALUE_V2)
+            rebuiltChecksums.put(batch.baseOffset, batch.checksum)
+        }
+        builder.resolve(rebuiltChecksums)
+      }
 
       // if any messages are to be retained, write them out
-      val outputBuffer = result.outputBuffer
-      if (outputBuffer.position() > 0) {
-        outputBuffer.flip()
-        val retained = MemoryRecords.readableRecords(outputBuffer)
+      val retained = retainedRecords(sourceRecords, position, result)
+      if (retained.nonEmpty) {
         // it's OK not to hold the Log's lock in this case, because this segment is only accessed by other threads
         // after `Log.replaceSegments` (which acquires the lock) is called
-        dest.append(largestOffset = result.maxOffset,
+        dest.appendAll(largestOffset = result.maxOffset,
           largestTimestamp = result.maxTimestamp,
           shallowOffsetOfMaxTimestamp = result.shallowOffsetOfMaxTimestamp,
           records = retained)
-        throttler.maybeThrottle(outputBuffer.limit())
+        throttler.maybeThrottle(result.bytesRetained)
       }
 
+      position += result.bytesRead
+
       // if we read bytes but didn't get even one complete batch, our I/O buffer is too small, grow it and try again
       // `result.bytesRead` contains bytes from `messagesRead` and any discarded batches.
       if (readBuffer.limit() > 0 && result.bytesRead == 0)
@@ -722,6 +934,53 @@ private[log] class Cleaner(val id: Int,
   }
 
 
+  /**
+   * The retained records of a chunk of the source records in order: the slices of the output buffer holding the
+   * filtered batches and the slices of the source records holding the runs of batches retained unchanged.
+   *
+   * @param sourceRecords The records being cleaned
+   * @param position The position of the chunk in the source records
+   * @param result The result of the filtering of the chunk
+   */
+  private def retainedRecords(sourceRecords: FileRecords, position: Int, result: FilterResult): List[Records] = {
+    val outputBuffer = result.outputBuffer
+    val outputEnd = outputBuffer.position()
+    val retained = ListBuffer.empty[Records]
+    var outputPosition = 0
+    var runStart = -1
+    var runEnd = -1
+
+    def outputSlice(end: Int): Unit = {
+      if (end > outputPosition) {
+        val slice = outputBuffer.duplicate()
+        slice.position(outputPosition).limit(end)
+        retained += MemoryRecords.readableRecords(slice.slice())
+        outputPosition = end
+      }
+    }
+
+    def sourceSlice(): Unit = {
+      if (runEnd > runStart) {
+        retained += sourceRecords.slice(position + runStart, runEnd - runStart)
+        runStart = -1
+        runEnd = -1
+      }
+    }
+
+    result.unchangedBatches.forEach { batch =>
+      // a run of unchanged batches ends where filtered batches were written or a batch was removed
+      if (batch.outputPosition > outputPosition || batch.position != runEnd) {
+        sourceSlice()
+        outputSlice(batch.outputPosition)
+        runStart = batch.position
+      }
+      runEnd = batch.position + batch.sizeInBytes
+    }
+    sourceSlice()
+    outputSlice(outputEnd)
+    retained.toList
+  }
+
   /**
    * Grow buffers to process next batch of records from `sourceRecords.` Buffers are doubled in size
    * up to a maximum of `maxLogMessageSize`. In some scenarios, a record could be bigger than the
@@ -801,8 +1060,8 @@ private[log] class Cleaner(val id: Int,
       throw new IllegalStateException("This log contains a message larger than maximum allowable size of %s.".format(maxBufferSize))
     val newSize = math.min(this.readBuffer.capacity * 2, maxBufferSize)
     info(s"Growing cleaner I/O buffers from ${readBuffer.capacity} bytes to $newSize bytes.")
-    this.readBuffer = ByteBuffer.allocate(newSize)
-    this.writeBuffer = ByteBuffer.allocate(newSize)
+    this.readBuffer = reallocate(readBuffer, newSize)
+    this.writeBuffer = reallocate(writeBuffer, newSize)
   }
 
   /**
@@ -810,9 +1069,19 @@ private[log] class Cleaner(val id: Int,
    */
   def restoreBuffers(): Unit = {
     if(this.readBuffer.capacity > this.ioBufferSize)
-      this.readBuffer = ByteBuffer.allocate(this.ioBufferSize)
+      this.readBuffer = reallocate(readBuffer, this.ioBufferSize)
     if(this.writeBuffer.capacity > this.ioBufferSize)
-      this.writeBuffer = ByteBuffer.allocate(this.ioBufferSize)
+      this.writeBuffer = reallocate(writeBuffer, this.ioBufferSize)
+  }
+
+  /**
+   * Replace a direct I/O buffer, releasing its memory rather than waiting for it to be garbage collected since the
+   * buffers are grown and restored for every segment with large messages. The records read into the buffer must no
+   * longer be in use.
+   */
+  private def reallocate(buffer: ByteBuffer, size: Int): ByteBuffer = {
+    ByteBufferUnmapper.unmap("cleaner I/O buffer", buffer)
+    ByteBuffer.allocateDirect(size)
   }
 
   /**
@@ -880,13 +1149,16 @@ private[log] class Cleaner(val id: Int,
    * @param end The ending offset for the map that is being built
    * @param map The map in which to store the mappings
    * @param stats Collector for cleaning statistics
+   * @param keyFilter The filter in which to store the fingerprints of the keys of the map, if any
    */
   private[log] def buildOffsetMap(log: Log,
                                   start: Long,
                                   end: Long,
                                   map: OffsetMap,
-                                  stats: CleanerStats): Unit = {
+                                  stats: CleanerStats,
+                                  keyFilter: Option[KeyFingerprintFilter] = None): Unit = {
     map.clear()
+    keyFilter.foreach(_.clear())
     val dirty = log.logSegments(start, end).toBuffer
     val nextSegmentStartOffsets = new ListBuffer[Long]
     if (dirty.nonEmpty) {
@@ -895,43 +1167,238 @@ private[log] class Cleaner(val id: Int,
     }
     info("Building offset map for log %s for %d segments in offset range [%d, %d).".format(log.name, dirty.size, start, end))
 
-    val transactionMetadata = new CleanedTransactionMetadata
-    val abortedTransactions = log.collectAbortedTransactions(start, end)
-    transactionMetadata.addAbortedTransactions(abortedTransactions)
-
-    // Add all the cleanable dirty segments. We must take at least map.slots * load_factor,
-    // but we may be able to fit more (if there is lots of duplication in the dirty section of the log)
-    var full = false
-    for ((segment, nextSegmentStartOffset) <- dirty.zip(nextSegmentStartOffsets) if !full) {
-      checkDone(log.topicPartition)
+    segmentExecutor match {
+      case Some(executor) if dirty.size > 1 =>
+        buildOffsetMapInParallel(log, dirty.zip(nextSegmentStartOffsets), start, map, stats, keyFilter, executor)
+      case _ =>
+        val transactionMetadata = new CleanedTransactionMetadata
+        val abortedTransactions = log.collectAbortedTransactions(start, end)
+        transactionMetadata.addAbortedTransactions(abortedTransactions)
 
-      full = buildOffsetMapForSegment(log.topicPartition, segment, map, start, nextSegmentStartOffset, log.config.maxMessageSize,
-        transactionMetadata, stats)
-      if (full)
-        debug("Offset map is full, %d segments fully mapped, segment with base offset %d is partially mapped".format(dirty.indexOf(segment), segment.baseOffset))
+        // Add all the cleanable dirty segments. We must take at least map.slots * load_factor,
+        // but we may be able to fit more (if there is lots of duplication in the dirty section of the log)
+        val writer = offsetMapWriter(map, keyFilter)
+        var full = false
+        for ((segment, nextSegmentStartOffset) <- dirty.zip(nextSegmentStartOffsets) if !full) {
+          checkDone(log.topicPartition)
+
+          full = buildOffsetMapForSegment(log.topicPartition, segment, writer, start, nextSegmentStartOffset, log.config.maxMessageSize,
+            transactionMetadata, stats)
+          if (full)
+            debug("Offset map is full, %d segments fully mapped, segment with base offset %d is partially mapped".format(dirty.indexOf(segment), segment.baseOffset))
+        }
     }
     info("Offset map for log %s complete.".format(log.name))
   }
 
+  /**
+   * Build the offset map from segment tasks reading the dirty segments in parallel. The keys and offsets read by the
+   * tasks are added to the map by this thread in offset order, so that the map holds the same offsets as if it was
+   * built by this thread alone, and the tasks are stopped once the map is full.
+   *
+   * @param log The log to use
+   * @param segments The dirty segments with the start offsets of the segments following them
+   * @param start The offset at which dirty messages begin
+   * @param map The map in which to store the mappings
+   * @param stats Collector for cleaning statistics
+   * @param keyFilter The filter in which to store the fingerprints of the keys of the map, if any
+   * @param executor The executor running the segment tasks
+   */
+  private def buildOffsetMapInParallel(log: Log,
+                                       segments: Seq[(LogSegment, Long)],
+                                       start: Long,
+                                       map: OffsetMap,
+                                       stats: CleanerStats,
+                                       keyFilter: Option[KeyFingerprintFilter],
+                                       executor: ExecutorService): Unit = {
+    startSegmentTasks()
+    val tasks = segments.map { case (segment, nextSegmentStartOffset) =>
+      val chunks = new ArrayBlockingQueue[OffsetMapChunk](Cleaner.OffsetMapChunksPerSegment)
+      val task = executor.submit(new Callable[CleanerStats] {
+        override def call(): CleanerStats = runSegmentTask { cleaner =>
+          val segmentStats = new CleanerStats(time)
+          val transactionMetadata = new CleanedTransactionMetadata
+          transactionMetadata.addAbortedTransactions(
+            log.collectAbortedTransactions(math.max(start, segment.baseOffset), nextSegmentStartOffset))
+          val writer = new OffsetMapChunkWriter(log.topicPartition, chunks)
+          cleaner.buildOffsetMapForSegment(log.topicPartition, segment, writer, start, nextSegmentStartOffset,
+            log.config.maxMessageSize, transactionMetadata, segmentStats)
+          writer.close()
+          segmentStats
+        }
+      })
+      (segment, chunks, task)
+    }
+
+    var segmentStats = Seq.empty[CleanerStats]
+    try {
+      val writer = offsetMapWriter(map, keyFilter)
+      var full = false
+      for (((segment, chunks, task), i) <- tasks.zipWithIndex if !full) {
+        var segmentDone = false
+        while (!segmentDone && !full) {
+          checkDone(log.topicPartition)
+          val chunk = nextOffsetMapChunk(chunks, task)
+          if (chunk != null) {
+            full = !chunk.writeTo(writer)
+            segmentDone = chunk.isLast
+          }
+        }
+        if (full)
+          debug("Offset map is full, %d segments fully mapped, segment with base offset %d is partially mapped".format(i, segment.baseOffset))
+      }
+    } finally {
+      // stop the tasks reading the segments past the last one the map was built from, the failures of these tasks
+      // don't matter
+      segmentTasksCancelled = true
+      segmentStats = awaitSegmentTasks(tasks.map(_._3))
+    }
+    segmentStats.foreach(stats.add)
+  }
+
+  /**
+   * Wait for the next chunk of keys and offsets read by the task reading a segment.
+   *
+   * @return The next chunk, or null if the task didn't read one in time
+   */
+  private def nextOffsetMapChunk(chunks: BlockingQueue[OffsetMapChunk], task: Future[CleanerStats]): OffsetMapChunk = {
+    val waitStartNs = time.nanoseconds
+    try {
+      val chunk = chunks.poll(Cleaner.SegmentTaskPollMs, TimeUnit.MILLISECONDS)
+      if (chunk == null && task.isDone) {
+        // the task may have published its last chunk before completing
+        val lastChunk = chunks.poll()
+        if (lastChunk == null)
+          throw Option(segmentTaskFailure.get).getOrElse(new IllegalStateException("Segment task completed without its last chunk"))
+        lastChunk
+      } else chunk
+    } finally segmentTaskWaitNs += time.nanoseconds - waitStartNs
+  }
+
+  private def offsetMapWriter(map: OffsetMap, keyFilter: Option[KeyFingerprintFilter]): OffsetMapWriter = {
+    val maxDesiredMapSize = (map.slots * this.dupBufferLoadFactor).toInt
+    new OffsetMapWriter {
+      override def put(key: ByteBuffer, offset: Long): Boolean = {
+        if (map.size < maxDesiredMapSize) {
+          keyFilter.foreach(_.add(key, offset))
+          map.put(key, offset)
+          true
+        } else false
+      }
+
+      override def updateLatestOffset(offset: Long): Unit = map.updateLatestOffset(offset)
+    }
+  }
+
+  /**
+   * Writes the keys and offsets read by a segment task to the chunks consumed by the cleaning thread.
+   */
+  private class OffsetMapChunkWriter(topicPartition: TopicPartition,
+                                     chunks: BlockingQueue[OffsetMapChunk]) extends OffsetMapWriter {
+    private var chunk = new OffsetMapChunk(Cleaner.OffsetMapChunkEntries)
+
+    override def put(key: ByteBuffer, offset: Long): Boolean = {
+      chunk.addKey(key, offset)
+      maybePublish()
+      true
+    }
+
+    override def updateLatestOffset(offset: Long): Unit = {
+      chunk.addLatestOffset(offset)
+      maybePublish()
+    }
+
+    /**
+     * Publish the last chunk of the segment.
+     */
+    def close(): Unit = {
+      chunk.isLast = true
+      publish()
+    }
+
+    private def maybePublish(): Unit = {
+      if (chunk.isFull) {
+        publish()
+        chunk = new OffsetMapChunk(Cleaner.OffsetMapChunkEntries)
+      }
+    }
+
+    private def publish(): Unit = {
+      // the time spent waiting for the cleaning thread to take the chunks of the previous segments is not counted
+      // as time spent reading the segment
+      val waitStartNs = time.nanoseconds
+      while (!chunks.offer(chunk, Cleaner.SegmentTaskPollMs, TimeUnit.MILLISECONDS))
+        checkSegmentTaskDone(topicPartition)
+      segmentTaskTimeNs.addAndGet(waitStartNs - time.nanoseconds)
+    }
+  }
+
+  private def startSegmentTasks(): Unit = {
+    segmentTasksCancelled = false
+    segmentTaskFailure.set(null)
+  }
+
+  /**
+   * Run a segment task with the buffers of one of the segment cleaners. The first failure of the tasks of a cleaning
+   * cancels the others.
+   */
+  private def runSegmentTask[T](task: Cleaner => T): T = {
+    val cleaner = segmentCleaners.take()
+    val startNs = time.nanoseconds
+    try task(cleaner)
+    catch {
+      case e: Throwable =>
+        segmentTaskFailure.compareAndSet(null, e)
+        segmentTasksCancelled = true
+        throw e
+    } finally {
+      segmentTaskTimeNs.addAndGet(time.nanoseconds - startNs)
+      segmentCleaners.add(cleaner)
+    }
+  }
+
+  /**
+   * Wait for all the segment tasks of a cleaning to complete. The first failure of the tasks is kept in
+   * `segmentTaskFailure`.
+   *
+   * @return The results of the tasks that completed successfully
+   */
+  private def awaitSegmentTasks[T](tasks: Seq[Future[T]]): Seq[T] = {
+    val waitStartNs = time.nanoseconds
+    try {
+      tasks.flatMap { task =>
+        try Some(task.get())
+        catch {
+          case _: ExecutionException => None
+        }
+      }
+    } finally segmentTaskWaitNs += time.nanoseconds - waitStartNs
+  }
+
+  private def checkSegmentTaskDone(topicPartition: TopicPartition): Unit = {
+    if (segmentTasksCancelled)
+      throw new LogCleaningAbortedException()
+    checkDone(topicPartition)
+  }
+
   /**
    * Add the messages in the given segment to the offset map
    *
    * @param segment The segment to index
-   * @param map The map in which to store the key=>offset mapping
+   * @param map The writer of the key=>offset mapping
    * @param stats Collector for cleaning statistics
    *
    * @return If the map was filled whilst loading from this segment
    */
   private def buildOffsetMapForSegment(topicPartition: TopicPartition,
                                        segment: LogSegment,
-                                       map: OffsetMap,
+                                       map: OffsetMapWriter,
                                        startOffset: Long,
                                        nextSegmentStartOffset: Long,
                                        maxLogMessageSize: Int,
                                        transactionMetadata: CleanedTransactionMetadata,
                                        stats: CleanerStats): Boolean = {
     var position = segment.offsetIndex.lookup(startOffset).position
-    val maxDesiredMapSize = (map.slots * this.dupBufferLoadFactor).toInt
     while (position < segment.log.sizeInBytes) {
       checkDone(topicPartition)
       readBuffer.clear()
@@ -960,12 +1427,8 @@ private[log] class Cleaner(val id: Int,
             val recordsIterator = batch.streamingIterator(decompressionBufferSupplier)
             try {
               for (record <- recordsIterator.asScala) {
-                if (record.hasKey && record.offset >= startOffset) {
-                  if (map.size < maxDesiredMapSize)
-                    map.put(record.key, record.offset)
-                  else
-                    return true
-                }
+                if (record.hasKey && record.offset >= startOffset && !map.put(record.key, record.offset))
+                  return true
                 stats.indexMessagesRead(1)
               }
             } finally recordsIterator.close()
@@ -992,6 +1455,84 @@ private[log] class Cleaner(val id: Int,
   }
 }
 
+private[log] object Cleaner {
+  /* the number of chunks of keys and offsets read from a segment that may wait for the cleaning thread */
+  val OffsetMapChunksPerSegment = 4
+  /* the number of keys and offsets of a chunk */
+  val OffsetMapChunkEntries = 4096
+  /* the time a segment task or the cleaning thread waits for the other before checking whether the cleaning is done */
+  val SegmentTaskPollMs = 100L
+}
+
+/**
+ * The destination of the keys and offsets read from the dirty segments when building the offset map.
+ */
+private trait OffsetMapWriter {
+  /**
+   * Associate an offset to a key, unless the offset map is full.
+   * @return false if the offset map is full
+   */
+  def put(key: ByteBuffer, offset: Long): Boolean
+
+  def updateLatestOffset(offset: Long): Unit
+}
+
+/**
+ * A chunk of the keys and offsets read from a dirty segment by a segment task, in offset order, along with the updates
+ * of the latest offset of the map.
+ */
+private class OffsetMapChunk(maxEntries: Int) {
+  private var keys = new Array[Byte](maxEntries * 16)
+  private var keysSize = 0
+  /* the end of each key in the keys array, or -1 for an update of the latest offset */
+  private val keyEnds = new Array[Int](maxEntries)
+  private val offsets = new Array[Long](maxEntries)
+  private var entries = 0
+
+  /* set on the last chunk of a segment */
+  var isLast = false
+
+  def isFull: Boolean = entries == maxEntries
+
+  def addKey(key: ByteBuffer, offset: Long): Unit = {
+    val length = key.remaining
+    if (keysSize + length > keys.length)
+      keys = java.util.Arrays.copyOf(keys, math.max(keys.length * 2, keysSize + length))
+    key.duplicate().get(keys, keysSize, length)
+    keysSize += length
+    keyEnds(entries) = keysSize
+    offsets(entries) = offset
+    entries += 1
+  }
+
+  def addLatestOffset(offset: Long): Unit = {
+    keyEnds(entries) = -1
+    offsets(entries) = offset
+    entries += 1
+  }
+
+  /**
+   * Write the entries of this chunk to the offset map.
+   * @return false if the offset map was filled before all the keys were written
+   */
+  def writeTo(writer: OffsetMapWriter): Boolean = {
+    var keyStart = 0
+    var i = 0
+    while (i < entries) {
+      val keyEnd = keyEnds(i)
+      if (keyEnd < 0) {
+        writer.updateLatestOffset(offsets(i))
+      } else {
+        if (!writer.put(ByteBuffer.wrap(keys, keyStart, keyEnd - keyStart).slice(), offsets(i)))
+          return false
+        keyStart = keyEnd
+      }
+      i += 1
+    }
+    true
+  }
+}
+
 /**
   * A simple struct for collecting pre-clean stats
   */
@@ -1025,7 +1566,9 @@ private class CleanerStats(time: Time = Time.SYSTEM) {
   var messagesRead = 0L
   var invalidMessagesRead = 0L
   var messagesWritten = 0L
+  var messagesRetainedUnread = 0L
   var bufferUtilization = 0.0d
+  var parallelism = 1.0d
 
   def readMessages(messagesRead: Int, bytesRead: Int): Unit = {
     this.messagesRead += messagesRead
@@ -1041,6 +1584,10 @@ private class CleanerStats(time: Time = Time.SYSTEM) {
     this.bytesWritten += bytesWritten
   }
 
+  def retainUnreadMessages(size: Int): Unit = {
+    messagesRetainedUnread += size
+  }
+
   def indexMessagesRead(size: Int): Unit = {
     mapMessagesRead += size
   }
@@ -1053,6 +1600,20 @@ private class CleanerStats(time: Time = Time.SYSTEM) {
     mapCompleteTime = time.milliseconds
   }
 
+  /**
+   * Add the counts of the stats of a segment task.
+   */
+  def add(stats: CleanerStats): Unit = {
+    bytesRead += stats.bytesRead
+    bytesWritten += stats.bytesWritten
+    mapBytesRead += stats.mapBytesRead
+    mapMessagesRead += stats.mapMessagesRead
+    messagesRead += stats.messagesRead
+    invalidMessagesRead += stats.invalidMessagesRead
+    messagesWritten += stats.messagesWritten
+    messagesRetainedUnread += stats.messagesRetainedUnread
+  }
+
   def allDone(): Unit = {
     endTime = time.milliseconds
   }
@@ -1100,6 +1661,21 @@ private[log] class CleanedTransactionMetadata {
     this.abortedTransactions ++= abortedTransactions
   }
 
+  /**
+   * Copy the state of the ongoing transactions, without the cleaned transaction index.
+   */
+  def copy(): CleanedTransactionMetadata = {
+    val copy = new CleanedTransactionMetadata
+    copy.ongoingCommittedTxns ++= ongoingCommittedTxns
+    ongoingAbortedTxns.foreach { case (producerId, abortedTxnMetadata) =>
+      val copiedMetadata = new AbortedTransactionMetadata(abortedTxnMetadata.abortedTxn)
+      copiedMetadata.lastObservedBatchOffset = abortedTxnMetadata.lastObservedBatchOffset
+      copy.ongoingAbortedTxns.put(producerId, copiedMetadata)
+    }
+    copy.abortedTransactions ++= abortedTransactions
+    copy
+  }
+
   /**
    * Update the cleaned transaction state with a control batch that has just been traversed by the cleaner.
    * Return true if the control batch can be discarded.
@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.io.File
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+import java.util.concurrent.{ExecutorService, Executors}
+
+import kafka.utils.threadsafe
+import org.apache.kafka.common.utils.Time
+
+/**
+ * The loading of the logs of one log directory at startup: the executor recovering the segments of a log in parallel
+ * and the progress of the loading and recovery of the logs, which is exposed as metrics by the log manager.
+ *
+ * @param logDir The log directory
+ * @param numLogs The number of logs to load from the directory
+ * @param segmentRecoveryThreads The number of threads recovering the segments of the logs in the directory, 0 to
+ *                               recover the segments of a log in the thread loading the log
+ * @param time The time instance used to estimate the time remaining
+ */
+@threadsafe
+class LogDirRecovery(val logDir: File,
+                     val numLogs: Int,
+                     segmentRecoveryThreads: Int,
+                     time: Time) {
+
+  private val startMs = time.hiResClockMs()
+
+  val segmentRecoveryExecutor: Option[ExecutorService] =
+    if (segmentRecoveryThreads > 0) Some(Executors.newFixedThreadPool(segmentRecoveryThreads)) else None
+
+  private val logsLoaded = new AtomicInteger(0)
+  private val logsRecovering = new AtomicInteger(0)
+  private val segmentsToRecover = new AtomicLong(0)
+  private val segmentsRecovered = new AtomicLong(0)
+  private val bytesToRecover = new AtomicLong(0)
+  private val bytesRecovered = new AtomicLong(0)
+
+  /**
+   * The number of segments of a log whose indexes are recovered ahead of the segment whose producer state is being
+   * recovered by the thread loading the log
+   */
+  def segmentRecoveryPipelineDepth: Int = segmentRecoveryThreads
+
+  /**
+   * Record that the recovery of a log with the given unflushed segments has started
+   */
+  def logRecoveryStarted(numSegments: Int, bytes: Long): Unit = {
+    logsRecovering.incrementAndGet()
+    segmentsToRecover.addAndGet(numSegments)
+    bytesToRecover.addAndGet(bytes)
+  }
+
+  /**
+   * Record that segments of a log were recovered, or were deleted without recovery since an earlier segment was corrupt
+   */
+  def segmentsRecovered(numSegments: Int, bytes: Long): Unit = {
+    segmentsRecovered.addAndGet(numSegments)
+    bytesRecovered.addAndGet(bytes)
+  }
+
+  /**
+   * Record that a log was loaded and return the number of logs loaded so far
+   */
+  def logLoaded(): Int = logsLoaded.incrementAndGet()
+
+  def remainingLogs: Int = numLogs - logsLoaded.get
+
+  def remainingSegments: Long = segmentsToRecover.get - segmentsRecovered.get
+
+  /**
+   * Estimate the time remaining until all the logs of the directory are loaded from the rate at which bytes were
+   * recovered so far, assuming that the logs whose recovery has not started yet have as many bytes to recover as the
+   * logs whose recovery has started. If no log needs recovery, the estimate is based on the rate at which logs were
+   * loaded so far.
+   *
+   * @return The estimated time remaining in milliseconds or -1 if nothing was loaded yet
+   */
+  def estimatedTimeRemainingMs: Long = {
+    val loaded = logsLoaded.get
+    val recovering = logsRecovering.get
+    val recovered = bytesRecovered.get
+    val elapsedMs = time.hiResClockMs() - startMs
+    if (loaded >= numLogs)
+      0L
+    else if (recovered > 0) {
+      val knownBytes = bytesToRecover.get
+      val estimatedBytes = knownBytes + knownBytes / recovering * (numLogs - recovering)
+      math.max(0L, ((estimatedBytes - recovered).toDouble * elapsedMs / recovered).toLong)
+    } else if (loaded > 0)
+      elapsedMs * (numLogs - loaded) / loaded
+    else
+      -1L
+  }
+
+  def close(): Unit = {
+    segmentRecoveryExecutor.foreach(_.shutdown())
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.io.File
+import java.util
+import java.util.concurrent.{CompletableFuture, LinkedBlockingQueue, TimeUnit}
+
+import kafka.metrics.{KafkaMetricsGroup, KafkaTimer}
+import kafka.utils.{ShutdownableThread, threadsafe}
+
+import scala.collection.mutable
+import scala.jdk.CollectionConverters._
+
+/**
+ * The thread flushing the logs of a log directory. The flushes requested while the thread is flushing a batch of logs
+ * are coalesced into the next batch, in which each log is flushed once up to the highest offset requested for it, and
+ * the requests are completed once the batch is flushed. The producers appending to the logs of the directory then wait
+ * for the batch instead of each flushing the segments and indexes of their log.
+ *
+ * The thread is not interruptible, since interrupting a thread writing to a file channel closes the channel.
+ *
+ * @param logDir The log directory whose logs are flushed
+ */
+@threadsafe
+class LogFlushService(val logDir: File) extends ShutdownableThread(s"log-flush-service-${logDir.getName}",
+  isInterruptible = false) with KafkaMetricsGroup {
+  import LogFlushService._
+
+  private val requests = new LinkedBlockingQueue[FlushRequest]()
+  // guards the requests against the requests made once the thread has stopped
+  private val lock = new Object
+  private var closed = false
+
+  private val tags = Map("logDirectory" -> logDir.getAbsolutePath)
+  private val batchSizeHistogram = newHistogram(FlushBatchSizeMetricName, biased = true, tags)
+  private val flushTimer = new KafkaTimer(newTimer(FsyncTimeMetricName, TimeUnit.MILLISECONDS, TimeUnit.SECONDS, tags))
+
+  /**
+   * Request a flush of a log of the directory, which is flushed in the next batch. The log is flushed by the calling
+   * thread if the service is closed.
+   *
+   * @param log The log to flush
+   * @param offset The offset to flush the log up to (non-inclusive)
+   * @return The completion of the flush, completed exceptionally if the log could not be flushed
+   */
+  def requestFlush(log: Log, offset: Long): CompletableFuture[Void] = {
+    val request = FlushRequest(log, offset, new CompletableFuture[Void])
+    val queued = lock synchronized {
+      if (!closed)
+        requests.add(request)
+      !closed
+    }
+    if (!queued)
+      flush(Seq(request))
+    request.completion
+  }
+
+  override def doWork(): Unit = {
+    val request = requests.poll(PollTimeoutMs, TimeUnit.MILLISECONDS)
+    if (request != null) {
+      val batch = new util.ArrayList[FlushRequest]()
+      batch.add(request)
+      requests.drainTo(batch)
+      flush(batch.asScala)
+    }
+  }
+
+  private def flush(batch: collection.Seq[FlushRequest]): Unit = {
+    // the highest offset requested for each log, in the order of the requests
+    val offsets = mutable.LinkedHashMap[Log, Long]()
+    batch.foreach { request =>
+      offsets.get(request.log) match {
+        case Some(offset) if offset >= request.offset =>
+        case _ => offsets.put(request.log, request.offset)
+      }
+    }
+    batchSizeHistogram.update(offsets.size)
+
+    val failures = mutable.Map[Log, Throwable]()
+    offsets.foreach { case (log, offset) =>
+      try flushTimer.time(log.flush(offset))
+      catch {
+        case e: Throwable =>
+          error(s"Error flushing log ${log.topicPartition} up to offset $offset", e)
+          failures.put(log, e)
+      }
+    }
+
+    batch.foreach { request =>
+      failures.get(request.log) match {
+        case Some(e) => request.completion.completeExceptionally(e)
+        case None => request.completion.complete(null)
+      }
+    }
+  }
+
+  /**
+   * Stop the thread, once the flushes already requested are done. The logs are flushed by the threads requesting the
+   * flushes from then on.
+   */
+  def close(): Unit = {
+    lock synchronized {
+      closed = true
+    }
+    initiateShutdown()
+    awaitShutdown()
+
+    val remaining = new util.ArrayList[FlushRequest]()
+    requests.drainTo(remaining)
+    if (!remaining.isEmpty)
+      flush(remaining.asScala)
+
+    removeMetric(FlushBatchSizeMetricName, tags)
+    removeMetric(FsyncTimeMetricName, tags)
+  }
+}
+
+object LogFlushService {
+  val FlushBatchSizeMetricName = "FlushBatchSize"
+  val FsyncTimeMetricName = "FsyncRateAndTimeMs"
+
+  private val PollTimeoutMs = 100L
+
+  private case class FlushRequest(log: Log, offset: Long, completion: CompletableFuture[Void])
+}
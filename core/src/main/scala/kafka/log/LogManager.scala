@@ -20,7 +20,6 @@ package kafka.log
 import java.io._
 import java.nio.file.Files
 import java.util.concurrent._
-import java.util.concurrent.atomic.AtomicInteger
 
 import kafka.metrics.KafkaMetricsGroup
 import kafka.server.checkpoints.OffsetCheckpointFile
@@ -28,6 +27,7 @@ import kafka.server.{BrokerState, RecoveringFromUncleanShutdown, _}
 import kafka.utils._
 import kafka.zk.KafkaZkClient
 import org.apache.kafka.common.{KafkaException, TopicPartition}
+import org.apache.kafka.common.compress.ZstdDictionaries
 import org.apache.kafka.common.utils.Time
 import org.apache.kafka.common.errors.{KafkaStorageException, LogDirNotFoundException}
 
@@ -63,7 +63,14 @@ class LogManager(logDirs: Seq[File],
                  val brokerState: BrokerState,
                  brokerTopicStats: BrokerTopicStats,
                  logDirFailureChannel: LogDirFailureChannel,
-                 time: Time) extends Logging with KafkaMetricsGroup {
+                 time: Time,
+                 segmentRecoveryThreadsPerDataDir: Int = 0,
+                 maxIncrementalProducerSnapshots: Int = 0,
+                 tailCacheBytes: Long = 0L,
+                 tailCacheBlockBytes: Int = kafka.server.Defaults.LogTailCacheBlockBytes,
+                 flushServiceEnable: Boolean = false,
+                 indexWarmSectionBytes: Int = AbstractIndex.DefaultWarmSectionBytes,
+                 zstdDictionaries: ZstdDictionaries = ZstdDictionaries.EMPTY) extends Logging with KafkaMetricsGroup {
 
   import LogManager._
 
@@ -72,6 +79,9 @@ class LogManager(logDirs: Seq[File],
 
   private val logCreationOrDeletionLock = new Object
   private val currentLogs = new Pool[TopicPartition, Log]()
+  private[log] val tailCache =
+    if (tailCacheBytes > 0) Some(new LogTailCache(tailCacheBytes, tailCacheBlockBytes))
+    else None
   // Future logs are put in the directory with "-future" suffix. Future log is created when user wants to move replica
   // from one log directory to another log directory on the same broker. The directory of the future log will be renamed
   // to replace the current log of the partition after the future log catches up with the current log
@@ -111,6 +121,14 @@ class LogManager(logDirs: Seq[File],
 
   private val preferredLogDirs = new ConcurrentHashMap[TopicPartition, String]()
 
+  // The loading of the logs of each log directory, by absolute path, kept after loading for the recovery metrics
+  private val logDirRecoveries = new ConcurrentHashMap[String, LogDirRecovery]()
+
+  // The services flushing the logs of each log directory, by absolute path
+  private val flushServices: Map[String, LogFlushService] =
+    if (flushServiceEnable) liveLogDirs.map(dir => dir.getAbsolutePath -> new LogFlushService(dir)).toMap
+    else Map.empty
+
   private def offlineLogDirs: Iterable[File] = {
     val logDirsSet = mutable.Set[File]() ++= logDirs
     _liveLogDirs.forEach(dir => logDirsSet -= dir)
@@ -121,7 +139,8 @@ class LogManager(logDirs: Seq[File],
 
   private[kafka] val cleaner: LogCleaner =
     if (cleanerConfig.enableCleaner)
-      new LogCleaner(cleanerConfig, liveLogDirs, currentLogs, logDirFailureChannel, time = time)
+      new LogCleaner(cleanerConfig, liveLogDirs, currentLogs, logDirFailureChannel, time = time,
+        zstdDictionaries = zstdDictionaries)
     else
       null
 
@@ -203,6 +222,7 @@ class LogManager(logDirs: Seq[File],
       logStartOffsetCheckpoints = logStartOffsetCheckpoints.filter { case (file, _) => file.getAbsolutePath != dir }
       if (cleaner != null)
         cleaner.handleLogDirFailure(dir)
+      flushServices.get(dir).foreach(service => CoreUtils.swallow(service.close(), this))
 
       def removeOfflineLogs(logs: Pool[TopicPartition, Log]): Iterable[TopicPartition] = {
         val offlineTopicPartitions: Iterable[TopicPartition] = logs.collect {
@@ -256,7 +276,8 @@ class LogManager(logDirs: Seq[File],
   private[log] def loadLog(logDir: File,
                       hadCleanShutdown: Boolean,
                       recoveryPoints: Map[TopicPartition, Long],
-                      logStartOffsets: Map[TopicPartition, Long]): Log = {
+                      logStartOffsets: Map[TopicPartition, Long],
+                      recovery: Option[LogDirRecovery]): Log = {
     val topicPartition = Log.parseTopicPartitionName(logDir)
     val config = topicConfigs.getOrElse(topicPartition.topic, currentDefaultConfig)
     val logRecoveryPoint = recoveryPoints.getOrElse(topicPartition, 0L)
@@ -273,7 +294,13 @@ class LogManager(logDirs: Seq[File],
       time = time,
       brokerTopicStats = brokerTopicStats,
       logDirFailureChannel = logDirFailureChannel,
-      lastShutdownClean = hadCleanShutdown)
+      lastShutdownClean = hadCleanShutdown,
+      recovery = recovery,
+      maxIncrementalProducerSnapshots = maxIncrementalProducerSnapshots,
+      tailCache = tailCache,
+      flushService = flushServices.get(logDir.getParentFile.getAbsolutePath),
+      indexWarmSectionBytes = indexWarmSectionBytes,
+      zstdDictionaries = zstdDictionaries)
 
     if (logDir.getName.endsWith(Log.DeleteDirSuffix)) {
       addLogToBeDeleted(log)
@@ -305,11 +332,14 @@ class LogManager(logDirs: Seq[File],
     info(s"Loading logs from log dirs $liveLogDirs")
     val startMs = time.hiResClockMs()
     val threadPools = ArrayBuffer.empty[ExecutorService]
+    val recoveries = ArrayBuffer.empty[LogDirRecovery]
     val offlineDirs = mutable.Set.empty[(String, IOException)]
     val jobs = ArrayBuffer.empty[Seq[Future[_]]]
     var numTotalLogs = 0
 
     for (dir <- liveLogDirs) {
+      newRecoveryGauges(dir)
+
       val logDirAbsolutePath = dir.getAbsolutePath
       var hadCleanShutdown: Boolean = false
       try {
@@ -348,7 +378,10 @@ class LogManager(logDirs: Seq[File],
         }
 
         val logsToLoad = Option(dir.listFiles).getOrElse(Array.empty).filter(_.isDirectory)
-        val numLogsLoaded = new AtomicInteger(0)
+        val recovery = new LogDirRecovery(dir, logsToLoad.length,
+          if (hadCleanShutdown) 0 else segmentRecoveryThreadsPerDataDir, time)
+        recoveries.append(recovery)
+        logDirRecoveries.put(logDirAbsolutePath, recovery)
         numTotalLogs += logsToLoad.length
 
         val jobsForDir = logsToLoad.map { logDir =>
@@ -357,12 +390,13 @@ class LogManager(logDirs: Seq[File],
               debug(s"Loading log $logDir")
 
               val logLoadStartMs = time.hiResClockMs()
-              val log = loadLog(logDir, hadCleanShutdown, recoveryPoints, logStartOffsets)
+              val log = loadLog(logDir, hadCleanShutdown, recoveryPoints, logStartOffsets, Some(recovery))
               val logLoadDurationMs = time.hiResClockMs() - logLoadStartMs
-              val currentNumLoaded = numLogsLoaded.incrementAndGet()
+              val currentNumLoaded = recovery.logLoaded()
 
               info(s"Completed load of $log with ${log.numberOfSegments} segments in ${logLoadDurationMs}ms " +
-                s"($currentNumLoaded/${logsToLoad.length} loaded in $logDirAbsolutePath)")
+                s"($currentNumLoaded/${logsToLoad.length} loaded in $logDirAbsolutePath, " +
+                s"estimated time remaining ${recovery.estimatedTimeRemainingMs}ms)")
             } catch {
               case e: IOException =>
                 offlineDirs.add((logDirAbsolutePath, e))
@@ -394,11 +428,23 @@ class LogManager(logDirs: Seq[File],
         throw e.getCause
     } finally {
       threadPools.foreach(_.shutdown())
+      recoveries.foreach(_.close())
     }
 
     info(s"Loaded $numTotalLogs logs in ${time.hiResClockMs() - startMs}ms.")
   }
 
+  private def newRecoveryGauges(dir: File): Unit = {
+    val logDirAbsolutePath = dir.getAbsolutePath
+    def recoveryValue[T](value: LogDirRecovery => T, default: T): T =
+      Option(logDirRecoveries.get(logDirAbsolutePath)).map(value).getOrElse(default)
+
+    val tags = Map("logDirectory" -> logDirAbsolutePath)
+    newGauge("RemainingLogsToRecover", () => recoveryValue(_.remainingLogs, 0), tags)
+    newGauge("RemainingSegmentsToRecover", () => recoveryValue(_.remainingSegments, 0L), tags)
+    newGauge("RecoveryEstimatedTimeRemainingMs", () => recoveryValue(_.estimatedTimeRemainingMs, 0L), tags)
+  }
+
   /**
    *  Start the background threads to flush logs and do log cleanup
    */
@@ -434,6 +480,7 @@ class LogManager(logDirs: Seq[File],
     }
     if (cleanerConfig.enableCleaner)
       cleaner.startup()
+    flushServices.values.foreach(_.start())
   }
 
   /**
@@ -443,8 +490,13 @@ class LogManager(logDirs: Seq[File],
     info("Shutting down.")
 
     removeMetric("OfflineLogDirectoryCount")
+    tailCache.foreach(_.close())
     for (dir <- logDirs) {
-      removeMetric("LogDirectoryOffline", Map("logDirectory" -> dir.getAbsolutePath))
+      val tags = Map("logDirectory" -> dir.getAbsolutePath)
+      removeMetric("LogDirectoryOffline", tags)
+      removeMetric("RemainingLogsToRecover", tags)
+      removeMetric("RemainingSegmentsToRecover", tags)
+      removeMetric("RecoveryEstimatedTimeRemainingMs", tags)
     }
 
     val threadPools = ArrayBuffer.empty[ExecutorService]
@@ -455,6 +507,9 @@ class LogManager(logDirs: Seq[File],
       CoreUtils.swallow(cleaner.shutdown(), this)
     }
 
+    // complete the flushes already requested, the logs are flushed below before they are closed
+    flushServices.values.foreach(service => CoreUtils.swallow(service.close(), this))
+
     val localLogsByDir = logsByDir
 
     // close logs in each dir
@@ -801,7 +856,12 @@ class LogManager(logDirs: Seq[File],
           scheduler = scheduler,
           time = time,
           brokerTopicStats = brokerTopicStats,
-          logDirFailureChannel = logDirFailureChannel)
+          logDirFailureChannel = logDirFailureChannel,
+          maxIncrementalProducerSnapshots = maxIncrementalProducerSnapshots,
+          tailCache = tailCache,
+          flushService = flushServices.get(logDir.getParentFile.getAbsolutePath),
+          indexWarmSectionBytes = indexWarmSectionBytes,
+          zstdDictionaries = zstdDictionaries)
 
         if (isFuture)
           futureLogs.put(topicPartition, log)
@@ -1138,8 +1198,12 @@ class LogManager(logDirs: Seq[File],
         val timeSinceLastFlush = time.milliseconds - log.lastFlushTime
         debug(s"Checking if flush is needed on ${topicPartition.topic} flush interval ${log.config.flushMs}" +
               s" last flushed ${log.lastFlushTime} time since last flush: $timeSinceLastFlush")
-        if(timeSinceLastFlush >= log.config.flushMs)
-          log.flush()
+        if(timeSinceLastFlush >= log.config.flushMs) {
+          flushServices.get(new File(log.parentDir).getAbsolutePath) match {
+            case Some(service) => service.requestFlush(log, log.logEndOffset)
+            case None => log.flush()
+          }
+        }
       } catch {
         case e: Throwable =>
           error(s"Error flushing topic ${topicPartition.topic}", e)
@@ -1216,6 +1280,15 @@ object LogManager {
       brokerState = brokerState,
       brokerTopicStats = brokerTopicStats,
       logDirFailureChannel = logDirFailureChannel,
-      time = time)
+      time = time,
+      segmentRecoveryThreadsPerDataDir = config.numSegmentRecoveryThreadsPerDataDir,
+      maxIncrementalProducerSnapshots = config.producerStateMaxIncrementalSnapshots,
+      tailCacheBytes = config.logTailCacheBytes,
+      tailCacheBlockBytes = config.logTailCacheBlockBytes,
+      flushServiceEnable = config.logFlushServiceEnable,
+      // the warm section is only enlarged when the warmer keeps it in the page cache
+      indexWarmSectionBytes =
+        if (config.logIndexWarmerEnable) config.logIndexWarmSectionBytes else AbstractIndex.DefaultWarmSectionBytes,
+      zstdDictionaries = ZstdDictionaries.load(config.zstdDictionaryFiles.asJava))
   }
 }
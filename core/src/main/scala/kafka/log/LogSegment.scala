@@ -145,8 +145,29 @@ class LogSegment private[log] (val log: FileRecords,
              largestTimestamp: Long,
              shallowOffsetOfMaxTimestamp: Long,
              records: MemoryRecords): Unit = {
-    if (records.sizeInBytes > 0) {
-      trace(s"Inserting ${records.sizeInBytes} bytes at end offset $largestOffset at position ${log.sizeInBytes} " +
+    appendAll(largestOffset, largestTimestamp, shallowOffsetOfMaxTimestamp, Seq(records))
+  }
+
+  /**
+   * Append the given messages, held in memory or in other files, starting with the given offset. The messages of other
+   * files are transferred without copying them through the heap. Add an entry to the index if needed.
+   *
+   * It is assumed this method is being called from within a lock.
+   *
+   * @param largestOffset The last offset in the message sets
+   * @param largestTimestamp The largest timestamp in the message sets.
+   * @param shallowOffsetOfMaxTimestamp The offset of the message that has the largest timestamp in the messages to append.
+   * @param records The log entries to append, in order, each a MemoryRecords or a FileRecords.
+   * @throws LogSegmentOffsetOverflowException if the largest offset causes index offset overflow
+   */
+  @nonthreadsafe
+  def appendAll(largestOffset: Long,
+                largestTimestamp: Long,
+                shallowOffsetOfMaxTimestamp: Long,
+                records: Seq[Records]): Unit = {
+    val sizeInBytes = records.map(_.sizeInBytes).sum
+    if (sizeInBytes > 0) {
+      trace(s"Inserting $sizeInBytes bytes at end offset $largestOffset at position ${log.sizeInBytes} " +
             s"with largest timestamp $largestTimestamp at shallow offset $shallowOffsetOfMaxTimestamp")
       val physicalPosition = log.sizeInBytes()
       if (physicalPosition == 0)
@@ -155,7 +176,12 @@ class LogSegment private[log] (val log: FileRecords,
       ensureOffsetInRange(largestOffset)
 
       // append the messages
-      val appendedBytes = log.append(records)
+      var appendedBytes = 0
+      records.foreach {
+        case memoryRecords: MemoryRecords => appendedBytes += log.append(memoryRecords)
+        case fileRecords: FileRecords => appendedBytes += log.append(fileRecords)
+        case other => throw new IllegalArgumentException(s"Unexpected records of type ${other.getClass}")
+      }
       trace(s"Appended $appendedBytes to ${log.file} at end offset $largestOffset")
       // Update the in memory max timestamp and corresponding offset.
       if (largestTimestamp > maxTimestampSoFar) {
@@ -168,7 +194,7 @@ class LogSegment private[log] (val log: FileRecords,
         timeIndex.maybeAppend(maxTimestampSoFar, offsetOfMaxTimestampSoFar)
         bytesSinceLastIndexEntry = 0
       }
-      bytesSinceLastIndexEntry += records.sizeInBytes
+      bytesSinceLastIndexEntry += sizeInBytes
     }
   }
 
@@ -333,7 +359,50 @@ class LogSegment private[log] (val log: FileRecords,
    * @throws LogSegmentOffsetOverflowException if the log segment contains an offset that causes the index offset to overflow
    */
   @nonthreadsafe
-  def recover(producerStateManager: ProducerStateManager, leaderEpochCache: Option[LeaderEpochFileCache] = None): Int = {
+  def recover(producerStateManager: ProducerStateManager, leaderEpochCache: Option[LeaderEpochFileCache] = None): Int =
+    recover(Some(producerStateManager), leaderEpochCache)
+
+  /**
+   * Run the part of the recovery of the segment which does not depend on the segments before it: rebuild the offset and
+   * time indexes from the log file and lop off any invalid bytes from the end of the log and index. Segments of the same
+   * log can run this concurrently, the transaction index has to be recovered afterwards with recoverProducerState() in
+   * offset order.
+   *
+   * @return The number of bytes truncated from the log
+   * @throws LogSegmentOffsetOverflowException if the log segment contains an offset that causes the index offset to overflow
+   */
+  @nonthreadsafe
+  def recoverIndexes(): Int = recover(None, None)
+
+  /**
+   * Rebuild the transaction index of a segment recovered with recoverIndexes(), updating the producer state and the
+   * leader epoch cache with the batches of the segment. The batches are not validated again.
+   *
+   * @param producerStateManager Producer state corresponding to the segment's base offset
+   * @param leaderEpochCache Optionally a cache for updating the leader epoch during recovery
+   */
+  @nonthreadsafe
+  def recoverProducerState(producerStateManager: ProducerStateManager,
+                           leaderEpochCache: Option[LeaderEpochFileCache] = None): Unit = {
+    txnIndex.reset()
+    for (batch <- log.batches.asScala)
+      recoverProducerState(batch, producerStateManager, leaderEpochCache)
+  }
+
+  private def recoverProducerState(batch: RecordBatch,
+                                   producerStateManager: ProducerStateManager,
+                                   leaderEpochCache: Option[LeaderEpochFileCache]): Unit = {
+    if (batch.magic >= RecordBatch.MAGIC_VALUE_V2) {
+      leaderEpochCache.foreach { cache =>
+        if (batch.partitionLeaderEpoch >= 0 && cache.latestEpoch.forall(batch.partitionLeaderEpoch > _))
+          cache.assign(batch.partitionLeaderEpoch, batch.baseOffset)
+      }
+      updateProducerState(producerStateManager, batch)
+    }
+  }
+
+  private def recover(producerStateManager: Option[ProducerStateManager],
+                      leaderEpochCache: Option[LeaderEpochFileCache]): Int = {
     offsetIndex.reset()
     timeIndex.reset()
     txnIndex.reset()
@@ -359,13 +428,7 @@ class LogSegment private[log] (val log: FileRecords,
         }
         validBytes += batch.sizeInBytes()
 
-        if (batch.magic >= RecordBatch.MAGIC_VALUE_V2) {
-          leaderEpochCache.foreach { cache =>
-            if (batch.partitionLeaderEpoch >= 0 && cache.latestEpoch.forall(batch.partitionLeaderEpoch > _))
-              cache.assign(batch.partitionLeaderEpoch, batch.baseOffset)
-          }
-          updateProducerState(producerStateManager, batch)
-        }
+        producerStateManager.foreach(recoverProducerState(batch, _, leaderEpochCache))
       }
     } catch {
       case e@ (_: CorruptRecordException | _: InvalidRecordException) =>
@@ -658,12 +721,15 @@ class LogSegment private[log] (val log: FileRecords,
 object LogSegment {
 
   def open(dir: File, baseOffset: Long, config: LogConfig, time: Time, fileAlreadyExists: Boolean = false,
-           initFileSize: Int = 0, preallocate: Boolean = false, fileSuffix: String = ""): LogSegment = {
+           initFileSize: Int = 0, preallocate: Boolean = false, fileSuffix: String = "",
+           indexWarmSectionBytes: Int = AbstractIndex.DefaultWarmSectionBytes): LogSegment = {
     val maxIndexSize = config.maxIndexSize
     new LogSegment(
       FileRecords.open(Log.logFile(dir, baseOffset, fileSuffix), fileAlreadyExists, initFileSize, preallocate),
-      LazyIndex.forOffset(Log.offsetIndexFile(dir, baseOffset, fileSuffix), baseOffset = baseOffset, maxIndexSize = maxIndexSize),
-      LazyIndex.forTime(Log.timeIndexFile(dir, baseOffset, fileSuffix), baseOffset = baseOffset, maxIndexSize = maxIndexSize),
+      LazyIndex.forOffset(Log.offsetIndexFile(dir, baseOffset, fileSuffix), baseOffset = baseOffset, maxIndexSize = maxIndexSize,
+        warmSectionBytes = indexWarmSectionBytes),
+      LazyIndex.forTime(Log.timeIndexFile(dir, baseOffset, fileSuffix), baseOffset = baseOffset, maxIndexSize = maxIndexSize,
+        warmSectionBytes = indexWarmSectionBytes),
       new TransactionIndex(baseOffset, Log.transactionIndexFile(dir, baseOffset, fileSuffix)),
       baseOffset,
       indexIntervalBytes = config.indexInterval,
@@ -0,0 +1,378 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.nio.ByteBuffer
+import java.util
+import java.util.concurrent.{ConcurrentLinkedQueue, TimeUnit}
+import java.util.concurrent.atomic.{AtomicInteger, LongAdder}
+
+import kafka.metrics.KafkaMetricsGroup
+import kafka.server.{FetchDataInfo, LogOffsetMetadata}
+import org.apache.kafka.common.TopicPartition
+import org.apache.kafka.common.record.{MemoryRecords, RecordBatch}
+
+/**
+ * A bounded off-heap cache of the records most recently appended to the active segment of each log, used to serve
+ * the reads of followers and consumers at the tail of the log without reading the segment.
+ *
+ * The records of a log are copied into blocks mirroring contiguous byte ranges of its active segment, so that a
+ * read from the cache returns the same bytes and positions as a read from the segment, up to the end of a block.
+ * A block is filled by the appends to the log until it is full, and the blocks of a log are dropped when the log
+ * rolls or is truncated.
+ *
+ * Blocks are evicted across logs to keep the size of the cache within `maxBytes`, using the clock algorithm to
+ * approximate the eviction of the least recently read blocks. The memory of the blocks is allocated once and reused by
+ * the blocks allocated after an eviction, so that the cache never holds more than `maxBytes` of off-heap memory. The
+ * records of a read are copied out of the block, since the block may be reused as soon as the read returns. This copy
+ * costs more than sending the records of the segment on the transports which send them without copying, so the
+ * fetches over these transports are not served from the cache.
+ *
+ * @param maxBytes The maximum number of bytes of the blocks of all the logs
+ * @param blockBytes The size of the blocks, appends larger than a block are not cached
+ */
+class LogTailCache(val maxBytes: Long, blockBytes: Int) extends KafkaMetricsGroup {
+  import LogTailCache._
+
+  if (maxBytes <= 0)
+    throw new IllegalArgumentException(s"Invalid max bytes $maxBytes for the log tail cache")
+  if (blockBytes <= 0)
+    throw new IllegalArgumentException(s"Invalid block bytes $blockBytes for the log tail cache")
+
+  private val blockSize = math.min(blockBytes.toLong, maxBytes).toInt
+  private val maxBuffers = maxBytes / blockSize
+
+  // guards the blocks of all the logs, the clock and the size of the cache
+  private val lock = new Object
+  // the blocks in the order they are visited by the clock hand
+  private val clock = new util.ArrayDeque[Block]()
+  @volatile private var sizeInBytes = 0L
+  // the number of buffers allocated for the blocks, which are allocated until the cache is full
+  private var numBuffers = 0L
+  // the buffers of the evicted blocks which are not read anymore, for the new blocks
+  private val freeBuffers = new ConcurrentLinkedQueue[ByteBuffer]()
+
+  private val hits = new LongAdder
+  private val misses = new LongAdder
+
+  private val hitMeter = newMeter(HitsMetricName, "reads", TimeUnit.SECONDS)
+  private val missMeter = newMeter(MissesMetricName, "reads", TimeUnit.SECONDS)
+  newGauge(HitRatioMetricName, () => {
+    val numHits = hits.sum
+    val numReads = numHits + misses.sum
+    if (numReads == 0) 0.0 else numHits.toDouble / numReads
+  })
+  newGauge(SizeMetricName, () => sizeInBytes)
+
+  /**
+   * Create the cache of the records of a log.
+   */
+  def forLog(topicPartition: TopicPartition): LogTailCache.Entry = new LogTailCache.Entry(this, topicPartition)
+
+  def size: Long = sizeInBytes
+
+  def hitCount: Long = hits.sum
+
+  def missCount: Long = misses.sum
+
+  private[log] def recordHit(): Unit = {
+    hits.increment()
+    hitMeter.mark()
+  }
+
+  private[log] def recordMiss(): Unit = {
+    misses.increment()
+    missMeter.mark()
+  }
+
+  /**
+   * Add a block to the blocks of a log, evicting blocks if needed. The block is returned retained by the caller, which
+   * releases it once it has appended to it.
+   *
+   * @return The new block, or None if the buffers of the evicted blocks are still being read
+   */
+  private def allocate(entry: Entry, segmentBaseOffset: Long, segmentPosition: Int): Option[Block] = {
+    lock synchronized {
+      while (sizeInBytes + blockSize > maxBytes && !clock.isEmpty) {
+        val block = clock.poll()
+        if (block.referenced) {
+          // second chance for the blocks read since the hand last visited them
+          block.referenced = false
+          clock.add(block)
+        } else {
+          block.entry.blocks = block.entry.blocks.filterNot(_ eq block)
+          sizeInBytes -= block.capacity
+          block.release()
+        }
+      }
+
+      val buffer = Option(freeBuffers.poll()).orElse {
+        if (numBuffers < maxBuffers) {
+          numBuffers += 1
+          Some(ByteBuffer.allocateDirect(blockSize))
+        } else None
+      }
+      buffer.map { buffer =>
+        val block = new Block(this, entry, segmentBaseOffset, segmentPosition, buffer)
+        block.retain()
+        entry.blocks = entry.blocks :+ block
+        clock.add(block)
+        sizeInBytes += block.capacity
+        block
+      }
+    }
+  }
+
+  private def clear(entry: Entry): Unit = {
+    lock synchronized {
+      entry.blocks.foreach { block =>
+        clock.remove(block)
+        sizeInBytes -= block.capacity
+        block.release()
+      }
+      entry.blocks = Vector.empty
+    }
+  }
+
+  /**
+   * Make the buffer of a block which is neither cached nor read anymore available to the new blocks.
+   */
+  private def free(buffer: ByteBuffer): Unit = freeBuffers.add(buffer)
+
+  def close(): Unit = {
+    removeMetric(HitsMetricName)
+    removeMetric(MissesMetricName)
+    removeMetric(HitRatioMetricName)
+    removeMetric(SizeMetricName)
+  }
+}
+
+object LogTailCache {
+  val HitsMetricName = "HitsPerSec"
+  val MissesMetricName = "MissesPerSec"
+  val HitRatioMetricName = "HitRatio"
+  val SizeMetricName = "SizeBytes"
+
+  /**
+   * The cached records of a log. Appends, rolls and truncations are called with the log lock held, reads are not.
+   */
+  class Entry private[log] (cache: LogTailCache, val topicPartition: TopicPartition) {
+    // replaced by the cache when blocks are added or evicted, read without lock
+    @volatile private[log] var blocks = Vector.empty[Block]
+
+    /**
+     * Cache appended records.
+     *
+     * @param segmentBaseOffset The base offset of the segment the records were appended to
+     * @param segmentPosition The position of the records in the segment
+     * @param records The appended records
+     */
+    def append(segmentBaseOffset: Long, segmentPosition: Int, records: MemoryRecords): Unit = {
+      val size = records.sizeInBytes
+      if (size == 0 || size > cache.blockSize)
+        return
+
+      var baseOffset = -1L
+      var lastOffset = -1L
+      var magic = RecordBatch.CURRENT_MAGIC_VALUE
+      records.batches.forEach { batch =>
+        if (baseOffset < 0)
+          baseOffset = batch.baseOffset
+        lastOffset = batch.lastOffset
+        magic = math.min(magic, batch.magic).toByte
+      }
+      // the base offset of a compressed batch of an older format is not known without decompressing it
+      if (magic < RecordBatch.MAGIC_VALUE_V2)
+        return
+
+      val lastBlock = blocks.lastOption.filter { block =>
+        block.segmentBaseOffset == segmentBaseOffset && block.segmentPosition + block.size == segmentPosition &&
+          block.capacity - block.size >= size
+      }
+      // the last block is retained while appending to it, so that its buffer is not reused if it is evicted meanwhile
+      val block = lastBlock.filter(_.retain()).orElse {
+        // the records are not contiguous with the cached records or don't fit in the last block
+        if (blocks.exists(_.segmentBaseOffset != segmentBaseOffset))
+          cache.clear(this)
+        cache.allocate(this, segmentBaseOffset, segmentPosition)
+      }
+      block.foreach { block =>
+        try block.append(baseOffset, lastOffset, records)
+        finally block.release()
+      }
+    }
+
+    /**
+     * Read records from the cache as they would be read from the active segment.
+     *
+     * @param startOffset The offset to begin reading at
+     * @param maxLength The maximum number of bytes to read
+     * @param maxOffsetMetadata The offset metadata of the offset the records must be read below
+     * @param minOneMessage If this is true, the first batch will be returned even if it exceeds `maxLength`
+     * @return The fetch data information, or None if the batch with the start offset is not cached
+     */
+    def read(startOffset: Long, maxLength: Int, maxOffsetMetadata: LogOffsetMetadata,
+             minOneMessage: Boolean): Option[FetchDataInfo] = {
+      val currentBlocks = blocks
+      var i = currentBlocks.size - 1
+      var fetchDataInfo: Option[FetchDataInfo] = None
+      // the tail of the log is in the last blocks
+      while (fetchDataInfo.isEmpty && i >= 0) {
+        fetchDataInfo = currentBlocks(i).read(startOffset, maxLength, maxOffsetMetadata, minOneMessage)
+        i -= 1
+      }
+      if (fetchDataInfo.isDefined) cache.recordHit() else cache.recordMiss()
+      fetchDataInfo
+    }
+
+    /**
+     * Drop the cached records, when the log rolls or is truncated.
+     */
+    def clear(): Unit = {
+      if (blocks.nonEmpty)
+        cache.clear(this)
+    }
+
+    def size: Long = blocks.map(_.capacity.toLong).sum
+  }
+
+  // the cached records published to the readers
+  private case class BlockState(size: Int, nextOffset: Long, numChunks: Int, chunkOffsets: Array[Long],
+                                chunkPositions: Array[Int])
+
+  /**
+   * A copy of a contiguous byte range of a segment starting at `segmentPosition`. The block is written by a single
+   * appender at a time, which publishes the records it appended once they have been copied.
+   *
+   * The block is retained by the cache while it is cached and by the appends and reads while they access its buffer,
+   * which is freed for a new block once the block is released by all of them.
+   */
+  private[log] class Block(cache: LogTailCache, val entry: Entry, val segmentBaseOffset: Long, val segmentPosition: Int,
+                           buffer: ByteBuffer) {
+    val capacity: Int = buffer.capacity
+    // the number of holders of the block, starting with the cache, the buffer is freed when it drops to 0
+    private val refCount = new AtomicInteger(1)
+    // the base offset and position of each append, to find the batch of an offset without reading all the batches
+    @volatile private var state = BlockState(0, -1L, 0, new Array[Long](16), new Array[Int](16))
+    // set when the block is read, cleared when the clock hand visits the block
+    @volatile var referenced = false
+
+    def size: Int = state.size
+
+    /**
+     * Retain the block unless its buffer has already been freed.
+     *
+     * @return true if the block was retained, in which case it must be released
+     */
+    def retain(): Boolean = {
+      var count = refCount.get
+      while (count > 0 && !refCount.compareAndSet(count, count + 1))
+        count = refCount.get
+      count > 0
+    }
+
+    def release(): Unit = {
+      if (refCount.decrementAndGet() == 0)
+        cache.free(buffer)
+    }
+
+    def append(baseOffset: Long, lastOffset: Long, records: MemoryRecords): Unit = {
+      val current = state
+      val copy = buffer.duplicate()
+      copy.position(current.size)
+      copy.put(records.buffer.duplicate())
+
+      val (chunkOffsets, chunkPositions) =
+        if (current.numChunks < current.chunkOffsets.length) (current.chunkOffsets, current.chunkPositions)
+        else (util.Arrays.copyOf(current.chunkOffsets, current.numChunks * 2),
+          util.Arrays.copyOf(current.chunkPositions, current.numChunks * 2))
+      chunkOffsets(current.numChunks) = baseOffset
+      chunkPositions(current.numChunks) = current.size
+      state = BlockState(current.size + records.sizeInBytes, lastOffset + 1, current.numChunks + 1, chunkOffsets,
+        chunkPositions)
+    }
+
+    def read(startOffset: Long, maxLength: Int, maxOffsetMetadata: LogOffsetMetadata,
+             minOneMessage: Boolean): Option[FetchDataInfo] = {
+      if (!retain())
+        return None
+      try readRetained(startOffset, maxLength, maxOffsetMetadata, minOneMessage)
+      finally release()
+    }
+
+    private def readRetained(startOffset: Long, maxLength: Int, maxOffsetMetadata: LogOffsetMetadata,
+                             minOneMessage: Boolean): Option[FetchDataInfo] = {
+      val current = state
+      if (current.numChunks == 0 || startOffset < current.chunkOffsets(0) || startOffset >= current.nextOffset)
+        return None
+
+      val chunk = floorChunk(current, startOffset)
+      val chunkBuffer = buffer.duplicate()
+      chunkBuffer.position(current.chunkPositions(chunk)).limit(current.size)
+
+      // find the first batch with a last offset at least equal to the start offset
+      var startPosition = -1
+      var startBatchSize = 0
+      var position = current.chunkPositions(chunk)
+      val batches = MemoryRecords.readableRecords(chunkBuffer.slice()).batches.iterator
+      while (startPosition < 0 && batches.hasNext) {
+        val batch = batches.next()
+        if (batch.lastOffset >= startOffset) {
+          startPosition = position
+          startBatchSize = batch.sizeInBytes
+        }
+        position += batch.sizeInBytes
+      }
+      if (startPosition < 0)
+        return None
+
+      referenced = true
+      val offsetMetadata = LogOffsetMetadata(startOffset, segmentBaseOffset, segmentPosition + startPosition)
+      val adjustedMaxSize =
+        if (minOneMessage) math.max(maxLength, startBatchSize)
+        else maxLength
+      if (adjustedMaxSize == 0)
+        return Some(FetchDataInfo(offsetMetadata, MemoryRecords.EMPTY))
+
+      // use the max offset position if it is in the segment of the block, otherwise the block size is the limit
+      val maxPosition =
+        if (maxOffsetMetadata.segmentBaseOffset == segmentBaseOffset)
+          math.min(maxOffsetMetadata.relativePositionInSegment - segmentPosition, current.size)
+        else current.size
+      val fetchSize = math.max(math.min(maxPosition - startPosition, adjustedMaxSize), 0)
+      // the records are copied since the buffer may be reused by another block once the block is released
+      val fetchBuffer = buffer.duplicate()
+      fetchBuffer.position(startPosition).limit(startPosition + fetchSize)
+      val recordsBuffer = ByteBuffer.allocate(fetchSize)
+      recordsBuffer.put(fetchBuffer).flip()
+      Some(FetchDataInfo(offsetMetadata, MemoryRecords.readableRecords(recordsBuffer),
+        firstEntryIncomplete = adjustedMaxSize < startBatchSize))
+    }
+
+    private def floorChunk(current: BlockState, offset: Long): Int = {
+      var low = 0
+      var high = current.numChunks - 1
+      while (low < high) {
+        val mid = (low + high + 1) >>> 1
+        if (current.chunkOffsets(mid) <= offset) low = mid
+        else high = mid - 1
+      }
+      low
+    }
+  }
+}
@@ -23,7 +23,8 @@ import kafka.common.{LongRef, RecordValidationException}
 import kafka.message.{CompressionCodec, NoCompressionCodec, ZStdCompressionCodec}
 import kafka.server.BrokerTopicStats
 import kafka.utils.Logging
-import org.apache.kafka.common.errors.{CorruptRecordException, InvalidTimestampException, UnsupportedCompressionTypeException, UnsupportedForMessageFormatException}
+import org.apache.kafka.common.compress.ZstdDictionaries
+import org.apache.kafka.common.errors.{CorruptRecordException, InvalidTimestampException, UnknownZstdDictionaryException, UnsupportedCompressionTypeException, UnsupportedForMessageFormatException}
 import org.apache.kafka.common.record.{AbstractRecords, BufferSupplier, CompressionType, MemoryRecords, Record, RecordBatch, RecordConversionStats, TimestampType}
 import org.apache.kafka.common.InvalidRecordException
 import org.apache.kafka.common.TopicPartition
@@ -91,7 +92,8 @@ private[log] object LogValidator extends Logging {
                                                     partitionLeaderEpoch: Int,
                                                     origin: AppendOrigin,
                                                     interBrokerProtocolVersion: ApiVersion,
-                                                    brokerTopicStats: BrokerTopicStats): ValidationAndOffsetAssignResult = {
+                                                    brokerTopicStats: BrokerTopicStats,
+                                                    zstdDictionaries: ZstdDictionaries = ZstdDictionaries.EMPTY): ValidationAndOffsetAssignResult = {
     if (sourceCodec == NoCompressionCodec && targetCodec == NoCompressionCodec) {
       // check the magic value
       if (!records.hasMatchingMagic(magic))
@@ -103,7 +105,8 @@ private[log] object LogValidator extends Logging {
           partitionLeaderEpoch, origin, magic, brokerTopicStats)
     } else {
       validateMessagesAndAssignOffsetsCompressed(records, topicPartition, offsetCounter, time, now, sourceCodec, targetCodec, compactedTopic,
-        magic, timestampType, timestampDiffMaxMs, partitionLeaderEpoch, origin, interBrokerProtocolVersion, brokerTopicStats)
+        magic, timestampType, timestampDiffMaxMs, partitionLeaderEpoch, origin, interBrokerProtocolVersion, brokerTopicStats,
+        zstdDictionaries)
     }
   }
 
@@ -356,7 +359,8 @@ private[log] object LogValidator extends Logging {
                                                  partitionLeaderEpoch: Int,
                                                  origin: AppendOrigin,
                                                  interBrokerProtocolVersion: ApiVersion,
-                                                 brokerTopicStats: BrokerTopicStats): ValidationAndOffsetAssignResult = {
+                                                 brokerTopicStats: BrokerTopicStats,
+                                                 zstdDictionaries: ZstdDictionaries): ValidationAndOffsetAssignResult = {
 
     if (targetCodec == ZStdCompressionCodec && interBrokerProtocolVersion < KAFKA_2_1_IV0)
       throw new UnsupportedCompressionTypeException("Produce requests to inter.broker.protocol.version < 2.1 broker " +
@@ -377,6 +381,9 @@ private[log] object LogValidator extends Logging {
     val validatedRecords = new mutable.ArrayBuffer[Record]
 
     var uncompressedSizeInBytes = 0
+    // the batches compressed with a zstd dictionary are decompressed with the dictionaries of the broker, and are
+    // rejected if the broker does not load their dictionary or if the topic does not enable the dictionaries
+    val decompressionBufferSupplier = BufferSupplier.noCaching(zstdDictionaries)
 
     // Assume there's only one batch with compressed memory records; otherwise, return InvalidRecordException
     // One exception though is that with format smaller than v2, if sourceCodec is noCompression, then each batch is actually
@@ -399,10 +406,17 @@ private[log] object LogValidator extends Logging {
 
       // if we are on version 2 and beyond, and we know we are going for in place assignment,
       // then we can optimize the iterator to skip key / value / headers since they would not be used at all
-      val recordsIterator = if (inPlaceAssignment && firstBatch.magic >= RecordBatch.MAGIC_VALUE_V2)
-        batch.skipKeyValueIterator(BufferSupplier.NO_CACHING)
-      else
-        batch.streamingIterator(BufferSupplier.NO_CACHING)
+      val recordsIterator = try {
+        if (inPlaceAssignment && firstBatch.magic >= RecordBatch.MAGIC_VALUE_V2)
+          batch.skipKeyValueIterator(decompressionBufferSupplier)
+        else
+          batch.streamingIterator(decompressionBufferSupplier)
+      } catch {
+        case e: UnknownZstdDictionaryException =>
+          throw new UnsupportedCompressionTypeException(s"The records are compressed with the zstd dictionary " +
+            s"${Integer.toUnsignedString(e.dictionaryId)}, which is not loaded by the broker or not enabled for the topic " +
+            s"with ${LogConfig.ZstdDictionaryEnableProp}", e)
+      }
 
       try {
         val recordErrors = new ArrayBuffer[ApiRecordError](0)
@@ -0,0 +1,295 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.nio.{ByteBuffer, ByteOrder}
+
+import kafka.utils._
+import org.apache.kafka.common.utils.ByteBufferUnmapper
+
+/**
+ * A hash table used for deduplicating the log which keeps its entries in direct (off-heap) memory. Like
+ * [[SkimpyOffsetMap]] it stores a hash of the key as a proxy for the key, but it uses the non-cryptographic 128-bit
+ * MurmurHash3 which is much cheaper to compute than a message digest. The table is split across several direct
+ * buffers so that it is not limited to 2 GB. Collisions are resolved by linear probing. This hash table does not
+ * support deletes.
+ *
+ * @param memory The amount of memory this map can use
+ * @param slotsPerChunk The maximum number of entries stored in a single direct buffer
+ */
+@nonthreadsafe
+class OffHeapOffsetMap private (val memory: Long,
+                                slotsPerChunk: Int,
+                                sharedChunks: Option[Array[ByteBuffer]]) extends OffsetMap {
+  import OffHeapOffsetMap._
+
+  def this(memory: Long, slotsPerChunk: Int = OffHeapOffsetMap.MaxSlotsPerChunk) = this(memory, slotsPerChunk, None)
+
+  require(slotsPerChunk > 0 && slotsPerChunk <= MaxSlotsPerChunk,
+    s"Slots per chunk must be between 1 and $MaxSlotsPerChunk, but was $slotsPerChunk")
+
+  /**
+   * The maximum number of entries this map can contain
+   */
+  val slots: Int = math.min(memory / BytesPerEntry, Int.MaxValue).toInt
+  require(slots > 0, s"Offset map memory of $memory bytes is too small to hold a single entry")
+
+  private var chunks: Array[ByteBuffer] = sharedChunks.getOrElse {
+    val numChunks = ((slots.toLong + slotsPerChunk - 1) / slotsPerChunk).toInt
+    Array.tabulate(numChunks) { i =>
+      val chunkSlots = math.min(slotsPerChunk.toLong, slots.toLong - i.toLong * slotsPerChunk).toInt
+      ByteBuffer.allocateDirect(chunkSlots * BytesPerEntry)
+    }
+  }
+
+  /* the two halves of the hash of the key most recently passed to put or get */
+  private var hash1 = 0L
+  private var hash2 = 0L
+
+  /* number of entries put into the map */
+  private var entries = 0
+
+  /* number of lookups on the map */
+  private var lookups = 0L
+
+  /* the number of probes for all lookups */
+  private var probes = 0L
+
+  /* the latest offset written into the map */
+  private var lastOffset = -1L
+
+  /**
+   * Associate this offset to the given key.
+   * @param key The key
+   * @param offset The offset
+   */
+  override def put(key: ByteBuffer, offset: Long): Unit = {
+    require(entries < slots, "Attempt to add a new entry to a full offset map.")
+    lookups += 1
+    hashKey(key)
+    // probe until we find the first empty slot
+    var slot = firstSlot
+    while (!isEmpty(slot)) {
+      if (hashMatches(slot)) {
+        // we found an existing entry, overwrite it and return (size does not change)
+        chunkOf(slot).putLong(positionOf(slot) + 16, offset)
+        lastOffset = offset
+        return
+      }
+      slot = nextSlot(slot)
+    }
+    // found an empty slot, update it--size grows by 1
+    val chunk = chunkOf(slot)
+    val pos = positionOf(slot)
+    chunk.putLong(pos, hash1)
+    chunk.putLong(pos + 8, hash2)
+    chunk.putLong(pos + 16, offset)
+    lastOffset = offset
+    entries += 1
+  }
+
+  /**
+   * Get the offset associated with this key.
+   * @param key The key
+   * @return The offset associated with this key or -1 if the key is not found
+   */
+  override def get(key: ByteBuffer): Long = {
+    lookups += 1
+    hashKey(key)
+    // search for the hash of this key by probing until we find the hash we are looking for or we find an empty slot,
+    // giving up once every slot has been visited since the map may be full
+    var slot = firstSlot
+    var attempt = 0
+    while (attempt < slots) {
+      if (isEmpty(slot))
+        return -1L
+      if (hashMatches(slot))
+        return chunkOf(slot).getLong(positionOf(slot) + 16)
+      slot = nextSlot(slot)
+      attempt += 1
+    }
+    -1L
+  }
+
+  /**
+   * Remove all entries from the map.
+   */
+  override def clear(): Unit = {
+    this.entries = 0
+    this.lookups = 0L
+    this.probes = 0L
+    this.lastOffset = -1L
+    chunks.foreach { chunk =>
+      var pos = 0
+      while (pos < chunk.capacity) {
+        chunk.putLong(pos, 0L)
+        pos += 8
+      }
+    }
+  }
+
+  /**
+   * Release the direct memory backing this map. The map must not be used afterwards.
+   */
+  override def close(): Unit = {
+    val released = chunks
+    chunks = Array.empty
+    // the memory of a reader belongs to the map it reads
+    if (sharedChunks.isEmpty)
+      released.foreach(ByteBufferUnmapper.unmap("offset map", _))
+  }
+
+  /**
+   * The number of entries put into the map (note that not all may remain)
+   */
+  override def size: Int = entries
+
+  /**
+   * The rate of collisions in the lookups
+   */
+  def collisionRate: Double =
+    (this.probes - this.lookups) / this.lookups.toDouble
+
+  /**
+   * The latest offset put into the map
+   */
+  override def latestOffset: Long = lastOffset
+
+  override def updateLatestOffset(offset: Long): Unit = {
+    lastOffset = offset
+  }
+
+  override def reader(): OffsetMap = {
+    val reader = new OffHeapOffsetMap(memory, slotsPerChunk, Some(chunks))
+    reader.entries = entries
+    reader.lastOffset = lastOffset
+    reader
+  }
+
+  private def chunkOf(slot: Int): ByteBuffer = chunks(slot / slotsPerChunk)
+
+  private def positionOf(slot: Int): Int = (slot % slotsPerChunk) * BytesPerEntry
+
+  private def isEmpty(slot: Int): Boolean = {
+    val chunk = chunkOf(slot)
+    val pos = positionOf(slot)
+    chunk.getLong(pos) == 0L && chunk.getLong(pos + 8) == 0L
+  }
+
+  private def hashMatches(slot: Int): Boolean = {
+    val chunk = chunkOf(slot)
+    val pos = positionOf(slot)
+    chunk.getLong(pos) == hash1 && chunk.getLong(pos + 8) == hash2
+  }
+
+  private def firstSlot: Int = {
+    this.probes += 1
+    ((hash1 & Long.MaxValue) % slots).toInt
+  }
+
+  private def nextSlot(slot: Int): Int = {
+    this.probes += 1
+    if (slot == slots - 1) 0 else slot + 1
+  }
+
+  /**
+   * Compute the 128-bit MurmurHash3 (x64 variant) of the remaining bytes of the key into hash1 and hash2 without
+   * changing the position of the key buffer.
+   * @param key The key to hash
+   */
+  private def hashKey(key: ByteBuffer): Unit = {
+    val start = key.position()
+    val length = key.remaining()
+    var h1 = Seed
+    var h2 = Seed
+
+    val blocksEnd = start + (length & ~15)
+    var pos = start
+    while (pos < blocksEnd) {
+      h1 ^= mixK1(getLongLE(key, pos))
+      h1 = java.lang.Long.rotateLeft(h1, 27) + h2
+      h1 = h1 * 5 + 0x52dce729
+      h2 ^= mixK2(getLongLE(key, pos + 8))
+      h2 = java.lang.Long.rotateLeft(h2, 31) + h1
+      h2 = h2 * 5 + 0x38495ab5
+      pos += 16
+    }
+
+    val tailLength = length & 15
+    if (tailLength > 0) {
+      var k1 = 0L
+      var k2 = 0L
+      var i = tailLength - 1
+      while (i >= 0) {
+        val b = (key.get(blocksEnd + i) & 0xff).toLong
+        if (i >= 8) k2 ^= b << ((i - 8) * 8)
+        else k1 ^= b << (i * 8)
+        i -= 1
+      }
+      if (tailLength > 8)
+        h2 ^= mixK2(k2)
+      h1 ^= mixK1(k1)
+    }
+
+    h1 ^= length
+    h2 ^= length
+    h1 += h2
+    h2 += h1
+    h1 = fmix(h1)
+    h2 = fmix(h2)
+    h1 += h2
+    h2 += h1
+
+    // an all-zero hash is indistinguishable from an empty slot
+    if (h1 == 0L && h2 == 0L)
+      h1 = 1L
+    hash1 = h1
+    hash2 = h2
+  }
+}
+
+object OffHeapOffsetMap {
+  /* the number of bytes of space each entry uses (a 16 byte hash plus an 8 byte offset) */
+  val BytesPerEntry = 24
+
+  /* the largest number of entries that fits in a single direct buffer */
+  val MaxSlotsPerChunk: Int = Int.MaxValue / BytesPerEntry
+
+  private val Seed = 0L
+  private val C1 = 0x87c37b91114253d5L
+  private val C2 = 0x4cf5ad432745937fL
+
+  private def getLongLE(buffer: ByteBuffer, index: Int): Long = {
+    val value = buffer.getLong(index)
+    if (buffer.order == ByteOrder.LITTLE_ENDIAN) value else java.lang.Long.reverseBytes(value)
+  }
+
+  private def mixK1(k: Long): Long = java.lang.Long.rotateLeft(k * C1, 31) * C2
+
+  private def mixK2(k: Long): Long = java.lang.Long.rotateLeft(k * C2, 33) * C1
+
+  private def fmix(value: Long): Long = {
+    var k = value
+    k ^= k >>> 33
+    k *= 0xff51afd7ed558ccdL
+    k ^= k >>> 33
+    k *= 0xc4ceb9fe1a85ec53L
+    k ^= k >>> 33
+    k
+  }
+}
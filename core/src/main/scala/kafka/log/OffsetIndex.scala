@@ -50,8 +50,9 @@ import org.apache.kafka.common.errors.InvalidOffsetException
  * storage format.
  */
 // Avoid shadowing mutable `file` in AbstractIndex
-class OffsetIndex(_file: File, baseOffset: Long, maxIndexSize: Int = -1, writable: Boolean = true)
-    extends AbstractIndex(_file, baseOffset, maxIndexSize, writable) {
+class OffsetIndex(_file: File, baseOffset: Long, maxIndexSize: Int = -1, writable: Boolean = true,
+                  warmSectionBytes: Int = AbstractIndex.DefaultWarmSectionBytes)
+    extends AbstractIndex(_file, baseOffset, maxIndexSize, writable, warmSectionBytes) {
   import OffsetIndex._
 
   override def entrySize = 8
@@ -32,6 +32,22 @@ trait OffsetMap {
   def size: Int
   def utilization: Double = size.toDouble / slots
   def latestOffset: Long
+  def close(): Unit = {}
+
+  /**
+   * A map sharing the entries of this map with its own lookup state, used to get keys from several threads at once.
+   * Neither map may be modified while the reader is in use.
+   */
+  def reader(): OffsetMap
+}
+
+object OffsetMap {
+  /* an on-heap map keyed by a message digest of the key, see SkimpyOffsetMap */
+  val HeapType = "heap"
+  /* a direct memory map keyed by a 128-bit MurmurHash3 of the key, see OffHeapOffsetMap */
+  val OffHeapType = "off-heap"
+
+  val Types = Seq(HeapType, OffHeapType)
 }
 
 /**
@@ -41,8 +57,11 @@ trait OffsetMap {
  * @param hashAlgorithm The hash algorithm instance to use: MD2, MD5, SHA-1, SHA-256, SHA-384, SHA-512
  */
 @nonthreadsafe
-class SkimpyOffsetMap(val memory: Int, val hashAlgorithm: String = "MD5") extends OffsetMap {
-  private val bytes = ByteBuffer.allocate(memory)
+class SkimpyOffsetMap private (bytes: ByteBuffer, val hashAlgorithm: String) extends OffsetMap {
+
+  def this(memory: Int, hashAlgorithm: String = "MD5") = this(ByteBuffer.allocate(memory), hashAlgorithm)
+
+  val memory: Int = bytes.capacity
   
   /* the hash algorithm instance to use, default is MD5 */
   private val digest = MessageDigest.getInstance(hashAlgorithm)
@@ -172,6 +191,13 @@ class SkimpyOffsetMap(val memory: Int, val hashAlgorithm: String = "MD5") extend
     lastOffset = offset
   }
 
+  override def reader(): OffsetMap = {
+    val reader = new SkimpyOffsetMap(bytes.duplicate(), hashAlgorithm)
+    reader.entries = entries
+    reader.lastOffset = lastOffset
+    reader
+  }
+
   /**
    * Calculate the ith probe position. We first try reading successive integers from the hash itself
    * then if all of those fail we degrade to linear probing.
@@ -16,10 +16,11 @@
  */
 package kafka.log
 
-import java.io.File
+import java.io.{File, IOException}
 import java.nio.ByteBuffer
 import java.nio.channels.FileChannel
 import java.nio.file.{Files, StandardOpenOption}
+import java.util.{Arrays, Comparator}
 import java.util.concurrent.ConcurrentSkipListMap
 
 import kafka.log.Log.offsetFromFile
@@ -29,7 +30,7 @@ import org.apache.kafka.common.{KafkaException, TopicPartition}
 import org.apache.kafka.common.errors._
 import org.apache.kafka.common.protocol.types._
 import org.apache.kafka.common.record.{ControlRecordType, DefaultRecordBatch, EndTransactionMarker, RecordBatch}
-import org.apache.kafka.common.utils.{ByteUtils, Crc32C}
+import org.apache.kafka.common.utils.{ByteUtils, Crc32C, Utils}
 
 import scala.jdk.CollectionConverters._
 import scala.collection.mutable.ListBuffer
@@ -347,7 +348,8 @@ private[log] class ProducerAppendInfo(val topicPartition: TopicPartition,
 }
 
 object ProducerStateManager {
-  private val ProducerSnapshotVersion: Short = 1
+  private[log] val ProducerSnapshotVersion: Short = 1
+  private[log] val IncrementalProducerSnapshotVersion: Short = 2
   private val VersionField = "version"
   private val CrcField = "crc"
   private val ProducerIdField = "producer_id"
@@ -364,6 +366,18 @@ object ProducerStateManager {
   private val CrcOffset = VersionOffset + 2
   private val ProducerEntriesOffset = CrcOffset + 4
 
+  // Snapshots of version 2 have a fixed size header followed by the ids of the producers removed since the base
+  // snapshot, the entries of the producers with an ongoing transaction and the entries of the other producers. The
+  // removed ids and the entries of the other producers are sorted by producer id so that a producer can be looked up
+  // with a binary search, without reading the entries of the other producers.
+  private[log] val BaseOffsetOffset = ProducerEntriesOffset
+  private[log] val NumRemovedProducersOffset = BaseOffsetOffset + 8
+  private[log] val NumTxnEntriesOffset = NumRemovedProducersOffset + 4
+  private[log] val NumEntriesOffset = NumTxnEntriesOffset + 4
+  private[log] val SnapshotHeaderSize = NumEntriesOffset + 4
+  private[log] val SnapshotEntrySize = 38
+  private[log] val SnapshotTxnEntrySize = SnapshotEntrySize + 8
+
   val ProducerSnapshotEntrySchema = new Schema(
     new Field(ProducerIdField, Type.INT64, "The producer ID"),
     new Field(ProducerEpochField, Type.INT16, "Current epoch of the producer"),
@@ -378,38 +392,48 @@ object ProducerStateManager {
     new Field(CrcField, Type.UNSIGNED_INT32, "CRC of the snapshot data"),
     new Field(ProducerEntriesField, new ArrayOf(ProducerSnapshotEntrySchema), "The entries in the producer table"))
 
+  /**
+   * Read the entries of a snapshot file. The entries of an incremental snapshot are the entries of the producers
+   * updated since its base snapshot.
+   */
   def readSnapshot(file: File): Iterable[ProducerStateEntry] = {
-    try {
-      val buffer = Files.readAllBytes(file.toPath)
-      val struct = PidSnapshotMapSchema.read(ByteBuffer.wrap(buffer))
+    val snapshot = readSnapshotData(file)
+    (snapshot.txnEntries ++ snapshot.entries).toSeq
+  }
 
-      val version = struct.getShort(VersionField)
-      if (version != ProducerSnapshotVersion)
-        throw new CorruptSnapshotException(s"Snapshot contained an unknown file version $version")
+  /**
+   * Read a snapshot file of any version. A snapshot of version 1 is converted to a snapshot of the current version.
+   */
+  def readSnapshotData(file: File): ProducerStateSnapshot = {
+    val buffer = Files.readAllBytes(file.toPath)
+    if (buffer.length < ProducerEntriesOffset)
+      throw new CorruptSnapshotException(s"Snapshot of ${buffer.length} bytes is too short")
+
+    val version = ByteBuffer.wrap(buffer).getShort(VersionOffset)
+    if (version == ProducerSnapshotVersion)
+      new ProducerStateSnapshot(serializeSnapshot(None, Seq.empty, readSnapshotV1(buffer)))
+    else if (version == IncrementalProducerSnapshotVersion) {
+      checkCrc(buffer, ByteUtils.readUnsignedInt(ByteBuffer.wrap(buffer), CrcOffset))
+      new ProducerStateSnapshot(ByteBuffer.wrap(buffer))
+    } else
+      throw new CorruptSnapshotException(s"Snapshot contained an unknown file version $version")
+  }
 
-      val crc = struct.getUnsignedInt(CrcField)
-      val computedCrc =  Crc32C.compute(buffer, ProducerEntriesOffset, buffer.length - ProducerEntriesOffset)
-      if (crc != computedCrc)
-        throw new CorruptSnapshotException(s"Snapshot is corrupt (CRC is no longer valid). " +
-          s"Stored crc: $crc. Computed crc: $computedCrc")
+  private def readSnapshotV1(buffer: Array[Byte]): Iterable[ProducerStateEntry] = {
+    try {
+      val struct = PidSnapshotMapSchema.read(ByteBuffer.wrap(buffer))
+      checkCrc(buffer, struct.getUnsignedInt(CrcField))
 
       struct.getArray(ProducerEntriesField).map { producerEntryObj =>
         val producerEntryStruct = producerEntryObj.asInstanceOf[Struct]
-        val producerId = producerEntryStruct.getLong(ProducerIdField)
-        val producerEpoch = producerEntryStruct.getShort(ProducerEpochField)
-        val seq = producerEntryStruct.getInt(LastSequenceField)
-        val offset = producerEntryStruct.getLong(LastOffsetField)
-        val timestamp = producerEntryStruct.getLong(TimestampField)
-        val offsetDelta = producerEntryStruct.getInt(OffsetDeltaField)
-        val coordinatorEpoch = producerEntryStruct.getInt(CoordinatorEpochField)
-        val currentTxnFirstOffset = producerEntryStruct.getLong(CurrentTxnFirstOffsetField)
-        val lastAppendedDataBatches = mutable.Queue.empty[BatchMetadata]
-        if (offset >= 0)
-          lastAppendedDataBatches += BatchMetadata(seq, offset, offsetDelta, timestamp)
-
-        val newEntry = new ProducerStateEntry(producerId, lastAppendedDataBatches, producerEpoch,
-          coordinatorEpoch, timestamp, if (currentTxnFirstOffset >= 0) Some(currentTxnFirstOffset) else None)
-        newEntry
+        newProducerStateEntry(producerEntryStruct.getLong(ProducerIdField),
+          producerEntryStruct.getShort(ProducerEpochField),
+          producerEntryStruct.getInt(LastSequenceField),
+          producerEntryStruct.getLong(LastOffsetField),
+          producerEntryStruct.getInt(OffsetDeltaField),
+          producerEntryStruct.getLong(TimestampField),
+          producerEntryStruct.getInt(CoordinatorEpochField),
+          producerEntryStruct.getLong(CurrentTxnFirstOffsetField))
       }
     } catch {
       case e: SchemaException =>
@@ -417,22 +441,47 @@ object ProducerStateManager {
     }
   }
 
-  private def writeSnapshot(file: File, entries: mutable.Map[Long, ProducerStateEntry]): Unit = {
+  private def checkCrc(buffer: Array[Byte], crc: Long): Unit = {
+    val computedCrc = Crc32C.compute(buffer, ProducerEntriesOffset, buffer.length - ProducerEntriesOffset)
+    if (crc != computedCrc)
+      throw new CorruptSnapshotException(s"Snapshot is corrupt (CRC is no longer valid). " +
+        s"Stored crc: $crc. Computed crc: $computedCrc")
+  }
+
+  private[log] def newProducerStateEntry(producerId: Long,
+                                         producerEpoch: Short,
+                                         seq: Int,
+                                         offset: Long,
+                                         offsetDelta: Int,
+                                         timestamp: Long,
+                                         coordinatorEpoch: Int,
+                                         currentTxnFirstOffset: Long): ProducerStateEntry = {
+    val lastAppendedDataBatches = mutable.Queue.empty[BatchMetadata]
+    if (offset >= 0)
+      lastAppendedDataBatches += BatchMetadata(seq, offset, offsetDelta, timestamp)
+
+    new ProducerStateEntry(producerId, lastAppendedDataBatches, producerEpoch,
+      coordinatorEpoch, timestamp, if (currentTxnFirstOffset >= 0) Some(currentTxnFirstOffset) else None)
+  }
+
+  /**
+   * Serialize a full snapshot of version 1, the version the brokers which do not support incremental snapshots read.
+   */
+  private[log] def serializeSnapshotV1(entries: Iterable[ProducerStateEntry]): ByteBuffer = {
     val struct = new Struct(PidSnapshotMapSchema)
     struct.set(VersionField, ProducerSnapshotVersion)
     struct.set(CrcField, 0L) // we'll fill this after writing the entries
-    val entriesArray = entries.map {
-      case (producerId, entry) =>
-        val producerEntryStruct = struct.instance(ProducerEntriesField)
-        producerEntryStruct.set(ProducerIdField, producerId)
-          .set(ProducerEpochField, entry.producerEpoch)
-          .set(LastSequenceField, entry.lastSeq)
-          .set(LastOffsetField, entry.lastDataOffset)
-          .set(OffsetDeltaField, entry.lastOffsetDelta)
-          .set(TimestampField, entry.lastTimestamp)
-          .set(CoordinatorEpochField, entry.coordinatorEpoch)
-          .set(CurrentTxnFirstOffsetField, entry.currentTxnFirstOffset.getOrElse(-1L))
-        producerEntryStruct
+    val entriesArray = entries.map { entry =>
+      val producerEntryStruct = struct.instance(ProducerEntriesField)
+      producerEntryStruct.set(ProducerIdField, entry.producerId)
+        .set(ProducerEpochField, entry.producerEpoch)
+        .set(LastSequenceField, entry.lastSeq)
+        .set(LastOffsetField, entry.lastDataOffset)
+        .set(OffsetDeltaField, entry.lastOffsetDelta)
+        .set(TimestampField, entry.lastTimestamp)
+        .set(CoordinatorEpochField, entry.coordinatorEpoch)
+        .set(CurrentTxnFirstOffsetField, entry.currentTxnFirstOffset.getOrElse(-1L))
+      producerEntryStruct
     }.toArray
     struct.set(ProducerEntriesField, entriesArray)
 
@@ -443,16 +492,103 @@ object ProducerStateManager {
     // now fill in the CRC
     val crc = Crc32C.compute(buffer, ProducerEntriesOffset, buffer.limit() - ProducerEntriesOffset)
     ByteUtils.writeUnsignedInt(buffer, CrcOffset, crc)
+    buffer
+  }
+
+  /**
+   * Serialize a snapshot of version 2.
+   *
+   * @param baseOffset The offset of the snapshot an incremental snapshot is based on, none for a full snapshot
+   * @param removedProducerIds The ids of the producers removed since the base snapshot
+   * @param entries The entries of the producers, or of the producers updated since the base snapshot
+   */
+  private[log] def serializeSnapshot(baseOffset: Option[Long],
+                                     removedProducerIds: Iterable[Long],
+                                     entries: Iterable[ProducerStateEntry]): ByteBuffer = {
+    val removed = removedProducerIds.toArray.sorted
+    val (txnEntries, otherEntries) = entries.partition(_.currentTxnFirstOffset.isDefined)
+    val sortedEntries = otherEntries.toArray
+    Arrays.sort(sortedEntries, Comparator.comparingLong[ProducerStateEntry](_.producerId))
+
+    val buffer = ByteBuffer.allocate(SnapshotHeaderSize + removed.length * 8 +
+      txnEntries.size * SnapshotTxnEntrySize + sortedEntries.length * SnapshotEntrySize)
+    buffer.putShort(IncrementalProducerSnapshotVersion)
+    buffer.putInt(0) // we'll fill this after writing the entries
+    buffer.putLong(baseOffset.getOrElse(-1L))
+    buffer.putInt(removed.length)
+    buffer.putInt(txnEntries.size)
+    buffer.putInt(sortedEntries.length)
+    removed.foreach(buffer.putLong)
+    txnEntries.foreach { entry =>
+      writeSnapshotEntry(buffer, entry)
+      buffer.putLong(entry.currentTxnFirstOffset.get)
+    }
+    sortedEntries.foreach(writeSnapshotEntry(buffer, _))
+    buffer.flip()
+
+    // now fill in the CRC
+    val crc = Crc32C.compute(buffer, ProducerEntriesOffset, buffer.limit() - ProducerEntriesOffset)
+    ByteUtils.writeUnsignedInt(buffer, CrcOffset, crc)
+    buffer
+  }
 
-    val fileChannel = FileChannel.open(file.toPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)
+  private def writeSnapshotEntry(buffer: ByteBuffer, entry: ProducerStateEntry): Unit = {
+    buffer.putLong(entry.producerId)
+      .putShort(entry.producerEpoch)
+      .putInt(entry.lastSeq)
+      .putLong(entry.lastDataOffset)
+      .putInt(entry.lastOffsetDelta)
+      .putLong(entry.lastTimestamp)
+      .putInt(entry.coordinatorEpoch)
+  }
+
+  private def writeSnapshot(file: File, buffer: ByteBuffer): Unit = {
+    val fileChannel = FileChannel.open(file.toPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+      StandardOpenOption.TRUNCATE_EXISTING)
     try {
-      fileChannel.write(buffer)
+      while (buffer.hasRemaining)
+        fileChannel.write(buffer)
       fileChannel.force(true)
     } finally {
       fileChannel.close()
     }
   }
 
+  /**
+   * Read the base offset of a snapshot file from its header, without validating the snapshot.
+   *
+   * @return The offset of the base snapshot if the file is an incremental snapshot
+   */
+  private def readSnapshotBaseOffset(file: File): Option[Long] = {
+    val header = ByteBuffer.allocate(SnapshotHeaderSize)
+    try {
+      val fileChannel = FileChannel.open(file.toPath, StandardOpenOption.READ)
+      try {
+        Utils.readFully(fileChannel, header, 0)
+      } finally {
+        fileChannel.close()
+      }
+    } catch {
+      case _: IOException => return None
+    }
+    if (header.position() < SnapshotHeaderSize || header.getShort(VersionOffset) != IncrementalProducerSnapshotVersion)
+      None
+    else
+      Some(header.getLong(BaseOffsetOffset)).filter(_ >= 0)
+  }
+
+  /**
+   * Merge the entries of a chain of snapshots, the latest first, into the entries of a full snapshot.
+   */
+  private[log] def mergeSnapshots(chain: Seq[ProducerStateSnapshot]): Iterable[ProducerStateEntry] = {
+    val merged = mutable.Map.empty[Long, ProducerStateEntry]
+    chain.reverseIterator.foreach { snapshot =>
+      snapshot.removedProducerIds.foreach(merged.remove)
+      (snapshot.txnEntries ++ snapshot.entries).foreach(entry => merged.put(entry.producerId, entry))
+    }
+    merged.values
+  }
+
   private def isSnapshotFile(file: File): Boolean = file.getName.endsWith(Log.ProducerSnapshotFileSuffix)
 
   // visible for testing
@@ -465,6 +601,87 @@ object ProducerStateManager {
   }
 }
 
+/**
+ * A producer state snapshot of version 2, read without materializing the entries of its producers.
+ *
+ * An incremental snapshot only has the entries of the producers updated since its base snapshot, which is the snapshot
+ * taken before it, and the ids of the producers removed since then. Loading it requires the chain of snapshots down to
+ * the latest full snapshot.
+ */
+private[log] class ProducerStateSnapshot(buffer: ByteBuffer) {
+  import ProducerStateManager._
+
+  if (buffer.limit() < SnapshotHeaderSize)
+    throw new CorruptSnapshotException(s"Snapshot of ${buffer.limit()} bytes is too short")
+
+  val baseOffset: Option[Long] = Some(buffer.getLong(BaseOffsetOffset)).filter(_ >= 0)
+  val numRemovedProducers: Int = buffer.getInt(NumRemovedProducersOffset)
+  val numTxnEntries: Int = buffer.getInt(NumTxnEntriesOffset)
+  val numEntries: Int = buffer.getInt(NumEntriesOffset)
+
+  private val txnEntriesOffset = SnapshotHeaderSize + numRemovedProducers.toLong * 8
+  private val entriesOffset = txnEntriesOffset + numTxnEntries.toLong * SnapshotTxnEntrySize
+
+  if (numRemovedProducers < 0 || numTxnEntries < 0 || numEntries < 0 ||
+      entriesOffset + numEntries.toLong * SnapshotEntrySize != buffer.limit())
+    throw new CorruptSnapshotException(s"Snapshot of ${buffer.limit()} bytes does not match the number of its entries")
+
+  lazy val txnProducerIds: Set[Long] = txnEntries.map(_.producerId).toSet
+
+  def removedProducerIds: Iterator[Long] =
+    Iterator.range(0, numRemovedProducers).map(i => buffer.getLong(SnapshotHeaderSize + i * 8))
+
+  def isRemoved(producerId: Long): Boolean = indexOf(SnapshotHeaderSize, numRemovedProducers, 8, producerId) >= 0
+
+  def txnEntries: Iterator[ProducerStateEntry] =
+    Iterator.range(0, numTxnEntries).map(i => readEntry(txnEntriesOffset.toInt + i * SnapshotTxnEntrySize, hasTxn = true))
+
+  def entries: Iterator[ProducerStateEntry] =
+    Iterator.range(0, numEntries).map(i => readEntry(entriesOffset.toInt + i * SnapshotEntrySize, hasTxn = false))
+
+  /**
+   * Look up the entry of a producer without an ongoing transaction
+   */
+  def entry(producerId: Long): Option[ProducerStateEntry] = {
+    val index = indexOf(entriesOffset.toInt, numEntries, SnapshotEntrySize, producerId)
+    if (index < 0) None
+    else Some(readEntry(entriesOffset.toInt + index * SnapshotEntrySize, hasTxn = false))
+  }
+
+  /**
+   * Whether the snapshot has an entry for the producer or removes it
+   */
+  def contains(producerId: Long): Boolean =
+    isRemoved(producerId) || txnProducerIds.contains(producerId) || entry(producerId).isDefined
+
+  private def indexOf(offset: Int, numItems: Int, itemSize: Int, producerId: Long): Int = {
+    var low = 0
+    var high = numItems - 1
+    while (low <= high) {
+      val mid = (low + high) >>> 1
+      val midProducerId = buffer.getLong(offset + mid * itemSize)
+      if (midProducerId < producerId)
+        low = mid + 1
+      else if (midProducerId > producerId)
+        high = mid - 1
+      else
+        return mid
+    }
+    -1
+  }
+
+  private def readEntry(position: Int, hasTxn: Boolean): ProducerStateEntry = {
+    newProducerStateEntry(buffer.getLong(position),
+      producerEpoch = buffer.getShort(position + 8),
+      seq = buffer.getInt(position + 10),
+      offset = buffer.getLong(position + 14),
+      offsetDelta = buffer.getInt(position + 22),
+      timestamp = buffer.getLong(position + 26),
+      coordinatorEpoch = buffer.getInt(position + 34),
+      currentTxnFirstOffset = if (hasTxn) buffer.getLong(position + SnapshotEntrySize) else -1L)
+  }
+}
+
 /**
  * Maintains a mapping from ProducerIds to metadata about the last appended entries (e.g.
  * epoch, sequence number, last offset, etc.)
@@ -480,11 +697,19 @@ object ProducerStateManager {
  * age. This ensures that producer ids will not be expired until either the max expiration time has been reached,
  * or if the topic also is configured for deletion, the segment containing the last written offset has
  * been deleted.
+ *
+ * Snapshots of the mapping are taken as the log rolls. With maxIncrementalSnapshots greater than 0, up to that many
+ * consecutive snapshots are incremental: they only have the producers updated or removed since the previous snapshot,
+ * which keeps them cheap enough to also be taken periodically. Snapshots are only written in the version 2 format
+ * they need when incremental snapshots are enabled. When the mapping is reloaded from the snapshots, the
+ * producers without an ongoing transaction are only materialized when they are first looked up, so that appends can
+ * be accepted before the whole mapping is materialized.
  */
 @nonthreadsafe
 class ProducerStateManager(val topicPartition: TopicPartition,
                            @volatile var _logDir: File,
-                           val maxProducerIdExpirationMs: Int = 60 * 60 * 1000) extends Logging {
+                           val maxProducerIdExpirationMs: Int = 60 * 60 * 1000,
+                           val maxIncrementalSnapshots: Int = 0) extends Logging {
   import ProducerStateManager._
   import java.util
 
@@ -504,6 +729,19 @@ class ProducerStateManager(val topicPartition: TopicPartition,
   // completed transactions whose markers are at offsets above the high watermark
   private val unreplicatedTxns = new util.TreeMap[Long, TxnMetadata]
 
+  // serializes the writes and the deletions of snapshot files, segments may be deleted in the background
+  private val snapshotLock = new Object
+
+  // the snapshots the mapping was reloaded from, the latest first, whose producers are not all materialized yet
+  private var unloadedSnapshots = List.empty[ProducerStateSnapshot]
+  private var unloadedSnapshotsTimeMs = 0L
+
+  // the snapshot the next snapshot may be an incremental snapshot of, and the producers changed since then
+  private var incrementalSnapshotBaseOffset: Option[Long] = None
+  private var numIncrementalSnapshots = 0
+  private val updatedProducers = mutable.Set.empty[Long]
+  private val removedProducers = mutable.Set.empty[Long]
+
   /**
    * Load producer state snapshots by scanning the _logDir.
    */
@@ -526,35 +764,18 @@ class ProducerStateManager(val topicPartition: TopicPartition,
   private[log] def removeStraySnapshots(segmentBaseOffsets: Seq[Long]): Unit = {
     val maxSegmentBaseOffset = if (segmentBaseOffsets.isEmpty) None else Some(segmentBaseOffsets.max)
     val baseOffsets = segmentBaseOffsets.toSet
-    var latestStraySnapshot: Option[SnapshotFile] = None
-
-    val ss = loadSnapshots()
-    for (snapshot <- ss.values().asScala) {
-      val key = snapshot.offset
-      latestStraySnapshot match {
-        case Some(prev) =>
-          if (!baseOffsets.contains(key)) {
-            // this snapshot is now the largest stray snapshot.
-            prev.deleteIfExists()
-            ss.remove(prev.offset)
-            latestStraySnapshot = Some(snapshot)
-          }
-        case None =>
-          if (!baseOffsets.contains(key)) {
-            latestStraySnapshot = Some(snapshot)
-          }
-      }
-    }
 
-    // Check to see if the latestStraySnapshot is larger than the largest segment base offset, if it is not,
-    // delete the largestStraySnapshot.
-    for (strayOffset <- latestStraySnapshot.map(_.offset); maxOffset <- maxSegmentBaseOffset) {
-      if (strayOffset < maxOffset) {
-        Option(ss.remove(strayOffset)).foreach(_.deleteIfExists())
-      }
-    }
+    this.snapshots = loadSnapshots()
+    val straySnapshots = snapshots.values().asScala.filterNot(snapshot => baseOffsets.contains(snapshot.offset)).toSeq
 
-    this.snapshots = ss
+    // Keep the latestStraySnapshot if it is larger than the largest segment base offset. The stray snapshots are
+    // deleted from the latest, so that an incremental snapshot kept is rewritten at most once.
+    val latestStraySnapshot = straySnapshots.lastOption.filter { snapshot =>
+      maxSegmentBaseOffset.forall(snapshot.offset > _)
+    }
+    straySnapshots.reverseIterator.filterNot(latestStraySnapshot.contains).foreach { snapshot =>
+      removeAndDeleteSnapshot(snapshot.offset)
+    }
   }
 
   /**
@@ -598,9 +819,15 @@ class ProducerStateManager(val topicPartition: TopicPartition,
   /**
    * Get a copy of the active producers
    */
-  def activeProducers: immutable.Map[Long, ProducerStateEntry] = producers.toMap
+  def activeProducers: immutable.Map[Long, ProducerStateEntry] = {
+    loadUnloadedSnapshots()
+    producers.toMap
+  }
 
-  def isEmpty: Boolean = producers.isEmpty && unreplicatedTxns.isEmpty
+  def isEmpty: Boolean = {
+    loadUnloadedSnapshots()
+    producers.isEmpty && unreplicatedTxns.isEmpty
+  }
 
   private def loadFromSnapshot(logStartOffset: Long, currentTime: Long): Unit = {
     while (true) {
@@ -608,8 +835,14 @@ class ProducerStateManager(val topicPartition: TopicPartition,
         case Some(snapshot) =>
           try {
             info(s"Loading producer state from snapshot file '$snapshot'")
-            val loadedProducers = readSnapshot(snapshot.file).filter { producerEntry => !isProducerExpired(currentTime, producerEntry) }
-            loadedProducers.foreach(loadProducerEntry)
+            val chain = readSnapshotChain(snapshot)
+            unloadedSnapshots = chain
+            unloadedSnapshotsTimeMs = currentTime
+            loadOngoingTransactions()
+            if (maxIncrementalSnapshots > 0) {
+              incrementalSnapshotBaseOffset = Some(snapshot.offset)
+              numIncrementalSnapshots = chain.size - 1
+            }
             lastSnapOffset = snapshot.offset
             lastMapOffset = lastSnapOffset
             return
@@ -626,8 +859,95 @@ class ProducerStateManager(val topicPartition: TopicPartition,
     }
   }
 
+  /**
+   * Read a snapshot and, for an incremental snapshot, the chain of its base snapshots down to the latest full snapshot.
+   *
+   * @return The snapshots, the given snapshot first
+   */
+  private def readSnapshotChain(snapshot: SnapshotFile): List[ProducerStateSnapshot] = snapshotLock synchronized {
+    val chain = ListBuffer(readSnapshotData(snapshot.file))
+    var offset = snapshot.offset
+    while (chain.last.baseOffset.isDefined) {
+      val baseOffset = chain.last.baseOffset.get
+      val baseSnapshot = snapshots.get(baseOffset)
+      if (baseOffset >= offset || baseSnapshot == null)
+        throw new CorruptSnapshotException(s"Base snapshot at offset $baseOffset of the incremental snapshot at " +
+          s"offset $offset is missing")
+      chain += readSnapshotData(baseSnapshot.file)
+      offset = baseOffset
+    }
+    chain.toList
+  }
+
+  /**
+   * Materialize the producers of the unloaded snapshots with an ongoing transaction, which the unstable offsets depend
+   * on, unless a later snapshot has them.
+   */
+  private def loadOngoingTransactions(): Unit = {
+    unloadedSnapshots.zipWithIndex.foreach { case (snapshot, index) =>
+      val laterSnapshots = unloadedSnapshots.take(index)
+      snapshot.txnEntries.foreach { entry =>
+        if (!laterSnapshots.exists(_.contains(entry.producerId)))
+          putProducerEntry(entry)
+      }
+    }
+  }
+
+  /**
+   * Materialize the producers of the unloaded snapshots which were not looked up yet.
+   */
+  private def loadUnloadedSnapshots(): Unit = {
+    if (unloadedSnapshots.nonEmpty) {
+      // the producers which a later snapshot has or removes
+      val seenProducerIds = mutable.Set.empty[Long]
+      unloadedSnapshots.foreach { snapshot =>
+        snapshot.removedProducerIds.foreach(seenProducerIds += _)
+        seenProducerIds ++= snapshot.txnProducerIds
+        snapshot.entries.foreach { entry =>
+          if (seenProducerIds.add(entry.producerId) && !producers.contains(entry.producerId))
+            loadUnloadedEntry(entry)
+        }
+      }
+      unloadedSnapshots = Nil
+    }
+  }
+
+  /**
+   * Look up a producer in the unloaded snapshots. The latest snapshot which has the producer or removes it has its
+   * latest state. The producers with an ongoing transaction were materialized when the snapshots were loaded.
+   */
+  private def lookUpUnloadedSnapshots(producerId: Long): Option[ProducerStateEntry] = {
+    val iterator = unloadedSnapshots.iterator
+    while (iterator.hasNext) {
+      val snapshot = iterator.next()
+      if (snapshot.isRemoved(producerId))
+        return None
+      val entry = snapshot.entry(producerId)
+      if (entry.isDefined)
+        return loadUnloadedEntry(entry.get)
+    }
+    None
+  }
+
+  // producers which were already expired when the snapshots were loaded are not materialized
+  private def loadUnloadedEntry(entry: ProducerStateEntry): Option[ProducerStateEntry] = {
+    if (isProducerExpired(unloadedSnapshotsTimeMs, entry)) {
+      if (maxIncrementalSnapshots > 0)
+        removedProducers += entry.producerId
+      None
+    } else {
+      producers.put(entry.producerId, entry)
+      Some(entry)
+    }
+  }
+
   // visible for testing
   private[log] def loadProducerEntry(entry: ProducerStateEntry): Unit = {
+    putProducerEntry(entry)
+    producerUpdated(entry.producerId)
+  }
+
+  private def putProducerEntry(entry: ProducerStateEntry): Unit = {
     val producerId = entry.producerId
     producers.put(producerId, entry)
     entry.currentTxnFirstOffset.foreach { offset =>
@@ -635,6 +955,13 @@ class ProducerStateManager(val topicPartition: TopicPartition,
     }
   }
 
+  private def producerUpdated(producerId: Long): Unit = {
+    if (maxIncrementalSnapshots > 0) {
+      updatedProducers += producerId
+      removedProducers -= producerId
+    }
+  }
+
   private def isProducerExpired(currentTimeMs: Long, producerState: ProducerStateEntry): Boolean =
     producerState.currentTxnFirstOffset.isEmpty && currentTimeMs - producerState.lastTimestamp >= maxProducerIdExpirationMs
 
@@ -642,7 +969,21 @@ class ProducerStateManager(val topicPartition: TopicPartition,
    * Expire any producer ids which have been idle longer than the configured maximum expiration timeout.
    */
   def removeExpiredProducers(currentTimeMs: Long): Unit = {
-    producers --= producers.filter { case (_, lastEntry) => isProducerExpired(currentTimeMs, lastEntry) }.keySet
+    loadUnloadedSnapshots()
+    val expiredProducerIds = producers.filter { case (_, lastEntry) => isProducerExpired(currentTimeMs, lastEntry) }.keySet
+    producers --= expiredProducerIds
+    if (maxIncrementalSnapshots > 0) {
+      updatedProducers --= expiredProducerIds
+      removedProducers ++= expiredProducerIds
+    }
+  }
+
+  private def resetIncrementalSnapshots(): Unit = {
+    unloadedSnapshots = Nil
+    incrementalSnapshotBaseOffset = None
+    numIncrementalSnapshots = 0
+    updatedProducers.clear()
+    removedProducers.clear()
   }
 
   /**
@@ -654,8 +995,8 @@ class ProducerStateManager(val topicPartition: TopicPartition,
    * to the high watermark.
    */
   def truncateAndReload(logStartOffset: Long, logEndOffset: Long, currentTimeMs: Long): Unit = {
-    // remove all out of range snapshots
-    snapshots.values().asScala.foreach { snapshot =>
+    // remove all out of range snapshots, from the latest so that no incremental snapshot is rewritten to be deleted
+    snapshots.descendingMap().values().asScala.foreach { snapshot =>
       if (snapshot.offset > logEndOffset || snapshot.offset <= logStartOffset) {
         removeAndDeleteSnapshot(snapshot.offset)
       }
@@ -664,6 +1005,7 @@ class ProducerStateManager(val topicPartition: TopicPartition,
     if (logEndOffset != mapEndOffset) {
       producers.clear()
       ongoingTxns.clear()
+      resetIncrementalSnapshots()
 
       // since we assume that the offset is less than or equal to the high watermark, it is
       // safe to clear the unreplicated transactions
@@ -689,13 +1031,14 @@ class ProducerStateManager(val topicPartition: TopicPartition,
 
     trace(s"Updated producer ${appendInfo.producerId} state to $appendInfo")
     val updatedEntry = appendInfo.toEntry
-    producers.get(appendInfo.producerId) match {
+    lastEntry(appendInfo.producerId) match {
       case Some(currentEntry) =>
         currentEntry.update(updatedEntry)
 
       case None =>
         producers.put(appendInfo.producerId, updatedEntry)
     }
+    producerUpdated(appendInfo.producerId)
 
     appendInfo.startedTransactions.foreach { txn =>
       ongoingTxns.put(txn.firstOffset.messageOffset, txn)
@@ -709,7 +1052,20 @@ class ProducerStateManager(val topicPartition: TopicPartition,
   /**
    * Get the last written entry for the given producer id.
    */
-  def lastEntry(producerId: Long): Option[ProducerStateEntry] = producers.get(producerId)
+  def lastEntry(producerId: Long): Option[ProducerStateEntry] = {
+    producers.get(producerId).orElse {
+      if (unloadedSnapshots.isEmpty) None else lookUpUnloadedSnapshots(producerId)
+    }
+  }
+
+  // Full snapshots are only written in the version 2 format when incremental snapshots are enabled, so that the
+  // snapshots can still be read by the brokers of a previous version after a downgrade otherwise
+  private def serializeFullSnapshot(entries: Iterable[ProducerStateEntry]): ByteBuffer = {
+    if (maxIncrementalSnapshots > 0)
+      serializeSnapshot(None, Seq.empty, entries)
+    else
+      serializeSnapshotV1(entries)
+  }
 
   /**
    * Take a snapshot at the current end offset if one does not already exist.
@@ -718,15 +1074,52 @@ class ProducerStateManager(val topicPartition: TopicPartition,
     // If not a new offset, then it is not worth taking another snapshot
     if (lastMapOffset > lastSnapOffset) {
       val snapshotFile = SnapshotFile(Log.producerSnapshotFile(_logDir, lastMapOffset))
-      info(s"Writing producer snapshot at offset $lastMapOffset")
-      writeSnapshot(snapshotFile.file, producers)
-      snapshots.put(snapshotFile.offset, snapshotFile)
+      snapshotLock synchronized {
+        incrementalSnapshotBase match {
+          case Some(baseOffset) =>
+            info(s"Writing incremental producer snapshot at offset $lastMapOffset of the snapshot at offset $baseOffset")
+            writeSnapshot(snapshotFile.file, serializeSnapshot(Some(baseOffset), removedProducers,
+              updatedProducers.flatMap(producers.get)))
+            numIncrementalSnapshots += 1
+          case None =>
+            loadUnloadedSnapshots()
+            info(s"Writing producer snapshot at offset $lastMapOffset")
+            writeSnapshot(snapshotFile.file, serializeFullSnapshot(producers.values))
+            numIncrementalSnapshots = 0
+        }
+        snapshots.put(snapshotFile.offset, snapshotFile)
+      }
+
+      if (maxIncrementalSnapshots > 0) {
+        incrementalSnapshotBaseOffset = Some(snapshotFile.offset)
+        updatedProducers.clear()
+        removedProducers.clear()
+      }
 
       // Update the last snap offset according to the serialized map
       lastSnapOffset = lastMapOffset
     }
   }
 
+  /**
+   * Take an incremental snapshot at the current end offset if the next snapshot would be incremental and producers
+   * were updated or removed since the previous snapshot. This is cheap enough to be done between the snapshots taken
+   * as the log rolls, to shorten the part of the log replayed when the mapping is reloaded.
+   */
+  def maybeTakeIncrementalSnapshot(): Unit = {
+    if (incrementalSnapshotBase.isDefined && (updatedProducers.nonEmpty || removedProducers.nonEmpty))
+      takeSnapshot()
+  }
+
+  // The next snapshot is an incremental snapshot of the latest snapshot if the mapping was loaded from it or was
+  // snapshotted to it, and if there were not too many incremental snapshots in a row
+  private def incrementalSnapshotBase: Option[Long] = {
+    incrementalSnapshotBaseOffset.filter { baseOffset =>
+      numIncrementalSnapshots < maxIncrementalSnapshots && baseOffset < lastMapOffset &&
+        latestSnapshotOffset.contains(baseOffset)
+    }
+  }
+
   /**
    * Update the parentDir for this ProducerStateManager and all of the snapshot files which it manages.
    */
@@ -775,7 +1168,8 @@ class ProducerStateManager(val topicPartition: TopicPartition,
     producers.clear()
     ongoingTxns.clear()
     unreplicatedTxns.clear()
-    snapshots.values().asScala.foreach { snapshot =>
+    resetIncrementalSnapshots()
+    snapshots.descendingMap().values().asScala.foreach { snapshot =>
       removeAndDeleteSnapshot(snapshot.offset)
     }
     lastSnapOffset = 0L
@@ -808,7 +1202,7 @@ class ProducerStateManager(val topicPartition: TopicPartition,
 
   @threadsafe
   def deleteSnapshotsBefore(offset: Long): Unit = {
-    snapshots.subMap(0, offset).values().asScala.foreach { snapshot =>
+    snapshots.subMap(0, offset).descendingMap().values().asScala.foreach { snapshot =>
       removeAndDeleteSnapshot(snapshot.offset)
     }
   }
@@ -823,10 +1217,35 @@ class ProducerStateManager(val topicPartition: TopicPartition,
 
   /**
    * Removes the producer state snapshot file metadata corresponding to the provided offset if it exists from this
-   * ProducerStateManager, and deletes the backing snapshot file.
+   * ProducerStateManager, and deletes the backing snapshot file. If the next snapshot is an incremental snapshot of
+   * the deleted snapshot, it is rewritten as a full snapshot first.
    */
-  private[log] def removeAndDeleteSnapshot(snapshotOffset: Long): Unit = {
-    Option(snapshots.remove(snapshotOffset)).foreach(_.deleteIfExists())
+  @threadsafe
+  private[log] def removeAndDeleteSnapshot(snapshotOffset: Long): Unit = snapshotLock synchronized {
+    Option(snapshots.get(snapshotOffset)).foreach { snapshot =>
+      Option(snapshots.higherEntry(snapshotOffset)).foreach { nextSnapshot =>
+        rewriteIncrementalSnapshotOf(snapshotOffset, nextSnapshot.getValue)
+      }
+      snapshots.remove(snapshotOffset)
+      snapshot.deleteIfExists()
+    }
+  }
+
+  private def rewriteIncrementalSnapshotOf(baseOffset: Long, snapshot: SnapshotFile): Unit = {
+    if (readSnapshotBaseOffset(snapshot.file).contains(baseOffset)) {
+      try {
+        val buffer = serializeFullSnapshot(mergeSnapshots(readSnapshotChain(snapshot)))
+        // a stray temporary file left by a failure is deleted when the log is loaded
+        val tmpFile = new File(snapshot.file.getPath + Log.DeletedFileSuffix)
+        writeSnapshot(tmpFile, buffer)
+        Utils.atomicMoveWithFallback(tmpFile.toPath, snapshot.file.toPath)
+      } catch {
+        case e: CorruptSnapshotException =>
+          warn(s"Deleting incremental producer snapshot '${snapshot.file}' which cannot be rewritten as a full " +
+            s"snapshot: ${e.getMessage}")
+          removeAndDeleteSnapshot(snapshot.offset)
+      }
+    }
   }
 }
 
@@ -50,8 +50,9 @@ import org.apache.kafka.common.record.RecordBatch
  *
  */
 // Avoid shadowing mutable file in AbstractIndex
-class TimeIndex(_file: File, baseOffset: Long, maxIndexSize: Int = -1, writable: Boolean = true)
-    extends AbstractIndex(_file, baseOffset, maxIndexSize, writable) {
+class TimeIndex(_file: File, baseOffset: Long, maxIndexSize: Int = -1, writable: Boolean = true,
+                warmSectionBytes: Int = AbstractIndex.DefaultWarmSectionBytes)
+    extends AbstractIndex(_file, baseOffset, maxIndexSize, writable, warmSectionBytes) {
   import TimeIndex._
 
   @volatile private var _lastEntry = lastEntryFromIndexFile
@@ -61,7 +61,8 @@ class TransactionIndex(val startOffset: Long, @volatile private var _file: File)
     Utils.writeFully(channel(), abortedTxn.buffer.duplicate())
   }
 
-  def flush(): Unit = maybeChannel.foreach(_.force(true))
+  // the index is only appended to, the metadata other than its size isn't needed to read it
+  def flush(): Unit = maybeChannel.foreach(_.force(false))
 
   def file: File = _file
 
@@ -20,10 +20,11 @@ package kafka.network
 import java.net.InetAddress
 import java.nio.ByteBuffer
 import java.util.concurrent._
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger}
 
 import com.fasterxml.jackson.databind.JsonNode
 import com.typesafe.scalalogging.Logger
-import com.yammer.metrics.core.Meter
+import com.yammer.metrics.core.{Histogram, Meter}
 import kafka.metrics.KafkaMetricsGroup
 import kafka.server.KafkaConfig
 import kafka.utils.{Logging, NotNothing, Pool}
@@ -47,8 +48,10 @@ object RequestChannel extends Logging {
   private val requestLogger = Logger("kafka.request.logger")
 
   val RequestQueueSizeMetric = "RequestQueueSize"
+  val RequestQueueTimeMetric = "RequestQueueTimeMs"
   val ResponseQueueSizeMetric = "ResponseQueueSize"
   val ProcessorMetricTag = "processor"
+  val QueueMetricTag = "queue"
 
   def isRequestLoggingEnabled: Boolean = requestLogger.underlying.isDebugEnabled
 
@@ -95,6 +98,11 @@ object RequestChannel extends Logging {
 
     val session = Session(context.principal, context.clientAddress)
 
+    // The buffer is returned to the memory pool once the request processing and any other holder of a reference,
+    // such as the forwarding of the request to the controller, released it. The pool may then hand it out again.
+    private val bufferReferences = new AtomicInteger(1)
+    private val processingReferenceReleased = new AtomicBoolean(false)
+
     private val bodyAndSize: RequestAndSize = context.parseRequest(buffer)
 
     // This is constructed on creation of a Request so that the JSON representation is computed before the request is
@@ -267,12 +275,47 @@ object RequestChannel extends Logging {
       }
     }
 
+    /**
+     * Release the reference to the buffer held by the request processing. This may be called several times, the
+     * reference is only released once.
+     */
     def releaseBuffer(): Unit = {
       envelope match {
         case Some(request) =>
           request.releaseBuffer()
         case None =>
-          if (buffer != null) {
+          if (processingReferenceReleased.compareAndSet(false, true))
+            releaseBufferReference()
+      }
+    }
+
+    /**
+     * Acquire a reference to the buffer which must be released with `releaseBufferReference` once the buffer is no
+     * longer accessed, so that the buffer is not returned to the memory pool while it is still in use.
+     *
+     * @return true if a reference was acquired, false if the buffer was already released
+     */
+    def retainBuffer(): Boolean = {
+      envelope match {
+        case Some(request) =>
+          request.retainBuffer()
+        case None =>
+          var references = bufferReferences.get
+          while (references > 0 && !bufferReferences.compareAndSet(references, references + 1))
+            references = bufferReferences.get
+          references > 0
+      }
+    }
+
+    /**
+     * Release a reference acquired with `retainBuffer`
+     */
+    def releaseBufferReference(): Unit = {
+      envelope match {
+        case Some(request) =>
+          request.releaseBufferReference()
+        case None =>
+          if (bufferReferences.decrementAndGet() == 0 && buffer != null) {
             memoryPool.release(buffer)
             buffer = null
           }
@@ -334,19 +377,41 @@ object RequestChannel extends Logging {
   }
 }
 
+/**
+ * @param queueSize The maximum number of requests queued, or queued for each class of requests if the requests are
+ *                  scheduled by class
+ * @param schedulerConfig The config of the scheduling of requests by class, if requests are not handled in the order
+ *                        they were received
+ */
 class RequestChannel(val queueSize: Int,
                      val metricNamePrefix: String,
                      time: Time,
-                     allowDisabledApis: Boolean = false) extends KafkaMetricsGroup {
+                     allowDisabledApis: Boolean = false,
+                     schedulerConfig: Option[RequestSchedulerConfig] = None) extends KafkaMetricsGroup {
   import RequestChannel._
   val metrics = new RequestChannel.Metrics(allowDisabledApis)
-  private val requestQueue = new ArrayBlockingQueue[BaseRequest](queueSize)
+  private val requestQueue: RequestQueue = schedulerConfig match {
+    case Some(config) => new ScheduledRequestQueue(queueSize, config)
+    case None => new FifoRequestQueue(queueSize)
+  }
   private val processors = new ConcurrentHashMap[Int, Processor]()
   val requestQueueSizeMetricName = metricNamePrefix.concat(RequestQueueSizeMetric)
+  val requestQueueTimeMetricName = metricNamePrefix.concat(RequestQueueTimeMetric)
   val responseQueueSizeMetricName = metricNamePrefix.concat(ResponseQueueSizeMetric)
 
   newGauge(requestQueueSizeMetricName, () => requestQueue.size)
 
+  // the size of each queue and the time requests spend in it, when requests are scheduled by class
+  private val requestQueueTimeHists = requestQueue match {
+    case scheduledQueue: ScheduledRequestQueue =>
+      RequestQueueClass.values.map { queueClass =>
+        val tags = Map(QueueMetricTag -> queueClass.name)
+        newGauge(requestQueueSizeMetricName, () => scheduledQueue.size(queueClass), tags)
+        queueClass -> newHistogram(requestQueueTimeMetricName, biased = true, tags)
+      }.toMap
+    case _ => Map.empty[RequestQueueClass, Histogram]
+  }
+
   newGauge(responseQueueSizeMetricName, () => {
     processors.values.asScala.foldLeft(0) {(total, processor) =>
       total + processor.responseQueueSize
@@ -413,11 +478,30 @@ class RequestChannel(val queueSize: Int,
 
   /** Get the next request or block until specified time has elapsed */
   def receiveRequest(timeout: Long): RequestChannel.BaseRequest =
-    requestQueue.poll(timeout, TimeUnit.MILLISECONDS)
+    updateRequestQueueTime(requestQueue.poll(timeout))
 
   /** Get the next request or block until there is one */
   def receiveRequest(): RequestChannel.BaseRequest =
-    requestQueue.take()
+    updateRequestQueueTime(requestQueue.take())
+
+  /**
+   * Notify the channel that the handler thread which received a request is done handling it, its response may still
+   * be pending
+   */
+  def requestHandled(request: RequestChannel.Request): Unit =
+    requestQueue.requestHandled(request)
+
+  private def updateRequestQueueTime(request: BaseRequest): BaseRequest = {
+    if (requestQueueTimeHists.nonEmpty) {
+      request match {
+        case request: RequestChannel.Request =>
+          val queueTimeMs = TimeUnit.NANOSECONDS.toMillis(math.max(time.nanoseconds - request.startTimeNanos, 0))
+          requestQueueTimeHists(RequestQueueClass(request)).update(queueTimeMs)
+        case _ =>
+      }
+    }
+    request
+  }
 
   def updateErrorMetrics(apiKey: ApiKeys, errors: collection.Map[Errors, Integer]): Unit = {
     errors.forKeyValue { (error, count) =>
@@ -432,6 +516,11 @@ class RequestChannel(val queueSize: Int,
   def shutdown(): Unit = {
     clear()
     metrics.close()
+    requestQueueTimeHists.keys.foreach { queueClass =>
+      val tags = Map(QueueMetricTag -> queueClass.name)
+      removeMetric(requestQueueSizeMetricName, tags)
+      removeMetric(requestQueueTimeMetricName, tags)
+    }
   }
 
   def sendShutdownRequest(): Unit = requestQueue.put(ShutdownRequest)
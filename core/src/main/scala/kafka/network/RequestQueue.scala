@@ -0,0 +1,269 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.network
+
+import java.util
+import java.util.concurrent.{ArrayBlockingQueue, TimeUnit}
+import java.util.concurrent.locks.ReentrantLock
+
+import kafka.network.RequestChannel.{BaseRequest, ShutdownRequest}
+import org.apache.kafka.common.protocol.ApiKeys
+import org.apache.kafka.common.requests.FetchRequest
+
+/**
+ * The class of requests a request is queued with when the requests are scheduled by class, see
+ * [[ScheduledRequestQueue]].
+ */
+sealed abstract class RequestQueueClass(val name: String, val id: Int) {
+  override def toString: String = name
+}
+
+object RequestQueueClass {
+  /** Produce requests, consumer fetch requests and the other requests clients send to read or write records */
+  case object Data extends RequestQueueClass("data", 0)
+  /** Follower fetch requests and the other requests only sent by brokers and controllers */
+  case object Replication extends RequestQueueClass("replication", 1)
+  /** Requests handled by the group and transaction coordinators */
+  case object Coordination extends RequestQueueClass("coordination", 2)
+  /** Any other request, such as the requests sent by the admin client */
+  case object Admin extends RequestQueueClass("admin", 3)
+
+  val values: Seq[RequestQueueClass] = Seq(Data, Replication, Coordination, Admin)
+
+  private val dataApis = Set(ApiKeys.PRODUCE, ApiKeys.FETCH, ApiKeys.LIST_OFFSETS, ApiKeys.METADATA,
+    ApiKeys.OFFSET_FOR_LEADER_EPOCH, ApiKeys.API_VERSIONS, ApiKeys.SASL_HANDSHAKE, ApiKeys.SASL_AUTHENTICATE)
+
+  private val coordinationApis = Set(ApiKeys.FIND_COORDINATOR, ApiKeys.JOIN_GROUP, ApiKeys.SYNC_GROUP,
+    ApiKeys.HEARTBEAT, ApiKeys.LEAVE_GROUP, ApiKeys.OFFSET_COMMIT, ApiKeys.OFFSET_FETCH, ApiKeys.INIT_PRODUCER_ID,
+    ApiKeys.ADD_PARTITIONS_TO_TXN, ApiKeys.ADD_OFFSETS_TO_TXN, ApiKeys.END_TXN, ApiKeys.TXN_OFFSET_COMMIT)
+
+  def apply(request: RequestChannel.Request): RequestQueueClass = {
+    val apiKey = request.header.apiKey
+    if (apiKey.clusterAction || (apiKey == ApiKeys.FETCH && request.body[FetchRequest].isFromFollower))
+      Replication
+    else if (dataApis.contains(apiKey))
+      Data
+    else if (coordinationApis.contains(apiKey))
+      Coordination
+    else
+      Admin
+  }
+
+  def fromName(name: String): Option[RequestQueueClass] = values.find(_.name == name)
+}
+
+/**
+ * @param weights The share of the handler threads given to each class while it has requests waiting
+ * @param maxHandlerThreads The maximum number of handler threads handling requests of a class at the same time
+ */
+case class RequestSchedulerConfig(weights: Map[RequestQueueClass, Int],
+                                  maxHandlerThreads: Map[RequestQueueClass, Int])
+
+/**
+ * The queue of the requests waiting for a request handler thread.
+ */
+trait RequestQueue {
+
+  /** Add a request to the queue, blocking until there is room in the queue for the request */
+  def put(request: BaseRequest): Unit
+
+  /** Remove the next request or wait until the specified time has elapsed, returning null if there was no request */
+  def poll(timeoutMs: Long): BaseRequest
+
+  /** Remove the next request or wait until there is one */
+  def take(): BaseRequest
+
+  /** Notify the queue that a handler thread is done handling a request it removed from the queue */
+  def requestHandled(request: RequestChannel.Request): Unit
+
+  def size: Int
+
+  def clear(): Unit
+}
+
+/**
+ * A single queue of requests handled in the order they were received.
+ */
+class FifoRequestQueue(capacity: Int) extends RequestQueue {
+  private val queue = new ArrayBlockingQueue[BaseRequest](capacity)
+
+  override def put(request: BaseRequest): Unit = queue.put(request)
+
+  override def poll(timeoutMs: Long): BaseRequest = queue.poll(timeoutMs, TimeUnit.MILLISECONDS)
+
+  override def take(): BaseRequest = queue.take()
+
+  override def requestHandled(request: RequestChannel.Request): Unit = {}
+
+  override def size: Int = queue.size
+
+  override def clear(): Unit = queue.clear()
+}
+
+/**
+ * A request queue made of a bounded queue per [[RequestQueueClass]], so that a burst of requests of a class does not
+ * delay the requests of the other classes behind it.
+ *
+ * Handler threads dequeue the requests of the classes with requests waiting using smooth weighted round-robin: out
+ * of the sum of the weights of these classes, each class gets a number of dequeues equal to its weight, interleaved
+ * with the dequeues of the other classes. Requests of the same class are dequeued in the order they were received.
+ * A class may also be limited to a number of handler threads handling its requests at the same time, its requests
+ * then wait until a handler thread is done with a request of the class even if other threads are idle.
+ *
+ * Shutdown requests are dequeued once there is no request that can be dequeued.
+ *
+ * @param capacity The maximum number of requests queued for each class
+ */
+class ScheduledRequestQueue(capacity: Int, config: RequestSchedulerConfig) extends RequestQueue {
+  private val lock = new ReentrantLock()
+  private val notEmpty = lock.newCondition()
+  private val notFull = lock.newCondition()
+
+  private val numClasses = RequestQueueClass.values.size
+  private val queues = Array.fill(numClasses)(new util.ArrayDeque[RequestChannel.Request]())
+  private val weights = RequestQueueClass.values.map(queueClass => config.weights.getOrElse(queueClass, 1)).toArray
+  private val maxHandlerThreads = RequestQueueClass.values.map { queueClass =>
+    config.maxHandlerThreads.getOrElse(queueClass, Int.MaxValue)
+  }.toArray
+  // the state of the smooth weighted round-robin
+  private val currentWeights = new Array[Long](numClasses)
+  private val handlingThreads = new Array[Int](numClasses)
+  private var shutdownRequests = 0
+
+  override def put(request: BaseRequest): Unit = {
+    lock.lockInterruptibly()
+    try {
+      request match {
+        case ShutdownRequest =>
+          shutdownRequests += 1
+        case request: RequestChannel.Request =>
+          val queue = queues(RequestQueueClass(request).id)
+          while (queue.size >= capacity)
+            notFull.await()
+          queue.add(request)
+      }
+      notEmpty.signal()
+    } finally {
+      lock.unlock()
+    }
+  }
+
+  override def poll(timeoutMs: Long): BaseRequest = {
+    var remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs)
+    lock.lockInterruptibly()
+    try {
+      var request = dequeue()
+      while (request == null && remainingNanos > 0) {
+        remainingNanos = notEmpty.awaitNanos(remainingNanos)
+        request = dequeue()
+      }
+      request
+    } finally {
+      lock.unlock()
+    }
+  }
+
+  override def take(): BaseRequest = {
+    lock.lockInterruptibly()
+    try {
+      var request = dequeue()
+      while (request == null) {
+        notEmpty.await()
+        request = dequeue()
+      }
+      request
+    } finally {
+      lock.unlock()
+    }
+  }
+
+  override def requestHandled(request: RequestChannel.Request): Unit = {
+    lock.lock()
+    try {
+      handlingThreads(RequestQueueClass(request).id) -= 1
+      // a request of the class may have been waiting for the thread
+      notEmpty.signal()
+    } finally {
+      lock.unlock()
+    }
+  }
+
+  // must be called with the lock held
+  private def dequeue(): BaseRequest = {
+    var selected = -1
+    var totalWeight = 0L
+    var i = 0
+    while (i < numClasses) {
+      if (isEligible(i)) {
+        currentWeights(i) += weights(i)
+        totalWeight += weights(i)
+        if (selected < 0 || currentWeights(i) > currentWeights(selected))
+          selected = i
+      }
+      i += 1
+    }
+
+    if (selected >= 0) {
+      currentWeights(selected) -= totalWeight
+      handlingThreads(selected) += 1
+      val request = queues(selected).poll()
+      notFull.signalAll()
+      // wake up another handler thread if there are more requests it could handle
+      if ((0 until numClasses).exists(isEligible))
+        notEmpty.signal()
+      request
+    } else if (shutdownRequests > 0) {
+      shutdownRequests -= 1
+      ShutdownRequest
+    } else {
+      null
+    }
+  }
+
+  private def isEligible(classId: Int): Boolean =
+    !queues(classId).isEmpty && handlingThreads(classId) < maxHandlerThreads(classId)
+
+  override def size: Int = {
+    lock.lock()
+    try {
+      queues.map(_.size).sum
+    } finally {
+      lock.unlock()
+    }
+  }
+
+  def size(queueClass: RequestQueueClass): Int = {
+    lock.lock()
+    try {
+      queues(queueClass.id).size
+    } finally {
+      lock.unlock()
+    }
+  }
+
+  override def clear(): Unit = {
+    lock.lock()
+    try {
+      queues.foreach(_.clear())
+      shutdownRequests = 0
+      notFull.signalAll()
+    } finally {
+      lock.unlock()
+    }
+  }
+}
@@ -38,9 +38,9 @@ import kafka.utils.Implicits._
 import kafka.utils._
 import org.apache.kafka.common.config.ConfigException
 import org.apache.kafka.common.errors.InvalidRequestException
-import org.apache.kafka.common.memory.{MemoryPool, SimpleMemoryPool}
+import org.apache.kafka.common.memory.{MemoryPool, SimpleMemoryPool, SizeClassedMemoryPool}
 import org.apache.kafka.common.metrics._
-import org.apache.kafka.common.metrics.stats.{Avg, CumulativeSum, Meter, Rate}
+import org.apache.kafka.common.metrics.stats.{Avg, CumulativeSum, Max, Meter, Rate}
 import org.apache.kafka.common.network.KafkaChannel.ChannelMuteEvent
 import org.apache.kafka.common.network.{ChannelBuilder, ChannelBuilders, ClientInformation, KafkaChannel, ListenerName, ListenerReconfigurable, NetworkSend, Selectable, Send, Selector => KSelector}
 import org.apache.kafka.common.protocol.ApiKeys
@@ -89,11 +89,25 @@ class SocketServer(val config: KafkaConfig,
   private val memoryPoolDepletedPercentMetricName = metrics.metricName("MemoryPoolAvgDepletedPercent", MetricsGroup)
   private val memoryPoolDepletedTimeMetricName = metrics.metricName("MemoryPoolDepletedTimeTotal", MetricsGroup)
   memoryPoolSensor.add(new Meter(TimeUnit.MILLISECONDS, memoryPoolDepletedPercentMetricName, memoryPoolDepletedTimeMetricName))
-  private val memoryPool = if (config.queuedMaxBytes > 0) new SimpleMemoryPool(config.queuedMaxBytes, config.socketRequestMaxBytes, false, memoryPoolSensor) else MemoryPool.NONE
+  private val memoryPool =
+    if (config.socketRequestBufferPoolBytes > 0) {
+      val sizeInBytes: Long = if (config.queuedMaxBytes > 0) config.queuedMaxBytes else Long.MaxValue
+      new SizeClassedMemoryPool(sizeInBytes, config.socketRequestMaxBytes, false, memoryPoolSensor,
+        SocketServer.MaxPooledRequestBufferSize, config.socketRequestBufferPoolBytes, config.socketRequestBufferPoolDirect)
+    } else if (config.queuedMaxBytes > 0)
+      new SimpleMemoryPool(config.queuedMaxBytes, config.socketRequestMaxBytes, false, memoryPoolSensor)
+    else
+      MemoryPool.NONE
   // data-plane
   private val dataPlaneProcessors = new ConcurrentHashMap[Int, Processor]()
   private[network] val dataPlaneAcceptors = new ConcurrentHashMap[EndPoint, Acceptor]()
-  val dataPlaneRequestChannel = new RequestChannel(maxQueuedRequests, DataPlaneMetricPrefix, time, allowDisabledApis)
+  private val requestSchedulerConfig =
+    if (config.requestSchedulerEnable)
+      Some(RequestSchedulerConfig(config.requestSchedulerQueueWeights.toMap, config.requestSchedulerQueueMaxHandlerThreads.toMap))
+    else
+      None
+  val dataPlaneRequestChannel = new RequestChannel(maxQueuedRequests, DataPlaneMetricPrefix, time, allowDisabledApis,
+    requestSchedulerConfig)
   // control-plane
   private var controlPlaneProcessorOpt : Option[Processor] = None
   private[network] var controlPlaneAcceptorOpt : Option[Acceptor] = None
@@ -144,6 +158,14 @@ class SocketServer(val config: KafkaConfig,
     })
     newGauge("MemoryPoolAvailable", () => memoryPool.availableMemory)
     newGauge("MemoryPoolUsed", () => memoryPool.size() - memoryPool.availableMemory)
+    memoryPool match {
+      case pool: SizeClassedMemoryPool =>
+        newGauge("MemoryPoolIdleBytes", () => pool.idleBytes)
+        newGauge("MemoryPoolRecycledBuffersTotal", () => pool.recycledAllocations)
+        newGauge("MemoryPoolNewBuffersTotal", () => pool.newPooledAllocations)
+        newGauge("MemoryPoolUnpooledBuffersTotal", () => pool.unpooledAllocations)
+      case _ =>
+    }
     newGauge(s"${DataPlaneMetricPrefix}ExpiredConnectionsKilledCount", () => SocketServer.this.synchronized {
       val expiredConnectionsKilledCountMetricNames = dataPlaneProcessors.values.asScala.iterator.map { p =>
         metrics.metricName("expired-connections-killed-count", MetricsGroup, p.metricTags)
@@ -448,6 +470,8 @@ object SocketServer {
   val ControlPlaneThreadPrefix = "control-plane"
   val DataPlaneMetricPrefix = ""
   val ControlPlaneMetricPrefix = "ControlPlane"
+  // the size above which request buffers are not recycled by the request buffer pool
+  val MaxPooledRequestBufferSize = 16 * 1024 * 1024
 
   val ReconfigurableConfigs = Set(
     KafkaConfig.MaxConnectionsPerIpProp,
@@ -762,6 +786,7 @@ private[kafka] object Processor {
   val ListenerMetricTag = "listener"
 
   val ConnectionQueueSize = 20
+  val MaxPollTimeoutMs = 300
 }
 
 /**
@@ -810,6 +835,9 @@ private[kafka] class Processor(val id: Int,
   private val newConnections = new ArrayBlockingQueue[SocketChannel](connectionQueueSize)
   private val inflightResponses = mutable.Map[String, RequestChannel.Response]()
   private val responseQueue = new LinkedBlockingDeque[RequestChannel.Response]()
+  // Set once the selector has been woken up for a new connection or response and reset by the processor thread
+  // before it looks for new connections and responses, so that at most one wakeup is issued per poll
+  private val wakeupPending = new AtomicBoolean(false)
 
   private[kafka] val metricTags = mutable.LinkedHashMap(
     ListenerMetricTag -> listenerName.value,
@@ -829,6 +857,19 @@ private[kafka] class Processor(val id: Int,
   private val expiredConnectionsKilledCountMetricName = metrics.metricName("expired-connections-killed-count", MetricsGroup, metricTags)
   metrics.addMetric(expiredConnectionsKilledCountMetricName, expiredConnectionsKilledCount)
 
+  private val wakeupSensor = metrics.sensor(s"SelectorWakeup-${listenerName.value}-$id")
+  wakeupSensor.add(new Meter(metrics.metricName("selector-wakeup-rate", MetricsGroup,
+    "The number of times per second the selector was woken up for new connections or responses", metricTags),
+    metrics.metricName("selector-wakeup-total", MetricsGroup,
+      "The total number of times the selector was woken up for new connections or responses", metricTags)))
+
+  private val responseBatchSensor = metrics.sensor(s"ResponseBatchSize-${listenerName.value}-$id")
+  responseBatchSensor.add(metrics.metricName("responses-per-poll-avg", MetricsGroup,
+    "The average number of responses registered for writing before each poll, excluding polls without responses",
+    metricTags), new Avg)
+  responseBatchSensor.add(metrics.metricName("responses-per-poll-max", MetricsGroup,
+    "The maximum number of responses registered for writing before a poll", metricTags), new Max)
+
   private val selector = createSelector(
     ChannelBuilders.serverChannelBuilder(listenerName,
       listenerName == config.interBrokerListenerName,
@@ -869,6 +910,9 @@ private[kafka] class Processor(val id: Int,
     try {
       while (isRunning) {
         try {
+          // reset before looking for new connections and responses: any connection or response queued from now on
+          // wakes up the selector again, so that the following poll does not wait for it
+          wakeupPending.set(false)
           // setup any new connections that have been queued up
           configureNewConnections()
           // register any new responses for writing
@@ -912,7 +956,9 @@ private[kafka] class Processor(val id: Int,
 
   private def processNewResponses(): Unit = {
     var currentResponse: RequestChannel.Response = null
+    var numResponses = 0
     while ({currentResponse = dequeueResponse(); currentResponse != null}) {
+      numResponses += 1
       val channelId = currentResponse.request.context.connectionId
       try {
         currentResponse match {
@@ -948,6 +994,9 @@ private[kafka] class Processor(val id: Int,
           processChannelException(channelId, s"Exception while processing response for $channelId", e)
       }
     }
+    // all the responses dequeued are written by the same poll
+    if (numResponses > 0)
+      responseBatchSensor.record(numResponses)
   }
 
   // `protected` for test usage
@@ -969,7 +1018,8 @@ private[kafka] class Processor(val id: Int,
   }
 
   private def poll(): Unit = {
-    val pollTimeout = if (newConnections.isEmpty) 300 else 0
+    // don't block if connections or responses were queued since they were last processed
+    val pollTimeout = if (newConnections.isEmpty && responseQueue.isEmpty) MaxPollTimeoutMs else 0
     try selector.poll(pollTimeout)
     catch {
       case e @ (_: IllegalStateException | _: IOException) =>
@@ -1132,7 +1182,7 @@ private[kafka] class Processor(val id: Int,
         false
     }
     if (accepted)
-      wakeup()
+      wakeupIfNotPending()
     accepted
   }
 
@@ -1187,7 +1237,7 @@ private[kafka] class Processor(val id: Int,
 
   private[network] def enqueueResponse(response: RequestChannel.Response): Unit = {
     responseQueue.put(response)
-    wakeup()
+    wakeupIfNotPending()
   }
 
   private def dequeueResponse(): RequestChannel.Response = {
@@ -1226,10 +1276,23 @@ private[kafka] class Processor(val id: Int,
    */
   override def wakeup() = selector.wakeup()
 
+  /**
+   * Wakeup the thread for selection unless it has already been woken up since it last looked for new connections
+   * and responses. Under load, many responses are then registered for writing after a single wakeup.
+   */
+  private def wakeupIfNotPending(): Unit = {
+    if (wakeupPending.compareAndSet(false, true)) {
+      wakeupSensor.record()
+      wakeup()
+    }
+  }
+
   override def initiateShutdown(): Unit = {
     super.initiateShutdown()
     removeMetric("IdlePercent", Map("networkProcessor" -> id.toString))
     metrics.removeMetric(expiredConnectionsKilledCountMetricName)
+    metrics.removeSensor(wakeupSensor.name)
+    metrics.removeSensor(responseBatchSensor.name)
   }
 }
 
@@ -34,7 +34,7 @@ import org.apache.kafka.common.protocol.Errors
 import scala.collection.{Map, Set, mutable}
 import scala.compat.java8.OptionConverters._
 import scala.jdk.CollectionConverters._
-import java.util.concurrent.TimeUnit
+import java.util.concurrent.{Callable, CompletableFuture, ExecutionException, ExecutorService, TimeUnit}
 import java.util.concurrent.atomic.AtomicLong
 
 import kafka.log.LogAppendInfo
@@ -49,9 +49,17 @@ import org.apache.kafka.common.requests._
 import org.apache.kafka.common.requests.OffsetsForLeaderEpochResponse.{UNDEFINED_EPOCH, UNDEFINED_EPOCH_OFFSET}
 
 import scala.math._
+import scala.util.{Failure, Success, Try}
 
 /**
  *  Abstract class for fetching data from multiple partitions from the same broker.
+ *
+ *  @param partitionDataExecutor If defined, the executor processing the data of the partitions of a fetch response in
+ *                               parallel, the fetcher thread then only handles the results of the processing.
+ *                               `processPartitionData` must not acquire the partition map lock when it is used.
+ *  @param fetchPipelineDepth The maximum number of fetches in flight. The partitions are spread over that many slots
+ *                            of the fetch pipeline, each with at most one fetch in flight, so that the fetches of a
+ *                            partition are still processed in order whatever the order the fetches complete in.
  */
 abstract class AbstractFetcherThread(name: String,
                                      clientId: String,
@@ -59,7 +67,9 @@ abstract class AbstractFetcherThread(name: String,
                                      failedPartitions: FailedPartitions,
                                      fetchBackOffMs: Int = 0,
                                      isInterruptible: Boolean = true,
-                                     val brokerTopicStats: BrokerTopicStats) //BrokerTopicStats's lifecycle managed by ReplicaManager
+                                     val brokerTopicStats: BrokerTopicStats, //BrokerTopicStats's lifecycle managed by ReplicaManager
+                                     partitionDataExecutor: Option[ExecutorService] = None,
+                                     fetchPipelineDepth: Int = 1)
   extends ShutdownableThread(name, isInterruptible) {
 
   type FetchData = FetchResponse.PartitionData[Records]
@@ -73,6 +83,14 @@ abstract class AbstractFetcherThread(name: String,
   val fetcherStats = new FetcherStats(metricId)
   val fetcherLagStats = new FetcherLagStats(metricId)
 
+  // the fetch in flight of each slot of the fetch pipeline, null if there is none
+  private val inFlightFetches = new Array[ReplicaFetch](fetchPipelineDepth)
+  // the slot of each partition, assigned round-robin when the partition is first fetched
+  private val pipelineSlots = mutable.Map[TopicPartition, Int]()
+  private var nextPipelineSlot = 0
+  // the fetches sent by the default `sendFetch`, fetched from the leader by `receiveFetches`
+  private val pendingFetches = new util.ArrayDeque[(Int, FetchRequest.Builder)]
+
   /* callbacks to be defined in subclass */
 
   // process fetched data
@@ -98,6 +116,23 @@ abstract class AbstractFetcherThread(name: String,
 
   protected def fetchFromLeader(fetchRequest: FetchRequest.Builder): Map[TopicPartition, FetchData]
 
+  /* callbacks of the fetch pipeline, only used if the fetch pipeline depth is more than one */
+
+  // build the fetch of the partitions of a slot of the fetch pipeline
+  protected def buildFetch(slot: Int, partitionMap: Map[TopicPartition, PartitionFetchState]): ResultWithPartitions[Option[ReplicaFetch]] =
+    buildFetch(partitionMap)
+
+  // send the fetch of a slot of the fetch pipeline without waiting for its response
+  protected def sendFetch(slot: Int, fetchRequest: FetchRequest.Builder): Unit =
+    pendingFetches.add(slot -> fetchRequest)
+
+  // wait for the completion of at least one of the fetches sent, unless the thread is shutting down
+  protected def receiveFetches(): Seq[(Int, Try[Map[TopicPartition, FetchData]])] = {
+    Option(pendingFetches.poll()).map { case (slot, fetchRequest) =>
+      slot -> Try(fetchFromLeader(fetchRequest))
+    }.toSeq
+  }
+
   protected def fetchEarliestOffsetFromLeader(topicPartition: TopicPartition, currentLeaderEpoch: Int): Long
 
   protected def fetchLatestOffsetFromLeader(topicPartition: TopicPartition, currentLeaderEpoch: Int): Long
@@ -124,21 +159,80 @@ abstract class AbstractFetcherThread(name: String,
   }
 
   private def maybeFetch(): Unit = {
-    val fetchRequestOpt = inLock(partitionMapLock) {
-      val ResultWithPartitions(fetchRequestOpt, partitionsWithError) = buildFetch(partitionStates.partitionStateMap.asScala)
+    if (fetchPipelineDepth > 1)
+      maybePipelineFetches()
+    else {
+      val fetchRequestOpt = inLock(partitionMapLock) {
+        val ResultWithPartitions(fetchRequestOpt, partitionsWithError) = buildFetch(partitionStates.partitionStateMap.asScala)
+
+        handlePartitionsWithErrors(partitionsWithError, "maybeFetch")
 
-      handlePartitionsWithErrors(partitionsWithError, "maybeFetch")
+        if (fetchRequestOpt.isEmpty) {
+          trace(s"There are no active partitions. Back off for $fetchBackOffMs ms before sending a fetch request")
+          partitionMapCond.await(fetchBackOffMs, TimeUnit.MILLISECONDS)
+        }
+
+        fetchRequestOpt
+      }
+
+      fetchRequestOpt.foreach { case ReplicaFetch(sessionPartitions, fetchRequest) =>
+        processFetchRequest(sessionPartitions, fetchRequest)
+      }
+    }
+  }
 
-      if (fetchRequestOpt.isEmpty) {
+  /**
+   * Send the fetches of the slots of the fetch pipeline without a fetch in flight, then process the fetches completed.
+   */
+  private def maybePipelineFetches(): Unit = {
+    val fetches = inLock(partitionMapLock) {
+      val slotPartitionMaps = Array.fill(fetchPipelineDepth)(mutable.LinkedHashMap[TopicPartition, PartitionFetchState]())
+      partitionStates.partitionStateMap.forEach { (topicPartition, fetchState) =>
+        val slot = pipelineSlots.getOrElseUpdate(topicPartition, {
+          val slot = nextPipelineSlot
+          nextPipelineSlot = (nextPipelineSlot + 1) % fetchPipelineDepth
+          slot
+        })
+        slotPartitionMaps(slot).put(topicPartition, fetchState)
+      }
+
+      val fetches = (0 until fetchPipelineDepth).filter(inFlightFetches(_) == null).flatMap { slot =>
+        val ResultWithPartitions(fetchRequestOpt, partitionsWithError) = buildFetch(slot, slotPartitionMaps(slot))
+        handlePartitionsWithErrors(partitionsWithError, "maybeFetch")
+        fetchRequestOpt.map(slot -> _)
+      }
+
+      if (fetches.isEmpty && inFlightFetches.forall(_ == null)) {
         trace(s"There are no active partitions. Back off for $fetchBackOffMs ms before sending a fetch request")
         partitionMapCond.await(fetchBackOffMs, TimeUnit.MILLISECONDS)
       }
 
-      fetchRequestOpt
+      fetches
     }
 
-    fetchRequestOpt.foreach { case ReplicaFetch(sessionPartitions, fetchRequest) =>
-      processFetchRequest(sessionPartitions, fetchRequest)
+    fetches.foreach { case (slot, fetch) =>
+      trace(s"Sending fetch request ${fetch.fetchRequest} of fetch pipeline slot $slot")
+      inFlightFetches(slot) = fetch
+      sendFetch(slot, fetch.fetchRequest)
+    }
+
+    if (inFlightFetches.exists(_ != null)) {
+      val completedFetches = try receiveFetches() catch {
+        case t: Throwable =>
+          inFlightFetches.indices.filter(inFlightFetches(_) != null).map(_ -> Failure(t))
+      }
+      completedFetches.foreach { case (slot, result) =>
+        val fetch = inFlightFetches(slot)
+        inFlightFetches(slot) = null
+        val partitionsWithError = mutable.Set[TopicPartition]()
+        val responseData = result match {
+          case Success(responseData) => responseData
+          case Failure(t) =>
+            handleFetchError(fetch.fetchRequest, fetch.partitionData.keySet.asScala, partitionsWithError, t)
+            Map.empty[TopicPartition, FetchData]
+        }
+        processFetchResponse(fetch.partitionData, responseData, partitionsWithError)
+      }
     }
   }
 
@@ -306,10 +400,47 @@ abstract class AbstractFetcherThread(name: String,
     }
   }
 
+  /**
+   * Process the data of the partitions of a fetch response with the partition data executor, if there is more than
+   * one partition ready for it. Must be called with the partition map lock held, which the partitions processed by
+   * the executor are guaranteed to be ready for the processing for.
+   *
+   * @return The results of the processing of the partitions processed by the executor
+   */
+  private def processPartitionDataInParallel(sessionPartitions: util.Map[TopicPartition, FetchRequest.PartitionData],
+                                             responseData: Map[TopicPartition, FetchData]): Map[TopicPartition, Try[Option[LogAppendInfo]]] = {
+    partitionDataExecutor match {
+      case Some(executor) =>
+        val readyPartitions = responseData.filter { case (topicPartition, partitionData) =>
+          val fetchPartitionData = sessionPartitions.get(topicPartition)
+          partitionData.error == Errors.NONE && fetchPartitionData != null &&
+            Option(partitionStates.stateValue(topicPartition)).exists { currentFetchState =>
+              fetchPartitionData.fetchOffset == currentFetchState.fetchOffset && currentFetchState.isReadyForFetch
+            }
+        }
+        if (readyPartitions.size <= 1)
+          Map.empty
+        else {
+          val futures = readyPartitions.map { case (topicPartition, partitionData) =>
+            val fetchOffset = partitionStates.stateValue(topicPartition).fetchOffset
+            topicPartition -> executor.submit(new Callable[Try[Option[LogAppendInfo]]] {
+              override def call(): Try[Option[LogAppendInfo]] = {
+                try Success(processPartitionData(topicPartition, fetchOffset, partitionData))
+                catch {
+                  case t: Throwable => Failure(t)
+                }
+              }
+            })
+          }
+          futures.map { case (topicPartition, future) => topicPartition -> future.get }
+        }
+      case None => Map.empty
+    }
+  }
+
   private def processFetchRequest(sessionPartitions: util.Map[TopicPartition, FetchRequest.PartitionData],
                                   fetchRequest: FetchRequest.Builder): Unit = {
     val partitionsWithError = mutable.Set[TopicPartition]()
-    val divergingEndOffsets = mutable.Map.empty[TopicPartition, EpochEndOffset]
     var responseData: Map[TopicPartition, FetchData] = Map.empty
 
     try {
@@ -317,22 +448,39 @@ abstract class AbstractFetcherThread(name: String,
       responseData = fetchFromLeader(fetchRequest)
     } catch {
       case t: Throwable =>
-        if (isRunning) {
-          warn(s"Error in response for fetch request $fetchRequest", t)
-          inLock(partitionMapLock) {
-            partitionsWithError ++= partitionStates.partitionSet.asScala
-            // there is an error occurred while fetching partitions, sleep a while
-            // note that `AbstractFetcherThread.handlePartitionsWithError` will also introduce the same delay for every
-            // partition with error effectively doubling the delay. It would be good to improve this.
-            partitionMapCond.await(fetchBackOffMs, TimeUnit.MILLISECONDS)
-          }
-        }
+        handleFetchError(fetchRequest, inLock(partitionMapLock)(partitionStates.partitionSet.asScala.toSet),
+          partitionsWithError, t)
     }
+    processFetchResponse(sessionPartitions, responseData, partitionsWithError)
+  }
+
+  private def handleFetchError(fetchRequest: FetchRequest.Builder,
+                               fetchedPartitions: Set[TopicPartition],
+                               partitionsWithError: mutable.Set[TopicPartition],
+                               t: Throwable): Unit = {
+    if (isRunning) {
+      warn(s"Error in response for fetch request $fetchRequest", t)
+      inLock(partitionMapLock) {
+        partitionsWithError ++= fetchedPartitions
+        // there is an error occurred while fetching partitions, sleep a while
+        // note that `AbstractFetcherThread.handlePartitionsWithError` will also introduce the same delay for every
+        // partition with error effectively doubling the delay. It would be good to improve this.
+        partitionMapCond.await(fetchBackOffMs, TimeUnit.MILLISECONDS)
+      }
+    }
+  }
+
+  private def processFetchResponse(sessionPartitions: util.Map[TopicPartition, FetchRequest.PartitionData],
+                                   responseData: Map[TopicPartition, FetchData],
+                                   partitionsWithError: mutable.Set[TopicPartition]): Unit = {
+    val divergingEndOffsets = mutable.Map.empty[TopicPartition, EpochEndOffset]
+    val flushCompletions = mutable.Map.empty[TopicPartition, CompletableFuture[Void]]
     fetcherStats.requestRate.mark()
 
     if (responseData.nonEmpty) {
       // process fetched data
       inLock(partitionMapLock) {
+        val processedPartitionData = processPartitionDataInParallel(sessionPartitions, responseData)
         responseData.forKeyValue { (topicPartition, partitionData) =>
           Option(partitionStates.stateValue(topicPartition)).foreach { currentFetchState =>
             // It's possible that a partition is removed and re-added or truncated when there is a pending fetch request.
@@ -344,10 +492,14 @@ abstract class AbstractFetcherThread(name: String,
                 case Errors.NONE =>
                   try {
                     // Once we hand off the partition data to the subclass, we can't mess with it any more in this thread
-                    val logAppendInfoOpt = processPartitionData(topicPartition, currentFetchState.fetchOffset,
-                      partitionData)
+                    val logAppendInfoOpt = processedPartitionData.get(topicPartition) match {
+                      // rethrows the exception thrown while processing the partition data, if any
+                      case Some(result) => result.get
+                      case None => processPartitionData(topicPartition, currentFetchState.fetchOffset, partitionData)
+                    }
 
                     logAppendInfoOpt.foreach { logAppendInfo =>
+                      logAppendInfo.flushCompletion.foreach(flushCompletions.put(topicPartition, _))
                       val validBytes = logAppendInfo.validBytes
                       val nextOffset = if (validBytes > 0) logAppendInfo.lastOffset + 1 else currentFetchState.fetchOffset
                       val lag = Math.max(0L, partitionData.highWatermark - nextOffset)
@@ -427,6 +579,11 @@ abstract class AbstractFetcherThread(name: String,
       }
     }
 
+    // the next fetch of the partitions gives their new fetch offsets to the leader, which may advance the high
+    // watermark up to them, so it is only built once the flushes requested by the appends are complete. The flushes
+    // are awaited without holding the partition map lock, so that partitions can be added and removed meanwhile
+    awaitFlushes(flushCompletions)
+
     if (divergingEndOffsets.nonEmpty)
       truncateOnFetchResponse(divergingEndOffsets)
     if (partitionsWithError.nonEmpty) {
@@ -434,6 +591,21 @@ abstract class AbstractFetcherThread(name: String,
     }
   }
 
+  /**
+   * Wait for the flushes of the logs requested by the appends of a fetch response. The partitions whose log could not
+   * be flushed are marked as failed.
+   */
+  private def awaitFlushes(flushCompletions: Map[TopicPartition, CompletableFuture[Void]]): Unit = {
+    flushCompletions.forKeyValue { (topicPartition, flushCompletion) =>
+      try flushCompletion.get
+      catch {
+        case e: ExecutionException =>
+          error(s"Error while flushing the log of partition $topicPartition", e.getCause)
+          markPartitionFailed(topicPartition)
+      }
+    }
+  }
+
   /**
    * This is used to mark partitions for truncation in ReplicaAlterLogDirsThread after leader
    * offsets are known.
@@ -711,6 +883,7 @@ abstract class AbstractFetcherThread(name: String,
       topicPartitions.map { topicPartition =>
         val state = partitionStates.stateValue(topicPartition)
         partitionStates.remove(topicPartition)
+        pipelineSlots.remove(topicPartition)
         fetcherLagStats.unregister(topicPartition)
         topicPartition -> state
       }.filter(_._2 != null).toMap
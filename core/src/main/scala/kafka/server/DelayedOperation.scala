@@ -132,27 +132,38 @@ abstract class DelayedOperation(override val delayMs: Long,
 object DelayedOperationPurgatory {
 
   private val Shards = 512 // Shard the watcher list to reduce lock contention
+  private val MaxCoalescedTraversals = 4 // The most traversals of a watch list for coalesced completion checks
 
   def apply[T <: DelayedOperation](purgatoryName: String,
                                    brokerId: Int = 0,
                                    purgeInterval: Int = 1000,
                                    reaperEnabled: Boolean = true,
-                                   timerEnabled: Boolean = true): DelayedOperationPurgatory[T] = {
+                                   timerEnabled: Boolean = true,
+                                   coalesceCompletionChecks: Boolean = false): DelayedOperationPurgatory[T] = {
     val timer = new SystemTimer(purgatoryName)
-    new DelayedOperationPurgatory[T](purgatoryName, timer, brokerId, purgeInterval, reaperEnabled, timerEnabled)
+    new DelayedOperationPurgatory[T](purgatoryName, timer, brokerId, purgeInterval, reaperEnabled, timerEnabled,
+      coalesceCompletionChecks)
   }
 
 }
 
 /**
  * A helper purgatory class for bookkeeping delayed operations with a timeout, and expiring timed out operations.
+ *
+ * If coalesceCompletionChecks is enabled, concurrent calls to checkAndComplete() for the same key are coalesced: a
+ * thread finding another thread already walking the watch list of the key returns immediately, and the walking thread
+ * walks the list once more for all the checks requested during its walk. A busy key, such as a partition whose high
+ * watermark is advanced by many threads, is then walked once per batch of checks rather than once per check, at the
+ * cost of checkAndComplete() not always completing the operations in the calling thread. Callers which need the
+ * operations to be completed before checkAndComplete() returns must not enable it.
  */
 final class DelayedOperationPurgatory[T <: DelayedOperation](purgatoryName: String,
                                                              timeoutTimer: Timer,
                                                              brokerId: Int = 0,
                                                              purgeInterval: Int = 1000,
                                                              reaperEnabled: Boolean = true,
-                                                             timerEnabled: Boolean = true)
+                                                             timerEnabled: Boolean = true,
+                                                             coalesceCompletionChecks: Boolean = false)
         extends Logging with KafkaMetricsGroup {
   /* a list of operation watching keys */
   private class WatcherList {
@@ -183,6 +194,8 @@ final class DelayedOperationPurgatory[T <: DelayedOperation](purgatoryName: Stri
   private val metricsTags = Map("delayedOperation" -> purgatoryName)
   newGauge("PurgatorySize", () => watched, metricsTags)
   newGauge("NumDelayedOperations", () => numDelayed, metricsTags)
+  private val coalescedCompletionChecksMeter = newMeter("CoalescedCompletionChecksPerSec", "checks",
+    TimeUnit.SECONDS, metricsTags)
 
   if (reaperEnabled)
     expirationReaper.start()
@@ -331,32 +344,97 @@ final class DelayedOperationPurgatory[T <: DelayedOperation](purgatoryName: Stri
     timeoutTimer.shutdown()
     removeMetric("PurgatorySize", metricsTags)
     removeMetric("NumDelayedOperations", metricsTags)
+    removeMetric("CoalescedCompletionChecksPerSec", metricsTags)
   }
 
   /**
    * A linked list of watched delayed operations based on some key
    */
   private class Watchers(val key: Any) {
-    private[this] val operations = new ConcurrentLinkedQueue[T]()
+    private[this] val operations = new ConcurrentLinkedQueue[WatchedOperation]()
+    // the sequence number of the next watched operation. Operations are watched with the lock of the watcher list
+    // held, so the sequence numbers of the operations in the list are increasing
+    @volatile private[this] var nextSequence = 0L
+    // the number of completion checks served by the thread currently traversing the list, 0 if no thread is
+    // traversing it and -1 if the traversing thread no longer accepts checks. Only used if checks are coalesced
+    private[this] val completionChecks = new AtomicInteger(0)
 
     // count the current number of watched operations. This is O(n), so use isEmpty() if possible
     def countWatched: Int = operations.size
 
     def isEmpty: Boolean = operations.isEmpty
 
-    // add the element to watch
+    // add the element to watch, must be called with the lock of the watcher list held
     def watch(t: T): Unit = {
-      operations.add(t)
+      operations.add(new WatchedOperation(t, nextSequence))
+      nextSequence += 1
     }
 
-    // traverse the list and try to complete some watched elements
+    // try to complete some watched elements, or leave it to the thread already traversing the list if completion
+    // checks are coalesced
     def tryCompleteWatched(): Int = {
+      if (!coalesceCompletionChecks)
+        tryCompleteWatchedOnce()
+      else {
+        var completed = -1
+        while (completed < 0) {
+          val checks = completionChecks.get
+          if (checks < 0)
+            completed = tryCompleteWatchedOnce()
+          else if (checks == 0) {
+            if (completionChecks.compareAndSet(0, 1))
+              completed = tryCompleteWatchedCoalesced()
+          } else if (completionChecks.compareAndSet(checks, checks + 1)) {
+            coalescedCompletionChecksMeter.mark()
+            completed = 0
+          }
+        }
+        completed
+      }
+    }
+
+    // traverse the list once more for the checks accepted during every traversal. To not keep the caller traversing
+    // the list of a busy key forever, stop accepting checks after a few traversals and serve the checks accepted so
+    // far with a last traversal, callers traverse the list themselves until it is done
+    private def tryCompleteWatchedCoalesced(): Int = {
+      var completed = 0
+      try {
+        var traversals = 0
+        var checks = 1
+        while (checks > 0 && traversals < DelayedOperationPurgatory.MaxCoalescedTraversals) {
+          completed += tryCompleteWatchedOnce()
+          traversals += 1
+          checks = completionChecks.addAndGet(-checks)
+        }
+        if (checks > 0) {
+          completionChecks.set(-1)
+          completed += tryCompleteWatchedOnce()
+          completionChecks.set(0)
+        }
+      } catch {
+        case e: Throwable =>
+          // let the next check traverse the list instead of being coalesced into this failed traversal
+          completionChecks.set(0)
+          throw e
+      }
+      completed
+    }
+
+    // traverse the list and try to complete some watched elements. Elements watched after the traversal started are
+    // not traversed since they are checked by the thread watching them, so threads watching elements faster than
+    // they are checked cannot keep the traversal going forever
+    private def tryCompleteWatchedOnce(): Int = {
       var completed = 0
 
+      val endSequence = nextSequence
       val iter = operations.iterator()
-      while (iter.hasNext) {
-        val curr = iter.next()
-        if (curr.isCompleted) {
+      var done = false
+      while (!done && iter.hasNext) {
+        val watched = iter.next()
+        val curr = watched.operation
+        if (watched.sequence >= endSequence) {
+          done = true
+        } else if (curr.isCompleted) {
           // another thread has completed this operation, just remove it
           iter.remove()
         } else if (curr.safeTryComplete()) {
@@ -375,7 +453,7 @@ final class DelayedOperationPurgatory[T <: DelayedOperation](purgatoryName: Stri
       val iter = operations.iterator()
       val cancelled = new ListBuffer[T]()
       while (iter.hasNext) {
-        val curr = iter.next()
+        val curr = iter.next().operation
         curr.cancel()
         iter.remove()
         cancelled += curr
@@ -389,7 +467,7 @@ final class DelayedOperationPurgatory[T <: DelayedOperation](purgatoryName: Stri
 
       val iter = operations.iterator()
       while (iter.hasNext) {
-        val curr = iter.next()
+        val curr = iter.next().operation
         if (curr.isCompleted) {
           iter.remove()
           purged += 1
@@ -403,6 +481,8 @@ final class DelayedOperationPurgatory[T <: DelayedOperation](purgatoryName: Stri
     }
   }
 
+  private class WatchedOperation(val operation: T, val sequence: Long)
+
   def advanceClock(timeoutMs: Long): Unit = {
     timeoutTimer.advanceClock(timeoutMs)
 
@@ -835,6 +835,7 @@ object DynamicListenerConfig {
     KafkaConfig.SslSecureRandomImplementationProp,
     KafkaConfig.SslClientAuthProp,
     KafkaConfig.SslEngineFactoryClassProp,
+    KafkaConfig.SslKernelTlsProviderClassProp,
 
     // SASL configs
     KafkaConfig.SaslMechanismInterBrokerProtocolProp,
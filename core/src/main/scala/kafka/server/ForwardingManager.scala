@@ -84,6 +84,10 @@ class ForwardingManagerImpl(
         "since there is no serde defined")
     )
     val serializedPrincipal = principalSerde.serialize(request.context.principal)
+    // The request buffer is sent asynchronously, so it must not be returned to the memory pool once the request
+    // handler is done with the request, but only once the forwarding completes
+    if (!request.retainBuffer())
+      throw new IllegalStateException(s"Cannot forward request $request since its buffer was already released")
     val forwardRequestBuffer = request.buffer.duplicate()
     forwardRequestBuffer.flip()
     val envelopeRequest = new EnvelopeRequest.Builder(
@@ -94,6 +98,7 @@ class ForwardingManagerImpl(
 
     class ForwardingResponseHandler extends ControllerRequestCompletionHandler {
       override def onComplete(clientResponse: ClientResponse): Unit = {
+        request.releaseBufferReference()
         val envelopeResponse = clientResponse.responseBody.asInstanceOf[EnvelopeResponse]
         val envelopeError = envelopeResponse.error()
         val requestBody = request.body[AbstractRequest]
@@ -113,6 +118,7 @@ class ForwardingManagerImpl(
       }
 
       override def onTimeout(): Unit = {
+        request.releaseBufferReference()
         debug(s"Forwarding of the request $request failed due to timeout exception")
         val response = request.body[AbstractRequest].getErrorResponse(new TimeoutException)
         responseCallback(response)
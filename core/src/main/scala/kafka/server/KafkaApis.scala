@@ -119,7 +119,8 @@ class KafkaApis(val requestChannel: RequestChannel,
                 time: Time,
                 val tokenManager: DelegationTokenManager,
                 val brokerFeatures: BrokerFeatures,
-                val finalizedFeatureCache: FinalizedFeatureCache) extends ApiRequestHandler with Logging {
+                val finalizedFeatureCache: FinalizedFeatureCache,
+                val metadataResponseCache: MetadataResponseCache) extends ApiRequestHandler with Logging {
 
   type FetchResponseStats = Map[TopicPartition, RecordConversionStats]
   this.logIdent = "[KafkaApi-%d] ".format(brokerId)
@@ -931,7 +932,10 @@ class KafkaApis(val requestChannel: RequestChannel,
         replicationQuota(fetchRequest),
         processResponseCallback,
         fetchRequest.isolationLevel,
-        clientMetadata)
+        clientMetadata,
+        // the records read from the segments are sent by the kernel from the page cache on zero-copy transports, which
+        // is cheaper than copying them out of the log tail cache
+        readFromTailCache = !KafkaApis.isZeroCopy(request.context.securityProtocol))
     }
   }
 
@@ -1205,6 +1209,32 @@ class KafkaApis(val requestChannel: RequestChannel,
     val metadataRequest = request.body[MetadataRequest]
     val requestVersion = request.header.apiVersion
 
+    // without an authorizer the response only depends on the request and the metadata cache
+    val createResponse =
+      if (authorizer.isEmpty && metadataResponseCache.enabled) {
+        val key = MetadataResponseCache.Key(
+          request.context.listenerName,
+          requestVersion,
+          if (metadataRequest.isAllTopics) None else Some(metadataRequest.topics.asScala.toSet),
+          metadataRequest.allowAutoTopicCreation,
+          metadataRequest.data.includeClusterAuthorizedOperations,
+          metadataRequest.data.includeTopicAuthorizedOperations)
+        metadataResponseCache.getOrBuild(key)(buildTopicMetadataResponse(request, metadataRequest))
+      } else {
+        val responseData = buildTopicMetadataResponse(request, metadataRequest)
+        (requestThrottleMs: Int) => new MetadataResponse(responseData.setThrottleTimeMs(requestThrottleMs), requestVersion)
+      }
+
+    sendResponseMaybeThrottle(request, createResponse)
+  }
+
+  /**
+   * Build the response data of a topic metadata request with a throttle time of zero.
+   */
+  private def buildTopicMetadataResponse(request: RequestChannel.Request,
+                                         metadataRequest: MetadataRequest): MetadataResponseData = {
+    val requestVersion = request.header.apiVersion
+
     val topics = if (metadataRequest.isAllTopics)
       metadataCache.getAllTopics()
     else
@@ -1285,16 +1315,15 @@ class KafkaApis(val requestChannel: RequestChannel,
     trace("Sending topic metadata %s and brokers %s for correlation id %d to client %s".format(completeTopicMetadata.mkString(","),
       brokers.mkString(","), request.header.correlationId, request.header.clientId))
 
-    sendResponseMaybeThrottle(request, requestThrottleMs =>
-       MetadataResponse.prepareResponse(
-         requestVersion,
-         requestThrottleMs,
-         brokers.flatMap(_.getNode(request.context.listenerName)).asJava,
-         clusterId,
-         metadataCache.getControllerId.getOrElse(MetadataResponse.NO_CONTROLLER_ID),
-         completeTopicMetadata.asJava,
-         clusterAuthorizedOperations
-      ))
+    MetadataResponse.prepareResponse(
+      requestVersion,
+      AbstractResponse.DEFAULT_THROTTLE_TIME,
+      brokers.flatMap(_.getNode(request.context.listenerName)).asJava,
+      clusterId,
+      metadataCache.getControllerId.getOrElse(MetadataResponse.NO_CONTROLLER_ID),
+      completeTopicMetadata.asJava,
+      clusterAuthorizedOperations
+    ).data
   }
 
   /**
@@ -3597,4 +3626,9 @@ object KafkaApis {
     FetchResponse.sizeOf(versionId, unconvertedResponse.responseData.entrySet
       .iterator.asScala.filter(element => quota.isThrottled(element.getKey)).asJava)
   }
+
+  // the plaintext transport layer transfers the file records to the socket without copying them, while the SSL
+  // transport layer reads them into memory to encrypt them
+  private[server] def isZeroCopy(securityProtocol: SecurityProtocol): Boolean =
+    securityProtocol == SecurityProtocol.PLAINTEXT || securityProtocol == SecurityProtocol.SASL_PLAINTEXT
 }
@@ -20,12 +20,13 @@ package kafka.server
 import java.util
 import java.util.{Collections, Locale, Properties}
 
-import kafka.api.{ApiVersion, ApiVersionValidator, KAFKA_0_10_0_IV1, KAFKA_2_1_IV0, KAFKA_2_7_IV0}
+import kafka.api.{ApiVersion, ApiVersionValidator, KAFKA_0_10_0_IV1, KAFKA_2_1_IV0, KAFKA_2_7_IV0, KAFKA_2_8_IV2}
 import kafka.cluster.EndPoint
 import kafka.coordinator.group.OffsetConfig
 import kafka.coordinator.transaction.{TransactionLog, TransactionStateManager}
-import kafka.log.LogConfig
+import kafka.log.{AbstractIndex, LogConfig, OffsetMap}
 import kafka.message.{BrokerCompressionCodec, CompressionCodec, ZStdCompressionCodec}
+import kafka.network.RequestQueueClass
 import kafka.security.authorizer.AuthorizerUtils
 import kafka.utils.CoreUtils
 import kafka.utils.Implicits._
@@ -68,6 +69,10 @@ object Defaults {
   val BackgroundThreads = 10
   val QueuedMaxRequests = 500
   val QueuedMaxRequestBytes = -1
+  val RequestSchedulerEnable = false
+  val RequestSchedulerQueueWeights = "data:8,replication:8,coordination:4,admin:1"
+  val RequestSchedulerQueueMaxHandlerThreads = ""
+  val MetadataResponseCacheMaxEntries = 1000
 
   /************* Authorizer Configuration ***********/
   val AuthorizerClassName = ""
@@ -83,6 +88,8 @@ object Defaults {
   val SocketSendBufferBytes: Int = 100 * 1024
   val SocketReceiveBufferBytes: Int = 100 * 1024
   val SocketRequestMaxBytes: Int = 100 * 1024 * 1024
+  val SocketRequestBufferPoolBytes: Long = 0L
+  val SocketRequestBufferPoolDirect = false
   val MaxConnectionsPerIp: Int = Int.MaxValue
   val MaxConnectionsPerIpOverrides: String = ""
   val MaxConnections: Int = Int.MaxValue
@@ -111,6 +118,9 @@ object Defaults {
   val LogCleanerDedupeBufferSize = 128 * 1024 * 1024L
   val LogCleanerIoBufferSize = 512 * 1024
   val LogCleanerDedupeBufferLoadFactor = 0.9d
+  val LogCleanerDedupeBufferType = OffsetMap.HeapType
+  val LogCleanerThreadsPerLog = 1
+  val LogCleanerKeySummaryCacheSize = 32 * 1024 * 1024L
   val LogCleanerBackoffMs = 15 * 1000
   val LogCleanerMinCleanRatio = 0.5d
   val LogCleanerEnable = true
@@ -119,20 +129,31 @@ object Defaults {
   val LogCleanerMaxCompactionLagMs = Long.MaxValue
   val LogIndexSizeMaxBytes = 10 * 1024 * 1024
   val LogIndexIntervalBytes = 4096
+  val LogIndexWarmerEnable = false
+  val LogIndexWarmerIntervalMs = 30 * 1000L
+  val LogIndexWarmerMaxBytesPerSecond = Double.MaxValue
+  val LogIndexWarmSectionBytes = AbstractIndex.DefaultWarmSectionBytes
+  val LogIndexWarmerEntireActiveSegment = false
   val LogFlushIntervalMessages = Long.MaxValue
   val LogDeleteDelayMs = 60000
   val LogFlushSchedulerIntervalMs = Long.MaxValue
   val LogFlushOffsetCheckpointIntervalMs = 60000
   val LogFlushStartOffsetCheckpointIntervalMs = 60000
+  val LogFlushServiceEnable = true
   val LogPreAllocateEnable = false
   // lazy val as `InterBrokerProtocolVersion` is defined later
   lazy val LogMessageFormatVersion = InterBrokerProtocolVersion
   val LogMessageTimestampType = "CreateTime"
   val LogMessageTimestampDifferenceMaxMs = Long.MaxValue
   val NumRecoveryThreadsPerDataDir = 1
+  val NumSegmentRecoveryThreadsPerDataDir = 0
+  val ProducerStateMaxIncrementalSnapshots = 0
+  val LogTailCacheBytes = 0L
+  val LogTailCacheBlockBytes = 1024 * 1024
   val AutoCreateTopicsEnable = true
   val MinInSyncReplicas = 1
   val MessageDownConversionEnable = true
+  val LogZstdDictionaryEnable = false
 
   /** ********* Replication configuration ***********/
   val ControllerSocketTimeoutMs = RequestTimeoutMs
@@ -146,6 +167,8 @@ object Defaults {
   val ReplicaFetchMinBytes = 1
   val ReplicaFetchResponseMaxBytes = 10 * 1024 * 1024
   val NumReplicaFetchers = 1
+  val ReplicaFetchCoalescingEnable = false
+  val ReplicaFetchPipelineDepth = 1
   val ReplicaFetchBackoffMs = 1000
   val ReplicaHighWatermarkCheckpointIntervalMs = 5000L
   val FetchPurgatoryPurgeIntervalRequests = 1000
@@ -349,6 +372,10 @@ object KafkaConfig {
   val NumReplicaAlterLogDirsThreadsProp = "num.replica.alter.log.dirs.threads"
   val QueuedMaxRequestsProp = "queued.max.requests"
   val QueuedMaxBytesProp = "queued.max.request.bytes"
+  val RequestSchedulerEnableProp = "request.scheduler.enable"
+  val RequestSchedulerQueueWeightsProp = "request.scheduler.queue.weights"
+  val RequestSchedulerQueueMaxHandlerThreadsProp = "request.scheduler.queue.max.handler.threads"
+  val MetadataResponseCacheMaxEntriesProp = "metadata.response.cache.max.entries"
   val RequestTimeoutMsProp = CommonClientConfigs.REQUEST_TIMEOUT_MS_CONFIG
   val ConnectionSetupTimeoutMsProp = CommonClientConfigs.SOCKET_CONNECTION_SETUP_TIMEOUT_MS_CONFIG
   val ConnectionSetupTimeoutMaxMsProp = CommonClientConfigs.SOCKET_CONNECTION_SETUP_TIMEOUT_MAX_MS_CONFIG
@@ -368,6 +395,8 @@ object KafkaConfig {
   val SocketSendBufferBytesProp = "socket.send.buffer.bytes"
   val SocketReceiveBufferBytesProp = "socket.receive.buffer.bytes"
   val SocketRequestMaxBytesProp = "socket.request.max.bytes"
+  val SocketRequestBufferPoolBytesProp = "socket.request.buffer.pool.bytes"
+  val SocketRequestBufferPoolDirectProp = "socket.request.buffer.pool.direct"
   val MaxConnectionsPerIpProp = "max.connections.per.ip"
   val MaxConnectionsPerIpOverridesProp = "max.connections.per.ip.overrides"
   val MaxConnectionsProp = "max.connections"
@@ -400,6 +429,9 @@ object KafkaConfig {
   val LogCleanerDedupeBufferSizeProp = "log.cleaner.dedupe.buffer.size"
   val LogCleanerIoBufferSizeProp = "log.cleaner.io.buffer.size"
   val LogCleanerDedupeBufferLoadFactorProp = "log.cleaner.io.buffer.load.factor"
+  val LogCleanerDedupeBufferTypeProp = "log.cleaner.dedupe.buffer.type"
+  val LogCleanerThreadsPerLogProp = "log.cleaner.threads.per.log"
+  val LogCleanerKeySummaryCacheSizeProp = "log.cleaner.key.summary.cache.size"
   val LogCleanerBackoffMsProp = "log.cleaner.backoff.ms"
   val LogCleanerMinCleanRatioProp = "log.cleaner.min.cleanable.ratio"
   val LogCleanerEnableProp = "log.cleaner.enable"
@@ -408,23 +440,34 @@ object KafkaConfig {
   val LogCleanerMaxCompactionLagMsProp = "log.cleaner.max.compaction.lag.ms"
   val LogIndexSizeMaxBytesProp = "log.index.size.max.bytes"
   val LogIndexIntervalBytesProp = "log.index.interval.bytes"
+  val LogIndexWarmerEnableProp = "log.index.warmer.enable"
+  val LogIndexWarmerIntervalMsProp = "log.index.warmer.interval.ms"
+  val LogIndexWarmerMaxBytesPerSecondProp = "log.index.warmer.max.bytes.per.second"
+  val LogIndexWarmSectionBytesProp = "log.index.warm.section.bytes"
+  val LogIndexWarmerEntireActiveSegmentProp = "log.index.warmer.entire.active.segment"
   val LogFlushIntervalMessagesProp = "log.flush.interval.messages"
   val LogDeleteDelayMsProp = "log.segment.delete.delay.ms"
   val LogFlushSchedulerIntervalMsProp = "log.flush.scheduler.interval.ms"
   val LogFlushIntervalMsProp = "log.flush.interval.ms"
   val LogFlushOffsetCheckpointIntervalMsProp = "log.flush.offset.checkpoint.interval.ms"
   val LogFlushStartOffsetCheckpointIntervalMsProp = "log.flush.start.offset.checkpoint.interval.ms"
+  val LogFlushServiceEnableProp = "log.flush.service.enable"
   val LogPreAllocateProp = "log.preallocate"
   val LogMessageFormatVersionProp = LogConfigPrefix + "message.format.version"
   val LogMessageTimestampTypeProp = LogConfigPrefix + "message.timestamp.type"
   val LogMessageTimestampDifferenceMaxMsProp = LogConfigPrefix + "message.timestamp.difference.max.ms"
   val LogMaxIdMapSnapshotsProp = LogConfigPrefix + "max.id.map.snapshots"
   val NumRecoveryThreadsPerDataDirProp = "num.recovery.threads.per.data.dir"
+  val NumSegmentRecoveryThreadsPerDataDirProp = "num.segment.recovery.threads.per.data.dir"
+  val ProducerStateMaxIncrementalSnapshotsProp = "producer.state.max.incremental.snapshots"
+  val LogTailCacheBytesProp = "log.tail.cache.bytes"
+  val LogTailCacheBlockBytesProp = "log.tail.cache.block.bytes"
   val AutoCreateTopicsEnableProp = "auto.create.topics.enable"
   val MinInSyncReplicasProp = "min.insync.replicas"
   val CreateTopicPolicyClassNameProp = "create.topic.policy.class.name"
   val AlterConfigPolicyClassNameProp = "alter.config.policy.class.name"
   val LogMessageDownConversionEnableProp = LogConfigPrefix + "message.downconversion.enable"
+  val LogZstdDictionaryEnableProp = LogConfigPrefix + "zstd.dictionary.enable"
   /** ********* Replication configuration ***********/
   val ControllerSocketTimeoutMsProp = "controller.socket.timeout.ms"
   val DefaultReplicationFactorProp = "default.replication.factor"
@@ -437,6 +480,8 @@ object KafkaConfig {
   val ReplicaFetchResponseMaxBytesProp = "replica.fetch.response.max.bytes"
   val ReplicaFetchBackoffMsProp = "replica.fetch.backoff.ms"
   val NumReplicaFetchersProp = "num.replica.fetchers"
+  val ReplicaFetchCoalescingEnableProp = "replica.fetch.coalescing.enable"
+  val ReplicaFetchPipelineDepthProp = "replica.fetch.pipeline.depth"
   val ReplicaHighWatermarkCheckpointIntervalMsProp = "replica.high.watermark.checkpoint.interval.ms"
   val FetchPurgatoryPurgeIntervalRequestsProp = "fetch.purgatory.purge.interval.requests"
   val ProducerPurgatoryPurgeIntervalRequestsProp = "producer.purgatory.purge.interval.requests"
@@ -499,6 +544,7 @@ object KafkaConfig {
 
   val DeleteTopicEnableProp = "delete.topic.enable"
   val CompressionTypeProp = "compression.type"
+  val ZstdDictionaryFilesProp = "zstd.dictionary.files"
 
   /** ********* Kafka Metrics Configuration ***********/
   val MetricSampleWindowMsProp = CommonClientConfigs.METRICS_SAMPLE_WINDOW_MS_CONFIG
@@ -537,6 +583,7 @@ object KafkaConfig {
   val SslClientAuthProp = BrokerSecurityConfigs.SSL_CLIENT_AUTH_CONFIG
   val SslPrincipalMappingRulesProp = BrokerSecurityConfigs.SSL_PRINCIPAL_MAPPING_RULES_CONFIG
   var SslEngineFactoryClassProp = SslConfigs.SSL_ENGINE_FACTORY_CLASS_CONFIG
+  val SslKernelTlsProviderClassProp = SslConfigs.SSL_KERNEL_TLS_PROVIDER_CLASS_CONFIG
 
   /** ********* SASL Configuration ****************/
   val SaslMechanismInterBrokerProtocolProp = "sasl.mechanism.inter.broker.protocol"
@@ -633,6 +680,21 @@ object KafkaConfig {
   val BackgroundThreadsDoc = "The number of threads to use for various background processing tasks"
   val QueuedMaxRequestsDoc = "The number of queued requests allowed for data-plane, before blocking the network threads"
   val QueuedMaxRequestBytesDoc = "The number of queued bytes allowed before no more requests are read"
+  val RequestSchedulerEnableDoc = "Whether data-plane requests are queued by class instead of in a single queue, so that a burst of " +
+    "requests of a class does not delay the requests of the other classes. The classes are <code>data</code> (produce, " +
+    "consumer fetch, metadata and list offsets requests), <code>replication</code> (follower fetch requests and the other " +
+    "requests only sent by brokers), <code>coordination</code> (group and transaction coordinator requests) and " +
+    s"<code>admin</code> (any other request). Each class may queue up to $QueuedMaxRequestsProp requests."
+  val RequestSchedulerQueueWeightsDoc = "A comma-separated list of request class and weight pairs, e.g. <code>data:8,admin:1</code>. " +
+    "While several classes have requests waiting, the request handler threads dequeue the requests of each class in " +
+    s"proportion to its weight. Classes that are not listed have a weight of 1. Only used if $RequestSchedulerEnableProp is true."
+  val RequestSchedulerQueueMaxHandlerThreadsDoc = "A comma-separated list of request class and thread count pairs, e.g. " +
+    "<code>admin:2</code>, limiting the number of request handler threads handling the requests of a class at the same " +
+    s"time. Classes that are not listed may use all the threads. Only used if $RequestSchedulerEnableProp is true."
+  val MetadataResponseCacheMaxEntriesDoc = "The maximum number of serialized metadata responses the broker keeps to answer " +
+    "identical metadata requests without building and encoding the response again. The cached responses are dropped " +
+    "whenever the broker receives a metadata update. Responses are only cached if no authorizer is configured, " +
+    "a value of 0 disables the cache."
   val RequestTimeoutMsDoc = CommonClientConfigs.REQUEST_TIMEOUT_MS_DOC
   val ConnectionSetupTimeoutMsDoc = CommonClientConfigs.SOCKET_CONNECTION_SETUP_TIMEOUT_MS_DOC
   val ConnectionSetupTimeoutMaxMsDoc = CommonClientConfigs.SOCKET_CONNECTION_SETUP_TIMEOUT_MAX_MS_DOC
@@ -702,6 +764,11 @@ object KafkaConfig {
   val SocketSendBufferBytesDoc = "The SO_SNDBUF buffer of the socket server sockets. If the value is -1, the OS default will be used."
   val SocketReceiveBufferBytesDoc = "The SO_RCVBUF buffer of the socket server sockets. If the value is -1, the OS default will be used."
   val SocketRequestMaxBytesDoc = "The maximum number of bytes in a socket request"
+  val SocketRequestBufferPoolBytesDoc = "The maximum number of bytes of request buffers kept for reuse once the requests were processed. " +
+    "Request buffers are allocated in size classes and recycled to avoid allocating a new buffer for every request received, " +
+    "requests smaller than 1 KB or larger than 16 MB are not pooled. If the value is 0, request buffers are not recycled."
+  val SocketRequestBufferPoolDirectDoc = s"Whether the request buffers recycled when $SocketRequestBufferPoolBytesProp is positive are " +
+    "allocated in direct memory instead of the heap."
   val MaxConnectionsPerIpDoc = "The maximum number of connections we allow from each ip address. This can be set to 0 if there are overrides " +
     s"configured using $MaxConnectionsPerIpOverridesProp property. New connections from the ip address are dropped if the limit is reached."
   val MaxConnectionsPerIpOverridesDoc = "A comma-separated list of per-ip or hostname overrides to the default maximum number of connections. " +
@@ -746,6 +813,17 @@ object KafkaConfig {
   val LogCleanerIoBufferSizeDoc = "The total memory used for log cleaner I/O buffers across all cleaner threads"
   val LogCleanerDedupeBufferLoadFactorDoc = "Log cleaner dedupe buffer load factor. The percentage full the dedupe buffer can become. A higher value " +
   "will allow more log to be cleaned at once but will lead to more hash collisions"
+  val LogCleanerDedupeBufferTypeDoc = "The type of map used by each cleaner thread for log deduplication. \"" + OffsetMap.HeapType + "\" keeps " +
+  "an MD5 digest of each key in a heap buffer, which can use at most 2G per cleaner thread. \"" + OffsetMap.OffHeapType + "\" keeps a 128-bit " +
+  "MurmurHash3 of each key in direct memory, which is cheaper to compute and allows more than 2G per cleaner thread. The JVM's maximum " +
+  "direct memory size must be large enough to hold " + LogCleanerDedupeBufferSizeProp + " when the latter is used."
+  val LogCleanerThreadsPerLogDoc = "The number of threads each cleaner thread uses to clean a single log. The dirty segments of the log " +
+  "are read in parallel to build the offset map, and the groups of segments the log is rewritten into are cleaned in parallel. " +
+  "Each of these threads has its own I/O buffers of the size of the buffers of the cleaner thread."
+  val LogCleanerKeySummaryCacheSizeDoc = "The total memory used for the key summaries of the segments written by the log cleaner. " +
+  "The summary of a segment holds a 4-byte fingerprint of the key of each record, which lets the next cleanings of the log retain " +
+  "the batches of the segment none of whose keys were updated without decompressing them. When enabled, each cleaner thread also " +
+  "keeps a filter of the keys of its dedupe buffer, of about 2 bytes per entry of the buffer. Set to 0 to disable the summaries."
   val LogCleanerBackoffMsDoc = "The amount of time to sleep when there are no logs to clean"
   val LogCleanerMinCleanRatioDoc = "The minimum ratio of dirty log to total log for a log to eligible for cleaning. " +
     "If the " + LogCleanerMaxCompactionLagMsProp + " or the " + LogCleanerMinCompactionLagMsProp +
@@ -759,12 +837,29 @@ object KafkaConfig {
   val LogCleanerMaxCompactionLagMsDoc = "The maximum time a message will remain ineligible for compaction in the log. Only applicable for logs that are being compacted."
   val LogIndexSizeMaxBytesDoc = "The maximum size in bytes of the offset index"
   val LogIndexIntervalBytesDoc = "The interval with which we add an entry to the offset index"
+  val LogIndexWarmerEnableDoc = "Enable the index warmer, a background thread which periodically touches the warm section of the " +
+    "offset and time indexes of the active segment of every partition so that index lookups on partitions with little traffic do not " +
+    "stall on page faults"
+  val LogIndexWarmerIntervalMsDoc = "The amount of time the index warmer waits between two passes over all the partitions"
+  val LogIndexWarmerMaxBytesPerSecondDoc = "The index warmer will be throttled so that the number of index bytes it touches is less " +
+    "than this value per second on average"
+  val LogIndexWarmSectionBytesDoc = "The size in bytes of the section at the end of each index which lookups search first. Since only " +
+    "the index warmer keeps this section in the page cache, this value is only used when " + LogIndexWarmerEnableProp + " is true, " +
+    "otherwise the section is " + Defaults.LogIndexWarmSectionBytes + " bytes"
+  val LogIndexWarmerEntireActiveSegmentDoc = "If true, the index warmer touches the whole offset and time index of the active segment " +
+    "of every partition instead of only their warm section"
   val LogFlushIntervalMessagesDoc = "The number of messages accumulated on a log partition before messages are flushed to disk "
   val LogDeleteDelayMsDoc = "The amount of time to wait before deleting a file from the filesystem"
   val LogFlushSchedulerIntervalMsDoc = "The frequency in ms that the log flusher checks whether any log needs to be flushed to disk"
   val LogFlushIntervalMsDoc = "The maximum time in ms that a message in any topic is kept in memory before flushed to disk. If not set, the value in " + LogFlushSchedulerIntervalMsProp + " is used"
   val LogFlushOffsetCheckpointIntervalMsDoc = "The frequency with which we update the persistent record of the last flush which acts as the log recovery point"
   val LogFlushStartOffsetCheckpointIntervalMsDoc = "The frequency with which we update the persistent record of log start offset"
+  val LogFlushServiceEnableDoc = "Enable a flush thread per log directory which flushes the logs of the directory in batches, so that " +
+    "the flushes requested concurrently for several partitions are done together. Produce requests triggering a flush of a log with " +
+    s"${LogFlushIntervalMessagesProp} are answered once the batch with the flush of the log is complete, instead of flushing the log " +
+    "in the request handler thread, and the replica fetchers send their next fetch of the partitions once the flushes of the " +
+    "logs requested by a fetch response are complete. The records of a leader may be read by consumers before its flush is complete, as " +
+    "when the request handler thread flushes the log. The periodic flushes and the flushes of rolled segments also go through the flush thread."
   val LogPreAllocateEnableDoc = "Should pre allocate file when create new segment? If you are using Kafka on Windows, you probably need to set it to true."
   val LogMessageFormatVersionDoc = "Specify the message format version the broker will use to append messages to the logs. The value should be a valid ApiVersion. " +
     "Some examples are: 0.8.2, 0.9.0.0, 0.10.0, check ApiVersion for more details. By setting a particular message format version, the " +
@@ -779,6 +874,22 @@ object KafkaConfig {
     "if the difference in timestamp exceeds this threshold. This configuration is ignored if log.message.timestamp.type=LogAppendTime." +
     "The maximum timestamp difference allowed should be no greater than log.retention.ms to avoid unnecessarily frequent log rolling."
   val NumRecoveryThreadsPerDataDirDoc = "The number of threads per data directory to be used for log recovery at startup and flushing at shutdown"
+  val NumSegmentRecoveryThreadsPerDataDirDoc = "The number of threads per data directory to be used for rebuilding the indexes " +
+    "of the unflushed segments of a log during recovery after an unclean shutdown, while the thread recovering the log rebuilds " +
+    "the producer state segment by segment. With 0, the segments of a log are recovered one after the other by the thread " +
+    s"recovering the log. This speeds up the recovery of logs with many unflushed segments and is in addition to $NumRecoveryThreadsPerDataDirProp."
+  val ProducerStateMaxIncrementalSnapshotsDoc = "The maximum number of consecutive producer state snapshots of a log which are " +
+    "incremental, i.e. which only have the producers updated or removed since the previous snapshot. Incremental snapshots are " +
+    "also taken periodically between the snapshots taken when the log rolls, which shortens the part of the log replayed to rebuild " +
+    "the producer state when the log is loaded. With 0, every snapshot has the state of all the producers of the log. " +
+    s"Setting this above 0 requires $InterBrokerProtocolVersionProp ${KAFKA_2_8_IV2.version} or higher, since the brokers of previous " +
+    "versions cannot read incremental snapshots."
+  val LogTailCacheBytesDoc = "The maximum number of bytes of off-heap memory used to cache the records most recently appended to the " +
+    "active segment of the logs. Followers and consumers reading the cached records are served from memory instead of from the " +
+    "segment. The least recently read records are evicted across all the logs when the cache is full. Fetches over PLAINTEXT and " +
+    "SASL_PLAINTEXT listeners are always served from the segment, whose records are sent without copying them. With 0, the cache is disabled."
+  val LogTailCacheBlockBytesDoc = s"The size of the blocks of memory of the log tail cache, which are the unit of eviction. Reads from " +
+    s"the cache return records up to the end of a block, and appends larger than a block are not cached. The block size is at most $LogTailCacheBytesProp."
   val AutoCreateTopicsEnableDoc = "Enable auto creation of topic on the server"
   val MinInSyncReplicasDoc = "When a producer sets acks to \"all\" (or \"-1\"), " +
     "min.insync.replicas specifies the minimum number of replicas that must acknowledge " +
@@ -795,6 +906,7 @@ object KafkaConfig {
   val AlterConfigPolicyClassNameDoc = "The alter configs policy class that should be used for validation. The class should " +
     "implement the <code>org.apache.kafka.server.policy.AlterConfigPolicy</code> interface."
   val LogMessageDownConversionEnableDoc = TopicConfig.MESSAGE_DOWNCONVERSION_ENABLE_DOC;
+  val LogZstdDictionaryEnableDoc = TopicConfig.ZSTD_DICTIONARY_ENABLE_DOC
 
   /** ********* Replication configuration ***********/
   val ControllerSocketTimeoutMsDoc = "The socket timeout for controller-to-broker channels"
@@ -818,6 +930,14 @@ object KafkaConfig {
     "<code>max.message.bytes</code> (topic config)."
   val NumReplicaFetchersDoc = "Number of fetcher threads used to replicate messages from a source broker. " +
   "Increasing this value can increase the degree of I/O parallelism in the follower broker."
+  val ReplicaFetchCoalescingEnableDoc = "Fetch the partitions replicated from a source broker with a single fetcher thread, " +
+    s"connection and fetch session instead of <code>$NumReplicaFetchersProp</code> of them. The data of the partitions of " +
+    s"the fetch responses is then appended by a pool of <code>$NumReplicaFetchersProp</code> threads shared by the fetcher threads."
+  val ReplicaFetchPipelineDepthDoc = "The maximum number of fetch requests a replica fetcher thread keeps in flight to the source " +
+    "broker. The partitions of the fetcher thread are spread over that many fetch sessions, each with at most one fetch in flight, " +
+    "so that the data of a partition is still fetched and appended in order. Increasing this value can increase the replication " +
+    s"throughput of followers on high latency links, at the cost of up to that many responses of <code>$ReplicaFetchResponseMaxBytesProp</code> " +
+    "being received at the same time."
   val ReplicaFetchBackoffMsDoc = "The amount of time to sleep when fetch partition error occurs."
   val ReplicaHighWatermarkCheckpointIntervalMsDoc = "The frequency with which the high watermark is saved out to disk"
   val FetchPurgatoryPurgeIntervalRequestsDoc = "The purge interval (in number of requests) of the fetch request purgatory"
@@ -901,6 +1021,12 @@ object KafkaConfig {
   val CompressionTypeDoc = "Specify the final compression type for a given topic. This configuration accepts the standard compression codecs " +
   "('gzip', 'snappy', 'lz4', 'zstd'). It additionally accepts 'uncompressed' which is equivalent to no compression; and " +
   "'producer' which means retain the original compression codec set by the producer."
+  val ZstdDictionaryFilesDoc = "A list of the files of the zstd dictionaries the records produced to the broker may be compressed with, " +
+  "as configured by the producers with compression.zstd.dictionaries. The records are decompressed with the dictionary referenced by its " +
+  "id in their batches to validate them and to clean them, so that the dictionaries must be loaded before the producers " +
+  "compress records with them and as long as the logs hold records compressed with them. The records compressed with a dictionary " +
+  "are only accepted by the topics enabling them with zstd.dictionary.enable, and are rejected with UNSUPPORTED_COMPRESSION_TYPE " +
+  "if the dictionary is not loaded. The records are recompressed without dictionary when the compression type of the topic differs."
 
   /** ********* Kafka Metrics Configuration ***********/
   val MetricSampleWindowMsDoc = CommonClientConfigs.METRICS_SAMPLE_WINDOW_MS_DOC
@@ -946,6 +1072,7 @@ object KafkaConfig {
   val SslClientAuthDoc = BrokerSecurityConfigs.SSL_CLIENT_AUTH_DOC
   val SslPrincipalMappingRulesDoc = BrokerSecurityConfigs.SSL_PRINCIPAL_MAPPING_RULES_DOC
   val SslEngineFactoryClassDoc = SslConfigs.SSL_ENGINE_FACTORY_CLASS_DOC
+  val SslKernelTlsProviderClassDoc = SslConfigs.SSL_KERNEL_TLS_PROVIDER_CLASS_DOC
 
   /** ********* Sasl Configuration ****************/
   val SaslMechanismInterBrokerProtocolDoc = "SASL mechanism used for inter-broker communication. Default is GSSAPI."
@@ -1026,6 +1153,10 @@ object KafkaConfig {
       .define(BackgroundThreadsProp, INT, Defaults.BackgroundThreads, atLeast(1), HIGH, BackgroundThreadsDoc)
       .define(QueuedMaxRequestsProp, INT, Defaults.QueuedMaxRequests, atLeast(1), HIGH, QueuedMaxRequestsDoc)
       .define(QueuedMaxBytesProp, LONG, Defaults.QueuedMaxRequestBytes, MEDIUM, QueuedMaxRequestBytesDoc)
+      .define(RequestSchedulerEnableProp, BOOLEAN, Defaults.RequestSchedulerEnable, LOW, RequestSchedulerEnableDoc)
+      .define(RequestSchedulerQueueWeightsProp, STRING, Defaults.RequestSchedulerQueueWeights, LOW, RequestSchedulerQueueWeightsDoc)
+      .define(RequestSchedulerQueueMaxHandlerThreadsProp, STRING, Defaults.RequestSchedulerQueueMaxHandlerThreads, LOW, RequestSchedulerQueueMaxHandlerThreadsDoc)
+      .define(MetadataResponseCacheMaxEntriesProp, INT, Defaults.MetadataResponseCacheMaxEntries, atLeast(0), LOW, MetadataResponseCacheMaxEntriesDoc)
       .define(RequestTimeoutMsProp, INT, Defaults.RequestTimeoutMs, HIGH, RequestTimeoutMsDoc)
       .define(ConnectionSetupTimeoutMsProp, LONG, Defaults.ConnectionSetupTimeoutMs, MEDIUM, ConnectionSetupTimeoutMsDoc)
       .define(ConnectionSetupTimeoutMaxMsProp, LONG, Defaults.ConnectionSetupTimeoutMaxMs, MEDIUM, ConnectionSetupTimeoutMaxMsDoc)
@@ -1048,6 +1179,8 @@ object KafkaConfig {
       .define(SocketSendBufferBytesProp, INT, Defaults.SocketSendBufferBytes, HIGH, SocketSendBufferBytesDoc)
       .define(SocketReceiveBufferBytesProp, INT, Defaults.SocketReceiveBufferBytes, HIGH, SocketReceiveBufferBytesDoc)
       .define(SocketRequestMaxBytesProp, INT, Defaults.SocketRequestMaxBytes, atLeast(1), HIGH, SocketRequestMaxBytesDoc)
+      .define(SocketRequestBufferPoolBytesProp, LONG, Defaults.SocketRequestBufferPoolBytes, atLeast(0), LOW, SocketRequestBufferPoolBytesDoc)
+      .define(SocketRequestBufferPoolDirectProp, BOOLEAN, Defaults.SocketRequestBufferPoolDirect, LOW, SocketRequestBufferPoolDirectDoc)
       .define(MaxConnectionsPerIpProp, INT, Defaults.MaxConnectionsPerIp, atLeast(0), MEDIUM, MaxConnectionsPerIpDoc)
       .define(MaxConnectionsPerIpOverridesProp, STRING, Defaults.MaxConnectionsPerIpOverrides, MEDIUM, MaxConnectionsPerIpOverridesDoc)
       .define(MaxConnectionsProp, INT, Defaults.MaxConnections, atLeast(0), MEDIUM, MaxConnectionsDoc)
@@ -1082,6 +1215,9 @@ object KafkaConfig {
       .define(LogCleanerDedupeBufferSizeProp, LONG, Defaults.LogCleanerDedupeBufferSize, MEDIUM, LogCleanerDedupeBufferSizeDoc)
       .define(LogCleanerIoBufferSizeProp, INT, Defaults.LogCleanerIoBufferSize, atLeast(0), MEDIUM, LogCleanerIoBufferSizeDoc)
       .define(LogCleanerDedupeBufferLoadFactorProp, DOUBLE, Defaults.LogCleanerDedupeBufferLoadFactor, MEDIUM, LogCleanerDedupeBufferLoadFactorDoc)
+      .define(LogCleanerDedupeBufferTypeProp, STRING, Defaults.LogCleanerDedupeBufferType, in(OffsetMap.Types:_*), LOW, LogCleanerDedupeBufferTypeDoc)
+      .define(LogCleanerThreadsPerLogProp, INT, Defaults.LogCleanerThreadsPerLog, atLeast(1), MEDIUM, LogCleanerThreadsPerLogDoc)
+      .define(LogCleanerKeySummaryCacheSizeProp, LONG, Defaults.LogCleanerKeySummaryCacheSize, atLeast(0), MEDIUM, LogCleanerKeySummaryCacheSizeDoc)
       .define(LogCleanerBackoffMsProp, LONG, Defaults.LogCleanerBackoffMs, atLeast(0), MEDIUM, LogCleanerBackoffMsDoc)
       .define(LogCleanerMinCleanRatioProp, DOUBLE, Defaults.LogCleanerMinCleanRatio, MEDIUM, LogCleanerMinCleanRatioDoc)
       .define(LogCleanerEnableProp, BOOLEAN, Defaults.LogCleanerEnable, MEDIUM, LogCleanerEnableDoc)
@@ -1090,14 +1226,24 @@ object KafkaConfig {
       .define(LogCleanerMaxCompactionLagMsProp, LONG, Defaults.LogCleanerMaxCompactionLagMs, MEDIUM, LogCleanerMaxCompactionLagMsDoc)
       .define(LogIndexSizeMaxBytesProp, INT, Defaults.LogIndexSizeMaxBytes, atLeast(4), MEDIUM, LogIndexSizeMaxBytesDoc)
       .define(LogIndexIntervalBytesProp, INT, Defaults.LogIndexIntervalBytes, atLeast(0), MEDIUM, LogIndexIntervalBytesDoc)
+      .define(LogIndexWarmerEnableProp, BOOLEAN, Defaults.LogIndexWarmerEnable, LOW, LogIndexWarmerEnableDoc)
+      .define(LogIndexWarmerIntervalMsProp, LONG, Defaults.LogIndexWarmerIntervalMs, atLeast(1), LOW, LogIndexWarmerIntervalMsDoc)
+      .define(LogIndexWarmerMaxBytesPerSecondProp, DOUBLE, Defaults.LogIndexWarmerMaxBytesPerSecond, LOW, LogIndexWarmerMaxBytesPerSecondDoc)
+      .define(LogIndexWarmSectionBytesProp, INT, Defaults.LogIndexWarmSectionBytes, atLeast(0), LOW, LogIndexWarmSectionBytesDoc)
+      .define(LogIndexWarmerEntireActiveSegmentProp, BOOLEAN, Defaults.LogIndexWarmerEntireActiveSegment, LOW, LogIndexWarmerEntireActiveSegmentDoc)
       .define(LogFlushIntervalMessagesProp, LONG, Defaults.LogFlushIntervalMessages, atLeast(1), HIGH, LogFlushIntervalMessagesDoc)
       .define(LogDeleteDelayMsProp, LONG, Defaults.LogDeleteDelayMs, atLeast(0), HIGH, LogDeleteDelayMsDoc)
       .define(LogFlushSchedulerIntervalMsProp, LONG, Defaults.LogFlushSchedulerIntervalMs, HIGH, LogFlushSchedulerIntervalMsDoc)
       .define(LogFlushIntervalMsProp, LONG, null, HIGH, LogFlushIntervalMsDoc)
       .define(LogFlushOffsetCheckpointIntervalMsProp, INT, Defaults.LogFlushOffsetCheckpointIntervalMs, atLeast(0), HIGH, LogFlushOffsetCheckpointIntervalMsDoc)
       .define(LogFlushStartOffsetCheckpointIntervalMsProp, INT, Defaults.LogFlushStartOffsetCheckpointIntervalMs, atLeast(0), HIGH, LogFlushStartOffsetCheckpointIntervalMsDoc)
+      .define(LogFlushServiceEnableProp, BOOLEAN, Defaults.LogFlushServiceEnable, MEDIUM, LogFlushServiceEnableDoc)
       .define(LogPreAllocateProp, BOOLEAN, Defaults.LogPreAllocateEnable, MEDIUM, LogPreAllocateEnableDoc)
       .define(NumRecoveryThreadsPerDataDirProp, INT, Defaults.NumRecoveryThreadsPerDataDir, atLeast(1), HIGH, NumRecoveryThreadsPerDataDirDoc)
+      .define(NumSegmentRecoveryThreadsPerDataDirProp, INT, Defaults.NumSegmentRecoveryThreadsPerDataDir, atLeast(0), MEDIUM, NumSegmentRecoveryThreadsPerDataDirDoc)
+      .define(ProducerStateMaxIncrementalSnapshotsProp, INT, Defaults.ProducerStateMaxIncrementalSnapshots, atLeast(0), LOW, ProducerStateMaxIncrementalSnapshotsDoc)
+      .define(LogTailCacheBytesProp, LONG, Defaults.LogTailCacheBytes, atLeast(0), MEDIUM, LogTailCacheBytesDoc)
+      .define(LogTailCacheBlockBytesProp, INT, Defaults.LogTailCacheBlockBytes, atLeast(1024), LOW, LogTailCacheBlockBytesDoc)
       .define(AutoCreateTopicsEnableProp, BOOLEAN, Defaults.AutoCreateTopicsEnable, HIGH, AutoCreateTopicsEnableDoc)
       .define(MinInSyncReplicasProp, INT, Defaults.MinInSyncReplicas, atLeast(1), HIGH, MinInSyncReplicasDoc)
       .define(LogMessageFormatVersionProp, STRING, Defaults.LogMessageFormatVersion, ApiVersionValidator, MEDIUM, LogMessageFormatVersionDoc)
@@ -1106,6 +1252,7 @@ object KafkaConfig {
       .define(CreateTopicPolicyClassNameProp, CLASS, null, LOW, CreateTopicPolicyClassNameDoc)
       .define(AlterConfigPolicyClassNameProp, CLASS, null, LOW, AlterConfigPolicyClassNameDoc)
       .define(LogMessageDownConversionEnableProp, BOOLEAN, Defaults.MessageDownConversionEnable, LOW, LogMessageDownConversionEnableDoc)
+      .define(LogZstdDictionaryEnableProp, BOOLEAN, Defaults.LogZstdDictionaryEnable, LOW, LogZstdDictionaryEnableDoc)
 
       /** ********* Replication configuration ***********/
       .define(ControllerSocketTimeoutMsProp, INT, Defaults.ControllerSocketTimeoutMs, MEDIUM, ControllerSocketTimeoutMsDoc)
@@ -1119,6 +1266,8 @@ object KafkaConfig {
       .define(ReplicaFetchMinBytesProp, INT, Defaults.ReplicaFetchMinBytes, HIGH, ReplicaFetchMinBytesDoc)
       .define(ReplicaFetchResponseMaxBytesProp, INT, Defaults.ReplicaFetchResponseMaxBytes, atLeast(0), MEDIUM, ReplicaFetchResponseMaxBytesDoc)
       .define(NumReplicaFetchersProp, INT, Defaults.NumReplicaFetchers, HIGH, NumReplicaFetchersDoc)
+      .define(ReplicaFetchCoalescingEnableProp, BOOLEAN, Defaults.ReplicaFetchCoalescingEnable, MEDIUM, ReplicaFetchCoalescingEnableDoc)
+      .define(ReplicaFetchPipelineDepthProp, INT, Defaults.ReplicaFetchPipelineDepth, atLeast(1), MEDIUM, ReplicaFetchPipelineDepthDoc)
       .define(ReplicaHighWatermarkCheckpointIntervalMsProp, LONG, Defaults.ReplicaHighWatermarkCheckpointIntervalMs, HIGH, ReplicaHighWatermarkCheckpointIntervalMsDoc)
       .define(FetchPurgatoryPurgeIntervalRequestsProp, INT, Defaults.FetchPurgatoryPurgeIntervalRequests, MEDIUM, FetchPurgatoryPurgeIntervalRequestsDoc)
       .define(ProducerPurgatoryPurgeIntervalRequestsProp, INT, Defaults.ProducerPurgatoryPurgeIntervalRequests, MEDIUM, ProducerPurgatoryPurgeIntervalRequestsDoc)
@@ -1156,6 +1305,7 @@ object KafkaConfig {
       .define(OffsetCommitRequiredAcksProp, SHORT, Defaults.OffsetCommitRequiredAcks, HIGH, OffsetCommitRequiredAcksDoc)
       .define(DeleteTopicEnableProp, BOOLEAN, Defaults.DeleteTopicEnable, HIGH, DeleteTopicEnableDoc)
       .define(CompressionTypeProp, STRING, Defaults.CompressionType, HIGH, CompressionTypeDoc)
+      .define(ZstdDictionaryFilesProp, LIST, Collections.emptyList(), LOW, ZstdDictionaryFilesDoc)
 
       /** ********* Transaction management configuration ***********/
       .define(TransactionalIdExpirationMsProp, INT, Defaults.TransactionalIdExpirationMs, atLeast(1), HIGH, TransactionalIdExpirationMsDoc)
@@ -1222,6 +1372,7 @@ object KafkaConfig {
       .define(SslCipherSuitesProp, LIST, Collections.emptyList(), MEDIUM, SslCipherSuitesDoc)
       .define(SslPrincipalMappingRulesProp, STRING, Defaults.SslPrincipalMappingRules, LOW, SslPrincipalMappingRulesDoc)
       .define(SslEngineFactoryClassProp, CLASS, null, LOW, SslEngineFactoryClassDoc)
+      .define(SslKernelTlsProviderClassProp, CLASS, null, LOW, SslKernelTlsProviderClassDoc)
 
       /** ********* Sasl Configuration ****************/
       .define(SaslMechanismInterBrokerProtocolProp, STRING, Defaults.SaslMechanismInterBrokerProtocol, MEDIUM, SaslMechanismInterBrokerProtocolDoc)
@@ -1458,6 +1609,10 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
   def backgroundThreads = getInt(KafkaConfig.BackgroundThreadsProp)
   val queuedMaxRequests = getInt(KafkaConfig.QueuedMaxRequestsProp)
   val queuedMaxBytes = getLong(KafkaConfig.QueuedMaxBytesProp)
+  val requestSchedulerEnable = getBoolean(KafkaConfig.RequestSchedulerEnableProp)
+  val requestSchedulerQueueWeights = getRequestQueueClassMap(KafkaConfig.RequestSchedulerQueueWeightsProp)
+  val requestSchedulerQueueMaxHandlerThreads = getRequestQueueClassMap(KafkaConfig.RequestSchedulerQueueMaxHandlerThreadsProp)
+  val metadataResponseCacheMaxEntries = getInt(KafkaConfig.MetadataResponseCacheMaxEntriesProp)
   def numIoThreads = getInt(KafkaConfig.NumIoThreadsProp)
   def messageMaxBytes = getInt(KafkaConfig.MessageMaxBytesProp)
   val requestTimeoutMs = getInt(KafkaConfig.RequestTimeoutMsProp)
@@ -1488,6 +1643,8 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
   val socketSendBufferBytes = getInt(KafkaConfig.SocketSendBufferBytesProp)
   val socketReceiveBufferBytes = getInt(KafkaConfig.SocketReceiveBufferBytesProp)
   val socketRequestMaxBytes = getInt(KafkaConfig.SocketRequestMaxBytesProp)
+  val socketRequestBufferPoolBytes = getLong(KafkaConfig.SocketRequestBufferPoolBytesProp)
+  val socketRequestBufferPoolDirect = getBoolean(KafkaConfig.SocketRequestBufferPoolDirectProp)
   val maxConnectionsPerIp = getInt(KafkaConfig.MaxConnectionsPerIpProp)
   val maxConnectionsPerIpOverrides: Map[String, Int] =
     getMap(KafkaConfig.MaxConnectionsPerIpOverridesProp, getString(KafkaConfig.MaxConnectionsPerIpOverridesProp)).map { case (k, v) => (k, v.toInt)}
@@ -1508,9 +1665,14 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
   def logFlushIntervalMessages = getLong(KafkaConfig.LogFlushIntervalMessagesProp)
   val logCleanerThreads = getInt(KafkaConfig.LogCleanerThreadsProp)
   def numRecoveryThreadsPerDataDir = getInt(KafkaConfig.NumRecoveryThreadsPerDataDirProp)
+  def numSegmentRecoveryThreadsPerDataDir = getInt(KafkaConfig.NumSegmentRecoveryThreadsPerDataDirProp)
+  def producerStateMaxIncrementalSnapshots = getInt(KafkaConfig.ProducerStateMaxIncrementalSnapshotsProp)
+  val logTailCacheBytes = getLong(KafkaConfig.LogTailCacheBytesProp)
+  val logTailCacheBlockBytes = getInt(KafkaConfig.LogTailCacheBlockBytesProp)
   val logFlushSchedulerIntervalMs = getLong(KafkaConfig.LogFlushSchedulerIntervalMsProp)
   val logFlushOffsetCheckpointIntervalMs = getInt(KafkaConfig.LogFlushOffsetCheckpointIntervalMsProp).toLong
   val logFlushStartOffsetCheckpointIntervalMs = getInt(KafkaConfig.LogFlushStartOffsetCheckpointIntervalMsProp).toLong
+  val logFlushServiceEnable = getBoolean(KafkaConfig.LogFlushServiceEnableProp)
   val logCleanupIntervalMs = getLong(KafkaConfig.LogCleanupIntervalMsProp)
   def logCleanupPolicy = getList(KafkaConfig.LogCleanupPolicyProp)
   val offsetsRetentionMinutes = getInt(KafkaConfig.OffsetsRetentionMinutesProp)
@@ -1518,6 +1680,9 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
   def logRetentionBytes = getLong(KafkaConfig.LogRetentionBytesProp)
   val logCleanerDedupeBufferSize = getLong(KafkaConfig.LogCleanerDedupeBufferSizeProp)
   val logCleanerDedupeBufferLoadFactor = getDouble(KafkaConfig.LogCleanerDedupeBufferLoadFactorProp)
+  val logCleanerDedupeBufferType = getString(KafkaConfig.LogCleanerDedupeBufferTypeProp)
+  val logCleanerThreadsPerLog = getInt(KafkaConfig.LogCleanerThreadsPerLogProp)
+  val logCleanerKeySummaryCacheSize = getLong(KafkaConfig.LogCleanerKeySummaryCacheSizeProp)
   val logCleanerIoBufferSize = getInt(KafkaConfig.LogCleanerIoBufferSizeProp)
   val logCleanerIoMaxBytesPerSecond = getDouble(KafkaConfig.LogCleanerIoMaxBytesPerSecondProp)
   def logCleanerDeleteRetentionMs = getLong(KafkaConfig.LogCleanerDeleteRetentionMsProp)
@@ -1528,6 +1693,11 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
   val logCleanerEnable = getBoolean(KafkaConfig.LogCleanerEnableProp)
   def logIndexSizeMaxBytes = getInt(KafkaConfig.LogIndexSizeMaxBytesProp)
   def logIndexIntervalBytes = getInt(KafkaConfig.LogIndexIntervalBytesProp)
+  val logIndexWarmerEnable = getBoolean(KafkaConfig.LogIndexWarmerEnableProp)
+  val logIndexWarmerIntervalMs = getLong(KafkaConfig.LogIndexWarmerIntervalMsProp)
+  val logIndexWarmerMaxBytesPerSecond = getDouble(KafkaConfig.LogIndexWarmerMaxBytesPerSecondProp)
+  val logIndexWarmSectionBytes = getInt(KafkaConfig.LogIndexWarmSectionBytesProp)
+  val logIndexWarmerEntireActiveSegment = getBoolean(KafkaConfig.LogIndexWarmerEntireActiveSegmentProp)
   def logDeleteDelayMs = getLong(KafkaConfig.LogDeleteDelayMsProp)
   def logRollTimeMillis: java.lang.Long = Option(getLong(KafkaConfig.LogRollTimeMillisProp)).getOrElse(60 * 60 * 1000L * getInt(KafkaConfig.LogRollTimeHoursProp))
   def logRollTimeJitterMillis: java.lang.Long = Option(getLong(KafkaConfig.LogRollTimeJitterMillisProp)).getOrElse(60 * 60 * 1000L * getInt(KafkaConfig.LogRollTimeJitterHoursProp))
@@ -1541,6 +1711,7 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
   def logMessageTimestampType = TimestampType.forName(getString(KafkaConfig.LogMessageTimestampTypeProp))
   def logMessageTimestampDifferenceMaxMs: Long = getLong(KafkaConfig.LogMessageTimestampDifferenceMaxMsProp)
   def logMessageDownConversionEnable: Boolean = getBoolean(KafkaConfig.LogMessageDownConversionEnableProp)
+  def logZstdDictionaryEnable: Boolean = getBoolean(KafkaConfig.LogZstdDictionaryEnableProp)
 
   /** ********* Replication configuration ***********/
   val controllerSocketTimeoutMs: Int = getInt(KafkaConfig.ControllerSocketTimeoutMsProp)
@@ -1554,6 +1725,8 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
   val replicaFetchResponseMaxBytes = getInt(KafkaConfig.ReplicaFetchResponseMaxBytesProp)
   val replicaFetchBackoffMs = getInt(KafkaConfig.ReplicaFetchBackoffMsProp)
   def numReplicaFetchers = getInt(KafkaConfig.NumReplicaFetchersProp)
+  val replicaFetchCoalescingEnable = getBoolean(KafkaConfig.ReplicaFetchCoalescingEnableProp)
+  val replicaFetchPipelineDepth = getInt(KafkaConfig.ReplicaFetchPipelineDepthProp)
   val replicaHighWatermarkCheckpointIntervalMs = getLong(KafkaConfig.ReplicaHighWatermarkCheckpointIntervalMsProp)
   val fetchPurgatoryPurgeIntervalRequests = getInt(KafkaConfig.FetchPurgatoryPurgeIntervalRequestsProp)
   val producerPurgatoryPurgeIntervalRequests = getInt(KafkaConfig.ProducerPurgatoryPurgeIntervalRequestsProp)
@@ -1665,6 +1838,7 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
 
   val deleteTopicEnable = getBoolean(KafkaConfig.DeleteTopicEnableProp)
   def compressionType = getString(KafkaConfig.CompressionTypeProp)
+  val zstdDictionaryFiles = getList(KafkaConfig.ZstdDictionaryFilesProp).asScala
 
   def addReconfigurable(reconfigurable: Reconfigurable): Unit = {
     dynamicConfig.addReconfigurable(reconfigurable)
@@ -1697,6 +1871,19 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
     }
   }
 
+  private def getRequestQueueClassMap(propName: String): Map[RequestQueueClass, Int] = {
+    getMap(propName, getString(propName)).map { case (name, value) =>
+      val queueClass = RequestQueueClass.fromName(name).getOrElse(throw new ConfigException(propName, getString(propName),
+        s"Unknown request class $name, the request classes are ${RequestQueueClass.values.mkString(",")}"))
+      val count = try value.toInt catch {
+        case _: NumberFormatException => throw new ConfigException(propName, getString(propName), s"Invalid value $value for $name")
+      }
+      if (count < 1)
+        throw new ConfigException(propName, getString(propName), s"The value for $name must be at least 1")
+      queueClass -> count
+    }
+  }
+
   // If the user did not define listeners but did define host or port, let's use them in backward compatible way
   // If none of those are defined, we default to PLAINTEXT://:9092
   def listeners: Seq[EndPoint] = {
@@ -1829,6 +2016,11 @@ class KafkaConfig(val props: java.util.Map[_, _], doLog: Boolean, dynamicConfigO
       s"log.message.format.version $logMessageFormatVersionString can only be used when inter.broker.protocol.version " +
       s"is set to version ${ApiVersion.minSupportedFor(recordVersion).shortVersion} or higher")
 
+    if (producerStateMaxIncrementalSnapshots > 0)
+      require(interBrokerProtocolVersion.isIncrementalProducerSnapshotSupported,
+        s"${KafkaConfig.ProducerStateMaxIncrementalSnapshotsProp} can only be set above 0 when inter.broker.protocol.version " +
+        s"is set to version ${KAFKA_2_8_IV2.version} or higher")
+
     if (offsetsTopicCompressionCodec == ZStdCompressionCodec)
       require(interBrokerProtocolVersion.recordVersion.value >= KAFKA_2_1_IV0.recordVersion.value,
         "offsets.topic.compression.codec zstd can only be used when inter.broker.protocol.version " +
@@ -79,6 +79,7 @@ class KafkaRequestHandler(id: Int,
             case e: Throwable => error("Exception when handling request", e)
           } finally {
             request.releaseBuffer()
+            requestChannel.requestHandled(request)
           }
 
         case null => // continue
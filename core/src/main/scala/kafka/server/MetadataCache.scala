@@ -19,9 +19,10 @@ package kafka.server
 
 import java.util
 import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.locks.ReentrantReadWriteLock
 
-import scala.collection.{Seq, Set, mutable}
+import scala.collection.{Seq, Set, immutable, mutable}
 import scala.jdk.CollectionConverters._
 import kafka.cluster.{Broker, EndPoint}
 import kafka.api._
@@ -42,6 +43,9 @@ import org.apache.kafka.common.security.auth.SecurityProtocol
 /**
  *  A cache for the state (e.g., current leader) of each partition. This cache is updated through
  *  UpdateMetadataRequest from the controller. Every broker maintains the same cache, asynchronously.
+ *
+ *  The partition states are kept in a persistent map keyed by topic, so an update only copies the partition
+ *  states of the topics it changes and shares the rest with the previous snapshot.
  */
 class MetadataCache(brokerId: Int) extends Logging {
 
@@ -50,8 +54,12 @@ class MetadataCache(brokerId: Int) extends Logging {
   //replace the value with a completely new one. this means reads (which are not under any lock) need to grab
   //the value of this var (into a val) ONCE and retain that read copy for the duration of their operation.
   //multiple reads of this value risk getting different snapshots.
-  @volatile private var metadataSnapshot: MetadataSnapshot = MetadataSnapshot(partitionStates = mutable.AnyRefMap.empty,
-    topicIds = Map.empty, controllerId = None, aliveBrokers = mutable.LongMap.empty, aliveNodes = mutable.LongMap.empty)
+  @volatile private var metadataSnapshot: MetadataSnapshot = MetadataSnapshot(partitionStates = immutable.HashMap.empty,
+    topicIds = immutable.HashMap.empty, controllerId = None, aliveBrokers = mutable.LongMap.empty, aliveNodes = mutable.LongMap.empty,
+    partitionMetadata = new PartitionMetadataCache)
+  //incremented after every update of the snapshot, data derived from the cache which was read after getting a version
+  //is at least as recent as that version
+  @volatile private var _snapshotVersion = 0L
 
   this.logIdent = s"[MetadataCache brokerId=$brokerId] "
   private val stateChangeLogger = new StateChangeLogger(brokerId, inControllerContext = false, None)
@@ -168,13 +176,38 @@ class MetadataCache(brokerId: Int) extends Logging {
                        errorUnavailableListeners: Boolean = false): Seq[MetadataResponseTopic] = {
     val snapshot = metadataSnapshot
     topics.toSeq.flatMap { topic =>
-      getPartitionMetadata(snapshot, topic, listenerName, errorUnavailableEndpoints, errorUnavailableListeners).map { partitionMetadata =>
+      getCachedPartitionMetadata(snapshot, topic, listenerName, errorUnavailableEndpoints, errorUnavailableListeners).map { partitionMetadata =>
         new MetadataResponseTopic()
           .setErrorCode(Errors.NONE.code)
           .setName(topic)
           .setTopicId(snapshot.topicIds.getOrElse(topic, Uuid.ZERO_UUID))
           .setIsInternal(Topic.isInternal(topic))
-          .setPartitions(partitionMetadata.toBuffer.asJava)
+          .setPartitions(partitionMetadata)
+      }
+    }
+  }
+
+  /**
+   * Get the partition metadata of a topic, reusing the metadata built by an earlier request if neither the
+   * partition states of the topic nor the alive brokers have changed since. The returned list is shared between
+   * responses and must not be modified.
+   */
+  private def getCachedPartitionMetadata(snapshot: MetadataSnapshot, topic: String, listenerName: ListenerName,
+                                         errorUnavailableEndpoints: Boolean,
+                                         errorUnavailableListeners: Boolean): Option[util.List[MetadataResponsePartition]] = {
+    snapshot.partitionStates.get(topic).map { partitionStates =>
+      val key = PartitionMetadataKey(listenerName, errorUnavailableEndpoints, errorUnavailableListeners)
+      val cached = snapshot.partitionMetadata.get(topic, key)
+      // the partition states of a topic are copied whenever they change, so the same instance means the same states
+      if (cached != null && (cached.partitionStates eq partitionStates)) {
+        cached.partitions
+      } else {
+        val partitions = Collections.unmodifiableList(getPartitionMetadata(snapshot, topic, listenerName,
+          errorUnavailableEndpoints, errorUnavailableListeners).get.toBuffer.asJava)
+        // avoid re-adding topics which have been removed from the cache by a concurrent update
+        if (snapshot eq metadataSnapshot)
+          snapshot.partitionMetadata.put(topic, key, CachedPartitionMetadata(partitionStates, partitions))
+        partitions
       }
     }
   }
@@ -211,14 +244,6 @@ class MetadataCache(brokerId: Int) extends Logging {
     metadataSnapshot.aliveBrokers.values.toBuffer
   }
 
-  private def addOrUpdatePartitionInfo(partitionStates: mutable.AnyRefMap[String, mutable.LongMap[UpdateMetadataPartitionState]],
-                                       topic: String,
-                                       partitionId: Int,
-                                       stateInfo: UpdateMetadataPartitionState): Unit = {
-    val infos = partitionStates.getOrElseUpdate(topic, mutable.LongMap.empty)
-    infos(partitionId) = stateInfo
-  }
-
   def getPartitionInfo(topic: String, partitionId: Int): Option[UpdateMetadataPartitionState] = {
     metadataSnapshot.partitionStates.get(topic).flatMap(_.get(partitionId))
   }
@@ -323,23 +348,37 @@ class MetadataCache(brokerId: Int) extends Logging {
           error(s"Listeners are not identical across brokers: $aliveNodes")
       }
 
-      val newTopicIds = updateMetadataRequest.topicStates().asScala
-        .map(topicState => (topicState.topicName(), topicState.topicId()))
-        .filter(_._2 != Uuid.ZERO_UUID).toMap
-      val topicIds = mutable.Map.empty[String, Uuid]
-      topicIds ++= metadataSnapshot.topicIds
-      topicIds ++= newTopicIds
+      var topicIds = metadataSnapshot.topicIds
+      updateMetadataRequest.topicStates.forEach { topicState =>
+        if (topicState.topicId != Uuid.ZERO_UUID)
+          topicIds = topicIds.updated(topicState.topicName, topicState.topicId)
+      }
+
+      // the partition metadata built for earlier requests stays valid for the unchanged topics unless the
+      // alive brokers have changed
+      val partitionMetadata =
+        if (aliveNodes == metadataSnapshot.aliveNodes) metadataSnapshot.partitionMetadata
+        else new PartitionMetadataCache
 
       val deletedPartitions = new mutable.ArrayBuffer[TopicPartition]
       if (!updateMetadataRequest.partitionStates.iterator.hasNext) {
-        metadataSnapshot = MetadataSnapshot(metadataSnapshot.partitionStates, topicIds.toMap, controllerIdOpt, aliveBrokers, aliveNodes)
+        metadataSnapshot = MetadataSnapshot(metadataSnapshot.partitionStates, topicIds, controllerIdOpt, aliveBrokers,
+          aliveNodes, partitionMetadata)
       } else {
-        //since kafka may do partial metadata updates, we start by copying the previous state
-        val partitionStates = new mutable.AnyRefMap[String, mutable.LongMap[UpdateMetadataPartitionState]](metadataSnapshot.partitionStates.size)
-        metadataSnapshot.partitionStates.forKeyValue { (topic, oldPartitionStates) =>
-          val copy = new mutable.LongMap[UpdateMetadataPartitionState](oldPartitionStates.size)
-          copy ++= oldPartitionStates
-          partitionStates(topic) = copy
+        //since kafka may do partial metadata updates, we start from the previous state and only copy the partition
+        //states of the topics which are updated
+        val previousPartitionStates = metadataSnapshot.partitionStates
+        val updatedTopics = new mutable.AnyRefMap[String, mutable.LongMap[UpdateMetadataPartitionState]]
+
+        def updatedPartitionStates(topic: String): Option[mutable.LongMap[UpdateMetadataPartitionState]] = {
+          updatedTopics.get(topic).orElse {
+            previousPartitionStates.get(topic).map { oldPartitionStates =>
+              val copy = new mutable.LongMap[UpdateMetadataPartitionState](oldPartitionStates.size)
+              copy ++= oldPartitionStates
+              updatedTopics(topic) = copy
+              copy
+            }
+          }
         }
 
         val traceEnabled = stateChangeLogger.isTraceEnabled
@@ -350,13 +389,18 @@ class MetadataCache(brokerId: Int) extends Logging {
           // per-partition logging here can be very expensive due going through all partitions in the cluster
           val tp = new TopicPartition(state.topicName, state.partitionIndex)
           if (state.leader == LeaderAndIsr.LeaderDuringDelete) {
-            removePartitionInfo(partitionStates, topicIds, tp.topic, tp.partition)
+            updatedPartitionStates(tp.topic).foreach(_.remove(tp.partition))
             if (traceEnabled)
               stateChangeLogger.trace(s"Deleted partition $tp from metadata cache in response to UpdateMetadata " +
                 s"request sent by controller $controllerId epoch $controllerEpoch with correlation id $correlationId")
             deletedPartitions += tp
           } else {
-            addOrUpdatePartitionInfo(partitionStates, tp.topic, tp.partition, state)
+            val infos = updatedPartitionStates(tp.topic).getOrElse {
+              val infos = mutable.LongMap.empty[UpdateMetadataPartitionState]
+              updatedTopics(tp.topic) = infos
+              infos
+            }
+            infos(tp.partition) = state
             if (traceEnabled)
               stateChangeLogger.trace(s"Cached leader info $state for partition $tp in response to " +
                 s"UpdateMetadata request sent by controller $controllerId epoch $controllerEpoch with correlation id $correlationId")
@@ -366,34 +410,68 @@ class MetadataCache(brokerId: Int) extends Logging {
         stateChangeLogger.info(s"Add $cachedPartitionsCount partitions and deleted ${deletedPartitions.size} partitions from metadata cache " +
           s"in response to UpdateMetadata request sent by controller $controllerId epoch $controllerEpoch with correlation id $correlationId")
 
-        metadataSnapshot = MetadataSnapshot(partitionStates, topicIds.toMap, controllerIdOpt, aliveBrokers, aliveNodes)
+        var partitionStates = previousPartitionStates
+        updatedTopics.forKeyValue { (topic, infos) =>
+          if (infos.isEmpty) {
+            partitionStates = partitionStates - topic
+            topicIds = topicIds - topic
+          } else {
+            partitionStates = partitionStates.updated(topic, infos)
+          }
+          partitionMetadata.removeTopic(topic)
+        }
+
+        metadataSnapshot = MetadataSnapshot(partitionStates, topicIds, controllerIdOpt, aliveBrokers, aliveNodes,
+          partitionMetadata)
       }
+      _snapshotVersion += 1
       deletedPartitions
     }
   }
 
+  /**
+   * The version of the cached metadata, which changes with every update.
+   */
+  def snapshotVersion: Long = _snapshotVersion
+
   def contains(topic: String): Boolean = {
     metadataSnapshot.partitionStates.contains(topic)
   }
 
   def contains(tp: TopicPartition): Boolean = getPartitionInfo(tp.topic, tp.partition).isDefined
 
-  private def removePartitionInfo(partitionStates: mutable.AnyRefMap[String, mutable.LongMap[UpdateMetadataPartitionState]],
-                                  topicIds: mutable.Map[String, Uuid], topic: String, partitionId: Int): Boolean = {
-    partitionStates.get(topic).exists { infos =>
-      infos.remove(partitionId)
-      if (infos.isEmpty) {
-        partitionStates.remove(topic)
-        topicIds.remove(topic)
-      }
-      true
-    }
-  }
-
-  case class MetadataSnapshot(partitionStates: mutable.AnyRefMap[String, mutable.LongMap[UpdateMetadataPartitionState]],
-                              topicIds: Map[String, Uuid],
+  // the partition states of a topic are never modified once they are part of a snapshot
+  case class MetadataSnapshot(partitionStates: immutable.HashMap[String, mutable.LongMap[UpdateMetadataPartitionState]],
+                              topicIds: immutable.HashMap[String, Uuid],
                               controllerId: Option[Int],
                               aliveBrokers: mutable.LongMap[Broker],
-                              aliveNodes: mutable.LongMap[collection.Map[ListenerName, Node]])
+                              aliveNodes: mutable.LongMap[collection.Map[ListenerName, Node]],
+                              partitionMetadata: PartitionMetadataCache)
+
+  private case class PartitionMetadataKey(listenerName: ListenerName,
+                                          errorUnavailableEndpoints: Boolean,
+                                          errorUnavailableListeners: Boolean)
+
+  private case class CachedPartitionMetadata(partitionStates: mutable.LongMap[UpdateMetadataPartitionState],
+                                             partitions: util.List[MetadataResponsePartition])
+
+  /**
+   * The partition metadata of the topics in the response format, which is shared by the snapshots as long as the
+   * alive brokers do not change.
+   */
+  class PartitionMetadataCache {
+    private val cache = new ConcurrentHashMap[String, ConcurrentHashMap[PartitionMetadataKey, CachedPartitionMetadata]]()
+
+    private[MetadataCache] def get(topic: String, key: PartitionMetadataKey): CachedPartitionMetadata = {
+      val topicCache = cache.get(topic)
+      if (topicCache == null) null else topicCache.get(key)
+    }
+
+    private[MetadataCache] def put(topic: String, key: PartitionMetadataKey, value: CachedPartitionMetadata): Unit =
+      cache.computeIfAbsent(topic, _ => new ConcurrentHashMap()).put(key, value)
+
+    private[MetadataCache] def removeTopic(topic: String): Unit = cache.remove(topic)
+
+  }
 
 }
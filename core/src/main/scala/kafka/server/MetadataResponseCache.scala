@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.server
+
+import java.nio.ByteBuffer
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
+
+import kafka.server.MetadataResponseCache._
+import org.apache.kafka.common.message.MetadataResponseData
+import org.apache.kafka.common.metrics.stats.Meter
+import org.apache.kafka.common.metrics.{Measurable, MetricConfig, Metrics}
+import org.apache.kafka.common.network.ListenerName
+import org.apache.kafka.common.protocol.{Errors, MessageUtil}
+import org.apache.kafka.common.requests.MetadataResponse
+
+import scala.collection.Set
+import scala.jdk.CollectionConverters._
+
+/**
+ * A cache of serialized metadata responses, so that the identical metadata requests sent by many clients are
+ * answered without building and encoding the same response again. Responses are cached for a single version of
+ * the metadata cache and are dropped as soon as the metadata cache is updated.
+ *
+ * Callers must only use the cache for responses which do not depend on the principal of the request.
+ *
+ * @param metadataCache The metadata cache the responses are built from
+ * @param maxEntries The maximum number of cached responses, 0 disables the cache
+ * @param metrics The metrics registry for the hit and miss rates
+ */
+class MetadataResponseCache(metadataCache: MetadataCache,
+                            maxEntries: Int,
+                            metrics: Metrics) {
+
+  private val responses = new ConcurrentHashMap[Key, CachedResponse]()
+  // the metadata cache version of the responses in the cache, only updated with the lock of this object
+  @volatile private var responsesVersion = -1L
+
+  private val hits = new LongAdder
+  private val misses = new LongAdder
+  private val hitSensor = metrics.sensor(HitSensorName)
+  private val missSensor = metrics.sensor(MissSensorName)
+  private val hitRatioMetricName = metrics.metricName("metadata-response-cache-hit-ratio", MetricGroup,
+    "The fraction of metadata requests answered from the metadata response cache.")
+
+  hitSensor.add(new Meter(
+    metrics.metricName("metadata-response-cache-hit-rate", MetricGroup,
+      "The number of metadata requests per second answered from the metadata response cache."),
+    metrics.metricName("metadata-response-cache-hit-total", MetricGroup,
+      "The total number of metadata requests answered from the metadata response cache.")))
+  missSensor.add(new Meter(
+    metrics.metricName("metadata-response-cache-miss-rate", MetricGroup,
+      "The number of metadata requests per second for which the response had to be built."),
+    metrics.metricName("metadata-response-cache-miss-total", MetricGroup,
+      "The total number of metadata requests for which the response had to be built.")))
+  metrics.addMetric(hitRatioMetricName, new Measurable {
+    override def measure(config: MetricConfig, now: Long): Double = {
+      val hitCount = hits.sum
+      val total = hitCount + misses.sum
+      if (total == 0) 0.0 else hitCount.toDouble / total
+    }
+  })
+
+  def enabled: Boolean = maxEntries > 0
+
+  /**
+   * Get the response for the given key from the cache, or build it and add it to the cache if every topic in it
+   * was found without errors. Responses for missing topics are not cached since building them may have side effects
+   * such as the creation of the topic.
+   *
+   * @param key The properties of the request the response depends on
+   * @param buildResponse Builds the response data with a throttle time of zero
+   * @return A function creating the response for a given throttle time
+   */
+  def getOrBuild(key: Key)(buildResponse: => MetadataResponseData): Int => MetadataResponse = {
+    // read the version first, the response built afterwards is at least as recent
+    val version = metadataCache.snapshotVersion
+    val cached = if (version == responsesVersion) responses.get(key) else null
+    if (cached != null) {
+      hits.increment()
+      hitSensor.record()
+      cached.response
+    } else {
+      misses.increment()
+      missSensor.record()
+      val data = buildResponse
+      if (enabled && data.topics.asScala.forall(_.errorCode == Errors.NONE.code)) {
+        val response = CachedResponse(data, key.apiVersion, MessageUtil.toByteBuffer(data, key.apiVersion))
+        put(version, key, response)
+        response.response
+      } else {
+        throttleTimeMs => {
+          data.setThrottleTimeMs(throttleTimeMs)
+          new MetadataResponse(data, key.apiVersion)
+        }
+      }
+    }
+  }
+
+  private def put(version: Long, key: Key, response: CachedResponse): Unit = synchronized {
+    if (version > responsesVersion) {
+      responses.clear()
+      responsesVersion = version
+    }
+    if (version == responsesVersion && responses.size < maxEntries)
+      responses.put(key, response)
+  }
+
+  // Visible for testing
+  private[server] def size: Int = responses.size
+
+  def close(): Unit = {
+    metrics.removeSensor(HitSensorName)
+    metrics.removeSensor(MissSensorName)
+    metrics.removeMetric(hitRatioMetricName)
+  }
+}
+
+object MetadataResponseCache {
+  private val MetricGroup = "metadata-response-cache-metrics"
+  private val HitSensorName = "metadata-response-cache-hits"
+  private val MissSensorName = "metadata-response-cache-misses"
+
+  /**
+   * The properties of a metadata request which determine the response.
+   *
+   * @param topics The requested topics or None for all topics
+   */
+  case class Key(listenerName: ListenerName,
+                 apiVersion: Short,
+                 topics: Option[Set[String]],
+                 allowAutoTopicCreation: Boolean,
+                 includeClusterAuthorizedOperations: Boolean,
+                 includeTopicAuthorizedOperations: Boolean)
+
+  private case class CachedResponse(data: MetadataResponseData, apiVersion: Short, serializedData: ByteBuffer) {
+    val response: Int => MetadataResponse = throttleTimeMs =>
+      MetadataResponse.preSerialized(data, apiVersion, serializedData, throttleTimeMs)
+  }
+}
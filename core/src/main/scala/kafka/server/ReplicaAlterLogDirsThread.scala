@@ -99,7 +99,8 @@ class ReplicaAlterLogDirsThread(name: String,
       UnboundedQuota,
       processResponseCallback,
       request.isolationLevel,
-      None)
+      None,
+      true) // the records are appended to the future log without being sent, so they may be read from the tail cache
 
     if (partitionData == null)
       throw new IllegalStateException(s"Failed to fetch data for partitions ${request.fetchData.keySet().toArray.mkString(",")}")
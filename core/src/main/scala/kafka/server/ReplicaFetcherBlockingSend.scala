@@ -16,6 +16,7 @@
   */
 package kafka.server
 
+import java.io.IOException
 import java.net.SocketTimeoutException
 
 import kafka.cluster.BrokerEndPoint
@@ -29,12 +30,28 @@ import org.apache.kafka.clients.{ApiVersions, ClientResponse, ManualMetadataUpda
 import org.apache.kafka.common.{Node, Reconfigurable}
 import org.apache.kafka.common.requests.AbstractRequest.Builder
 
+import scala.collection.mutable
 import scala.jdk.CollectionConverters._
+import scala.util.{Failure, Success, Try}
 
 trait BlockingSend {
 
   def sendRequest(requestBuilder: AbstractRequest.Builder[_ <: AbstractRequest]): ClientResponse
 
+  /**
+   * Send a request without waiting for its response. The completion handler is called from `poll` with the response,
+   * or with the failure of the request. By default, the response is received before returning.
+   */
+  def send(requestBuilder: AbstractRequest.Builder[_ <: AbstractRequest],
+           completionHandler: Try[ClientResponse] => Unit): Unit = {
+    completionHandler(Try(sendRequest(requestBuilder)))
+  }
+
+  /**
+   * Wait up to `timeoutMs` for the responses of the requests sent with `send`.
+   */
+  def poll(timeoutMs: Long): Unit = {}
+
   def initiateClose(): Unit
 
   def close(): Unit
@@ -46,12 +63,17 @@ class ReplicaFetcherBlockingSend(sourceBroker: BrokerEndPoint,
                                  time: Time,
                                  fetcherId: Int,
                                  clientId: String,
-                                 logContext: LogContext) extends BlockingSend {
+                                 logContext: LogContext,
+                                 networkClientOpt: Option[KafkaClient] = None) extends BlockingSend {
 
   private val sourceNode = new Node(sourceBroker.id, sourceBroker.host, sourceBroker.port)
   private val socketTimeout: Int = brokerConfig.replicaSocketTimeoutMs
 
-  private val (networkClient, reconfigurableChannelBuilder) = {
+  // the completion handlers of the requests sent with `send` which are not completed yet
+  private val pendingCompletionHandlers = mutable.Map[Long, Try[ClientResponse] => Unit]()
+  private var nextRequestId = 0L
+
+  private val (networkClient, reconfigurableChannelBuilder) = networkClientOpt.map(client => (client, Option.empty[Reconfigurable])).getOrElse {
     val channelBuilder = ChannelBuilders.clientChannelBuilder(
       brokerConfig.interBrokerSecurityProtocol,
       JaasContext.Type.SERVER,
@@ -83,7 +105,8 @@ class ReplicaFetcherBlockingSend(sourceBroker: BrokerEndPoint,
       selector,
       new ManualMetadataUpdater(),
       clientId,
-      1,
+      // the fetches of the fetch pipeline, the other requests of the fetcher thread wait for one of them to complete
+      brokerConfig.replicaFetchPipelineDepth,
       0,
       0,
       Selectable.USE_DEFAULT_BUFFER_SIZE,
@@ -97,7 +120,7 @@ class ReplicaFetcherBlockingSend(sourceBroker: BrokerEndPoint,
       new ApiVersions,
       logContext
     )
-    (networkClient, reconfigurableChannelBuilder)
+    (networkClient: KafkaClient, reconfigurableChannelBuilder)
   }
 
   override def sendRequest(requestBuilder: Builder[_ <: AbstractRequest]): ClientResponse = {
@@ -112,11 +135,59 @@ class ReplicaFetcherBlockingSend(sourceBroker: BrokerEndPoint,
     }
     catch {
       case e: Throwable =>
-        networkClient.close(sourceBroker.id.toString)
+        closeConnection(e)
         throw e
     }
   }
 
+  override def send(requestBuilder: Builder[_ <: AbstractRequest],
+                    completionHandler: Try[ClientResponse] => Unit): Unit = {
+    val requestId = nextRequestId
+    nextRequestId += 1
+    pendingCompletionHandlers.put(requestId, completionHandler)
+    try {
+      if (!NetworkClientUtils.awaitReady(networkClient, sourceNode, time, socketTimeout))
+        throw new SocketTimeoutException(s"Failed to connect within $socketTimeout ms")
+      else {
+        val clientRequest = networkClient.newClientRequest(sourceBroker.id.toString, requestBuilder,
+          time.milliseconds(), true, brokerConfig.requestTimeoutMs, (response: ClientResponse) => {
+            if (response.wasDisconnected)
+              complete(requestId, Failure(new IOException(s"Connection to ${response.destination} was disconnected " +
+                "before the response was read")))
+            else if (response.versionMismatch != null)
+              complete(requestId, Failure(response.versionMismatch))
+            else
+              complete(requestId, Success(response))
+          })
+        networkClient.send(clientRequest, time.milliseconds())
+      }
+    }
+    catch {
+      case e: Throwable =>
+        closeConnection(e)
+    }
+  }
+
+  private def complete(requestId: Long, result: Try[ClientResponse]): Unit = {
+    pendingCompletionHandlers.remove(requestId).foreach(_(result))
+  }
+
+  /**
+   * Close the connection to the source broker after a failed request. The requests in flight on the connection are
+   * dropped without their callbacks being called, so the requests sent with `send` are failed here instead, otherwise
+   * their completion would never be reported.
+   */
+  private def closeConnection(cause: Throwable): Unit = {
+    networkClient.close(sourceBroker.id.toString)
+    val completionHandlers = pendingCompletionHandlers.values.toList
+    pendingCompletionHandlers.clear()
+    completionHandlers.foreach(_(Failure(cause)))
+  }
+
+  override def poll(timeoutMs: Long): Unit = {
+    networkClient.poll(timeoutMs, time.milliseconds())
+  }
+
   override def initiateClose(): Unit = {
     reconfigurableChannelBuilder.foreach(brokerConfig.removeReconfigurable)
     networkClient.initiateClose()
@@ -17,9 +17,12 @@
 
 package kafka.server
 
+import java.util.concurrent.{LinkedBlockingQueue, ThreadFactory, ThreadPoolExecutor, TimeUnit}
+import java.util.concurrent.atomic.AtomicInteger
+
 import kafka.cluster.BrokerEndPoint
 import org.apache.kafka.common.metrics.Metrics
-import org.apache.kafka.common.utils.Time
+import org.apache.kafka.common.utils.{KafkaThread, Time}
 
 class ReplicaFetcherManager(brokerConfig: KafkaConfig,
                             protected val replicaManager: ReplicaManager,
@@ -30,18 +33,51 @@ class ReplicaFetcherManager(brokerConfig: KafkaConfig,
       extends AbstractFetcherManager[ReplicaFetcherThread](
         name = "ReplicaFetcherManager on broker " + brokerConfig.brokerId,
         clientId = "Replica",
-        numFetchers = brokerConfig.numReplicaFetchers) {
+        // a single fetcher thread per source broker if the fetches are coalesced
+        numFetchers = if (brokerConfig.replicaFetchCoalescingEnable) 1 else brokerConfig.numReplicaFetchers) {
+
+  // the threads appending the fetched data of the partitions when the fetches are coalesced
+  private val partitionDataExecutor =
+    if (brokerConfig.replicaFetchCoalescingEnable) {
+      val threadId = new AtomicInteger(0)
+      val prefix = threadNamePrefix.map(tp => s"$tp:").getOrElse("")
+      Some(new ThreadPoolExecutor(brokerConfig.numReplicaFetchers, brokerConfig.numReplicaFetchers, 0,
+        TimeUnit.MILLISECONDS, new LinkedBlockingQueue[Runnable](), new ThreadFactory {
+          override def newThread(r: Runnable): Thread =
+            KafkaThread.daemon(s"${prefix}ReplicaFetcherPartitionProcessor-${threadId.getAndIncrement()}", r)
+        }))
+    } else None
 
   override def createFetcherThread(fetcherId: Int, sourceBroker: BrokerEndPoint): ReplicaFetcherThread = {
     val prefix = threadNamePrefix.map(tp => s"$tp:").getOrElse("")
     val threadName = s"${prefix}ReplicaFetcherThread-$fetcherId-${sourceBroker.id}"
     new ReplicaFetcherThread(threadName, fetcherId, sourceBroker, brokerConfig, failedPartitions, replicaManager,
-      metrics, time, quotaManager)
+      metrics, time, quotaManager, partitionDataExecutor = partitionDataExecutor)
+  }
+
+  override def resizeThreadPool(newSize: Int): Unit = {
+    partitionDataExecutor match {
+      case Some(executor) =>
+        info(s"Resizing partition data processor pool size from ${executor.getMaximumPoolSize} to $newSize")
+        // the core pool size must not be larger than the maximum pool size
+        if (newSize > executor.getMaximumPoolSize) {
+          executor.setMaximumPoolSize(newSize)
+          executor.setCorePoolSize(newSize)
+        } else {
+          executor.setCorePoolSize(newSize)
+          executor.setMaximumPoolSize(newSize)
+        }
+      case None => super.resizeThreadPool(newSize)
+    }
   }
 
   def shutdown(): Unit = {
     info("shutting down")
     closeAllFetchers()
+    partitionDataExecutor.foreach { executor =>
+      executor.shutdown()
+      executor.awaitTermination(Long.MaxValue, TimeUnit.MILLISECONDS)
+    }
     info("shutdown completed")
   }
 }
@@ -17,8 +17,10 @@
 
 package kafka.server
 
+import java.util
 import java.util.Collections
 import java.util.Optional
+import java.util.concurrent.ExecutorService
 
 import kafka.api._
 import kafka.cluster.BrokerEndPoint
@@ -26,7 +28,7 @@ import kafka.log.{LeaderOffsetIncremented, LogAppendInfo}
 import kafka.server.AbstractFetcherThread.ReplicaFetch
 import kafka.server.AbstractFetcherThread.ResultWithPartitions
 import kafka.utils.Implicits._
-import org.apache.kafka.clients.FetchSessionHandler
+import org.apache.kafka.clients.{ClientResponse, FetchSessionHandler}
 import org.apache.kafka.common.TopicPartition
 import org.apache.kafka.common.errors.KafkaStorageException
 import org.apache.kafka.common.message.ListOffsetsRequestData.{ListOffsetsPartition, ListOffsetsTopic}
@@ -42,6 +44,7 @@ import org.apache.kafka.common.utils.{LogContext, Time}
 import scala.jdk.CollectionConverters._
 import scala.collection.{Map, mutable}
 import scala.compat.java8.OptionConverters._
+import scala.util.Try
 
 class ReplicaFetcherThread(name: String,
                            fetcherId: Int,
@@ -52,14 +55,17 @@ class ReplicaFetcherThread(name: String,
                            metrics: Metrics,
                            time: Time,
                            quota: ReplicaQuota,
-                           leaderEndpointBlockingSend: Option[BlockingSend] = None)
+                           leaderEndpointBlockingSend: Option[BlockingSend] = None,
+                           partitionDataExecutor: Option[ExecutorService] = None)
   extends AbstractFetcherThread(name = name,
                                 clientId = name,
                                 sourceBroker = sourceBroker,
                                 failedPartitions,
                                 fetchBackOffMs = brokerConfig.replicaFetchBackoffMs,
                                 isInterruptible = false,
-                                replicaMgr.brokerTopicStats) {
+                                replicaMgr.brokerTopicStats,
+                                partitionDataExecutor,
+                                brokerConfig.replicaFetchPipelineDepth) {
 
   private val replicaId = brokerConfig.brokerId
   private val logContext = new LogContext(s"[ReplicaFetcher replicaId=$replicaId, leaderId=${sourceBroker.id}, " +
@@ -109,6 +115,11 @@ class ReplicaFetcherThread(name: String,
   override protected val isOffsetForLeaderEpochSupported: Boolean = brokerConfig.interBrokerProtocolVersion >= KAFKA_0_11_0_IV2
   override protected val isTruncationOnFetchSupported = ApiVersion.isTruncationOnFetchSupported(brokerConfig.interBrokerProtocolVersion)
   val fetchSessionHandler = new FetchSessionHandler(logContext, sourceBroker.id)
+  // the fetch session of each slot of the fetch pipeline, a session can't have more than one fetch in flight
+  private val pipelineFetchSessionHandlers = fetchSessionHandler +:
+    (1 until brokerConfig.replicaFetchPipelineDepth).map(_ => new FetchSessionHandler(logContext, sourceBroker.id))
+  // the fetches completed by the responses received by the leader endpoint
+  private val completedFetches = new util.ArrayDeque[(Int, Try[Map[TopicPartition, FetchData]])]
 
   override protected def latestEpoch(topicPartition: TopicPartition): Option[Int] = {
     replicaMgr.localLogOrException(topicPartition).latestEpoch
@@ -215,12 +226,7 @@ class ReplicaFetcherThread(name: String,
   override protected def fetchFromLeader(fetchRequest: FetchRequest.Builder): Map[TopicPartition, FetchData] = {
     try {
       val clientResponse = leaderEndpoint.sendRequest(fetchRequest)
-      val fetchResponse = clientResponse.responseBody.asInstanceOf[FetchResponse[Records]]
-      if (!fetchSessionHandler.handleResponse(fetchResponse)) {
-        Map.empty
-      } else {
-        fetchResponse.responseData.asScala
-      }
+      fetchResponseData(fetchSessionHandler, clientResponse)
     } catch {
       case t: Throwable =>
         fetchSessionHandler.handleError(t)
@@ -228,6 +234,33 @@ class ReplicaFetcherThread(name: String,
     }
   }
 
+  override protected def sendFetch(slot: Int, fetchRequest: FetchRequest.Builder): Unit = {
+    val sessionHandler = pipelineFetchSessionHandlers(slot)
+    leaderEndpoint.send(fetchRequest, result => {
+      val responseData = result.map(fetchResponseData(sessionHandler, _))
+      responseData.failed.foreach(sessionHandler.handleError)
+      completedFetches.add(slot -> responseData)
+    })
+  }
+
+  override protected def receiveFetches(): Seq[(Int, Try[Map[TopicPartition, FetchData]])] = {
+    while (completedFetches.isEmpty && isRunning)
+      leaderEndpoint.poll(Long.MaxValue)
+    val fetches = completedFetches.asScala.toList
+    completedFetches.clear()
+    fetches
+  }
+
+  private def fetchResponseData(sessionHandler: FetchSessionHandler,
+                                clientResponse: ClientResponse): Map[TopicPartition, FetchData] = {
+    val fetchResponse = clientResponse.responseBody.asInstanceOf[FetchResponse[Records]]
+    if (!sessionHandler.handleResponse(fetchResponse)) {
+      Map.empty
+    } else {
+      fetchResponse.responseData.asScala
+    }
+  }
+
   override protected def fetchEarliestOffsetFromLeader(topicPartition: TopicPartition, currentLeaderEpoch: Int): Long = {
     fetchOffsetFromLeader(topicPartition, currentLeaderEpoch, ListOffsetsRequest.EARLIEST_TIMESTAMP)
   }
@@ -262,10 +295,17 @@ class ReplicaFetcherThread(name: String,
     }
   }
 
-  override def buildFetch(partitionMap: Map[TopicPartition, PartitionFetchState]): ResultWithPartitions[Option[ReplicaFetch]] = {
+  override def buildFetch(partitionMap: Map[TopicPartition, PartitionFetchState]): ResultWithPartitions[Option[ReplicaFetch]] =
+    buildFetch(fetchSessionHandler, partitionMap)
+
+  override protected def buildFetch(slot: Int, partitionMap: Map[TopicPartition, PartitionFetchState]): ResultWithPartitions[Option[ReplicaFetch]] =
+    buildFetch(pipelineFetchSessionHandlers(slot), partitionMap)
+
+  private def buildFetch(sessionHandler: FetchSessionHandler,
+                         partitionMap: Map[TopicPartition, PartitionFetchState]): ResultWithPartitions[Option[ReplicaFetch]] = {
     val partitionsWithError = mutable.Set[TopicPartition]()
 
-    val builder = fetchSessionHandler.newBuilder(partitionMap.size, false)
+    val builder = sessionHandler.newBuilder(partitionMap.size, false)
     partitionMap.forKeyValue { (topicPartition, fetchState) =>
       // We will not include a replica in the fetch request if it should be throttled.
       if (fetchState.isReadyForFetch && !shouldFollowerThrottle(quota, fetchState, topicPartition)) {
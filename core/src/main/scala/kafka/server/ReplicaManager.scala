@@ -18,7 +18,7 @@ package kafka.server
 
 import java.io.File
 import java.util.Optional
-import java.util.concurrent.TimeUnit
+import java.util.concurrent.{CompletableFuture, ExecutionException, TimeUnit}
 import java.util.concurrent.atomic.{AtomicBoolean}
 import java.util.concurrent.locks.Lock
 
@@ -64,6 +64,7 @@ import org.apache.kafka.common.utils.Time
 import scala.jdk.CollectionConverters._
 import scala.collection.{Map, Seq, Set, mutable}
 import scala.compat.java8.OptionConverters._
+import scala.util.Try
 
 /*
  * Result metadata of a log append operation on the log
@@ -205,13 +206,13 @@ class ReplicaManager(val config: KafkaConfig,
       quotaManagers, brokerTopicStats, metadataCache, logDirFailureChannel,
       DelayedOperationPurgatory[DelayedProduce](
         purgatoryName = "Produce", brokerId = config.brokerId,
-        purgeInterval = config.producerPurgatoryPurgeIntervalRequests),
+        purgeInterval = config.producerPurgatoryPurgeIntervalRequests, coalesceCompletionChecks = true),
       DelayedOperationPurgatory[DelayedFetch](
         purgatoryName = "Fetch", brokerId = config.brokerId,
-        purgeInterval = config.fetchPurgatoryPurgeIntervalRequests),
+        purgeInterval = config.fetchPurgatoryPurgeIntervalRequests, coalesceCompletionChecks = true),
       DelayedOperationPurgatory[DelayedDeleteRecords](
         purgatoryName = "DeleteRecords", brokerId = config.brokerId,
-        purgeInterval = config.deleteRecordsPurgatoryPurgeIntervalRequests),
+        purgeInterval = config.deleteRecordsPurgatoryPurgeIntervalRequests, coalesceCompletionChecks = true),
       DelayedOperationPurgatory[DelayedElectLeader](
         purgatoryName = "ElectLeader", brokerId = config.brokerId),
       threadNamePrefix, alterIsrManager)
@@ -595,10 +596,19 @@ class ReplicaManager(val config: KafkaConfig,
 
       recordConversionStatsCallback(localProduceResults.map { case (k, v) => k -> v.info.recordConversionStats })
 
+      // the response to the clients waits for the flushes of the logs requested by the appends, the coordinators
+      // complete their appends holding locks which are not held when the flushes complete
+      val flushCompletions =
+        if (origin == AppendOrigin.Client) localProduceResults.flatMap { case (k, v) => v.info.flushCompletion.map(k -> _) }
+        else Map.empty[TopicPartition, CompletableFuture[Void]]
+      val flushedResponseCallback =
+        if (flushCompletions.isEmpty) responseCallback
+        else afterFlushes(flushCompletions, responseCallback)
+
       if (delayedProduceRequestRequired(requiredAcks, entriesPerPartition, localProduceResults)) {
         // create delayed produce operation
         val produceMetadata = ProduceMetadata(requiredAcks, produceStatus)
-        val delayedProduce = new DelayedProduce(timeout, produceMetadata, this, responseCallback, delayedProduceLock)
+        val delayedProduce = new DelayedProduce(timeout, produceMetadata, this, flushedResponseCallback, delayedProduceLock)
 
         // create a list of (topic, partition) pairs to use as keys for this delayed produce operation
         val producerRequestKeys = entriesPerPartition.keys.map(TopicPartitionOperationKey(_)).toSeq
@@ -611,7 +621,7 @@ class ReplicaManager(val config: KafkaConfig,
       } else {
         // we can respond immediately
         val produceResponseStatus = produceStatus.map { case (k, status) => k -> status.responseStatus }
-        responseCallback(produceResponseStatus)
+        flushedResponseCallback(produceResponseStatus)
       }
     } else {
       // If required.acks is outside accepted range, something is wrong with the client
@@ -624,6 +634,26 @@ class ReplicaManager(val config: KafkaConfig,
     }
   }
 
+  /**
+   * Wrap a produce response callback to respond once the flushes of the logs requested by the appends are complete.
+   * The partitions whose log could not be flushed are answered with the error of the flush.
+   */
+  private def afterFlushes(flushCompletions: Map[TopicPartition, CompletableFuture[Void]],
+                           responseCallback: Map[TopicPartition, PartitionResponse] => Unit): Map[TopicPartition, PartitionResponse] => Unit = {
+    responseStatus =>
+      CompletableFuture.allOf(flushCompletions.values.toSeq: _*).whenComplete { (_, _) =>
+        val flushedResponseStatus = responseStatus.map { case (topicPartition, status) =>
+          val flushError = flushCompletions.get(topicPartition).flatMap(flush => Try(flush.get).failed.toOption)
+          flushError match {
+            case Some(e: ExecutionException) if status.error == Errors.NONE =>
+              topicPartition -> new PartitionResponse(Errors.forException(e.getCause))
+            case _ => topicPartition -> status
+          }
+        }
+        responseCallback(flushedResponseStatus)
+      }
+  }
+
   /**
    * Delete records on leader replicas of the partition, and wait for delete records operation be propagated to other replicas;
    * the callback function will be triggered either when timeout or logStartOffset of all live replicas have reached the specified offset
@@ -916,6 +946,7 @@ class ReplicaManager(val config: KafkaConfig,
                    _: RecordTooLargeException |
                    _: RecordBatchTooLargeException |
                    _: CorruptRecordException |
+                   _: UnsupportedCompressionTypeException |
                    _: KafkaStorageException) =>
             (topicPartition, LogAppendResult(LogAppendInfo.UnknownLogAppendInfo, Some(e)))
           case rve: RecordValidationException =>
@@ -953,6 +984,7 @@ class ReplicaManager(val config: KafkaConfig,
    * Fetch messages from a replica, and wait until enough data can be fetched and return;
    * the callback function will be triggered either when timeout or required fetch info is satisfied.
    * Consumers may fetch from any replica, but followers can only fetch from the leader.
+   * The records are read from the segments rather than the log tail cache unless `readFromTailCache` is set.
    */
   def fetchMessages(timeout: Long,
                     replicaId: Int,
@@ -963,7 +995,8 @@ class ReplicaManager(val config: KafkaConfig,
                     quota: ReplicaQuota,
                     responseCallback: Seq[(TopicPartition, FetchPartitionData)] => Unit,
                     isolationLevel: IsolationLevel,
-                    clientMetadata: Option[ClientMetadata]): Unit = {
+                    clientMetadata: Option[ClientMetadata],
+                    readFromTailCache: Boolean): Unit = {
     val isFromFollower = Request.isValidBrokerId(replicaId)
     val isFromConsumer = !(isFromFollower || replicaId == Request.FutureLocalReplicaId)
     val fetchIsolation = if (!isFromConsumer)
@@ -984,7 +1017,8 @@ class ReplicaManager(val config: KafkaConfig,
         hardMaxBytesLimit = hardMaxBytesLimit,
         readPartitionInfo = fetchInfos,
         quota = quota,
-        clientMetadata = clientMetadata)
+        clientMetadata = clientMetadata,
+        readFromTailCache = readFromTailCache)
       if (isFromFollower) updateFollowerFetchState(replicaId, result)
       else result
     }
@@ -1038,7 +1072,7 @@ class ReplicaManager(val config: KafkaConfig,
         })
       }
       val fetchMetadata: SFetchMetadata = SFetchMetadata(fetchMinBytes, fetchMaxBytes, hardMaxBytesLimit,
-        fetchOnlyFromLeader, fetchIsolation, isFromFollower, replicaId, fetchPartitionStatus)
+        fetchOnlyFromLeader, fetchIsolation, isFromFollower, replicaId, fetchPartitionStatus, readFromTailCache)
       val delayedFetch = new DelayedFetch(timeout, fetchMetadata, this, quota, clientMetadata,
         responseCallback)
 
@@ -1062,7 +1096,8 @@ class ReplicaManager(val config: KafkaConfig,
                        hardMaxBytesLimit: Boolean,
                        readPartitionInfo: Seq[(TopicPartition, PartitionData)],
                        quota: ReplicaQuota,
-                       clientMetadata: Option[ClientMetadata]): Seq[(TopicPartition, LogReadResult)] = {
+                       clientMetadata: Option[ClientMetadata],
+                       readFromTailCache: Boolean): Seq[(TopicPartition, LogReadResult)] = {
     val traceEnabled = isTraceEnabled
 
     def read(tp: TopicPartition, fetchInfo: PartitionData, limitBytes: Int, minOneMessage: Boolean): LogReadResult = {
@@ -1110,7 +1145,8 @@ class ReplicaManager(val config: KafkaConfig,
             maxBytes = adjustedMaxBytes,
             fetchIsolation = fetchIsolation,
             fetchOnlyFromLeader = fetchOnlyFromLeader,
-            minOneMessage = minOneMessage)
+            minOneMessage = minOneMessage,
+            readFromTailCache = readFromTailCache)
 
           val fetchDataInfo = if (shouldLeaderThrottle(quota, partition, replicaId)) {
             // If the partition is being throttled, simply return an empty set.
@@ -96,7 +96,11 @@ object DumpLogSegments {
 
   private def dumpProducerIdSnapshot(file: File): Unit = {
     try {
-      ProducerStateManager.readSnapshot(file).foreach { entry =>
+      val snapshot = ProducerStateManager.readSnapshotData(file)
+      snapshot.baseOffset.foreach { baseOffset =>
+        println(s"baseOffset: $baseOffset removedProducerIds: ${snapshot.removedProducerIds.mkString(",")}")
+      }
+      (snapshot.txnEntries ++ snapshot.entries).foreach { entry =>
         print(s"producerId: ${entry.producerId} producerEpoch: ${entry.producerEpoch} " +
           s"coordinatorEpoch: ${entry.coordinatorEpoch} currentTxnFirstOffset: ${entry.currentTxnFirstOffset} ")
         entry.batchMetadata.headOption.foreach { metadata =>
@@ -71,12 +71,12 @@ class SystemTimer(executorName: String,
     delayQueue
   )
 
-  // Locks used to protect data structures while ticking
-  private[this] val readWriteLock = new ReentrantReadWriteLock()
-  private[this] val readLock = readWriteLock.readLock()
-  private[this] val writeLock = readWriteLock.writeLock()
+  // Locks used to protect data structures while ticking. The lock is striped by thread so that threads adding
+  // tasks concurrently do not contend on the state of a single read lock, ticking takes the write lock of every stripe
+  private[this] val lockStripes = Array.fill(SystemTimer.LockStripes)(new ReentrantReadWriteLock())
 
   def add(timerTask: TimerTask): Unit = {
+    val readLock = lockStripes(Thread.currentThread.getId.toInt & (lockStripes.length - 1)).readLock()
     readLock.lock()
     try {
       addTimerTaskEntry(new TimerTaskEntry(timerTask, timerTask.delayMs + Time.SYSTEM.hiResClockMs))
@@ -100,7 +100,7 @@ class SystemTimer(executorName: String,
   def advanceClock(timeoutMs: Long): Boolean = {
     var bucket = delayQueue.poll(timeoutMs, TimeUnit.MILLISECONDS)
     if (bucket != null) {
-      writeLock.lock()
+      lockStripes.foreach(_.writeLock().lock())
       try {
         while (bucket != null) {
           timingWheel.advanceClock(bucket.getExpiration)
@@ -108,7 +108,7 @@ class SystemTimer(executorName: String,
           bucket = delayQueue.poll()
         }
       } finally {
-        writeLock.unlock()
+        lockStripes.reverseIterator.foreach(_.writeLock().unlock())
       }
       true
     } else {
@@ -123,3 +123,8 @@ class SystemTimer(executorName: String,
   }
 
 }
+
+object SystemTimer {
+  // the number of read lock stripes, a power of two so that a stripe is picked with a mask
+  private val LockStripes = Integer.highestOneBit(Math.min(Runtime.getRuntime.availableProcessors, 64))
+}
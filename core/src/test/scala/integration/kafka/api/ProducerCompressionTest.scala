@@ -17,6 +17,8 @@
 
 package kafka.api.test
 
+import java.io.File
+import java.nio.file.Files
 import java.util.{Collection, Collections, Properties}
 
 import scala.jdk.CollectionConverters._
@@ -24,27 +26,44 @@ import org.junit.runners.Parameterized
 import org.junit.runner.RunWith
 import org.junit.runners.Parameterized.Parameters
 import org.junit.{After, Before, Test}
+import org.apache.kafka.clients.consumer.{ConsumerConfig, KafkaConsumer}
 import org.apache.kafka.clients.producer.{KafkaProducer, ProducerConfig, ProducerRecord}
 import org.junit.Assert._
+import org.junit.Assume.assumeTrue
+import kafka.log.LogConfig
 import kafka.server.{KafkaConfig, KafkaServer}
 import kafka.zk.ZooKeeperTestHarness
 import kafka.utils.TestUtils
 import org.apache.kafka.common.TopicPartition
-import org.apache.kafka.common.serialization.ByteArraySerializer
+import org.apache.kafka.common.compress.ZstdDictionary
+import org.apache.kafka.common.errors.UnknownZstdDictionaryException
+import org.apache.kafka.common.record.{BufferSupplier, CompressionType}
+import org.apache.kafka.common.serialization.{ByteArrayDeserializer, ByteArraySerializer}
 
 @RunWith(value = classOf[Parameterized])
 class ProducerCompressionTest(compression: String) extends ZooKeeperTestHarness {
 
   private val brokerId = 0
   private val topic = "topic"
+  private val tp = new TopicPartition(topic, 0)
   private val numRecords = 2000
 
   private var server: KafkaServer = null
+  private var zstdDictionaryFile: File = null
+  private var zstdDictionaryId: Int = 0
 
   @Before
   override def setUp(): Unit = {
     super.setUp()
     val props = TestUtils.createBrokerConfig(brokerId, zkConnect)
+    if (compression == "zstd") {
+      val samples = (0 until 10000).map(i => s"value$i".getBytes).asJava
+      val zstdDictionary = ZstdDictionary.train(samples, 1024)
+      zstdDictionaryFile = TestUtils.tempFile()
+      Files.write(zstdDictionaryFile.toPath, zstdDictionary)
+      zstdDictionaryId = ZstdDictionary.load(zstdDictionary).id
+      props.put(KafkaConfig.ZstdDictionaryFilesProp, zstdDictionaryFile.getAbsolutePath)
+    }
     server = TestUtils.createServer(KafkaConfig.fromProps(props))
   }
 
@@ -61,48 +80,112 @@ class ProducerCompressionTest(compression: String) extends ZooKeeperTestHarness
    */
   @Test
   def testCompression(): Unit = {
+    TestUtils.createTopic(zkClient, topic, 1, 1, List(server))
+    val now = produceRecords(new Properties())
+    verifyConsumedRecords(new Properties(), now)
+  }
+
+  /**
+   * Messages compressed with the zstd dictionary of their topic should be able to sent and consumed correctly
+   */
+  @Test
+  def testCompressionWithZstdDictionary(): Unit = {
+    assumeTrue(compression == "zstd")
+    createZstdDictionaryTopic()
+    val now = produceRecords(zstdDictionaryProducerProps)
+
+    // the batches are written with the dictionary, and can't be decompressed without it
+    val batches = server.logManager.getLog(tp).get.logSegments.flatMap(_.log.batches.asScala)
+    assertFalse(batches.isEmpty)
+    batches.foreach { batch =>
+      assertEquals(CompressionType.ZSTD, batch.compressionType)
+      val e = assertThrows(classOf[UnknownZstdDictionaryException], () => batch.streamingIterator(BufferSupplier.NO_CACHING).close())
+      assertEquals(zstdDictionaryId, e.dictionaryId)
+    }
+
+    val consumerProps = new Properties()
+    consumerProps.put(ConsumerConfig.ZSTD_DICTIONARY_FILES_CONFIG, zstdDictionaryFile.getAbsolutePath)
+    verifyConsumedRecords(consumerProps, now)
+  }
+
+  /**
+   * Messages compressed with a zstd dictionary can't be consumed by a consumer which does not load it
+   */
+  @Test
+  def testConsumeWithoutZstdDictionary(): Unit = {
+    assumeTrue(compression == "zstd")
+    createZstdDictionaryTopic()
+    produceRecords(zstdDictionaryProducerProps)
+
+    val consumer = createConsumer(new Properties())
+    try {
+      consumer.assign(Collections.singleton(tp))
+      consumer.seek(tp, 0)
+      val e = assertThrows(classOf[UnknownZstdDictionaryException], () => TestUtils.consumeRecords(consumer, numRecords))
+      assertEquals(zstdDictionaryId, e.dictionaryId)
+    } finally {
+      consumer.close()
+    }
+  }
 
+  private def createZstdDictionaryTopic(): Unit = {
+    val topicConfig = new Properties()
+    topicConfig.put(LogConfig.ZstdDictionaryEnableProp, "true")
+    TestUtils.createTopic(zkClient, topic, 1, 1, List(server), topicConfig)
+  }
+
+  private def zstdDictionaryProducerProps: Properties = {
     val producerProps = new Properties()
-    val bootstrapServers = TestUtils.getBrokerListStrFromServers(Seq(server))
-    producerProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers)
+    producerProps.put(ProducerConfig.COMPRESSION_ZSTD_DICTIONARIES_CONFIG, s"$topic:${zstdDictionaryFile.getAbsolutePath}")
+    producerProps
+  }
+
+  /**
+   * Send the messages and make sure the returned offsets are correct, returning their timestamp
+   */
+  private def produceRecords(producerProps: Properties): Long = {
+    producerProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, TestUtils.getBrokerListStrFromServers(Seq(server)))
     producerProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression)
     producerProps.put(ProducerConfig.BATCH_SIZE_CONFIG, "66000")
     producerProps.put(ProducerConfig.LINGER_MS_CONFIG, "200")
     val producer = new KafkaProducer(producerProps, new ByteArraySerializer, new ByteArraySerializer)
-    val consumer = TestUtils.createConsumer(bootstrapServers)
 
     try {
-      // create topic
-      TestUtils.createTopic(zkClient, topic, 1, 1, List(server))
-      val partition = 0
-
-      // prepare the messages
-      val messageValues = (0 until numRecords).map(i => "value" + i)
-
-      // make sure the returned messages are correct
       val now = System.currentTimeMillis()
-      val responses = for (message <- messageValues)
-        yield producer.send(new ProducerRecord(topic, null, now, null, message.getBytes))
+      val responses = for (i <- 0 until numRecords)
+        yield producer.send(new ProducerRecord(topic, null, now, null, s"value$i".getBytes))
       for ((future, offset) <- responses.zipWithIndex) {
         assertEquals(offset.toLong, future.get.offset)
       }
+      now
+    } finally {
+      producer.close()
+    }
+  }
+
+  private def verifyConsumedRecords(consumerProps: Properties, timestamp: Long): Unit = {
+    val consumer = createConsumer(consumerProps)
 
-      val tp = new TopicPartition(topic, partition)
+    try {
       // make sure the fetched message count match
       consumer.assign(Collections.singleton(tp))
       consumer.seek(tp, 0)
       val records = TestUtils.consumeRecords(consumer, numRecords)
 
-      for (((messageValue, record), index) <- messageValues.zip(records).zipWithIndex) {
-        assertEquals(messageValue, new String(record.value))
-        assertEquals(now, record.timestamp)
+      for ((record, index) <- records.zipWithIndex) {
+        assertEquals(s"value$index", new String(record.value))
+        assertEquals(timestamp, record.timestamp)
         assertEquals(index.toLong, record.offset)
       }
     } finally {
-      producer.close()
       consumer.close()
     }
   }
+
+  private def createConsumer(consumerProps: Properties): KafkaConsumer[Array[Byte], Array[Byte]] = {
+    consumerProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, TestUtils.getBrokerListStrFromServers(Seq(server)))
+    new KafkaConsumer(consumerProps, new ByteArrayDeserializer, new ByteArrayDeserializer)
+  }
 }
 
 object ProducerCompressionTest {
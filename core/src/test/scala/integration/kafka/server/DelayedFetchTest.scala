@@ -196,7 +196,8 @@ class DelayedFetchTest extends EasyMockSupport {
       hardMaxBytesLimit = false,
       readPartitionInfo = Seq((topicPartition, fetchPartitionData)),
       clientMetadata = None,
-      quota = replicaQuota))
+      quota = replicaQuota,
+      readFromTailCache = true))
       .andReturn(Seq((topicPartition, buildReadResult(error))))
   }
 
@@ -115,9 +115,10 @@ class ApiVersionTest {
     assertEquals(KAFKA_2_7_IV1, ApiVersion("2.7-IV1"))
     assertEquals(KAFKA_2_7_IV2, ApiVersion("2.7-IV2"))
 
-    assertEquals(KAFKA_2_8_IV1, ApiVersion("2.8"))
+    assertEquals(KAFKA_2_8_IV2, ApiVersion("2.8"))
     assertEquals(KAFKA_2_8_IV0, ApiVersion("2.8-IV0"))
     assertEquals(KAFKA_2_8_IV1, ApiVersion("2.8-IV1"))
+    assertEquals(KAFKA_2_8_IV2, ApiVersion("2.8-IV2"))
   }
 
   @Test
@@ -86,7 +86,8 @@ class PartitionTest extends AbstractPartitionTest {
         maxBytes = Int.MaxValue,
         fetchIsolation = FetchLogEnd,
         fetchOnlyFromLeader = true,
-        minOneMessage = true
+        minOneMessage = true,
+        readFromTailCache = true
       )
     }
 
@@ -411,7 +412,8 @@ class PartitionTest extends AbstractPartitionTest {
           maxBytes = 1024,
           fetchIsolation = FetchLogEnd,
           fetchOnlyFromLeader = true,
-          minOneMessage = false)
+          minOneMessage = false,
+          readFromTailCache = true)
         if (error != Errors.NONE)
           fail(s"Expected readRecords to fail with error $error")
       } catch {
@@ -442,7 +444,8 @@ class PartitionTest extends AbstractPartitionTest {
           maxBytes = 1024,
           fetchIsolation = FetchLogEnd,
           fetchOnlyFromLeader = fetchOnlyLeader,
-          minOneMessage = false)
+          minOneMessage = false,
+          readFromTailCache = true)
         if (error != Errors.NONE)
           fail(s"Expected readRecords to fail with error $error")
       } catch {
@@ -90,6 +90,7 @@ abstract class AbstractLogCleanerIntegrationTest {
                   segmentSize: Int = defaultSegmentSize,
                   maxCompactionLagMs: Long = defaultMaxCompactionLagMs,
                   cleanerIoBufferSize: Option[Int] = None,
+                  threadsPerLog: Int = 1,
                   propertyOverrides: Properties = new Properties()): LogCleaner = {
 
     val logMap = new Pool[TopicPartition, Log]()
@@ -122,7 +123,8 @@ abstract class AbstractLogCleanerIntegrationTest {
       numThreads = numThreads,
       ioBufferSize = cleanerIoBufferSize.getOrElse(maxMessageSize / 2),
       maxMessageSize = maxMessageSize,
-      backOffMs = backOffMs)
+      backOffMs = backOffMs,
+      threadsPerLog = threadsPerLog)
     new LogCleaner(cleanerConfig,
       logDirs = Array(logDir),
       logs = logMap,
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.io.File
+import java.util.Properties
+
+import kafka.utils.{MockTime, TestUtils}
+import org.apache.kafka.common.TopicPartition
+import org.apache.kafka.common.utils.Utils
+import org.junit.Assert._
+import org.junit.{After, Before, Test}
+
+class IndexWarmerTest {
+
+  val time = new MockTime()
+  val logProps = new Properties()
+  logProps.put(LogConfig.SegmentIndexBytesProp, 4096: java.lang.Integer)
+  val logConfig = LogConfig(logProps)
+  var logDir: File = null
+  var logManager: LogManager = null
+
+  @Before
+  def setUp(): Unit = {
+    logDir = TestUtils.tempDir()
+    logManager = TestUtils.createLogManager(Seq(logDir), time = time)
+    logManager.startup()
+  }
+
+  @After
+  def tearDown(): Unit = {
+    TestUtils.clearYammerMetrics()
+    if (logManager != null)
+      logManager.shutdown()
+    Utils.delete(logDir)
+  }
+
+  @Test
+  def testWarmSectionIsPassedToTheIndexesOfTheLogs(): Unit = {
+    val log = logManager.getOrCreateLog(new TopicPartition("kafka", 0), () => logConfig)
+    assertEquals(AbstractIndex.DefaultWarmSectionBytes, log.activeSegment.offsetIndex.warmSectionBytes)
+    logManager.shutdown()
+
+    logManager = TestUtils.createLogManager(Seq(logDir), time = time, indexWarmSectionBytes = 64 * 1024)
+    logManager.startup()
+    val reloadedLog = logManager.getLog(new TopicPartition("kafka", 0)).get
+    assertEquals(64 * 1024, reloadedLog.activeSegment.offsetIndex.warmSectionBytes)
+    assertEquals(64 * 1024, reloadedLog.activeSegment.timeIndex.warmSectionBytes)
+    reloadedLog.roll()
+    assertEquals(64 * 1024, reloadedLog.activeSegment.offsetIndex.warmSectionBytes)
+    val otherLog = logManager.getOrCreateLog(new TopicPartition("kafka", 1), () => logConfig)
+    assertEquals(64 * 1024, otherLog.activeSegment.offsetIndex.warmSectionBytes)
+  }
+
+  @Test
+  def testWarmAllTouchesLoadedIndexesOfActiveSegments(): Unit = {
+    val log0 = logManager.getOrCreateLog(new TopicPartition("kafka", 0), () => logConfig)
+    val log1 = logManager.getOrCreateLog(new TopicPartition("kafka", 1), () => logConfig)
+    for (i <- 0 until 10) {
+      log0.appendAsLeader(TestUtils.singletonRecords(s"value-$i".getBytes), leaderEpoch = 0)
+      log1.appendAsLeader(TestUtils.singletonRecords(s"value-$i".getBytes), leaderEpoch = 0)
+    }
+
+    val warmer = new IndexWarmer(IndexWarmerConfig(enableWarmer = true), logManager, time)
+    warmer.warmAll()
+    // one offset index and one time index for the active segment of each log
+    assertEquals(4, TestUtils.meterCount("WarmedIndexesPerSec"))
+
+    // the active segment of a rolled log has not loaded its indexes yet
+    log0.roll()
+    assertFalse(log0.activeSegment.lazyOffsetIndex.getIfLoaded.isDefined)
+    warmer.warmAll()
+    assertEquals(6, TestUtils.meterCount("WarmedIndexesPerSec"))
+    warmer.shutdown()
+  }
+}
@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.nio.ByteBuffer
+
+import org.apache.kafka.common.TopicPartition
+import org.apache.kafka.common.record.{CompressionType, ControlRecordType, EndTransactionMarker, MemoryRecords, RecordBatch, SimpleRecord}
+import org.junit.Assert._
+import org.junit.Test
+
+import scala.jdk.CollectionConverters._
+
+class KeySummaryTest {
+
+  @Test
+  def testSummaryOfRetainedRebuiltAndRemovedBatches(): Unit = {
+    val retained = batch(0L, ("a", "1"), ("b", null))
+    val rebuilt = batch(2L, ("c", "1"), ("d", "1"))
+    val removed = batch(4L, ("e", "1"))
+    val builder = new SegmentKeySummary.Builder
+
+    builder.startBatch(retained)
+    builder.addRecord(key("a"), hasValue = true, retained = true)
+    builder.addRecord(key("b"), hasValue = false, retained = true)
+    builder.startBatch(rebuilt)
+    builder.addRecord(key("c"), hasValue = true, retained = false)
+    builder.addRecord(key("d"), hasValue = true, retained = true)
+    builder.startBatch(removed)
+    builder.addRecord(key("e"), hasValue = true, retained = false)
+    builder.resolve(Map(2L -> 42L))
+    val summary = builder.build()
+
+    assertEquals(2, summary.numBatches)
+    val retainedIndex = summary.indexOf(retained)
+    assertEquals(0, retainedIndex)
+    assertEquals(Seq(key("a"), key("b")).map(SegmentKeySummary.fingerprint),
+      (0 until summary.numFingerprints(retainedIndex)).map(summary.fingerprint(retainedIndex, _)))
+    assertTrue(summary.hasTombstones(retainedIndex))
+    assertFalse(summary.hasUnkeyedRecords(retainedIndex))
+
+    // the rebuilt batch is summarized with the checksum it was rebuilt with
+    assertEquals(-1, summary.indexOf(rebuilt))
+    assertEquals(Seq(SegmentKeySummary.fingerprint(key("d"))), Seq(summary.fingerprint(1, 0)))
+    assertFalse(summary.hasTombstones(1))
+    assertEquals(-1, summary.indexOf(removed))
+  }
+
+  @Test
+  def testSummaryOfBatchRetainedWithoutReadingIt(): Unit = {
+    val source = batch(0L, ("a", "1"), (null, "1"))
+    val sourceBuilder = new SegmentKeySummary.Builder
+    sourceBuilder.startBatch(source)
+    sourceBuilder.addRecord(key("a"), hasValue = true, retained = true)
+    sourceBuilder.addRecord(null, hasValue = true, retained = true)
+    val sourceSummary = sourceBuilder.build()
+    assertTrue(sourceSummary.hasUnkeyedRecords(0))
+
+    val builder = new SegmentKeySummary.Builder
+    builder.startBatch(source)
+    builder.addRecords(sourceSummary, sourceSummary.indexOf(source), 2)
+    val summary = builder.build()
+    assertEquals(0, summary.indexOf(source))
+    assertEquals(1, summary.numFingerprints(0))
+    assertTrue(summary.hasUnkeyedRecords(0))
+  }
+
+  @Test
+  def testBatchOfSameBaseOffsetWithOtherChecksumIsNotSummarized(): Unit = {
+    val builder = new SegmentKeySummary.Builder
+    builder.startBatch(batch(0L, ("a", "1")))
+    builder.addRecord(key("a"), hasValue = true, retained = true)
+    val summary = builder.build()
+
+    assertEquals(0, summary.indexOf(batch(0L, ("a", "1"))))
+    assertEquals(-1, summary.indexOf(batch(0L, ("b", "1"))))
+    assertEquals(-1, summary.indexOf(batch(1L, ("a", "1"))))
+  }
+
+  @Test
+  def testControlBatchIsNotSummarized(): Unit = {
+    val marker = MemoryRecords.withEndTransactionMarker(0L, 0L, 0, 1L, 0.toShort,
+      new EndTransactionMarker(ControlRecordType.COMMIT, 0))
+    val builder = new SegmentKeySummary.Builder
+    builder.startBatch(marker.batches.asScala.head)
+    builder.addRecord(null, hasValue = true, retained = true)
+    assertEquals(0, builder.build().numBatches)
+  }
+
+  @Test
+  def testKeyFingerprintFilter(): Unit = {
+    val filter = new KeyFingerprintFilter(1000)
+    assertEquals(Long.MaxValue, filter.minOffset)
+    (0 until 1000).foreach(i => filter.add(key(i.toString), 100L + i))
+
+    assertEquals(100L, filter.minOffset)
+    (0 until 1000).foreach(i => assertTrue(filter.mightContain(SegmentKeySummary.fingerprint(key(i.toString)))))
+    val falsePositives = (1000 until 11000).count(i => filter.mightContain(SegmentKeySummary.fingerprint(key(i.toString))))
+    assertTrue(s"$falsePositives false positives", falsePositives < 100)
+
+    filter.clear()
+    assertEquals(Long.MaxValue, filter.minOffset)
+    assertFalse(filter.mightContain(SegmentKeySummary.fingerprint(key("0"))))
+  }
+
+  @Test
+  def testKeySummaryCacheEvictsLeastRecentlyUsedSummaries(): Unit = {
+    val summary = summaryOfKeys(100)
+    val cache = new KeySummaryCache(summary.sizeInBytes * 2)
+    val tp0 = new TopicPartition("topic", 0)
+    val tp1 = new TopicPartition("topic", 1)
+
+    cache.put(tp0, 0L, summary)
+    cache.put(tp1, 0L, summary)
+    assertEquals(summary.sizeInBytes * 2, cache.size)
+    assertTrue(cache.get(tp0, 0L).isDefined)
+
+    cache.put(tp0, 100L, summary)
+    assertTrue(cache.get(tp0, 0L).isDefined)
+    assertTrue(cache.get(tp1, 0L).isEmpty)
+    assertEquals(summary.sizeInBytes * 2, cache.size)
+
+    cache.remove(tp0, 0L)
+    assertEquals(summary.sizeInBytes, cache.size)
+
+    // a summary larger than the cache is not cached
+    cache.put(tp1, 0L, summaryOfKeys(1000))
+    assertTrue(cache.get(tp1, 0L).isEmpty)
+    assertEquals(summary.sizeInBytes, cache.size)
+  }
+
+  private def summaryOfKeys(numKeys: Int): SegmentKeySummary = {
+    val builder = new SegmentKeySummary.Builder
+    builder.startBatch(batch(0L, ("a", "1")))
+    (0 until numKeys).foreach(i => builder.addRecord(key(i.toString), hasValue = true, retained = true))
+    builder.build()
+  }
+
+  private def key(key: String): ByteBuffer = ByteBuffer.wrap(key.getBytes)
+
+  private def batch(baseOffset: Long, keysAndValues: (String, String)*): RecordBatch = {
+    val records = keysAndValues.map { case (k, v) =>
+      new SimpleRecord(0L, if (k == null) null else k.getBytes, if (v == null) null else v.getBytes)
+    }
+    MemoryRecords.withRecords(baseOffset, CompressionType.NONE, records: _*).batches.asScala.head
+  }
+}
@@ -88,6 +88,24 @@ class LogCleanerParameterizedIntegrationTest(compressionCodec: String) extends A
     assertFalse(checkpoints.contains(topicPartitions(0)))
   }
 
+  @Test
+  def testCleanerWithThreadsPerLog(): Unit = {
+    cleaner = makeCleaner(partitions = topicPartitions.take(1), threadsPerLog = 3)
+    val log = cleaner.logs.get(topicPartitions(0))
+
+    val appends = writeDups(numKeys = 100, numDups = 3, log = log, codec = codec)
+    val startSize = log.size
+    assertTrue(log.numberOfSegments > 3)
+    cleaner.startup()
+
+    val firstDirty = log.activeSegment.baseOffset
+    checkLastCleaned("log", 0, firstDirty)
+    val compactedSize = log.logSegments.map(_.size).sum
+    assertTrue(s"log should have been compacted: startSize=$startSize compactedSize=$compactedSize", startSize > compactedSize)
+
+    checkLogAfterAppendingDups(log, startSize, appends)
+  }
+
   @Test
   def testCleansCombinedCompactAndDeleteTopic(): Unit = {
     val logProps  = new Properties()
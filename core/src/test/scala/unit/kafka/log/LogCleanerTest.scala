@@ -25,7 +25,7 @@ import java.util.Properties
 import java.util.concurrent.{CountDownLatch, TimeUnit}
 
 import kafka.common._
-import kafka.server.{BrokerTopicStats, LogDirFailureChannel}
+import kafka.server.{BrokerTopicStats, FetchLogEnd, LogDirFailureChannel}
 import kafka.utils._
 import org.apache.kafka.common.TopicPartition
 import org.apache.kafka.common.errors.CorruptRecordException
@@ -90,6 +90,51 @@ class LogCleanerTest {
     assertEquals(expectedBytesRead, stats.bytesRead)
   }
 
+  @Test
+  def testCleanSegmentsRetainsUnchangedBatches(): Unit = {
+    val cleaner = makeCleaner(Int.MaxValue)
+    val logProps = new Properties()
+    logProps.put(LogConfig.SegmentBytesProp, 1024: java.lang.Integer)
+    logProps.put(LogConfig.IndexIntervalBytesProp, 1: java.lang.Integer)
+
+    val log = makeLog(config = LogConfig.fromProps(logConfig.originals, logProps))
+
+    // append compressed batches of three records until we have four segments
+    while (log.numberOfSegments < 4) {
+      val records = (0 until 3).map { i =>
+        val key = (log.logEndOffset + i).toString.getBytes
+        new SimpleRecord(time.milliseconds, key, key)
+      }
+      log.appendAsLeader(MemoryRecords.withRecords(CompressionType.GZIP, records: _*), leaderEpoch = 0)
+    }
+    val checksums = log.logSegments.flatMap(_.log.batches.asScala).map(batch => batch.baseOffset -> batch.checksum).toMap
+
+    // pretend we have the following keys, removing records of the second and fifth batches
+    val keys = immutable.ListSet(4L, 12L, 13L)
+    val map = new FakeOffsetMap(Int.MaxValue)
+    keys.foreach(k => map.put(key(k), Long.MaxValue))
+
+    val segments = log.logSegments.take(3).toSeq
+    val lastCleanedOffset = segments.last.readNextOffset
+    cleaner.cleanSegments(log, segments, map, 0L, new CleanerStats(), new CleanedTransactionMetadata)
+    val shouldRemain = (0L until log.logEndOffset).filter(!keys.contains(_))
+    assertEquals(shouldRemain.toList, LogTest.keysInLog(log).toList)
+
+    // the batches without removed records are retained as they are, the others are rebuilt
+    val cleanedBatches = log.logSegments.flatMap(_.log.batches.asScala).filter(_.baseOffset < lastCleanedOffset)
+    cleanedBatches.foreach { batch =>
+      val unchanged = !keys.exists(k => k >= batch.baseOffset && k <= batch.lastOffset)
+      assertEquals(s"Batch $batch", unchanged, checksums(batch.baseOffset) == batch.checksum)
+    }
+
+    // the index of the cleaned segment locates every retained record
+    shouldRemain.filter(_ < lastCleanedOffset).foreach { offset =>
+      val read = log.read(offset, 1, FetchLogEnd, minOneMessage = true)
+      val batch = read.records.batches.asScala.head
+      assertTrue(s"Read of offset $offset", batch.baseOffset <= offset && offset <= batch.lastOffset)
+    }
+  }
+
   @Test
   def testCleanSegmentsWithConcurrentSegmentDeletion(): Unit = {
     val deleteStartLatch = new CountDownLatch(1)
@@ -1470,6 +1515,202 @@ class LogCleanerTest {
     assertEquals(4, stats.mapMessagesRead)
   }
 
+  @Test
+  def testParallelBuildPartialOffsetMap(): Unit = {
+    val log = makeLog()
+    writeToLog(log, (0 until 100).map(i => (i, i)))
+    log.roll()
+    assertTrue(log.numberOfSegments > 5)
+
+    val serialCleaner = makeCleaner(40)
+    val parallelCleaner = makeCleaner(40, threadsPerLog = 3)
+    try {
+      serialCleaner.buildOffsetMap(log, 10, log.activeSegment.baseOffset, serialCleaner.offsetMap, new CleanerStats())
+      parallelCleaner.buildOffsetMap(log, 10, log.activeSegment.baseOffset, parallelCleaner.offsetMap, new CleanerStats())
+      val serialMap = serialCleaner.offsetMap.asInstanceOf[FakeOffsetMap]
+      val parallelMap = parallelCleaner.offsetMap.asInstanceOf[FakeOffsetMap]
+      // the map is filled with the same keys, up to the same offset
+      assertEquals(30, parallelMap.size)
+      assertEquals(serialMap.map, parallelMap.map)
+      assertEquals(serialMap.latestOffset, parallelMap.latestOffset)
+    } finally parallelCleaner.close()
+  }
+
+  @Test
+  def testParallelCleaningMatchesSerialCleaning(): Unit = {
+    val logProps = new Properties()
+    logProps.put(LogConfig.SegmentBytesProp, 256: java.lang.Integer)
+    val config = LogConfig.fromProps(logConfig.originals, logProps)
+    val serialLog = makeLog(config = config)
+    val parallelLog = makeLog(dir = TestUtils.randomPartitionLogDir(tmpdir), config = config)
+
+    // transactions which are committed or aborted in later segments than their records
+    def appendRecords(log: Log, seed: Int): Unit = {
+      val random = new scala.util.Random(seed)
+      val producerEpoch = 0.toShort
+      val producers = (1L to 3L).map(_ + seed * 10).map { producerId =>
+        producerId -> appendTransactionalAsLeader(log, producerId, producerEpoch)
+      }.toMap
+      val ongoing = mutable.Set.empty[Long]
+      for (_ <- 0 until 300) {
+        val producer = random.nextInt(4)
+        val producerId = producer + seed * 10L
+        if (producer == 0)
+          log.appendAsLeader(record(random.nextInt(20), random.nextInt()), leaderEpoch = 0)
+        else if (ongoing.contains(producerId) && random.nextInt(4) == 0) {
+          val marker = if (random.nextBoolean()) commitMarker(producerId, producerEpoch) else abortMarker(producerId, producerEpoch)
+          log.appendAsLeader(marker, leaderEpoch = 0, origin = AppendOrigin.Coordinator)
+          ongoing -= producerId
+        } else {
+          producers(producerId)(Seq(random.nextInt(20), random.nextInt(20)))
+          ongoing += producerId
+        }
+      }
+      ongoing.foreach { producerId =>
+        log.appendAsLeader(commitMarker(producerId, producerEpoch), leaderEpoch = 0, origin = AppendOrigin.Coordinator)
+      }
+      log.roll()
+    }
+
+    def batchesInLog(log: Log): Iterable[(Long, Long, Boolean, Seq[Long])] =
+      for (segment <- log.logSegments; batch <- segment.log.batches.asScala)
+        yield (batch.baseOffset, batch.lastOffset, batch.isControlBatch, batch.asScala.map(_.offset).toSeq)
+
+    val serialCleaner = makeCleaner(Int.MaxValue)
+    val parallelCleaner = makeCleaner(Int.MaxValue, threadsPerLog = 3)
+    try {
+      var serialDirtyOffset = 0L
+      var parallelDirtyOffset = 0L
+      for ((seed, deleteHorizonMs) <- Seq((1, Long.MaxValue), (2, 0L), (3, Long.MaxValue))) {
+        appendRecords(serialLog, seed)
+        appendRecords(parallelLog, seed)
+        assertTrue(parallelLog.numberOfSegments > 10)
+        serialDirtyOffset = serialCleaner.doClean(LogToClean(serialLog.topicPartition, serialLog, serialDirtyOffset,
+          serialLog.activeSegment.baseOffset), deleteHorizonMs)._1
+        val (dirtyOffset, stats) = parallelCleaner.doClean(LogToClean(parallelLog.topicPartition, parallelLog,
+          parallelDirtyOffset, parallelLog.activeSegment.baseOffset), deleteHorizonMs)
+        parallelDirtyOffset = dirtyOffset
+
+        assertEquals(serialDirtyOffset, parallelDirtyOffset)
+        assertEquals(batchesInLog(serialLog), batchesInLog(parallelLog))
+        assertEquals(serialLog.collectAbortedTransactions(0L, serialLog.logEndOffset),
+          parallelLog.collectAbortedTransactions(0L, parallelLog.logEndOffset))
+        assertEquals(parallelLog.logSegments.map(_.size.toLong).sum, stats.bytesWritten)
+      }
+    } finally parallelCleaner.close()
+  }
+
+  @Test
+  def testCleaningWithKeySummariesMatchesCleaningWithout(): Unit = {
+    val logProps = new Properties()
+    logProps.put(LogConfig.SegmentBytesProp, 2048: java.lang.Integer)
+    val config = LogConfig.fromProps(logConfig.originals, logProps)
+    val log = makeLog(config = config)
+    val summarizedLog = makeLog(dir = TestUtils.randomPartitionLogDir(tmpdir), config = config)
+
+    // batches of records with random keys, some of them tombstones, and transactions
+    def appendRecords(log: Log, seed: Int, numBatches: Int, numKeys: Int): Unit = {
+      val random = new scala.util.Random(seed)
+      val producerId = seed.toLong
+      val transactional = appendTransactionalAsLeader(log, producerId, producerEpoch = 0)
+      for (_ <- 0 until numBatches) {
+        random.nextInt(10) match {
+          case 0 =>
+            transactional(Seq(random.nextInt(numKeys), random.nextInt(numKeys)))
+            val marker = if (random.nextBoolean()) commitMarker(producerId, 0) else abortMarker(producerId, 0)
+            log.appendAsLeader(marker, leaderEpoch = 0, origin = AppendOrigin.Coordinator)
+          case i =>
+            val records = (0 until 3).map { _ =>
+              val key = random.nextInt(numKeys).toString.getBytes
+              new SimpleRecord(time.milliseconds, key, if (random.nextInt(20) == 0) null else key)
+            }
+            val compression = if (i % 2 == 0) CompressionType.GZIP else CompressionType.NONE
+            log.appendAsLeader(MemoryRecords.withRecords(compression, records: _*), leaderEpoch = 0)
+        }
+      }
+      log.roll()
+    }
+
+    def batchesInLog(log: Log): Iterable[(Long, Long, Long, Seq[Long])] =
+      for (segment <- log.logSegments; batch <- segment.log.batches.asScala)
+        yield (batch.baseOffset, batch.lastOffset, batch.checksum, batch.asScala.map(_.offset).toSeq)
+
+    val cleaner = makeCleaner(Int.MaxValue)
+    val keySummaries = new KeySummaryCache(1024 * 1024)
+    val summarizedCleaner = makeCleaner(10000, keySummaries = Some(keySummaries))
+    var dirtyOffset = 0L
+    var summarizedDirtyOffset = 0L
+    var messagesRetainedUnread = 0L
+    for ((seed, numBatches, deleteHorizonMs) <- Seq((1, 300, Long.MaxValue), (2, 20, Long.MaxValue), (3, 20, 0L),
+      (4, 50, Long.MaxValue))) {
+      appendRecords(log, seed, numBatches, numKeys = 1000)
+      appendRecords(summarizedLog, seed, numBatches, numKeys = 1000)
+      dirtyOffset = cleaner.doClean(LogToClean(log.topicPartition, log, dirtyOffset, log.activeSegment.baseOffset),
+        deleteHorizonMs)._1
+      val (summarizedCleanerDirtyOffset, stats) = summarizedCleaner.doClean(LogToClean(summarizedLog.topicPartition,
+        summarizedLog, summarizedDirtyOffset, summarizedLog.activeSegment.baseOffset), deleteHorizonMs)
+      summarizedDirtyOffset = summarizedCleanerDirtyOffset
+      messagesRetainedUnread += stats.messagesRetainedUnread
+
+      assertEquals(dirtyOffset, summarizedDirtyOffset)
+      assertEquals(batchesInLog(log), batchesInLog(summarizedLog))
+      assertTrue(keySummaries.size > 0)
+    }
+    // most of the batches of the cleaned segments have no updated key
+    assertTrue(s"Retained $messagesRetainedUnread messages without reading them", messagesRetainedUnread > 500)
+  }
+
+  @Test
+  def testKeySummaryOfTruncatedSegmentIsNotUsed(): Unit = {
+    val logProps = new Properties()
+    logProps.put(LogConfig.SegmentBytesProp, 2048: java.lang.Integer)
+    val log = makeLog(config = LogConfig.fromProps(logConfig.originals, logProps))
+    val keySummaries = new KeySummaryCache(1024 * 1024)
+    val cleaner = makeCleaner(10000, keySummaries = Some(keySummaries))
+
+    writeToLog(log, (0 until 20).map(i => (i, i)))
+    log.roll()
+    val dirtyOffset = cleaner.doClean(LogToClean(log.topicPartition, log, 0L, log.activeSegment.baseOffset), Long.MaxValue)._1
+    assertEquals(20L, dirtyOffset)
+    assertTrue(keySummaries.get(log.topicPartition, 0L).isDefined)
+
+    // replace the records of the cleaned segment above offset 10 with records of other keys
+    log.truncateTo(10)
+    writeToLog(log, (10 until 20).map(i => (i + 100, i)))
+    writeToLog(log, (10 until 20).map(i => (i, i)))
+    log.roll()
+    val (_, stats) = cleaner.doClean(LogToClean(log.topicPartition, log, 20L, log.activeSegment.baseOffset), Long.MaxValue)
+
+    // the batches of the keys rewritten above offset 20 are removed, the others are retained
+    assertEquals(((0 until 10) ++ (110 until 120) ++ (10 until 20)).map(_.toLong), LogTest.keysInLog(log).toSeq)
+    assertEquals(10L, stats.messagesRetainedUnread)
+  }
+
+  @Test
+  def testParallelCleaningAbortedByOneSegmentTask(): Unit = {
+    // abort the cleaning once a group of segments is being cleaned into a new segment
+    def isCleaningSegments: Boolean = dir.listFiles.exists(_.getName.endsWith(Log.CleanedFileSuffix))
+    val cleaner = makeCleaner(Int.MaxValue, checkDone = _ => if (isCleaningSegments) throw new LogCleaningAbortedException(),
+      threadsPerLog = 3)
+    try {
+      val logProps = new Properties()
+      logProps.put(LogConfig.SegmentBytesProp, 256: java.lang.Integer)
+      val log = makeLog(config = LogConfig.fromProps(logConfig.originals, logProps))
+      writeToLog(log, (0 until 100).map(i => (i % 10, i)))
+      log.roll()
+      val keys = LogTest.keysInLog(log)
+      val segments = log.logSegments.toSeq
+
+      assertThrows(classOf[LogCleaningAbortedException], () =>
+        cleaner.doClean(LogToClean(log.topicPartition, log, 0L, log.activeSegment.baseOffset), Long.MaxValue)
+      )
+      // no group of segments was swapped into the log
+      assertFalse(isCleaningSegments)
+      assertEquals(segments, log.logSegments.toSeq)
+      assertEquals(keys, LogTest.keysInLog(log))
+    } finally cleaner.close()
+  }
+
   /**
    * This test verifies that messages corrupted by KAFKA-4298 are fixed by the cleaner
    */
@@ -1621,6 +1862,7 @@ class LogCleanerTest {
       checkGauge("max-buffer-utilization-percent")
       checkGauge("max-clean-time-secs")
       checkGauge("max-compaction-delay-secs")
+      checkGauge("max-log-cleaning-parallelism-percent")
     } finally logCleaner.shutdown()
   }
 
@@ -1666,7 +1908,8 @@ class LogCleanerTest {
       producerIdExpirationCheckIntervalMs = LogManager.ProducerIdExpirationCheckIntervalMs,
       logDirFailureChannel = new LogDirFailureChannel(10))
 
-  private def makeCleaner(capacity: Int, checkDone: TopicPartition => Unit = _ => (), maxMessageSize: Int = 64*1024) =
+  private def makeCleaner(capacity: Int, checkDone: TopicPartition => Unit = _ => (), maxMessageSize: Int = 64*1024,
+                          threadsPerLog: Int = 1, keySummaries: Option[KeySummaryCache] = None) =
     new Cleaner(id = 0,
                 offsetMap = new FakeOffsetMap(capacity),
                 ioBufferSize = maxMessageSize,
@@ -1674,7 +1917,9 @@ class LogCleanerTest {
                 dupBufferLoadFactor = 0.75,
                 throttler = throttler,
                 time = time,
-                checkDone = checkDone)
+                checkDone = checkDone,
+                threadsPerLog = threadsPerLog,
+                keySummaries = keySummaries)
 
   private def writeToLog(log: Log, seq: Iterable[(Int, Int)]): Iterable[Long] = {
     for ((key, value) <- seq) yield log.appendAsLeader(record(key, value), leaderEpoch = 0).firstOffset.get
@@ -1776,5 +2021,8 @@ class FakeOffsetMap(val slots: Int) extends OffsetMap {
     lastOffset = offset
   }
 
+  // the entries are only read while the map is not modified
+  override def reader(): OffsetMap = this
+
   override def toString: String = map.toString
 }
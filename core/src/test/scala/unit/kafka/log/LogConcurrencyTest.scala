@@ -61,6 +61,14 @@ class LogConcurrencyTest {
     testUncommittedDataNotConsumed(createLog(logConfig))
   }
 
+  @Test
+  def testUncommittedDataNotConsumedFromTailCache(): Unit = {
+    val tailCache = new LogTailCache(16 * 1024, 4096)
+    try testUncommittedDataNotConsumed(createLog(tailCache = Some(tailCache)))
+    finally tailCache.close()
+    assertTrue(tailCache.hitCount > 0)
+  }
+
   def testUncommittedDataNotConsumed(log: Log): Unit = {
     val executor = Executors.newFixedThreadPool(2)
     try {
@@ -140,7 +148,8 @@ class LogConcurrencyTest {
     }
   }
 
-  private def createLog(config: LogConfig = LogConfig(new Properties())): Log = {
+  private def createLog(config: LogConfig = LogConfig(new Properties()),
+                        tailCache: Option[LogTailCache] = None): Log = {
     Log(dir = logDir,
       config = config,
       logStartOffset = 0L,
@@ -150,7 +159,8 @@ class LogConcurrencyTest {
       time = Time.SYSTEM,
       maxProducerIdExpirationMs = 60 * 60 * 1000,
       producerIdExpirationCheckIntervalMs = LogManager.ProducerIdExpirationCheckIntervalMs,
-      logDirFailureChannel = new LogDirFailureChannel(10))
+      logDirFailureChannel = new LogDirFailureChannel(10),
+      tailCache = tailCache)
   }
 
   private def validateConsumedData(log: Log, consumedBatches: Iterable[FetchedBatch]): Unit = {
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.io.File
+
+import kafka.utils.MockTime
+import org.junit.Assert._
+import org.junit.Test
+
+class LogDirRecoveryTest {
+
+  private val time = new MockTime()
+  private val logDir = new File("data")
+
+  @Test
+  def testEstimatedTimeRemainingFromRecoveredBytes(): Unit = {
+    val recovery = new LogDirRecovery(logDir, numLogs = 4, segmentRecoveryThreads = 0, time)
+    assertEquals(-1L, recovery.estimatedTimeRemainingMs)
+
+    recovery.logRecoveryStarted(numSegments = 4, bytes = 4000)
+    recovery.logRecoveryStarted(numSegments = 4, bytes = 4000)
+    assertEquals(8L, recovery.remainingSegments)
+
+    // 1000 of an estimated 16000 bytes recovered in 100ms
+    time.sleep(100)
+    recovery.segmentsRecovered(numSegments = 1, bytes = 1000)
+    assertEquals(7L, recovery.remainingSegments)
+    assertEquals(1500L, recovery.estimatedTimeRemainingMs)
+
+    recovery.segmentsRecovered(numSegments = 7, bytes = 7000)
+    recovery.logLoaded()
+    recovery.logLoaded()
+    assertEquals(0L, recovery.remainingSegments)
+    assertEquals(2, recovery.remainingLogs)
+    assertEquals(100L, recovery.estimatedTimeRemainingMs)
+
+    recovery.logLoaded()
+    recovery.logLoaded()
+    assertEquals(0, recovery.remainingLogs)
+    assertEquals(0L, recovery.estimatedTimeRemainingMs)
+    recovery.close()
+  }
+
+  @Test
+  def testEstimatedTimeRemainingWithoutRecovery(): Unit = {
+    val recovery = new LogDirRecovery(logDir, numLogs = 3, segmentRecoveryThreads = 0, time)
+    assertEquals(None, recovery.segmentRecoveryExecutor)
+    time.sleep(30)
+    assertEquals(1, recovery.logLoaded())
+    assertEquals(60L, recovery.estimatedTimeRemainingMs)
+    assertEquals(0L, recovery.remainingSegments)
+    recovery.close()
+  }
+
+  @Test
+  def testSegmentRecoveryExecutor(): Unit = {
+    val recovery = new LogDirRecovery(logDir, numLogs = 1, segmentRecoveryThreads = 2, time)
+    assertTrue(recovery.segmentRecoveryExecutor.isDefined)
+    assertEquals(2, recovery.segmentRecoveryPipelineDepth)
+    recovery.close()
+    assertTrue(recovery.segmentRecoveryExecutor.get.isShutdown)
+  }
+}
@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.io.File
+import java.util.Properties
+import java.util.concurrent.ExecutionException
+
+import com.yammer.metrics.core.{Histogram, Timer}
+import kafka.metrics.KafkaYammerMetrics
+import kafka.server.BrokerTopicStats
+import kafka.utils.{MockTime, TestUtils}
+import org.apache.kafka.common.errors.KafkaStorageException
+import org.apache.kafka.common.record.SimpleRecord
+import org.apache.kafka.common.utils.Utils
+import org.junit.Assert._
+import org.junit.{After, Test}
+
+import scala.jdk.CollectionConverters._
+
+class LogFlushServiceTest {
+  private val tmpDir = TestUtils.tempDir()
+  private val mockTime = new MockTime()
+  private val brokerTopicStats = new BrokerTopicStats
+  private val flushService = new LogFlushService(tmpDir)
+
+  @After
+  def tearDown(): Unit = {
+    flushService.close()
+    brokerTopicStats.close()
+    Utils.delete(tmpDir)
+  }
+
+  @Test
+  def testFlushesOfALogAreCoalesced(): Unit = {
+    val log0 = createLog("topic-0")
+    val log1 = createLog("topic-1")
+    appendRecords(log0, 5)
+    appendRecords(log1, 5)
+
+    val flushes = Seq(flushService.requestFlush(log0, 2), flushService.requestFlush(log1, 3),
+      flushService.requestFlush(log0, 4), flushService.requestFlush(log0, 1))
+    assertFalse(flushes.exists(_.isDone))
+    assertEquals(0L, log0.recoveryPoint)
+
+    flushService.doWork()
+    assertTrue(flushes.forall(flush => flush.isDone && !flush.isCompletedExceptionally))
+    assertEquals(4L, log0.recoveryPoint)
+    assertEquals(3L, log1.recoveryPoint)
+
+    val batchSize = metric[Histogram](LogFlushService.FlushBatchSizeMetricName)
+    assertEquals(1L, batchSize.count)
+    assertEquals(2.0, batchSize.max, 0.0)
+    assertEquals(2L, metric[Timer](LogFlushService.FsyncTimeMetricName).count)
+  }
+
+  @Test
+  def testAppendRequestsFlushAtFlushInterval(): Unit = {
+    val log = createLog("topic-0", flushInterval = 3)
+    assertEquals(None, appendRecords(log, 2).flushCompletion)
+
+    val flushCompletion = appendRecords(log, 1).flushCompletion
+    assertTrue(flushCompletion.isDefined)
+    assertFalse(flushCompletion.get.isDone)
+    assertEquals(0L, log.recoveryPoint)
+
+    flushService.doWork()
+    assertTrue(flushCompletion.get.isDone)
+    assertEquals(3L, log.recoveryPoint)
+    assertEquals(None, appendRecords(log, 1).flushCompletion)
+  }
+
+  @Test
+  def testRollRequestsFlush(): Unit = {
+    val log = createLog("topic-0")
+    appendRecords(log, 3)
+    log.roll()
+    assertEquals(0L, log.recoveryPoint)
+
+    flushService.doWork()
+    assertEquals(3L, log.recoveryPoint)
+  }
+
+  @Test
+  def testFailedFlushCompletesExceptionally(): Unit = {
+    val log = createLog("topic-0")
+    val otherLog = createLog("topic-1")
+    appendRecords(log, 3)
+    appendRecords(otherLog, 3)
+    log.closeHandlers()
+
+    val failedFlush = flushService.requestFlush(log, 3)
+    val flush = flushService.requestFlush(otherLog, 3)
+    flushService.doWork()
+    val e = assertThrows(classOf[ExecutionException], () => failedFlush.get)
+    assertTrue(e.getCause.isInstanceOf[KafkaStorageException])
+    assertFalse(flush.isCompletedExceptionally)
+    assertEquals(3L, otherLog.recoveryPoint)
+  }
+
+  @Test
+  def testCloseCompletesRequestedFlushes(): Unit = {
+    val log = createLog("topic-0")
+    appendRecords(log, 3)
+    val flush = flushService.requestFlush(log, 2)
+
+    flushService.close()
+    assertTrue(flush.isDone)
+    assertEquals(2L, log.recoveryPoint)
+    assertTrue(findMetric(LogFlushService.FlushBatchSizeMetricName).isEmpty)
+
+    // the log is flushed by the requesting thread once the service is closed
+    assertTrue(flushService.requestFlush(log, 3).isDone)
+    assertEquals(3L, log.recoveryPoint)
+  }
+
+  @Test
+  def testFlushesRequestedWhileRunning(): Unit = {
+    val logs = (0 until 4).map(i => createLog(s"topic-$i"))
+    flushService.start()
+    val flushes = for (_ <- 1 to 10; log <- logs) yield {
+      appendRecords(log, 1)
+      flushService.requestFlush(log, log.logEndOffset)
+    }
+    flushes.foreach(_.get)
+    logs.foreach(log => assertEquals(10L, log.recoveryPoint))
+  }
+
+  private def createLog(dirName: String, flushInterval: Long = Long.MaxValue): Log = {
+    val logProps = new Properties()
+    logProps.put(LogConfig.FlushMessagesProp, flushInterval: java.lang.Long)
+    LogTest.createLog(new File(tmpDir, dirName), LogConfig(logProps), brokerTopicStats, mockTime.scheduler, mockTime,
+      flushService = Some(flushService))
+  }
+
+  private def appendRecords(log: Log, numRecords: Int): LogAppendInfo = {
+    val records = (0 until numRecords).map(i => new SimpleRecord(mockTime.milliseconds, s"value-$i".getBytes))
+    log.appendAsLeader(TestUtils.records(records), leaderEpoch = 0)
+  }
+
+  private def findMetric(name: String): Option[Any] = KafkaYammerMetrics.defaultRegistry.allMetrics.asScala.collectFirst {
+    case (metricName, metric) if metricName.getName == name && metricName.getScope.contains(tmpDir.getName) => metric
+  }
+
+  private def metric[T](name: String): T =
+    findMetric(name).getOrElse(throw new AssertionError(s"No log flush service metric $name")).asInstanceOf[T]
+}
@@ -115,6 +115,32 @@ class LogSegmentTest {
     checkEquals(ms2.records.iterator, read.records.records.iterator)
   }
 
+  /**
+   * Records held in memory and in other files can be appended together, the index is updated as for one append
+   */
+  @Test
+  def testAppendAll(): Unit = {
+    val source = createSegment(40)
+    val ms = records(50, "hello", "there")
+    source.append(51, RecordBatch.NO_TIMESTAMP, -1L, ms)
+    val ms2 = records(52, "little", "bee")
+    source.append(53, RecordBatch.NO_TIMESTAMP, -1L, ms2)
+
+    val seg = createSegment(50)
+    val ms3 = records(54, "alpha", "beta")
+    seg.appendAll(55, 550L, 55L, List(source.log.slice(ms.sizeInBytes, ms2.sizeInBytes), ms3,
+      source.log.slice(0, ms.sizeInBytes)))
+    assertEquals(ms.sizeInBytes + ms2.sizeInBytes + ms3.sizeInBytes, seg.size)
+    assertEquals(550L, seg.maxTimestampSoFar)
+    assertEquals(55L, seg.offsetOfMaxTimestampSoFar)
+    checkEquals((ms2.records.asScala ++ ms3.records.asScala ++ ms.records.asScala).iterator.asJava,
+      seg.log.records.iterator)
+
+    val ms4 = records(56, "gamma")
+    seg.append(56, RecordBatch.NO_TIMESTAMP, -1L, ms4)
+    assertEquals(ms.sizeInBytes + ms2.sizeInBytes + ms3.sizeInBytes, seg.offsetIndex.lookup(56).position)
+  }
+
   /**
    * In a loop append two messages then truncate off the second of those messages and check that we can read
    * the first but not the second message.
@@ -371,6 +397,36 @@ class LogSegmentTest {
     assertEquals(100L, abortedTxn.lastStableOffset)
   }
 
+  @Test
+  def testRecoverIndexesAndProducerStateSeparately(): Unit = {
+    val segment = createSegment(100, indexIntervalBytes = 1)
+    val producerEpoch = 0.toShort
+    val pid = 5L
+
+    segment.append(largestOffset = 101L, largestTimestamp = RecordBatch.NO_TIMESTAMP,
+      shallowOffsetOfMaxTimestamp = 100L, records = MemoryRecords.withTransactionalRecords(100L, CompressionType.NONE,
+        pid, producerEpoch, 0, 15, new SimpleRecord("a".getBytes), new SimpleRecord("b".getBytes)))
+    segment.append(largestOffset = 103L, largestTimestamp = RecordBatch.NO_TIMESTAMP,
+      shallowOffsetOfMaxTimestamp = 102L, records = MemoryRecords.withRecords(102L, CompressionType.NONE,
+        15, new SimpleRecord("a".getBytes), new SimpleRecord("b".getBytes)))
+    segment.append(largestOffset = 104L, largestTimestamp = RecordBatch.NO_TIMESTAMP,
+      shallowOffsetOfMaxTimestamp = 104L, records = endTxnRecords(ControlRecordType.ABORT, pid, producerEpoch, offset = 104L))
+    val validBytes = segment.size
+    segment.append(105L, RecordBatch.NO_TIMESTAMP, -1L, records(105L, "corrupt"))
+    TestUtils.writeNonsenseToFile(segment.log.file, validBytes, 15)
+
+    // the indexes are rebuilt and the invalid bytes truncated without the producer state
+    assertTrue(segment.recoverIndexes() > 0)
+    assertEquals(validBytes, segment.size)
+    assertEquals(2, segment.offsetIndex.entries)
+    assertTrue(segment.txnIndex.allAbortedTxns.isEmpty)
+
+    val stateManager = new ProducerStateManager(topicPartition, logDir)
+    segment.recoverProducerState(stateManager)
+    assertEquals(105L, stateManager.mapEndOffset)
+    assertEquals(List(new AbortedTxn(pid, 100L, 104L, 105L)), segment.txnIndex.allAbortedTxns.toList)
+  }
+
   /**
    * Create a segment with some data, then recover the segment.
    * The epoch cache entries should reflect the segment.
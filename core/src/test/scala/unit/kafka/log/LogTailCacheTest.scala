@@ -0,0 +1,247 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.log
+
+import java.io.File
+
+import com.yammer.metrics.core.Gauge
+import kafka.metrics.KafkaYammerMetrics
+import kafka.server.{BrokerTopicStats, FetchDataInfo, FetchHighWatermark, FetchLogEnd}
+import kafka.utils.{MockTime, TestUtils}
+import org.apache.kafka.common.record.{FileRecords, MemoryRecords, Records, SimpleRecord}
+import org.apache.kafka.common.utils.Utils
+import org.junit.Assert._
+import org.junit.{After, Test}
+
+import scala.jdk.CollectionConverters._
+
+class LogTailCacheTest {
+  private val tmpDir = TestUtils.tempDir()
+  private val mockTime = new MockTime()
+  private val brokerTopicStats = new BrokerTopicStats
+  private val logConfig = LogTest.createLogConfig(segmentBytes = 1024 * 1024)
+  private var tailCache: LogTailCache = _
+
+  @After
+  def tearDown(): Unit = {
+    if (tailCache != null)
+      tailCache.close()
+    brokerTopicStats.close()
+    Utils.delete(tmpDir)
+  }
+
+  @Test
+  def testReadFromCacheMatchesReadFromSegment(): Unit = {
+    tailCache = new LogTailCache(64 * 1024, 4096)
+    val log = createLog("topic-0")
+    appendBatches(log, 20)
+
+    for (startOffset <- 0L until log.logEndOffset; maxLength <- Seq(0, 1, 100, 500, 100000)) {
+      val cached = log.read(startOffset, maxLength, FetchLogEnd, minOneMessage = true)
+      val fromSegment = log.activeSegment.read(startOffset, maxLength, log.activeSegment.size, minOneMessage = true)
+      assertTrue(cached.records.isInstanceOf[MemoryRecords])
+      assertFetchDataInfoEquals(fromSegment, cached)
+    }
+    assertEquals(0, tailCache.missCount)
+  }
+
+  @Test
+  def testReadBypassingCacheIsFromSegment(): Unit = {
+    tailCache = new LogTailCache(64 * 1024, 4096)
+    val log = createLog("topic-0")
+    appendBatches(log, 5)
+
+    val fetchDataInfo = log.read(0, Int.MaxValue, FetchLogEnd, minOneMessage = true, readFromTailCache = false)
+    assertTrue(fetchDataInfo.records.isInstanceOf[FileRecords])
+    assertFetchDataInfoEquals(log.read(0, Int.MaxValue, FetchLogEnd, minOneMessage = true), fetchDataInfo)
+    assertEquals(1, tailCache.hitCount)
+    assertEquals(0, tailCache.missCount)
+  }
+
+  @Test
+  def testReadIsBoundedByMaxOffset(): Unit = {
+    tailCache = new LogTailCache(64 * 1024, 4096)
+    val log = createLog("topic-0")
+    appendBatches(log, 10)
+    log.updateHighWatermark(6)
+
+    val fetchDataInfo = log.read(0, Int.MaxValue, FetchHighWatermark, minOneMessage = false)
+    assertTrue(fetchDataInfo.records.isInstanceOf[MemoryRecords])
+    assertEquals(Seq(0L, 2L, 4L), fetchDataInfo.records.batches.asScala.map(_.baseOffset).toSeq)
+  }
+
+  @Test
+  def testReadsAcrossBlocks(): Unit = {
+    tailCache = new LogTailCache(64 * 1024, 1024)
+    val log = createLog("topic-0")
+    appendBatches(log, 40)
+    assertTrue(tailCache.size > 1024)
+
+    // a read from the cache stops at the end of a block, the records of the block are those of the segment
+    var fetchOffset = 0L
+    while (fetchOffset < log.logEndOffset) {
+      val fetchDataInfo = log.read(fetchOffset, Int.MaxValue, FetchLogEnd, minOneMessage = true)
+      val batches = fetchDataInfo.records.batches.asScala.toSeq
+      assertFalse(batches.isEmpty)
+      assertEquals(fetchOffset, batches.head.baseOffset)
+      fetchOffset = batches.last.lastOffset + 1
+    }
+    assertEquals(0, tailCache.missCount)
+  }
+
+  @Test
+  def testRollClearsCache(): Unit = {
+    tailCache = new LogTailCache(64 * 1024, 4096)
+    val log = createLog("topic-0")
+    appendBatches(log, 5)
+    log.roll()
+    assertEquals(0, tailCache.size)
+
+    log.read(0, Int.MaxValue, FetchLogEnd, minOneMessage = true)
+    assertEquals(1, tailCache.missCount)
+
+    appendBatches(log, 5)
+    val fetchDataInfo = log.read(10, Int.MaxValue, FetchLogEnd, minOneMessage = true)
+    assertEquals(1, tailCache.hitCount)
+    assertEquals(log.activeSegment.baseOffset, fetchDataInfo.fetchOffsetMetadata.segmentBaseOffset)
+    assertEquals(0, fetchDataInfo.fetchOffsetMetadata.relativePositionInSegment)
+  }
+
+  @Test
+  def testTruncationClearsCache(): Unit = {
+    tailCache = new LogTailCache(64 * 1024, 4096)
+    val log = createLog("topic-0")
+    appendBatches(log, 5)
+    log.truncateTo(4)
+    assertEquals(0, tailCache.size)
+
+    appendBatches(log, 2)
+    val fetchDataInfo = log.read(4, Int.MaxValue, FetchLogEnd, minOneMessage = true)
+    assertEquals(1, tailCache.hitCount)
+    assertFetchDataInfoEquals(log.activeSegment.read(4, Int.MaxValue, log.activeSegment.size), fetchDataInfo)
+  }
+
+  @Test
+  def testLeastRecentlyReadBlockIsEvicted(): Unit = {
+    tailCache = new LogTailCache(2048, 1024)
+    val log0 = createLog("topic-0")
+    val log1 = createLog("topic-1")
+    appendBatches(log0, 1)
+    appendBatches(log1, 1)
+    assertEquals(2048, tailCache.size)
+
+    // the block of the first log is read, the block of the second log is evicted for the new block of the first log
+    log0.read(0, Int.MaxValue, FetchLogEnd, minOneMessage = true)
+    appendBatches(log0, 1, recordSize = 450)
+    assertEquals(2048, tailCache.size)
+
+    log0.read(0, Int.MaxValue, FetchLogEnd, minOneMessage = true)
+    log1.read(0, Int.MaxValue, FetchLogEnd, minOneMessage = true)
+    assertEquals(2, tailCache.hitCount)
+    assertEquals(1, tailCache.missCount)
+  }
+
+  @Test
+  def testReadRecordsUnchangedWhenBlockIsReused(): Unit = {
+    tailCache = new LogTailCache(2048, 1024)
+    val log0 = createLog("topic-0")
+    val log1 = createLog("topic-1")
+    appendBatches(log0, 1)
+    appendBatches(log1, 1)
+    val fetchDataInfo = log1.read(0, Int.MaxValue, FetchLogEnd, minOneMessage = true)
+    val expectedBytes = bytes(log1.activeSegment.read(0, Int.MaxValue, log1.activeSegment.size).records)
+
+    // the blocks of the second log are evicted and their buffers reused by the blocks of the first log
+    (0 until 4).foreach(_ => appendBatches(log0, 1, recordSize = 450))
+    assertEquals(2048, tailCache.size)
+    assertFalse(log1.read(0, Int.MaxValue, FetchLogEnd, minOneMessage = true).records.isInstanceOf[MemoryRecords])
+
+    // the records read before the eviction are unchanged, the records of the new blocks are those of the segment
+    assertEquals(expectedBytes, bytes(fetchDataInfo.records))
+    Seq(6L, 8L).foreach { fetchOffset =>
+      val cached = log0.read(fetchOffset, Int.MaxValue, FetchLogEnd, minOneMessage = true)
+      assertTrue(cached.records.isInstanceOf[MemoryRecords])
+      assertFetchDataInfoEquals(log0.activeSegment.read(fetchOffset, cached.records.sizeInBytes, log0.activeSegment.size),
+        cached)
+    }
+  }
+
+  @Test
+  def testAppendLargerThanBlockIsNotCached(): Unit = {
+    tailCache = new LogTailCache(64 * 1024, 1024)
+    val log = createLog("topic-0")
+    appendBatches(log, 1, recordSize = 2000)
+    assertEquals(0, tailCache.size)
+
+    log.read(0, Int.MaxValue, FetchLogEnd, minOneMessage = true)
+    assertEquals(1, tailCache.missCount)
+  }
+
+  @Test
+  def testHitRatioMetric(): Unit = {
+    tailCache = new LogTailCache(64 * 1024, 4096)
+    val log = createLog("topic-0")
+    appendBatches(log, 5)
+    log.roll()
+    appendBatches(log, 5)
+
+    log.read(0, Int.MaxValue, FetchLogEnd, minOneMessage = true)
+    (0 until 3).foreach(_ => log.read(12, Int.MaxValue, FetchLogEnd, minOneMessage = true))
+    assertEquals(0.75, gaugeValue(LogTailCache.HitRatioMetricName).asInstanceOf[Double], 0.0)
+    assertEquals(4096L, gaugeValue(LogTailCache.SizeMetricName))
+
+    tailCache.close()
+    assertTrue(tailCacheMetrics.isEmpty)
+    tailCache = null
+  }
+
+  private def createLog(dirName: String): Log =
+    LogTest.createLog(new File(tmpDir, dirName), logConfig, brokerTopicStats, mockTime.scheduler, mockTime,
+      tailCache = Some(tailCache))
+
+  private def appendBatches(log: Log, numBatches: Int, recordSize: Int = 10): Unit = {
+    (0 until numBatches).foreach { _ =>
+      val records = (0 until 2).map(_ => new SimpleRecord(mockTime.milliseconds, new Array[Byte](recordSize)))
+      log.appendAsLeader(TestUtils.records(records), leaderEpoch = 0)
+    }
+  }
+
+  private def assertFetchDataInfoEquals(expected: FetchDataInfo, actual: FetchDataInfo): Unit = {
+    assertEquals(expected.fetchOffsetMetadata, actual.fetchOffsetMetadata)
+    assertEquals(expected.firstEntryIncomplete, actual.firstEntryIncomplete)
+    assertEquals(bytes(expected.records), bytes(actual.records))
+  }
+
+  private def bytes(records: Records): Seq[Byte] = {
+    val buffer = java.nio.ByteBuffer.allocate(records.sizeInBytes)
+    records match {
+      case fileRecords: FileRecords => fileRecords.readInto(buffer, 0)
+      case memoryRecords: MemoryRecords => buffer.put(memoryRecords.buffer.duplicate())
+      case _ => throw new AssertionError(s"Unexpected records $records")
+    }
+    buffer.array.toSeq
+  }
+
+  private def tailCacheMetrics = KafkaYammerMetrics.defaultRegistry.allMetrics.asScala.filter { case (metricName, _) =>
+    metricName.getType == classOf[LogTailCache].getSimpleName
+  }
+
+  private def gaugeValue(name: String): Any = tailCacheMetrics.collectFirst {
+    case (metricName, gauge: Gauge[_]) if metricName.getName == name => gauge.value
+  }.getOrElse(throw new AssertionError(s"No log tail cache metric $name"))
+}
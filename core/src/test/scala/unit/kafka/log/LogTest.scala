@@ -32,6 +32,7 @@ import kafka.server.checkpoints.LeaderEpochCheckpointFile
 import kafka.server.epoch.{EpochEntry, LeaderEpochFileCache}
 import kafka.server.{BrokerState, BrokerTopicStats, FetchDataInfo, FetchHighWatermark, FetchIsolation, FetchLogEnd, FetchTxnCommitted, KafkaConfig, LogDirFailureChannel, LogOffsetMetadata, PartitionMetadataFile}
 import kafka.utils._
+import org.apache.kafka.common.compress.{ZstdDictionaries, ZstdDictionary}
 import org.apache.kafka.common.{InvalidRecordException, KafkaException, TopicPartition, Uuid}
 import org.apache.kafka.common.errors._
 import org.apache.kafka.common.record.FileRecords.TimestampAndOffset
@@ -101,7 +102,7 @@ class LogTest {
         brokerTopicStats = new BrokerTopicStats, logDirFailureChannel = new LogDirFailureChannel(logDirs.size)) {
 
          override def loadLog(logDir: File, hadCleanShutdown: Boolean, recoveryPoints: Map[TopicPartition, Long],
-                     logStartOffsets: Map[TopicPartition, Long]): Log = {
+                     logStartOffsets: Map[TopicPartition, Long], recovery: Option[LogDirRecovery]): Log = {
 
           val topicPartition = Log.parseTopicPartitionName(logDir)
           val config = topicConfigs.getOrElse(topicPartition.topic, currentDefaultConfig)
@@ -1717,6 +1718,37 @@ class LogTest {
     assertEquals(Set(), log.activeProducersWithLastSequence.keySet)
   }
 
+  @Test
+  def testPeriodicIncrementalProducerSnapshot(): Unit = {
+    val producerIdExpirationCheckIntervalMs = 100
+    val pid = 23L
+    val logConfig = LogTest.createLogConfig(segmentBytes = 2048 * 5)
+    var log = createLog(logDir, logConfig, producerIdExpirationCheckIntervalMs = producerIdExpirationCheckIntervalMs,
+      maxIncrementalProducerSnapshots = 4)
+    def append(sequence: Int): Unit = {
+      val records = Seq(new SimpleRecord(mockTime.milliseconds(), "foo".getBytes))
+      log.appendAsLeader(TestUtils.records(records, producerId = pid, producerEpoch = 0, sequence = sequence), leaderEpoch = 0)
+    }
+
+    append(0)
+    log.takeProducerSnapshot()
+    assertEquals(Some(1L), log.latestProducerSnapshotOffset)
+
+    append(1)
+    mockTime.sleep(producerIdExpirationCheckIntervalMs)
+    assertEquals(Some(2L), log.latestProducerSnapshotOffset)
+    val snapshot = ProducerStateManager.readSnapshotData(Log.producerSnapshotFile(logDir, 2L))
+    assertEquals(Some(1L), snapshot.baseOffset)
+
+    // no snapshot is taken if no producer appended
+    mockTime.sleep(producerIdExpirationCheckIntervalMs)
+    assertEquals(Some(2L), log.latestProducerSnapshotOffset)
+
+    log.close()
+    log = createLog(logDir, logConfig, maxIncrementalProducerSnapshots = 4)
+    assertEquals(Map(pid -> 1), log.activeProducersWithLastSequence)
+  }
+
   @Test
   def testDuplicateAppends(): Unit = {
     // create a log
@@ -2228,6 +2260,55 @@ class LogTest {
     assertEquals("Read at offset 3 should produce 2", 2, read(3).iterator.next().offset)
   }
 
+  @Test
+  def testConcurrentRecompressedAppendsAsLeader(): Unit = {
+    val logProps = new Properties()
+    logProps.put(LogConfig.CompressionTypeProp, "lz4")
+    val log = createLog(logDir, LogConfig(logProps))
+    val numThreads = 4
+    val appendsPerThread = 50
+    val recordsPerBatch = 3
+
+    // the batches are recompressed before taking the log lock, so appends of different threads interleave
+    val appendLoop: Callable[Seq[LogAppendInfo]] = () => {
+      (0 until appendsPerThread).map { i =>
+        val records = (0 until recordsPerBatch).map(j => new SimpleRecord(mockTime.milliseconds + j, s"$i-$j".getBytes))
+        log.appendAsLeader(MemoryRecords.withRecords(CompressionType.GZIP, records: _*), leaderEpoch = 0)
+      }
+    }
+
+    val executor = Executors.newFixedThreadPool(numThreads)
+    val appendInfos = try {
+      val futures = (0 until numThreads).map(_ => executor.submit(appendLoop))
+      futures.flatMap(_.get())
+    } finally {
+      executor.shutdownNow()
+    }
+
+    val numRecords = numThreads * appendsPerThread * recordsPerBatch
+    assertEquals(numRecords, log.logEndOffset)
+    appendInfos.foreach { appendInfo =>
+      assertEquals(recordsPerBatch - 1, appendInfo.lastOffset - appendInfo.firstOffset.get)
+      assertEquals(appendInfo.lastOffset, appendInfo.offsetOfMaxTimestamp)
+    }
+    assertEquals((0 until numRecords).map(_.toLong), appendInfos.flatMap(info => info.firstOffset.get to info.lastOffset).sorted)
+
+    var expectedOffset = 0L
+    log.logSegments.foreach { segment =>
+      segment.log.batches.forEach { batch =>
+        assertEquals(CompressionType.LZ4, batch.compressionType)
+        assertEquals(expectedOffset, batch.baseOffset)
+        assertEquals(0, batch.partitionLeaderEpoch)
+        assertTrue(batch.isValid)
+        batch.asScala.foreach { record =>
+          assertEquals(expectedOffset, record.offset)
+          expectedOffset += 1
+        }
+      }
+    }
+    assertEquals(numRecords, expectedOffset)
+  }
+
   /**
    * Test garbage collecting old segments
    */
@@ -2879,6 +2960,30 @@ class LogTest {
       new SimpleRecord(RecordBatch.NO_TIMESTAMP, "key".getBytes, "value".getBytes)), leaderEpoch = 0)
   }
 
+  @Test
+  def testAppendZstdDictionaryCompressedRecordsOnlyIfEnabled(): Unit = {
+    val samples = (0 until 1000).map(i => s"user-${i % 97} viewed /products/${i % 13}".getBytes).asJava
+    val dictionary = ZstdDictionary.load(ZstdDictionary.train(samples, 1024))
+    def records: MemoryRecords = {
+      val builder = MemoryRecords.builder(ByteBuffer.allocate(1024), RecordBatch.CURRENT_MAGIC_VALUE, CompressionType.ZSTD,
+        dictionary, TimestampType.CREATE_TIME, 0L)
+      (0 until 10).foreach(i => builder.append(mockTime.milliseconds, null, samples.get(i)))
+      builder.build()
+    }
+
+    // the broker loads the dictionary, but the topic does not enable it
+    val logProps = new Properties()
+    val log = LogTest.createLog(logDir, LogConfig(logProps), brokerTopicStats, mockTime.scheduler, mockTime,
+      zstdDictionaries = ZstdDictionaries.of(Collections.singleton(dictionary)))
+    assertThrows(classOf[UnsupportedCompressionTypeException], () => log.appendAsLeader(records, leaderEpoch = 0))
+    assertEquals(0L, log.logEndOffset)
+
+    logProps.put(LogConfig.ZstdDictionaryEnableProp, "true")
+    log.updateConfig(LogConfig(logProps))
+    log.appendAsLeader(records, leaderEpoch = 0)
+    assertEquals(10L, log.logEndOffset)
+  }
+
   @Test
   def testAppendToOrReadFromLogInFailedLogDir(): Unit = {
     val pid = 1L
@@ -4192,6 +4297,75 @@ class LogTest {
     assertEquals(List(new AbortedTxn(pid1, 0L, 29L, 8L), new AbortedTxn(pid2, 8L, 74L, 36L)), abortedTransactions)
   }
 
+  @Test
+  def testPipelinedTransactionIndexRecovery(): Unit = {
+    val logConfig = LogTest.createLogConfig(segmentBytes = 128 * 2)
+    val log = createLog(logDir, logConfig)
+    val epoch = 0.toShort
+
+    val pid1 = 1L
+    val pid2 = 2L
+    val appendPid1 = appendTransactionalAsLeader(log, pid1, epoch)
+    val appendPid2 = appendTransactionalAsLeader(log, pid2, epoch)
+
+    appendPid1(5) // nextOffset: 5
+    appendNonTransactionalAsLeader(log, 3) // 8
+    appendPid2(2) // 10
+    appendPid1(14) // 24
+    appendEndTxnMarkerAsLeader(log, pid1, epoch, ControlRecordType.ABORT) // 25
+    appendNonTransactionalAsLeader(log, 10) // 35
+    appendPid2(6) // 41
+    appendEndTxnMarkerAsLeader(log, pid2, epoch, ControlRecordType.ABORT) // 42
+    appendNonTransactionalAsLeader(log, 10) // 52
+    assertTrue(log.numberOfSegments > 3)
+
+    // delete all the offset and transaction index files to force recovery
+    log.logSegments.foreach { segment =>
+      segment.offsetIndex.deleteIfExists()
+      segment.txnIndex.deleteIfExists()
+    }
+    val numSegments = log.numberOfSegments
+    log.close()
+
+    val recovery = new LogDirRecovery(logDir.getParentFile, numLogs = 1, segmentRecoveryThreads = 3, mockTime)
+    try {
+      val reloadedLog = createLog(logDir, logConfig, lastShutdownClean = false, recovery = Some(recovery))
+      assertEquals(List(new AbortedTxn(pid1, 0L, 24L, 8L), new AbortedTxn(pid2, 8L, 41L, 42L)),
+        allAbortedTransactions(reloadedLog))
+      assertEquals(52L, reloadedLog.logEndOffset)
+      assertEquals(numSegments, reloadedLog.numberOfSegments)
+      assertEquals(0L, recovery.remainingSegments)
+    } finally {
+      recovery.close()
+    }
+  }
+
+  @Test
+  def testPipelinedRecoveryDeletesSegmentsAfterCorruptSegment(): Unit = {
+    val logConfig = LogTest.createLogConfig(segmentBytes = 1000, indexIntervalBytes = 1)
+    def createRecords = TestUtils.singletonRecords(value = "test".getBytes, timestamp = mockTime.milliseconds)
+    val log = createLog(logDir, logConfig)
+    for (_ <- 0 until 100)
+      log.appendAsLeader(createRecords, leaderEpoch = 0)
+    val segments = log.logSegments.toSeq
+    assertTrue(segments.size > 4)
+    val corruptSegment = segments(2)
+    val corruptSegmentEndOffset = corruptSegment.readNextOffset
+    log.close()
+
+    TestUtils.appendNonsenseToFile(corruptSegment.log.file, 100)
+
+    val recovery = new LogDirRecovery(logDir.getParentFile, numLogs = 1, segmentRecoveryThreads = 2, mockTime)
+    try {
+      val recoveredLog = createLog(logDir, logConfig, lastShutdownClean = false, recovery = Some(recovery))
+      assertEquals(corruptSegmentEndOffset, recoveredLog.logEndOffset)
+      assertEquals(3, recoveredLog.numberOfSegments)
+      assertEquals(0L, recovery.remainingSegments)
+    } finally {
+      recovery.close()
+    }
+  }
+
   @Test
   def testRecoverOnlyLastSegment(): Unit = {
     val logConfig = LogTest.createLogConfig(segmentBytes = 128 * 5)
@@ -4750,9 +4924,12 @@ class LogTest {
                         time: Time = mockTime,
                         maxProducerIdExpirationMs: Int = 60 * 60 * 1000,
                         producerIdExpirationCheckIntervalMs: Int = LogManager.ProducerIdExpirationCheckIntervalMs,
-                        lastShutdownClean: Boolean = true): Log = {
+                        lastShutdownClean: Boolean = true,
+                        recovery: Option[LogDirRecovery] = None,
+                        maxIncrementalProducerSnapshots: Int = 0): Log = {
     LogTest.createLog(dir, config, brokerTopicStats, scheduler, time, logStartOffset, recoveryPoint,
-      maxProducerIdExpirationMs, producerIdExpirationCheckIntervalMs, lastShutdownClean)
+      maxProducerIdExpirationMs, producerIdExpirationCheckIntervalMs, lastShutdownClean, recovery,
+      maxIncrementalProducerSnapshots)
   }
 
   private def createLogWithOffsetOverflow(logConfig: LogConfig): (Log, LogSegment) = {
@@ -4818,7 +4995,12 @@ object LogTest {
                 recoveryPoint: Long = 0L,
                 maxProducerIdExpirationMs: Int = 60 * 60 * 1000,
                 producerIdExpirationCheckIntervalMs: Int = LogManager.ProducerIdExpirationCheckIntervalMs,
-                lastShutdownClean: Boolean = true): Log = {
+                lastShutdownClean: Boolean = true,
+                recovery: Option[LogDirRecovery] = None,
+                maxIncrementalProducerSnapshots: Int = 0,
+                tailCache: Option[LogTailCache] = None,
+                flushService: Option[LogFlushService] = None,
+                zstdDictionaries: ZstdDictionaries = ZstdDictionaries.EMPTY): Log = {
     Log(dir = dir,
       config = config,
       logStartOffset = logStartOffset,
@@ -4829,7 +5011,12 @@ object LogTest {
       maxProducerIdExpirationMs = maxProducerIdExpirationMs,
       producerIdExpirationCheckIntervalMs = producerIdExpirationCheckIntervalMs,
       logDirFailureChannel = new LogDirFailureChannel(10),
-      lastShutdownClean = lastShutdownClean)
+      lastShutdownClean = lastShutdownClean,
+      recovery = recovery,
+      maxIncrementalProducerSnapshots = maxIncrementalProducerSnapshots,
+      tailCache = tailCache,
+      flushService = flushService,
+      zstdDictionaries = zstdDictionaries)
   }
 
   /**
@@ -17,6 +17,7 @@
 package kafka.log
 
 import java.nio.ByteBuffer
+import java.util.Collections
 import java.util.concurrent.TimeUnit
 
 import kafka.api.{ApiVersion, KAFKA_2_0_IV1, KAFKA_2_3_IV1}
@@ -26,7 +27,8 @@ import kafka.message._
 import kafka.metrics.KafkaYammerMetrics
 import kafka.server.BrokerTopicStats
 import kafka.utils.TestUtils.meterCount
-import org.apache.kafka.common.errors.{InvalidTimestampException, UnsupportedCompressionTypeException, UnsupportedForMessageFormatException}
+import org.apache.kafka.common.compress.{ZstdDictionaries, ZstdDictionary}
+import org.apache.kafka.common.errors.{InvalidTimestampException, UnknownZstdDictionaryException, UnsupportedCompressionTypeException, UnsupportedForMessageFormatException}
 import org.apache.kafka.common.record._
 import org.apache.kafka.common.utils.Time
 import org.apache.kafka.common.{InvalidRecordException, TopicPartition}
@@ -1267,6 +1269,42 @@ class LogValidatorTest {
       brokerTopicStats = brokerTopicStats))
   }
 
+  @Test
+  def testZStdCompressedWithDictionary(): Unit = {
+    val samples = (0 until 1000).map(i => s"user-${i % 97} viewed /products/${i % 13}".getBytes).asJava
+    val dictionary = ZstdDictionary.load(ZstdDictionary.train(samples, 1024))
+    def validate(zstdDictionaries: ZstdDictionaries): ValidationAndOffsetAssignResult = {
+      val builder = MemoryRecords.builder(ByteBuffer.allocate(1024), RecordBatch.MAGIC_VALUE_V2, CompressionType.ZSTD,
+        dictionary, TimestampType.CREATE_TIME, 0L)
+      (0 until 10).foreach(i => builder.append(RecordBatch.NO_TIMESTAMP, null, samples.get(i)))
+      LogValidator.validateMessagesAndAssignOffsets(builder.build(),
+        topicPartition,
+        offsetCounter = new LongRef(0),
+        time = time,
+        now = System.currentTimeMillis(),
+        sourceCodec = ZStdCompressionCodec,
+        targetCodec = ZStdCompressionCodec,
+        compactedTopic = false,
+        magic = RecordBatch.MAGIC_VALUE_V2,
+        timestampType = TimestampType.CREATE_TIME,
+        timestampDiffMaxMs = Long.MaxValue,
+        partitionLeaderEpoch = RecordBatch.NO_PARTITION_LEADER_EPOCH,
+        origin = AppendOrigin.Client,
+        interBrokerProtocolVersion = ApiVersion.latestVersion,
+        brokerTopicStats = brokerTopicStats,
+        zstdDictionaries = zstdDictionaries)
+    }
+
+    // the batch is rejected if the broker does not load its dictionary or if the topic does not enable the dictionaries
+    val e = assertThrows(classOf[UnsupportedCompressionTypeException], () => validate(ZstdDictionaries.EMPTY))
+    assertTrue(e.getCause.isInstanceOf[UnknownZstdDictionaryException])
+
+    val result = validate(ZstdDictionaries.of(Collections.singleton(dictionary)))
+    val batches = result.validatedRecords.batches.asScala.toList
+    assertEquals(1, batches.size)
+    assertEquals(9L, batches.head.lastOffset)
+  }
+
   @Test
   def testUncompressedBatchWithoutRecordsNotAllowed(): Unit = {
     testBatchWithoutRecordsNotAllowed(NoCompressionCodec, NoCompressionCodec)
@@ -194,6 +194,19 @@ class OffsetIndexTest {
     assertThrows(classOf[NullPointerException], () => idx.lookup(1))
   }
 
+  @Test
+  def testWarm(): Unit = {
+    val idx = new OffsetIndex(nonExistentTempFile(), baseOffset = 0L, maxIndexSize = 4096 * 8)
+    assertEquals(0, idx.warm(entireIndex = false))
+    for (i <- 0 until 2000)
+      idx.append(i, i)
+    // the warm section holds the last 8192 / 8 entries plus the entry before them
+    assertEquals((8192 / 8 + 1) * 8, idx.warm(entireIndex = false))
+    assertEquals(2000 * 8, idx.warm(entireIndex = true))
+    idx.forceUnmap()
+    assertEquals(0, idx.warm(entireIndex = true))
+  }
+
   @Test
   def testSanityLastOffsetEqualToBaseOffset(): Unit = {
     // Test index sanity for the case where the last offset appended to the index is equal to the base offset
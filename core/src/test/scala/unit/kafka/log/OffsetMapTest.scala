@@ -57,6 +57,124 @@ class OffsetMapTest {
     assertEquals(map.get(key(i-1L)), i-1L)
   }
 
+  @Test
+  def testOffHeapBasicValidation(): Unit = {
+    validateOffHeapMap(10)
+    validateOffHeapMap(100)
+    validateOffHeapMap(1000)
+    validateOffHeapMap(5000)
+  }
+
+  @Test
+  def testOffHeapClear(): Unit = {
+    val map = new OffHeapOffsetMap(4000)
+    for(i <- 0 until 10)
+      map.put(key(i), i)
+    for(i <- 0 until 10)
+      assertEquals(i.toLong, map.get(key(i)))
+    map.clear()
+    assertEquals(0, map.size)
+    assertEquals(-1L, map.latestOffset)
+    for(i <- 0 until 10)
+      assertEquals(map.get(key(i)), -1L)
+    map.close()
+  }
+
+  @Test
+  def testOffHeapGetWhenFull(): Unit = {
+    val map = new OffHeapOffsetMap(4096)
+    var i = 37L  //any value would do
+    while (map.size < map.slots) {
+      map.put(key(i), i)
+      i = i + 1L
+    }
+    assertEquals(map.get(key(i)), -1L)
+    assertEquals(map.get(key(i-1L)), i-1L)
+    map.close()
+  }
+
+  @Test
+  def testOffHeapOverwrite(): Unit = {
+    val map = new OffHeapOffsetMap(4096)
+    map.put(key(1), 1L)
+    map.put(key(1), 5L)
+    assertEquals(1, map.size)
+    assertEquals(5L, map.get(key(1)))
+    assertEquals(5L, map.latestOffset)
+    map.close()
+  }
+
+  @Test
+  def testOffHeapMapSpanningChunks(): Unit = {
+    val items = 1000
+    // use tiny chunks so that probe sequences cross chunk boundaries and wrap around the end of the table
+    val map = new OffHeapOffsetMap(items * 2 * OffHeapOffsetMap.BytesPerEntry, slotsPerChunk = 7)
+    assertEquals(items * 2, map.slots)
+    for(i <- 0 until items)
+      map.put(key(i), i)
+    for(i <- 0 until items)
+      assertEquals(i.toLong, map.get(key(i)))
+    assertEquals(items, map.size)
+    map.close()
+  }
+
+  @Test
+  def testOffHeapHashIgnoresPositionAndByteOrder(): Unit = {
+    val map = new OffHeapOffsetMap(4096)
+    val bytes = "a key that is longer than a single sixteen byte block".getBytes
+    map.put(ByteBuffer.wrap(bytes), 42L)
+
+    val padded = ByteBuffer.allocate(bytes.length + 3)
+    padded.position(3)
+    padded.put(bytes)
+    padded.position(3)
+    padded.order(ByteOrder.LITTLE_ENDIAN)
+    assertEquals(42L, map.get(padded))
+    assertEquals(3, padded.position)
+
+    val direct = ByteBuffer.allocateDirect(bytes.length)
+    direct.put(bytes).flip()
+    assertEquals(42L, map.get(direct))
+    map.close()
+  }
+
+  @Test
+  def testReaders(): Unit = {
+    val map = validateMap(1000)
+    checkReaders(map)
+  }
+
+  @Test
+  def testOffHeapReaders(): Unit = {
+    val map = validateOffHeapMap(1000)
+    try checkReaders(map)
+    finally map.close()
+  }
+
+  private def checkReaders(map: OffsetMap): Unit = {
+    val threads = (0 until 4).map { _ =>
+      val reader = map.reader()
+      assertEquals(map.size, reader.size)
+      assertEquals(map.latestOffset, reader.latestOffset)
+      new Thread(() => {
+        for (_ <- 0 until 10; i <- 0 until 1000)
+          assertEquals(i.toLong, reader.get(key(i)))
+        assertEquals(-1L, reader.get(key(1000)))
+      })
+    }
+    var failure: Throwable = null
+    threads.foreach { thread =>
+      thread.setUncaughtExceptionHandler((_, e) => failure = e)
+      thread.start()
+    }
+    threads.foreach(_.join())
+    if (failure != null)
+      throw failure
+    // closing a reader leaves the entries of the map
+    map.reader().close()
+    assertEquals(0L, map.get(key(0)))
+  }
+
   def key(key: Long) = ByteBuffer.wrap(key.toString.getBytes)
   
   def validateMap(items: Int, loadFactor: Double = 0.5): SkimpyOffsetMap = {
@@ -67,7 +185,16 @@ class OffsetMapTest {
       assertEquals(map.get(key(i)), i.toLong)
     map
   }
-  
+
+  def validateOffHeapMap(items: Int, loadFactor: Double = 0.5): OffHeapOffsetMap = {
+    val map = new OffHeapOffsetMap((items/loadFactor * OffHeapOffsetMap.BytesPerEntry).toLong)
+    for(i <- 0 until items)
+      map.put(key(i), i)
+    for(i <- 0 until items)
+      assertEquals(map.get(key(i)), i.toLong)
+    map
+  }
+
 }
 
 object OffsetMapTest {
@@ -20,7 +20,7 @@ package kafka.log
 import java.io.File
 import java.nio.ByteBuffer
 import java.nio.channels.FileChannel
-import java.nio.file.StandardOpenOption
+import java.nio.file.{Files, StandardOpenOption}
 import java.util.Collections
 import java.util.concurrent.atomic.AtomicInteger
 
@@ -29,8 +29,9 @@ import kafka.utils.TestUtils
 import org.apache.kafka.common.TopicPartition
 import org.apache.kafka.common.errors._
 import org.apache.kafka.common.internals.Topic
+import org.apache.kafka.common.protocol.types.Struct
 import org.apache.kafka.common.record._
-import org.apache.kafka.common.utils.{MockTime, Utils}
+import org.apache.kafka.common.utils.{ByteUtils, Crc32C, MockTime, Utils}
 import org.easymock.EasyMock
 import org.junit.Assert._
 import org.junit.{After, Before, Test}
@@ -839,6 +840,193 @@ class ProducerStateManagerTest {
       producerEpoch, ControlRecordType.COMMIT, offset = 100, coordinatorEpoch = 0))
   }
 
+  @Test
+  def testIncrementalSnapshots(): Unit = {
+    val stateManager = new ProducerStateManager(partition, logDir, maxPidExpirationMs, maxIncrementalSnapshots = 2)
+    val epoch = 0.toShort
+    val pid1 = 1L
+    val pid2 = 2L
+
+    append(stateManager, pid1, epoch, 0, 0L)
+    append(stateManager, pid2, epoch, 0, 1L)
+    stateManager.takeSnapshot()
+    assertEquals(None, snapshotData(2L).baseOffset)
+
+    append(stateManager, pid1, epoch, 1, 2L)
+    stateManager.takeSnapshot()
+    val incrementalSnapshot = snapshotData(3L)
+    assertEquals(Some(2L), incrementalSnapshot.baseOffset)
+    assertEquals(Seq(pid1), incrementalSnapshot.entries.map(_.producerId).toSeq)
+
+    append(stateManager, pid2, epoch, 1, 3L)
+    stateManager.takeSnapshot()
+    assertEquals(Some(3L), snapshotData(4L).baseOffset)
+
+    // at most two incremental snapshots in a row
+    append(stateManager, pid2, epoch, 2, 4L)
+    stateManager.takeSnapshot()
+    assertEquals(None, snapshotData(5L).baseOffset)
+
+    val reloadedStateManager = new ProducerStateManager(partition, logDir, maxPidExpirationMs, maxIncrementalSnapshots = 3)
+    reloadedStateManager.truncateAndReload(0L, 4L, time.milliseconds())
+    assertEquals(Set(2L, 3L, 4L), currentSnapshotOffsets)
+    assertEquals(Some(1), reloadedStateManager.lastEntry(pid1).map(_.lastSeq))
+    assertEquals(Some(1), reloadedStateManager.lastEntry(pid2).map(_.lastSeq))
+
+    // the next snapshot is an incremental snapshot of the snapshot the state was loaded from
+    append(reloadedStateManager, pid1, epoch, 2, 4L)
+    reloadedStateManager.takeSnapshot()
+    assertEquals(Some(4L), snapshotData(5L).baseOffset)
+  }
+
+  @Test
+  def testIncrementalSnapshotRemovesExpiredProducers(): Unit = {
+    val stateManager = new ProducerStateManager(partition, logDir, maxPidExpirationMs, maxIncrementalSnapshots = 1)
+    val epoch = 0.toShort
+    val pid1 = 1L
+    val pid2 = 2L
+
+    append(stateManager, pid1, epoch, 0, 0L, timestamp = 0L)
+    stateManager.takeSnapshot()
+
+    stateManager.removeExpiredProducers(maxPidExpirationMs)
+    append(stateManager, pid2, epoch, 0, 1L, timestamp = maxPidExpirationMs)
+    stateManager.takeSnapshot()
+    assertEquals(Seq(pid1), snapshotData(2L).removedProducerIds.toSeq)
+
+    // the producer is removed even if it would not be expired when the state is loaded
+    val reloadedStateManager = new ProducerStateManager(partition, logDir, maxPidExpirationMs, maxIncrementalSnapshots = 1)
+    reloadedStateManager.truncateAndReload(0L, 2L, 0L)
+    assertEquals(None, reloadedStateManager.lastEntry(pid1))
+    assertEquals(Set(pid2), reloadedStateManager.activeProducers.keySet)
+  }
+
+  @Test
+  def testDeleteBaseSnapshotRewritesIncrementalSnapshot(): Unit = {
+    val stateManager = new ProducerStateManager(partition, logDir, maxPidExpirationMs, maxIncrementalSnapshots = 2)
+    val epoch = 0.toShort
+    val pid1 = 1L
+    val pid2 = 2L
+
+    append(stateManager, pid1, epoch, 0, 0L)
+    stateManager.takeSnapshot()
+    append(stateManager, pid2, epoch, 0, 1L)
+    stateManager.takeSnapshot()
+    append(stateManager, pid2, epoch, 1, 2L)
+    stateManager.takeSnapshot()
+    assertEquals(Some(2L), snapshotData(3L).baseOffset)
+
+    stateManager.deleteSnapshotsBefore(3L)
+    assertEquals(Set(3L), currentSnapshotOffsets)
+    val rewrittenSnapshot = snapshotData(3L)
+    assertEquals(None, rewrittenSnapshot.baseOffset)
+    assertEquals(Set(pid1, pid2), rewrittenSnapshot.entries.map(_.producerId).toSet)
+
+    val reloadedStateManager = new ProducerStateManager(partition, logDir, maxPidExpirationMs)
+    reloadedStateManager.truncateAndReload(0L, 3L, time.milliseconds())
+    assertEquals(Some(0), reloadedStateManager.lastEntry(pid1).map(_.lastSeq))
+    assertEquals(Some(1), reloadedStateManager.lastEntry(pid2).map(_.lastSeq))
+  }
+
+  @Test
+  def testLoadFromIncrementalSnapshotWithMissingBase(): Unit = {
+    val stateManager = new ProducerStateManager(partition, logDir, maxPidExpirationMs, maxIncrementalSnapshots = 2)
+    val epoch = 0.toShort
+
+    append(stateManager, producerId, epoch, 0, 0L)
+    stateManager.takeSnapshot()
+    append(stateManager, producerId, epoch, 1, 1L)
+    stateManager.takeSnapshot()
+    append(stateManager, producerId, epoch, 2, 2L)
+    stateManager.takeSnapshot()
+    Log.producerSnapshotFile(logDir, 2L).delete()
+
+    // the incremental snapshots which cannot be loaded are deleted and the state is loaded from the full snapshot
+    val reloadedStateManager = new ProducerStateManager(partition, logDir, maxPidExpirationMs)
+    reloadedStateManager.truncateAndReload(0L, 3L, time.milliseconds())
+    assertEquals(Set(1L), currentSnapshotOffsets)
+    assertEquals(1L, reloadedStateManager.mapEndOffset)
+    assertEquals(Some(0), reloadedStateManager.lastEntry(producerId).map(_.lastSeq))
+  }
+
+  @Test
+  def testProducersLoadedOnDemand(): Unit = {
+    val epoch = 0.toShort
+    val numProducers = 10
+    (0 until numProducers).foreach { pid =>
+      append(stateManager, pid, epoch, 0, pid, isTransactional = pid == 5)
+    }
+    stateManager.takeSnapshot()
+
+    val reloadedStateManager = new ProducerStateManager(partition, logDir, maxPidExpirationMs)
+    reloadedStateManager.truncateAndReload(0L, numProducers, time.milliseconds())
+    // the producer with an ongoing transaction is loaded eagerly
+    assertEquals(Some(5L), reloadedStateManager.firstUnstableOffset.map(_.messageOffset))
+    assertEquals(Some(3L), reloadedStateManager.lastEntry(3L).map(_.lastDataOffset))
+    assertEquals(None, reloadedStateManager.lastEntry(numProducers))
+
+    append(reloadedStateManager, 3L, epoch, 1, numProducers)
+    assertEquals(Some(1), reloadedStateManager.lastEntry(3L).map(_.lastSeq))
+    assertEquals(numProducers, reloadedStateManager.activeProducers.size)
+    assertEquals(Some(1), reloadedStateManager.activeProducers.get(3L).map(_.lastSeq))
+  }
+
+  @Test
+  def testSnapshotsOnlyWrittenInVersion2WithIncrementalSnapshots(): Unit = {
+    def snapshotVersion(offset: Long): Short =
+      ByteBuffer.wrap(Files.readAllBytes(Log.producerSnapshotFile(logDir, offset).toPath)).getShort(0)
+    val epoch = 0.toShort
+
+    append(stateManager, producerId, epoch, 0, 0L)
+    stateManager.takeSnapshot()
+    assertEquals(ProducerStateManager.ProducerSnapshotVersion, snapshotVersion(1L))
+
+    val incrementalStateManager = new ProducerStateManager(partition, logDir, maxPidExpirationMs, maxIncrementalSnapshots = 2)
+    incrementalStateManager.truncateAndReload(0L, 1L, time.milliseconds())
+    append(incrementalStateManager, producerId, epoch, 1, 1L)
+    incrementalStateManager.takeSnapshot()
+    assertEquals(ProducerStateManager.IncrementalProducerSnapshotVersion, snapshotVersion(2L))
+    assertEquals(Some(1L), snapshotData(2L).baseOffset)
+
+    // the snapshots written in version 1 can be read back
+    val reloadedStateManager = new ProducerStateManager(partition, logDir, maxPidExpirationMs)
+    reloadedStateManager.truncateAndReload(0L, 1L, time.milliseconds())
+    assertEquals(Some(0), reloadedStateManager.lastEntry(producerId).map(_.lastSeq))
+  }
+
+  @Test
+  def testLoadFromVersion1Snapshot(): Unit = {
+    val struct = new Struct(ProducerStateManager.PidSnapshotMapSchema)
+    struct.set("version", 1.toShort)
+    struct.set("crc", 0L)
+    val entryStruct = struct.instance("producer_entries")
+      .set("producer_id", producerId)
+      .set("epoch", 3.toShort)
+      .set("last_sequence", 7)
+      .set("last_offset", 4L)
+      .set("offset_delta", 2)
+      .set("timestamp", time.milliseconds())
+      .set("coordinator_epoch", 1)
+      .set("current_txn_first_offset", 2L)
+    struct.set("producer_entries", Array[AnyRef](entryStruct))
+    val buffer = ByteBuffer.allocate(struct.sizeOf)
+    struct.writeTo(buffer)
+    buffer.flip()
+    val crc = Crc32C.compute(buffer, 6, buffer.limit() - 6)
+    ByteUtils.writeUnsignedInt(buffer, 2, crc)
+    Files.write(Log.producerSnapshotFile(logDir, 5L).toPath, Utils.toArray(buffer))
+
+    val reloadedStateManager = new ProducerStateManager(partition, logDir, maxPidExpirationMs)
+    reloadedStateManager.truncateAndReload(0L, 5L, time.milliseconds())
+    val entry = reloadedStateManager.lastEntry(producerId).get
+    assertEquals(3.toShort, entry.producerEpoch)
+    assertEquals(7, entry.lastSeq)
+    assertEquals(4L, entry.lastDataOffset)
+    assertEquals(5, entry.firstSeq)
+    assertEquals(1, entry.coordinatorEpoch)
+    assertEquals(Some(2L), reloadedStateManager.firstUnstableOffset.map(_.messageOffset))
+  }
+
   @Test
   def testLoadFromEmptySnapshotFile(): Unit = {
     testLoadFromCorruptSnapshot { file =>
@@ -988,4 +1176,7 @@ class ProducerStateManagerTest {
   private def currentSnapshotOffsets: Set[Long] =
     logDir.listFiles.map(Log.offsetFromFile).toSet
 
+  private def snapshotData(offset: Long): ProducerStateSnapshot =
+    ProducerStateManager.readSnapshotData(Log.producerSnapshotFile(logDir, offset))
+
 }
@@ -29,7 +29,7 @@ import org.apache.kafka.clients.admin.AlterConfigOp.OpType
 import org.apache.kafka.common.config.types.Password
 import org.apache.kafka.common.config.{ConfigResource, SaslConfigs, SslConfigs, TopicConfig}
 import org.apache.kafka.common.memory.MemoryPool
-import org.apache.kafka.common.message.IncrementalAlterConfigsRequestData
+import org.apache.kafka.common.message.{CreateTopicsRequestData, IncrementalAlterConfigsRequestData}
 import org.apache.kafka.common.message.IncrementalAlterConfigsRequestData._
 import org.apache.kafka.common.network.{ClientInformation, ListenerName}
 import org.apache.kafka.common.requests._
@@ -179,6 +179,39 @@ class RequestChannelTest {
     assertTrue(isValidJson(RequestConvertToJson.request(alterConfigs.loggableRequest).toString))
   }
 
+  @Test
+  def testBufferReleasedOnceAllReferencesReleased(): Unit = {
+    val memoryPool: MemoryPool = createMock(classOf[MemoryPool])
+    val createTopics = request(new CreateTopicsRequest.Builder(new CreateTopicsRequestData()).build(), memoryPool)
+    val buffer = createTopics.buffer
+    expect(memoryPool.release(buffer)).once()
+    replay(memoryPool)
+
+    assertTrue(createTopics.retainBuffer())
+    createTopics.releaseBuffer()
+    // releasing the reference of the request processing again has no effect
+    createTopics.releaseBuffer()
+    assertSame(buffer, createTopics.buffer)
+
+    createTopics.releaseBufferReference()
+    assertNull(createTopics.buffer)
+    assertFalse(createTopics.retainBuffer())
+    verify(memoryPool)
+  }
+
+  @Test
+  def testBufferNotRetainedOnceReleased(): Unit = {
+    val memoryPool: MemoryPool = createMock(classOf[MemoryPool])
+    val createTopics = request(new CreateTopicsRequest.Builder(new CreateTopicsRequestData()).build(), memoryPool)
+    expect(memoryPool.release(createTopics.buffer)).once()
+    replay(memoryPool)
+
+    createTopics.releaseBuffer()
+    assertNull(createTopics.buffer)
+    assertFalse(createTopics.retainBuffer())
+    verify(memoryPool)
+  }
+
   private def isValidJson(str: String): Boolean = {
     try {
       val mapper = new ObjectMapper
@@ -189,14 +222,16 @@ class RequestChannelTest {
     }
   }
 
-  def request(req: AbstractRequest): RequestChannel.Request = {
+  def request(req: AbstractRequest): RequestChannel.Request = request(req, createNiceMock(classOf[MemoryPool]))
+
+  def request(req: AbstractRequest, memoryPool: MemoryPool): RequestChannel.Request = {
     val buffer = RequestTestUtils.serializeRequestWithHeader(new RequestHeader(req.apiKey, req.version, "client-id", 1),
       req)
     val requestContext = newRequestContext(buffer)
     new network.RequestChannel.Request(processor = 1,
       requestContext,
       startTimeNanos = 0,
-      createNiceMock(classOf[MemoryPool]),
+      memoryPool,
       buffer,
       createNiceMock(classOf[RequestChannel.Metrics])
     )
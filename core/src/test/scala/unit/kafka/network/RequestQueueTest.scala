@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package kafka.network
+
+import java.net.InetAddress
+import java.util.Collections
+import java.util.concurrent.{Executors, TimeUnit}
+
+import com.yammer.metrics.core.Histogram
+import kafka.metrics.KafkaYammerMetrics
+import kafka.network.RequestQueueClass.{Admin, Coordination, Data, Replication}
+import kafka.utils.MockTime
+import org.apache.kafka.common.TopicPartition
+import org.apache.kafka.common.memory.MemoryPool
+import org.apache.kafka.common.message.{CreateTopicsRequestData, HeartbeatRequestData}
+import org.apache.kafka.common.network.{ClientInformation, ListenerName}
+import org.apache.kafka.common.protocol.ApiKeys
+import org.apache.kafka.common.requests._
+import org.apache.kafka.common.security.auth.{KafkaPrincipal, SecurityProtocol}
+import org.easymock.EasyMock._
+import org.junit.Assert._
+import org.junit.Test
+
+import scala.jdk.CollectionConverters._
+
+class RequestQueueTest {
+  private val time = new MockTime()
+
+  @Test
+  def testRequestQueueClass(): Unit = {
+    assertEquals(Data, RequestQueueClass(metadataRequest()))
+    assertEquals(Data, RequestQueueClass(request(FetchRequest.Builder.forConsumer(100, 1,
+      Collections.emptyMap[TopicPartition, FetchRequest.PartitionData]).build())))
+    assertEquals(Replication, RequestQueueClass(request(FetchRequest.Builder.forReplica(ApiKeys.FETCH.latestVersion,
+      1, 100, 1, Collections.emptyMap[TopicPartition, FetchRequest.PartitionData]).build())))
+    assertEquals(Coordination, RequestQueueClass(heartbeatRequest()))
+    assertEquals(Admin, RequestQueueClass(createTopicsRequest()))
+  }
+
+  @Test
+  def testWeightedDequeue(): Unit = {
+    val queue = new ScheduledRequestQueue(10, RequestSchedulerConfig(Map(Data -> 2, Admin -> 1), Map.empty))
+    val dataRequests = (0 until 6).map(_ => metadataRequest())
+    val adminRequests = (0 until 3).map(_ => createTopicsRequest())
+    adminRequests.foreach(queue.put)
+    dataRequests.foreach(queue.put)
+    assertEquals(9, queue.size)
+
+    val dequeued = (0 until 9).map(_ => queue.poll(0))
+    // the classes are interleaved according to their weights
+    dequeued.grouped(3).foreach { requests =>
+      assertEquals(Seq(Admin, Data, Data), requests.map(request =>
+        RequestQueueClass(request.asInstanceOf[RequestChannel.Request])).sortBy(_.id).reverse)
+    }
+    // requests of a class are dequeued in order
+    assertEquals(dataRequests, dequeued.filter(dataRequests.contains))
+    assertEquals(adminRequests, dequeued.filter(adminRequests.contains))
+    assertNull(queue.poll(0))
+  }
+
+  @Test
+  def testOnlyClassWithRequestsIsDequeued(): Unit = {
+    val queue = new ScheduledRequestQueue(10, RequestSchedulerConfig(Map(Data -> 10), Map.empty))
+    val adminRequests = (0 until 3).map(_ => createTopicsRequest())
+    adminRequests.foreach(queue.put)
+    assertEquals(adminRequests, (0 until 3).map(_ => queue.poll(0)))
+  }
+
+  @Test
+  def testMaxHandlerThreads(): Unit = {
+    val queue = new ScheduledRequestQueue(10, RequestSchedulerConfig(Map.empty, Map(Admin -> 1)))
+    val firstAdminRequest = createTopicsRequest()
+    val secondAdminRequest = createTopicsRequest()
+    val dataRequest = metadataRequest()
+    queue.put(firstAdminRequest)
+    queue.put(secondAdminRequest)
+    queue.put(dataRequest)
+
+    assertEquals(Set(firstAdminRequest, dataRequest), Set(queue.poll(0), queue.poll(0)))
+    // the admin class already has a thread handling one of its requests
+    assertNull(queue.poll(0))
+    assertEquals(1, queue.size(Admin))
+
+    queue.requestHandled(firstAdminRequest)
+    assertEquals(secondAdminRequest, queue.poll(0))
+  }
+
+  @Test
+  def testWaitingThreadIsWokenUpWhenRequestHandled(): Unit = {
+    val queue = new ScheduledRequestQueue(10, RequestSchedulerConfig(Map.empty, Map(Admin -> 1)))
+    val firstAdminRequest = createTopicsRequest()
+    val secondAdminRequest = createTopicsRequest()
+    queue.put(firstAdminRequest)
+    queue.put(secondAdminRequest)
+    assertEquals(firstAdminRequest, queue.poll(0))
+
+    val executor = Executors.newSingleThreadExecutor()
+    try {
+      val future = executor.submit(() => queue.take())
+      queue.requestHandled(firstAdminRequest)
+      assertEquals(secondAdminRequest, future.get(10, TimeUnit.SECONDS))
+    } finally {
+      executor.shutdownNow()
+    }
+  }
+
+  @Test
+  def testCapacityIsPerClass(): Unit = {
+    val queue = new ScheduledRequestQueue(1, RequestSchedulerConfig(Map.empty, Map.empty))
+    queue.put(createTopicsRequest())
+    // the admin queue is full, but requests of the other classes are still queued without blocking
+    queue.put(metadataRequest())
+    queue.put(heartbeatRequest())
+    assertEquals(1, queue.size(Admin))
+    assertEquals(1, queue.size(Data))
+    assertEquals(1, queue.size(Coordination))
+    assertEquals(0, queue.size(Replication))
+  }
+
+  @Test
+  def testShutdownRequestDequeuedAfterRequests(): Unit = {
+    val queue = new ScheduledRequestQueue(10, RequestSchedulerConfig(Map.empty, Map.empty))
+    val dataRequest = metadataRequest()
+    queue.put(RequestChannel.ShutdownRequest)
+    queue.put(dataRequest)
+    assertEquals(dataRequest, queue.take())
+    assertEquals(RequestChannel.ShutdownRequest, queue.take())
+    assertNull(queue.poll(0))
+  }
+
+  @Test
+  def testRequestQueueTimeMetrics(): Unit = {
+    val channel = new RequestChannel(10, "", time, schedulerConfig =
+      Some(RequestSchedulerConfig(Map.empty, Map.empty)))
+    try {
+      val request = createTopicsRequest()
+      channel.sendRequest(request)
+      time.sleep(50)
+      assertEquals(request, channel.receiveRequest(0))
+
+      val histogram = requestQueueTimeHistogram(Admin)
+      assertEquals(1, histogram.count)
+      assertEquals(50, histogram.max, 0)
+      assertEquals(0, requestQueueTimeHistogram(Data).count)
+    } finally {
+      channel.shutdown()
+    }
+    assertTrue(requestQueueMetrics.isEmpty)
+  }
+
+  private def requestQueueMetrics = KafkaYammerMetrics.defaultRegistry.allMetrics.asScala.filter { case (metricName, _) =>
+    metricName.getType == "RequestChannel" && metricName.getMBeanName.contains(s"${RequestChannel.QueueMetricTag}=")
+  }
+
+  private def requestQueueTimeHistogram(queueClass: RequestQueueClass): Histogram = {
+    requestQueueMetrics.collectFirst {
+      case (metricName, histogram: Histogram) if metricName.getName == RequestChannel.RequestQueueTimeMetric &&
+        metricName.getMBeanName.endsWith(s"${RequestChannel.QueueMetricTag}=${queueClass.name}") => histogram
+    }.getOrElse(throw new AssertionError(s"No request queue time metric for $queueClass"))
+  }
+
+  private def metadataRequest(): RequestChannel.Request =
+    request(new MetadataRequest.Builder(List("topic").asJava, true).build())
+
+  private def heartbeatRequest(): RequestChannel.Request =
+    request(new HeartbeatRequest.Builder(new HeartbeatRequestData().setGroupId("group")).build())
+
+  private def createTopicsRequest(): RequestChannel.Request =
+    request(new CreateTopicsRequest.Builder(new CreateTopicsRequestData()).build())
+
+  private def request(req: AbstractRequest): RequestChannel.Request = {
+    val buffer = RequestTestUtils.serializeRequestWithHeader(new RequestHeader(req.apiKey, req.version, "client-id", 1),
+      req)
+    val requestContext = new RequestContext(
+      RequestHeader.parse(buffer),
+      "connection-id",
+      InetAddress.getLoopbackAddress,
+      new KafkaPrincipal(KafkaPrincipal.USER_TYPE, "user"),
+      ListenerName.forSecurityProtocol(SecurityProtocol.PLAINTEXT),
+      SecurityProtocol.PLAINTEXT,
+      new ClientInformation("name", "version"),
+      false)
+    new RequestChannel.Request(processor = 1,
+      requestContext,
+      startTimeNanos = time.nanoseconds,
+      createNiceMock(classOf[MemoryPool]),
+      buffer,
+      createNiceMock(classOf[RequestChannel.Metrics])
+    )
+  }
+}
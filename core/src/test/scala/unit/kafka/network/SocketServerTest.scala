@@ -23,7 +23,7 @@ import java.nio.ByteBuffer
 import java.nio.channels.{SelectionKey, SocketChannel}
 import java.nio.charset.StandardCharsets
 import java.util
-import java.util.concurrent.{CompletableFuture, ConcurrentLinkedQueue, Executors, TimeUnit}
+import java.util.concurrent.{CompletableFuture, ConcurrentLinkedQueue, CountDownLatch, Executors, TimeUnit}
 import java.util.{Properties, Random}
 
 import com.fasterxml.jackson.databind.node.{JsonNodeFactory, ObjectNode, TextNode}
@@ -1068,6 +1068,54 @@ class SocketServerTest {
     assertEquals(KafkaPrincipal.ANONYMOUS, receiveRequest(server.dataPlaneRequestChannel).session.principal)
   }
 
+  @Test
+  def testResponsesQueuedDuringProcessingAreBatched(): Unit = {
+    val serverMetrics = new Metrics
+    val sendingFirstResponse = new CountDownLatch(1)
+    val firstResponseReleased = new CountDownLatch(1)
+    val overrideServer = new SocketServer(KafkaConfig.fromProps(props), serverMetrics, Time.SYSTEM, credentialProvider) {
+      override def newProcessor(id: Int, requestChannel: RequestChannel, connectionQuotas: ConnectionQuotas, listenerName: ListenerName,
+                                protocol: SecurityProtocol, memoryPool: MemoryPool, isPrivilegedListener: Boolean = false): Processor = {
+        new Processor(id, time, config.socketRequestMaxBytes, dataPlaneRequestChannel, connectionQuotas,
+          config.connectionsMaxIdleMs, config.failedAuthenticationDelayMs, listenerName, protocol, config, metrics,
+          credentialProvider, MemoryPool.NONE, new LogContext(), isPrivilegedListener = isPrivilegedListener) {
+          override protected[network] def sendResponse(response: RequestChannel.Response, responseSend: Send): Unit = {
+            if (sendingFirstResponse.getCount > 0) {
+              sendingFirstResponse.countDown()
+              firstResponseReleased.await(10, TimeUnit.SECONDS)
+            }
+            super.sendResponse(response, responseSend)
+          }
+        }
+      }
+    }
+    def metricValue(name: String): Double = serverMetrics.metrics.asScala.collectFirst {
+      case (metricName, metric) if metricName.name == name => metric.metricValue.asInstanceOf[Double]
+    }.getOrElse(throw new AssertionError(s"Metric $name not found"))
+
+    try {
+      overrideServer.startup()
+      val channel = overrideServer.dataPlaneRequestChannel
+      val sockets = (0 until 3).map(_ => connect(overrideServer))
+      val requests = sockets.map(socket => sendAndReceiveRequest(socket, overrideServer))
+      val wakeupsBefore = metricValue("selector-wakeup-total")
+
+      processRequest(channel, requests.head)
+      assertTrue(sendingFirstResponse.await(10, TimeUnit.SECONDS))
+      // the processor is busy with the first response: at most one more wakeup is issued for the other responses
+      requests.tail.foreach(processRequest(channel, _))
+      firstResponseReleased.countDown()
+      sockets.foreach(receiveResponse)
+
+      assertTrue(metricValue("selector-wakeup-total") - wakeupsBefore <= 2)
+      assertEquals(3.0, metricValue("responses-per-poll-max"), 0)
+    } finally {
+      firstResponseReleased.countDown()
+      shutdownServerAndMetrics(overrideServer)
+    }
+    assertFalse(serverMetrics.metrics.keySet.asScala.exists(_.name.startsWith("selector-wakeup")))
+  }
+
   /* Test that we update request metrics if the client closes the connection while the broker response is in flight. */
   @Test
   def testClientDisconnectionUpdatesRequestMetrics(): Unit = {
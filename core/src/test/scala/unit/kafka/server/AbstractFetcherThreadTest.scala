@@ -19,6 +19,7 @@ package kafka.server
 
 import java.nio.ByteBuffer
 import java.util.Optional
+import java.util.concurrent.{CompletableFuture, ConcurrentHashMap, ExecutorService, Executors}
 import java.util.concurrent.atomic.AtomicInteger
 
 import kafka.cluster.BrokerEndPoint
@@ -31,7 +32,7 @@ import kafka.utils.Implicits.MapExtensionMethods
 import kafka.utils.TestUtils
 import org.apache.kafka.common.KafkaException
 import org.apache.kafka.common.TopicPartition
-import org.apache.kafka.common.errors.{FencedLeaderEpochException, UnknownLeaderEpochException}
+import org.apache.kafka.common.errors.{FencedLeaderEpochException, KafkaStorageException, UnknownLeaderEpochException}
 import org.apache.kafka.common.message.FetchResponseData
 import org.apache.kafka.common.message.OffsetForLeaderEpochResponseData.EpochEndOffset
 import org.apache.kafka.common.protocol.{ApiKeys, Errors}
@@ -44,7 +45,7 @@ import org.junit.{Before, Test}
 
 import scala.jdk.CollectionConverters._
 import scala.collection.{Map, Set, mutable}
-import scala.util.Random
+import scala.util.{Random, Try}
 
 import scala.collection.mutable.ArrayBuffer
 import scala.compat.java8.OptionConverters._
@@ -763,6 +764,186 @@ class AbstractFetcherThreadTest {
     verifyFetcherThreadHandlingPartitionFailure(fetcherForAppend)
   }
 
+  @Test
+  def testFetcherThreadHandlingPartitionFailureDuringFlush(): Unit = {
+    val fetcherForFlush = new MockFetcherThread {
+      override def processPartitionData(topicPartition: TopicPartition, fetchOffset: Long, partitionData: FetchData): Option[LogAppendInfo] = {
+        val logAppendInfo = super.processPartitionData(topicPartition, fetchOffset, partitionData)
+        if (topicPartition == partition1) {
+          val flushCompletion = new CompletableFuture[Void]
+          flushCompletion.completeExceptionally(new KafkaStorageException())
+          logAppendInfo.foreach(_.flushCompletion = Some(flushCompletion))
+        }
+        logAppendInfo
+      }
+    }
+    verifyFetcherThreadHandlingPartitionFailure(fetcherForFlush)
+  }
+
+  @Test
+  def testNextFetchWaitsForFlushOfAppend(): Unit = {
+    val partition = new TopicPartition("topic", 0)
+    val flushCompletion = new CompletableFuture[Void]
+    class FlushingFetcherThread extends MockFetcherThread {
+      override def processPartitionData(topicPartition: TopicPartition, fetchOffset: Long, partitionData: FetchData): Option[LogAppendInfo] = {
+        val logAppendInfo = super.processPartitionData(topicPartition, fetchOffset, partitionData)
+        logAppendInfo.foreach(_.flushCompletion = Some(flushCompletion))
+        logAppendInfo
+      }
+
+      def isPartitionMapLocked: Boolean = partitionMapLock.isLocked
+    }
+    val fetcher = new FlushingFetcherThread
+
+    fetcher.setReplicaState(partition, MockFetcherThread.PartitionState(leaderEpoch = 0))
+    fetcher.addPartitions(Map(partition -> initialFetchState(0L, leaderEpoch = 0)))
+    val batch = mkBatch(baseOffset = 0L, leaderEpoch = 0, new SimpleRecord("a".getBytes))
+    fetcher.setLeaderState(partition, MockFetcherThread.PartitionState(Seq(batch), leaderEpoch = 0, highWatermark = 1L))
+
+    @volatile var lockedDuringFlush = true
+    val flushThread = new Thread(() => {
+      // wait for the fetcher to block on the flush
+      while (flushCompletion.getNumberOfDependents == 0)
+        Thread.sleep(10)
+      lockedDuringFlush = fetcher.isPartitionMapLocked
+      flushCompletion.complete(null)
+    })
+    flushThread.start()
+    fetcher.doWork()
+
+    // the fetch response is only processed once the flush of the log is complete, which is awaited without holding
+    // the partition map lock
+    assertTrue(flushCompletion.isDone)
+    assertFalse(lockedDuringFlush)
+    assertEquals(Some(1L), fetcher.fetchState(partition).map(_.fetchOffset))
+    assertFalse(failedPartitions.contains(partition))
+    flushThread.join()
+  }
+
+  @Test
+  def testPartitionDataProcessedByExecutor(): Unit = {
+    val executor = Executors.newFixedThreadPool(2)
+    try {
+      val processingThreads = new ConcurrentHashMap[TopicPartition, Thread]()
+      val fetcher = new MockFetcherThread(partitionDataExecutor = Some(executor)) {
+        override def processPartitionData(topicPartition: TopicPartition, fetchOffset: Long, partitionData: FetchData): Option[LogAppendInfo] = {
+          processingThreads.put(topicPartition, Thread.currentThread)
+          super.processPartitionData(topicPartition, fetchOffset, partitionData)
+        }
+      }
+
+      Seq(partition1, partition2).foreach { partition =>
+        fetcher.setReplicaState(partition, MockFetcherThread.PartitionState(leaderEpoch = 0))
+        fetcher.addPartitions(Map(partition -> initialFetchState(0L, leaderEpoch = 0)))
+        val batch = mkBatch(baseOffset = 0L, leaderEpoch = 0,
+          new SimpleRecord("a".getBytes), new SimpleRecord("b".getBytes))
+        fetcher.setLeaderState(partition, MockFetcherThread.PartitionState(Seq(batch), leaderEpoch = 0, highWatermark = 2L))
+      }
+
+      fetcher.doWork()
+
+      Seq(partition1, partition2).foreach { partition =>
+        assertNotEquals(Thread.currentThread, processingThreads.get(partition))
+        assertEquals(2L, fetcher.replicaPartitionState(partition).logEndOffset)
+        assertEquals(Some(2L), fetcher.fetchState(partition).map(_.fetchOffset))
+      }
+    } finally {
+      executor.shutdownNow()
+    }
+  }
+
+  @Test
+  def testFetcherThreadHandlingPartitionFailureDuringParallelAppend(): Unit = {
+    val executor = Executors.newFixedThreadPool(2)
+    try {
+      val fetcherForAppend = new MockFetcherThread(partitionDataExecutor = Some(executor)) {
+        override def processPartitionData(topicPartition: TopicPartition, fetchOffset: Long, partitionData: FetchData): Option[LogAppendInfo] = {
+          if (topicPartition == partition1) {
+            throw new KafkaException()
+          } else {
+            super.processPartitionData(topicPartition, fetchOffset, partitionData)
+          }
+        }
+      }
+      verifyFetcherThreadHandlingPartitionFailure(fetcherForAppend)
+    } finally {
+      executor.shutdownNow()
+    }
+  }
+
+  @Test
+  def testPipelinedFetchesCompletingOutOfOrder(): Unit = {
+    val partitions = (0 until 4).map(new TopicPartition("topic", _))
+    var maxInFlightFetches = 0
+    val fetcher = new MockFetcherThread(fetchPipelineDepth = 2) {
+      private val inFlightFetches = mutable.Buffer[(Int, FetchRequest.Builder)]()
+
+      override protected def sendFetch(slot: Int, fetchRequest: FetchRequest.Builder): Unit = {
+        inFlightFetches += slot -> fetchRequest
+        maxInFlightFetches = math.max(maxInFlightFetches, inFlightFetches.size)
+      }
+
+      // the fetches complete in the reverse order they were sent in
+      override protected def receiveFetches(): Seq[(Int, Try[Map[TopicPartition, FetchData]])] = {
+        val completedFetches = inFlightFetches.reverse.map { case (slot, fetchRequest) =>
+          slot -> Try(fetchFromLeader(fetchRequest))
+        }
+        inFlightFetches.clear()
+        completedFetches.toSeq
+      }
+    }
+
+    partitions.foreach { partition =>
+      fetcher.setReplicaState(partition, MockFetcherThread.PartitionState(leaderEpoch = 0))
+      fetcher.addPartitions(Map(partition -> initialFetchState(0L, leaderEpoch = 0)))
+      val leaderLog = (0 until 5).map { offset =>
+        mkBatch(baseOffset = offset, leaderEpoch = 0, new SimpleRecord(s"$offset".getBytes))
+      }
+      fetcher.setLeaderState(partition, MockFetcherThread.PartitionState(leaderLog, leaderEpoch = 0, highWatermark = 5L))
+    }
+
+    TestUtils.waitUntilTrue(() => {
+      fetcher.doWork()
+      partitions.forall { partition =>
+        fetcher.replicaPartitionState(partition).log == fetcher.leaderPartitionState(partition).log
+      }
+    }, "Failed to replicate the leader logs")
+    assertEquals(2, maxInFlightFetches)
+  }
+
+  @Test
+  def testPipelinedFetchOfRemovedPartitionIsIgnored(): Unit = {
+    val partition = new TopicPartition("topic", 0)
+    var beforeReceive: () => Unit = () => ()
+    val fetcher = new MockFetcherThread(fetchPipelineDepth = 2) {
+      override protected def receiveFetches(): Seq[(Int, Try[Map[TopicPartition, FetchData]])] = {
+        beforeReceive()
+        super.receiveFetches()
+      }
+    }
+
+    val replicaState = MockFetcherThread.PartitionState(leaderEpoch = 0)
+    fetcher.setReplicaState(partition, replicaState)
+    fetcher.addPartitions(Map(partition -> initialFetchState(0L, leaderEpoch = 0)))
+    val batch = mkBatch(baseOffset = 0L, leaderEpoch = 0, new SimpleRecord("a".getBytes))
+    fetcher.setLeaderState(partition, MockFetcherThread.PartitionState(Seq(batch), leaderEpoch = 0, highWatermark = 1L))
+
+    // the partition is removed while its fetch is in flight
+    beforeReceive = () => fetcher.removePartitions(Set(partition))
+    fetcher.doWork()
+    assertEquals(0L, replicaState.logEndOffset)
+    assertEquals(None, fetcher.fetchState(partition))
+
+    // the partition is fetched again once added back, possibly after the fetch in flight of its new slot
+    beforeReceive = () => ()
+    fetcher.addPartitions(Map(partition -> initialFetchState(0L, leaderEpoch = 0)))
+    TestUtils.waitUntilTrue(() => {
+      fetcher.doWork()
+      replicaState.logEndOffset == 1L
+    }, "Failed to fetch the partition added back")
+    assertEquals(Some(1L), fetcher.fetchState(partition).map(_.fetchOffset))
+  }
+
   @Test
   def testFetcherThreadHandlingPartitionFailureDuringTruncation(): Unit = {
     val fetcherForTruncation = new MockFetcherThread {
@@ -864,12 +1045,16 @@ class AbstractFetcherThreadTest {
     }
   }
 
-  class MockFetcherThread(val replicaId: Int = 0, val leaderId: Int = 1)
+  class MockFetcherThread(val replicaId: Int = 0, val leaderId: Int = 1,
+                          partitionDataExecutor: Option[ExecutorService] = None,
+                          fetchPipelineDepth: Int = 1)
     extends AbstractFetcherThread("mock-fetcher",
       clientId = "mock-fetcher",
       sourceBroker = new BrokerEndPoint(leaderId, host = "localhost", port = Random.nextInt()),
       failedPartitions,
-      brokerTopicStats = new BrokerTopicStats) {
+      brokerTopicStats = new BrokerTopicStats,
+      partitionDataExecutor = partitionDataExecutor,
+      fetchPipelineDepth = fetchPipelineDepth) {
 
     import MockFetcherThread.PartitionState
 
@@ -278,6 +278,53 @@ class DelayedOperationTest {
     ops.foreach { op => assertTrue("Operation should have completed", op.isCompleted) }
   }
 
+  @Test
+  def testCoalescedCompletionChecks(): Unit = {
+    val coalescingPurgatory = DelayedOperationPurgatory[DelayedOperation](purgatoryName = "coalescing",
+      coalesceCompletionChecks = true)
+    executorService = Executors.newSingleThreadExecutor
+    val walkStarted = new CountDownLatch(1)
+    val releaseWalk = new CountDownLatch(1)
+    val attempts = new AtomicInteger()
+    @volatile var blockWalk = false
+    val op = new MockDelayedOperation(100000L) {
+      override def tryComplete(): Boolean = {
+        val shouldComplete = completable
+        if (blockWalk && attempts.getAndIncrement() == 0) {
+          walkStarted.countDown()
+          releaseWalk.await()
+        }
+        shouldComplete && forceComplete()
+      }
+    }
+    try {
+      assertFalse(coalescingPurgatory.tryCompleteElseWatch(op, Seq("key")))
+      blockWalk = true
+      val walk = executorService.submit(new Callable[Int] {
+        override def call(): Int = coalescingPurgatory.checkAndComplete("key")
+      })
+      assertTrue(walkStarted.await(5, TimeUnit.SECONDS))
+
+      // the check is left to the thread walking the watch list which walks it once more
+      op.completable = true
+      assertEquals(0, coalescingPurgatory.checkAndComplete("key"))
+      assertFalse(op.isCompleted)
+      releaseWalk.countDown()
+      assertEquals(1, walk.get(5, TimeUnit.SECONDS))
+      assertTrue(op.isCompleted)
+      assertEquals(2, attempts.get)
+
+      // without concurrent walks the operations are completed by the calling thread
+      val op2 = new MockDelayedOperation(100000L)
+      assertFalse(coalescingPurgatory.tryCompleteElseWatch(op2, Seq("key")))
+      op2.completable = true
+      assertEquals(1, coalescingPurgatory.checkAndComplete("key"))
+    } finally {
+      releaseWalk.countDown()
+      coalescingPurgatory.shutdown()
+    }
+  }
+
   def verifyDelayedOperationLock(mockDelayedOperation: => MockDelayedOperation, mismatchedLocks: Boolean): Unit = {
     val key = "key"
     executorService = Executors.newSingleThreadExecutor
@@ -79,6 +79,38 @@ class ForwardingManagerTest {
     assertEquals(Map(Errors.UNKNOWN_SERVER_ERROR -> 1).asJava, response.errorCounts())
   }
 
+  @Test
+  def testRequestBufferReleasedOnceForwardingCompletes(): Unit = {
+    val forwardingManager = new ForwardingManagerImpl(brokerToController)
+    val requestCorrelationId = 27
+    val memoryPool = Mockito.mock(classOf[MemoryPool])
+
+    val configResource = new ConfigResource(ConfigResource.Type.TOPIC, "foo")
+    val configs = List(new AlterConfigsRequest.ConfigEntry(TopicConfig.MIN_IN_SYNC_REPLICAS_CONFIG, "1")).asJava
+    val requestBody = new AlterConfigsRequest.Builder(Map(
+      configResource -> new AlterConfigsRequest.Config(configs)
+    ).asJava, false).build()
+    val (requestHeader, requestBuffer) = buildRequest(requestBody, requestCorrelationId)
+    val request = buildRequest(requestHeader, requestBuffer, KafkaPrincipal.ANONYMOUS, memoryPool)
+
+    var completionHandler: ControllerRequestCompletionHandler = null
+    Mockito.when(brokerToController.sendRequest(
+      any(classOf[EnvelopeRequest.Builder]),
+      any(classOf[ControllerRequestCompletionHandler])
+    )).thenAnswer(invocation => completionHandler = invocation.getArgument[ControllerRequestCompletionHandler](1))
+
+    var response: AbstractResponse = null
+    forwardingManager.forwardRequest(request, res => response = res)
+    // the request handler is done with the request, but the buffer is still referenced by the envelope request
+    request.releaseBuffer()
+    Mockito.verify(memoryPool, Mockito.never()).release(any(classOf[ByteBuffer]))
+
+    completionHandler.onTimeout()
+    Mockito.verify(memoryPool).release(requestBuffer)
+    assertNull(request.buffer)
+    assertNotNull(response)
+  }
+
   private def buildEnvelopeResponse(
     responseBuffer: ByteBuffer,
     correlationId: Int,
@@ -130,6 +162,13 @@ class ForwardingManagerTest {
     requestHeader: RequestHeader,
     requestBuffer: ByteBuffer,
     principal: KafkaPrincipal
+  ): RequestChannel.Request = buildRequest(requestHeader, requestBuffer, principal, MemoryPool.NONE)
+
+  private def buildRequest(
+    requestHeader: RequestHeader,
+    requestBuffer: ByteBuffer,
+    principal: KafkaPrincipal,
+    memoryPool: MemoryPool
   ): RequestChannel.Request = {
     val requestContext = new RequestContext(
       requestHeader,
@@ -147,7 +186,7 @@ class ForwardingManagerTest {
       processor = 1,
       context = requestContext,
       startTimeNanos = time.nanoseconds(),
-      memoryPool = MemoryPool.NONE,
+      memoryPool = memoryPool,
       buffer = requestBuffer,
       metrics = new RequestChannel.Metrics(allowDisabledApis = true),
       envelope = None
@@ -124,6 +124,7 @@ class KafkaApisTest {
     properties.put(KafkaConfig.InterBrokerProtocolVersionProp, interBrokerProtocolVersion.toString)
     properties.put(KafkaConfig.LogMessageFormatVersionProp, interBrokerProtocolVersion.toString)
     properties.put(KafkaConfig.EnableMetadataQuorumProp, enableForwarding.toString)
+    val config = new KafkaConfig(properties)
     new KafkaApis(requestChannel,
       replicaManager,
       adminManager,
@@ -133,7 +134,7 @@ class KafkaApisTest {
       forwardingManager,
       zkClient,
       brokerId,
-      new KafkaConfig(properties),
+      config,
       metadataCache,
       metrics,
       authorizer,
@@ -144,7 +145,8 @@ class KafkaApisTest {
       time,
       null,
       brokerFeatures,
-      cache)
+      cache,
+      new MetadataResponseCache(metadataCache, config.metadataResponseCacheMaxEntries, new Metrics()))
   }
 
   @Test
@@ -1914,10 +1916,11 @@ class KafkaApisTest {
 
     expect(replicaManager.getLogConfig(EasyMock.eq(tp))).andReturn(None)
 
+    // the fetch of a plaintext listener is not served from the log tail cache
     replicaManager.fetchMessages(anyLong, anyInt, anyInt, anyInt, anyBoolean,
       anyObject[Seq[(TopicPartition, FetchRequest.PartitionData)]], anyObject[ReplicaQuota],
       anyObject[Seq[(TopicPartition, FetchPartitionData)] => Unit](), anyObject[IsolationLevel],
-      anyObject[Option[ClientMetadata]])
+      anyObject[Option[ClientMetadata]], EasyMock.eq(false))
     expectLastCall[Unit].andAnswer(new IAnswer[Unit] {
       def answer: Unit = {
         val callback = getCurrentArguments.apply(7)
@@ -2500,7 +2503,7 @@ class KafkaApisTest {
     replicaManager.fetchMessages(anyLong, anyInt, anyInt, anyInt, anyBoolean,
       anyObject[Seq[(TopicPartition, FetchRequest.PartitionData)]], anyObject[ReplicaQuota],
       anyObject[Seq[(TopicPartition, FetchPartitionData)] => Unit](), anyObject[IsolationLevel],
-      anyObject[Option[ClientMetadata]])
+      anyObject[Option[ClientMetadata]], anyBoolean)
     expectLastCall[Unit].andAnswer(new IAnswer[Unit] {
       def answer: Unit = {
         val callback = getCurrentArguments.apply(7).asInstanceOf[Seq[(TopicPartition, FetchPartitionData)] => Unit]
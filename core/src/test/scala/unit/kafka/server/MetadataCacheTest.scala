@@ -20,12 +20,14 @@ import java.util
 import java.util.Collections
 import util.Arrays.asList
 
+import kafka.api.LeaderAndIsr
 import org.apache.kafka.common.{Node, TopicPartition, Uuid}
+import org.apache.kafka.common.message.MetadataResponseData.MetadataResponsePartition
 import org.apache.kafka.common.message.UpdateMetadataRequestData.{UpdateMetadataBroker, UpdateMetadataEndpoint, UpdateMetadataPartitionState}
 import org.apache.kafka.common.network.ListenerName
 import org.apache.kafka.common.protocol.{ApiKeys, Errors}
 import org.apache.kafka.common.record.RecordBatch
-import org.apache.kafka.common.requests.UpdateMetadataRequest
+import org.apache.kafka.common.requests.{MetadataResponse, UpdateMetadataRequest}
 import org.apache.kafka.common.security.auth.SecurityProtocol
 import org.junit.Test
 import org.junit.Assert._
@@ -540,4 +542,65 @@ class MetadataCacheTest {
     assertEquals(Seq(expectedNode1), partitionInfo.offlineReplicas.toSeq)
   }
 
+  @Test
+  def testUpdateOnlyRebuildsPartitionMetadataOfChangedTopics(): Unit = {
+    val cache = new MetadataCache(1)
+    val securityProtocol = SecurityProtocol.PLAINTEXT
+    val listenerName = ListenerName.forSecurityProtocol(securityProtocol)
+
+    def broker(brokerId: Int): UpdateMetadataBroker = new UpdateMetadataBroker()
+      .setId(brokerId)
+      .setRack("")
+      .setEndpoints(Seq(new UpdateMetadataEndpoint()
+        .setHost(s"foo-$brokerId")
+        .setPort(9092)
+        .setSecurityProtocol(securityProtocol.id)
+        .setListener(listenerName.value)).asJava)
+
+    def partitionState(topic: String, leader: Int, leaderEpoch: Int): UpdateMetadataPartitionState =
+      new UpdateMetadataPartitionState()
+        .setTopicName(topic)
+        .setPartitionIndex(0)
+        .setControllerEpoch(1)
+        .setLeader(leader)
+        .setLeaderEpoch(leaderEpoch)
+        .setIsr(asList[Integer](0, 1))
+        .setZkVersion(3)
+        .setReplicas(asList[Integer](0, 1))
+
+    def updateCache(brokerIds: Seq[Int], partitionStates: Seq[UpdateMetadataPartitionState]): Unit = {
+      val version = ApiKeys.UPDATE_METADATA.latestVersion
+      val updateMetadataRequest = new UpdateMetadataRequest.Builder(version, 2, 1, brokerEpoch, partitionStates.asJava,
+        brokerIds.map(broker).asJava, Collections.emptyMap()).build()
+      cache.updateMetadata(15, updateMetadataRequest)
+    }
+
+    def partitions(topic: String): util.List[MetadataResponsePartition] =
+      cache.getTopicMetadata(Set(topic), listenerName).head.partitions
+
+    updateCache(Seq(0, 1), Seq(partitionState("topic-0", 0, 0), partitionState("topic-1", 0, 0)))
+    val topic0Partitions = partitions("topic-0")
+    val topic1Partitions = partitions("topic-1")
+    assertSame(topic0Partitions, partitions("topic-0"))
+
+    // a leader change of topic-1 does not affect the partition metadata of topic-0
+    updateCache(Seq(0, 1), Seq(partitionState("topic-1", 1, 1)))
+    assertSame(topic0Partitions, partitions("topic-0"))
+    assertNotSame(topic1Partitions, partitions("topic-1"))
+    assertEquals(1, partitions("topic-1").get(0).leaderId)
+    assertEquals(1, partitions("topic-1").get(0).leaderEpoch)
+
+    // the partition metadata depends on the alive brokers
+    updateCache(Seq(0), Seq.empty)
+    val topic0PartitionsWithoutBroker1 = partitions("topic-0")
+    assertNotSame(topic0Partitions, topic0PartitionsWithoutBroker1)
+    assertEquals(MetadataResponse.NO_LEADER_ID, partitions("topic-1").get(0).leaderId)
+
+    // deleting a topic removes it without affecting the others
+    updateCache(Seq(0), Seq(partitionState("topic-1", LeaderAndIsr.LeaderDuringDelete, 2)))
+    assertEquals(Set("topic-0"), cache.getAllTopics())
+    assertTrue(cache.getTopicMetadata(Set("topic-1"), listenerName).isEmpty)
+    assertSame(topic0PartitionsWithoutBroker1, partitions("topic-0"))
+  }
+
 }
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package kafka.server
+
+import java.util.Collections
+
+import org.apache.kafka.common.message.MetadataResponseData
+import org.apache.kafka.common.message.MetadataResponseData.MetadataResponseTopic
+import org.apache.kafka.common.message.UpdateMetadataRequestData.UpdateMetadataBroker
+import org.apache.kafka.common.metrics.Metrics
+import org.apache.kafka.common.network.ListenerName
+import org.apache.kafka.common.protocol.{ApiKeys, Errors}
+import org.apache.kafka.common.requests.UpdateMetadataRequest
+import org.apache.kafka.common.security.auth.SecurityProtocol
+import org.junit.Assert._
+import org.junit.{After, Test}
+
+import scala.jdk.CollectionConverters._
+
+class MetadataResponseCacheTest {
+
+  private val metrics = new Metrics()
+  private val metadataCache = new MetadataCache(1)
+  private val listenerName = ListenerName.forSecurityProtocol(SecurityProtocol.PLAINTEXT)
+  private val version = ApiKeys.METADATA.latestVersion
+  private var builds = 0
+
+  @After
+  def tearDown(): Unit = {
+    metrics.close()
+  }
+
+  private def key(topics: Option[Set[String]]): MetadataResponseCache.Key =
+    MetadataResponseCache.Key(listenerName, version, topics, allowAutoTopicCreation = true,
+      includeClusterAuthorizedOperations = false, includeTopicAuthorizedOperations = false)
+
+  private def buildResponse(topicError: Errors): MetadataResponseData = {
+    builds += 1
+    new MetadataResponseData()
+      .setClusterId("cluster")
+      .setTopics(new MetadataResponseData.MetadataResponseTopicCollection(Collections.singletonList(
+        new MetadataResponseTopic().setName("topic").setErrorCode(topicError.code)).iterator))
+  }
+
+  private def updateMetadataCache(): Unit = {
+    val updateMetadataRequest = new UpdateMetadataRequest.Builder(ApiKeys.UPDATE_METADATA.latestVersion, 2, 1, 0L,
+      Collections.emptyList(), Seq(new UpdateMetadataBroker().setId(1)).asJava, Collections.emptyMap()).build()
+    metadataCache.updateMetadata(15, updateMetadataRequest)
+  }
+
+  private def metricValue(name: String): Double = {
+    metrics.metrics.asScala.find { case (metricName, _) => metricName.name == name }
+      .map { case (_, metric) => metric.metricValue.asInstanceOf[Double] }.get
+  }
+
+  @Test
+  def testResponseIsCachedUntilMetadataUpdate(): Unit = {
+    val cache = new MetadataResponseCache(metadataCache, 10, metrics)
+    val first = cache.getOrBuild(key(None))(buildResponse(Errors.NONE))(0)
+    val second = cache.getOrBuild(key(None))(buildResponse(Errors.NONE))(5)
+    assertEquals(1, builds)
+    assertSame(first.data, second.data)
+    assertEquals(5, second.throttleTimeMs)
+
+    // a different request builds its own response
+    cache.getOrBuild(key(Some(Set("topic"))))(buildResponse(Errors.NONE))
+    assertEquals(2, builds)
+    assertEquals(2, cache.size)
+
+    updateMetadataCache()
+    val third = cache.getOrBuild(key(None))(buildResponse(Errors.NONE))(0)
+    assertEquals(3, builds)
+    assertNotSame(first.data, third.data)
+    assertEquals(1, cache.size)
+
+    assertEquals(1.0, metricValue("metadata-response-cache-hit-total"), 0.0)
+    assertEquals(3.0, metricValue("metadata-response-cache-miss-total"), 0.0)
+    assertEquals(0.25, metricValue("metadata-response-cache-hit-ratio"), 0.0)
+  }
+
+  @Test
+  def testResponseWithTopicErrorIsNotCached(): Unit = {
+    val cache = new MetadataResponseCache(metadataCache, 10, metrics)
+    cache.getOrBuild(key(None))(buildResponse(Errors.UNKNOWN_TOPIC_OR_PARTITION))
+    val response = cache.getOrBuild(key(None))(buildResponse(Errors.UNKNOWN_TOPIC_OR_PARTITION))(7)
+    assertEquals(2, builds)
+    assertEquals(0, cache.size)
+    assertEquals(7, response.throttleTimeMs)
+  }
+
+  @Test
+  def testMaxEntries(): Unit = {
+    val cache = new MetadataResponseCache(metadataCache, 1, metrics)
+    cache.getOrBuild(key(None))(buildResponse(Errors.NONE))
+    cache.getOrBuild(key(Some(Set("topic"))))(buildResponse(Errors.NONE))
+    assertEquals(1, cache.size)
+    cache.getOrBuild(key(None))(buildResponse(Errors.NONE))
+    assertEquals(2, builds)
+  }
+
+  @Test
+  def testDisabledCache(): Unit = {
+    val cache = new MetadataResponseCache(metadataCache, 0, metrics)
+    assertFalse(cache.enabled)
+    cache.getOrBuild(key(None))(buildResponse(Errors.NONE))
+    cache.getOrBuild(key(None))(buildResponse(Errors.NONE))
+    assertEquals(2, builds)
+    assertEquals(0, cache.size)
+  }
+
+  @Test
+  def testCloseRemovesMetrics(): Unit = {
+    val cache = new MetadataResponseCache(metadataCache, 10, metrics)
+    cache.close()
+    assertTrue(metrics.metrics.keySet.asScala.forall(_.group != "metadata-response-cache-metrics"))
+  }
+}
@@ -262,7 +262,8 @@ class ReplicaAlterLogDirsThreadTest {
       quota = ArgumentMatchers.eq(UnboundedQuota),
       responseCallback = callbackCaptor.capture(),
       isolationLevel = ArgumentMatchers.eq(IsolationLevel.READ_UNCOMMITTED),
-      clientMetadata = ArgumentMatchers.eq(None)
+      clientMetadata = ArgumentMatchers.eq(None),
+      readFromTailCache = ArgumentMatchers.eq(true)
     )).thenAnswer(_ => {
       callbackCaptor.getValue.apply(Seq((topicPartition, responseData)))
     })
@@ -699,7 +700,8 @@ class ReplicaAlterLogDirsThreadTest {
       EasyMock.anyObject(),
       EasyMock.capture(responseCallback),
       EasyMock.anyObject(),
-      EasyMock.anyObject())
+      EasyMock.anyObject(),
+      EasyMock.anyBoolean())
     ).andAnswer(() => responseCallback.getValue.apply(Seq.empty[(TopicPartition, FetchPartitionData)])).anyTimes()
 
     replay(replicaManager, logManager, quotaManager, partition, log, futureLog)
@@ -940,7 +942,8 @@ class ReplicaAlterLogDirsThreadTest {
       EasyMock.anyObject(),
       EasyMock.capture(responseCallback),
       EasyMock.anyObject(),
-      EasyMock.anyObject())
+      EasyMock.anyObject(),
+      EasyMock.anyBoolean())
     ).andAnswer(() => responseCallback.getValue.apply(Seq.empty[(TopicPartition, FetchPartitionData)])).anyTimes()
   }
 }
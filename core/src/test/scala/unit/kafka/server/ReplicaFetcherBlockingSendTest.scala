@@ -0,0 +1,78 @@
+/**
+  * Licensed to the Apache Software Foundation (ASF) under one or more
+  * contributor license agreements.  See the NOTICE file distributed with
+  * this work for additional information regarding copyright ownership.
+  * The ASF licenses this file to You under the Apache License, Version 2.0
+  * (the "License"); you may not use this file except in compliance with
+  * the License.  You may obtain a copy of the License at
+  *
+  * http://www.apache.org/licenses/LICENSE-2.0
+  *
+  * Unless required by applicable law or agreed to in writing, software
+  * distributed under the License is distributed on an "AS IS" BASIS,
+  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  * See the License for the specific language governing permissions and
+  * limitations under the License.
+  */
+package kafka.server
+
+import java.io.IOException
+import java.util
+import java.util.Collections
+
+import kafka.cluster.BrokerEndPoint
+import kafka.utils.TestUtils
+import org.apache.kafka.clients.MockClient.MockMetadataUpdater
+import org.apache.kafka.clients.{ClientResponse, MockClient}
+import org.apache.kafka.common.{Node, TopicPartition}
+import org.apache.kafka.common.metrics.Metrics
+import org.apache.kafka.common.protocol.ApiKeys
+import org.apache.kafka.common.requests.FetchRequest
+import org.apache.kafka.common.utils.{LogContext, MockTime, Time}
+import org.junit.Assert._
+import org.junit.Test
+
+import scala.collection.mutable
+import scala.util.Try
+
+class ReplicaFetcherBlockingSendTest {
+
+  private val brokerEndPoint = new BrokerEndPoint(0, "localhost", 1000)
+  private val time = new MockTime
+
+  @Test
+  def testPipelinedFetchesFailedWhenConnectionClosed(): Unit = {
+    val props = TestUtils.createBrokerConfig(1, "localhost:1234")
+    props.setProperty(KafkaConfig.ReplicaFetchPipelineDepthProp, "2")
+    val config = KafkaConfig.fromProps(props)
+    val client = new MockClient(time, new MockMetadataUpdater {
+      override def fetchNodes(): util.List[Node] = Collections.emptyList()
+      override def isUpdateNeeded: Boolean = false
+      override def update(time: Time, update: MockClient.MetadataUpdate): Unit = {}
+    })
+    val blockingSend = new ReplicaFetcherBlockingSend(brokerEndPoint, config, new Metrics, time, 0, "client",
+      new LogContext, Some(client))
+
+    val results = mutable.Buffer[Try[ClientResponse]]()
+    blockingSend.send(fetchRequest(), results += _)
+    blockingSend.send(fetchRequest(), results += _)
+    assertEquals(2, client.inFlightRequestCount)
+    assertTrue(results.isEmpty)
+
+    // the connection is closed after a request of the fetcher thread fails
+    client.prepareResponse(null, true)
+    assertThrows(classOf[IOException], () => blockingSend.sendRequest(fetchRequest()))
+
+    assertEquals(2, results.size)
+    assertTrue(results.forall(_.isFailure))
+
+    // the fetches are only failed once, a later response of the connection is ignored
+    blockingSend.poll(0)
+    assertEquals(2, results.size)
+  }
+
+  private def fetchRequest(): FetchRequest.Builder = {
+    FetchRequest.Builder.forReplica(ApiKeys.FETCH.latestVersion, 1, 0, 1,
+      Collections.emptyMap[TopicPartition, FetchRequest.PartitionData])
+  }
+}
@@ -67,7 +67,8 @@ class ReplicaManagerQuotasTest {
       hardMaxBytesLimit = false,
       readPartitionInfo = fetchInfo,
       quota = quota,
-      clientMetadata = None)
+      clientMetadata = None,
+      readFromTailCache = true)
     assertEquals("Given two partitions, with only one throttled, we should get the first", 1,
       fetch.find(_._1 == topicPartition1).get._2.info.records.batches.asScala.size)
 
@@ -93,7 +94,8 @@ class ReplicaManagerQuotasTest {
       hardMaxBytesLimit = false,
       readPartitionInfo = fetchInfo,
       quota = quota,
-      clientMetadata = None)
+      clientMetadata = None,
+      readFromTailCache = true)
     assertEquals("Given two partitions, with both throttled, we should get no messages", 0,
       fetch.find(_._1 == topicPartition1).get._2.info.records.batches.asScala.size)
     assertEquals("Given two partitions, with both throttled, we should get no messages", 0,
@@ -118,7 +120,8 @@ class ReplicaManagerQuotasTest {
       hardMaxBytesLimit = false,
       readPartitionInfo = fetchInfo,
       quota = quota,
-      clientMetadata = None)
+      clientMetadata = None,
+      readFromTailCache = true)
     assertEquals("Given two partitions, with both non-throttled, we should get both messages", 1,
       fetch.find(_._1 == topicPartition1).get._2.info.records.batches.asScala.size)
     assertEquals("Given two partitions, with both non-throttled, we should get both messages", 1,
@@ -143,7 +146,8 @@ class ReplicaManagerQuotasTest {
       hardMaxBytesLimit = false,
       readPartitionInfo = fetchInfo,
       quota = quota,
-      clientMetadata = None)
+      clientMetadata = None,
+      readFromTailCache = true)
     assertEquals("Given two partitions, with only one throttled, we should get the first", 1,
       fetch.find(_._1 == topicPartition1).get._2.info.records.batches.asScala.size)
 
@@ -214,7 +218,8 @@ class ReplicaManagerQuotasTest {
     expect(log.read(anyObject(),
       maxLength = geq(1),
       isolation = anyObject(),
-      minOneMessage = anyBoolean())).andReturn(
+      minOneMessage = anyBoolean(),
+      readFromTailCache = anyBoolean())).andReturn(
       FetchDataInfo(
         LogOffsetMetadata(0L, 0L, 0),
         MemoryRecords.withRecords(CompressionType.NONE, record)
@@ -224,7 +229,8 @@ class ReplicaManagerQuotasTest {
     expect(log.read(anyObject(),
       maxLength = EasyMock.eq(0),
       isolation = anyObject(),
-      minOneMessage = anyBoolean())).andReturn(
+      minOneMessage = anyBoolean(),
+      readFromTailCache = anyBoolean())).andReturn(
       FetchDataInfo(
         LogOffsetMetadata(0L, 0L, 0),
         MemoryRecords.EMPTY
@@ -225,6 +225,61 @@ class ReplicaManagerTest {
     }
   }
 
+  @Test
+  def testProduceResponseWaitsForRequestedFlush(): Unit = {
+    val props = TestUtils.createBrokerConfig(0, TestUtils.MockZkConnect)
+    props.put("log.dir", TestUtils.tempRelativeDir("data").getAbsolutePath)
+    val config = KafkaConfig.fromProps(props)
+    val logProps = new Properties()
+    logProps.put(LogConfig.FlushMessagesProp, 2: java.lang.Long)
+    val mockLogMgr = TestUtils.createLogManager(config.logDirs.map(new File(_)), LogConfig(logProps),
+      flushServiceEnable = true)
+    val rm = new ReplicaManager(config, metrics, time, kafkaZkClient, new MockScheduler(time), mockLogMgr,
+      new AtomicBoolean(false), quotaManager, new BrokerTopicStats,
+      new MetadataCache(config.brokerId), new LogDirFailureChannel(config.logDirs.size), alterIsrManager)
+
+    try {
+      val brokerList = Seq[Integer](0).asJava
+      val tp = new TopicPartition(topic, 0)
+      val partition = rm.createPartition(tp)
+      partition.createLogIfNotExists(isNew = false, isFutureReplica = false,
+        new LazyOffsetCheckpoints(rm.highWatermarkCheckpoints))
+      val leaderAndIsrRequest = new LeaderAndIsrRequest.Builder(ApiKeys.LEADER_AND_ISR.latestVersion, 0, 0, brokerEpoch,
+        Seq(new LeaderAndIsrPartitionState()
+          .setTopicName(topic)
+          .setPartitionIndex(0)
+          .setControllerEpoch(0)
+          .setLeader(0)
+          .setLeaderEpoch(0)
+          .setIsr(brokerList)
+          .setZkVersion(0)
+          .setReplicas(brokerList)
+          .setIsNew(false)).asJava,
+        Collections.singletonMap(topic, Uuid.randomUuid()),
+        Set(new Node(0, "host1", 0)).asJava).build()
+      rm.becomeLeaderOrFollower(0, leaderAndIsrRequest, (_, _) => ())
+      val log = rm.getPartitionOrException(tp).localLogOrException
+
+      def records = MemoryRecords.withRecords(CompressionType.NONE, new SimpleRecord("message".getBytes()))
+      // the first append doesn't reach the flush interval
+      assertTrue(appendRecords(rm, tp, records, requiredAcks = 1).isFired)
+
+      // the response to the second append waits for the flush service, which isn't started yet
+      val appendResult = appendRecords(rm, tp, records, requiredAcks = 1).onFire { response =>
+        assertEquals(Errors.NONE, response.error)
+      }
+      assertFalse(appendResult.isFired)
+      assertEquals(0L, log.recoveryPoint)
+
+      mockLogMgr.startup()
+      TestUtils.waitUntilTrue(() => appendResult.isFired, "The produce response waits for the flush of the log")
+      assertEquals(2L, log.recoveryPoint)
+    } finally {
+      rm.shutdown(checkpointHW = false)
+      mockLogMgr.shutdown()
+    }
+  }
+
   @Test
   def testFencedErrorCausedByBecomeLeader(): Unit = {
     testFencedErrorCausedByBecomeLeader(0)
@@ -655,7 +710,8 @@ class ReplicaManagerTest {
         quota = UnboundedQuota,
         isolationLevel = IsolationLevel.READ_UNCOMMITTED,
         responseCallback = callback,
-        clientMetadata = None
+        clientMetadata = None,
+        readFromTailCache = true
       )
 
       assertTrue(successfulFetch.isDefined)
@@ -678,7 +734,8 @@ class ReplicaManagerTest {
         quota = UnboundedQuota,
         isolationLevel = IsolationLevel.READ_UNCOMMITTED,
         responseCallback = callback,
-        clientMetadata = None
+        clientMetadata = None,
+        readFromTailCache = true
       )
 
       assertTrue(successfulFetch.isDefined)
@@ -779,7 +836,8 @@ class ReplicaManagerTest {
         quota = UnboundedQuota,
         responseCallback = fetchCallback,
         isolationLevel = IsolationLevel.READ_UNCOMMITTED,
-        clientMetadata = None
+        clientMetadata = None,
+        readFromTailCache = true
       )
       val tp0Log = replicaManager.localLog(tp0)
       assertTrue(tp0Log.isDefined)
@@ -1443,7 +1501,8 @@ class ReplicaManagerTest {
       quota = UnboundedQuota,
       isolationLevel = IsolationLevel.READ_UNCOMMITTED,
       responseCallback = callback,
-      clientMetadata = clientMetadataOpt
+      clientMetadata = clientMetadataOpt,
+      readFromTailCache = true
     )
     fetchResult
   }
@@ -1703,7 +1762,8 @@ class ReplicaManagerTest {
       quota = UnboundedQuota,
       responseCallback = fetchCallback,
       isolationLevel = isolationLevel,
-      clientMetadata = clientMetadata
+      clientMetadata = clientMetadata,
+      readFromTailCache = true
     )
 
     result
@@ -1045,7 +1045,9 @@ object TestUtils extends Logging {
   def createLogManager(logDirs: Seq[File] = Seq.empty[File],
                        defaultConfig: LogConfig = LogConfig(),
                        cleanerConfig: CleanerConfig = CleanerConfig(enableCleaner = false),
-                       time: MockTime = new MockTime()): LogManager = {
+                       time: MockTime = new MockTime(),
+                       flushServiceEnable: Boolean = false,
+                       indexWarmSectionBytes: Int = AbstractIndex.DefaultWarmSectionBytes): LogManager = {
     new LogManager(logDirs = logDirs.map(_.getAbsoluteFile),
                    initialOfflineDirs = Array.empty[File],
                    topicConfigs = Map(),
@@ -1061,7 +1063,9 @@ object TestUtils extends Logging {
                    time = time,
                    brokerState = BrokerState(),
                    brokerTopicStats = new BrokerTopicStats,
-                   logDirFailureChannel = new LogDirFailureChannel(logDirs.size))
+                   logDirFailureChannel = new LogDirFailureChannel(logDirs.size),
+                   flushServiceEnable = flushServiceEnable,
+                   indexWarmSectionBytes = indexWarmSectionBytes)
   }
 
   class MockAlterIsrManager extends AlterIsrManager {
@@ -16,7 +16,7 @@
  */
 package kafka.utils.timer
 
-import java.util.concurrent.{CountDownLatch, TimeUnit}
+import java.util.concurrent.{CountDownLatch, Executors, TimeUnit}
 
 import org.junit.Assert._
 import java.util.concurrent.atomic._
@@ -104,4 +104,32 @@ class TimerTest {
 
     assertEquals("output should match", ids.sorted, output.toSeq)
   }
+
+  @Test
+  def testConcurrentAddsWhileTicking(): Unit = {
+    val output = new ArrayBuffer[Int]()
+    val numThreads = 8
+    val tasksPerThread = 200
+    val latch = new CountDownLatch(numThreads * tasksPerThread)
+    val executor = Executors.newFixedThreadPool(numThreads)
+    try {
+      val futures = (0 until numThreads).map { thread =>
+        executor.submit(new Runnable {
+          override def run(): Unit = (0 until tasksPerThread).foreach { i =>
+            timer.add(new TestTask(i % 20, thread * tasksPerThread + i, latch, output))
+          }
+        })
+      }
+      // tick while the tasks are added so that adds race with the tasks being moved between the wheels
+      while (!futures.forall(_.isDone) || latch.getCount > 0)
+        timer.advanceClock(10)
+      futures.foreach(_.get)
+    } finally {
+      executor.shutdown()
+    }
+
+    assertEquals("all tasks should have run once", (0 until numThreads * tasksPerThread).toSet, output.toSet)
+    assertEquals(numThreads * tasksPerThread, output.size)
+    assertEquals(0, timer.size)
+  }
 }
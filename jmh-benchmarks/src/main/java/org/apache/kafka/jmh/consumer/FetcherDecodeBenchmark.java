@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.jmh.consumer;
+
+import org.apache.kafka.clients.ApiVersions;
+import org.apache.kafka.clients.MockClient;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.consumer.internals.ConsumerMetadata;
+import org.apache.kafka.clients.consumer.internals.ConsumerNetworkClient;
+import org.apache.kafka.clients.consumer.internals.Fetcher;
+import org.apache.kafka.clients.consumer.internals.FetcherMetricsRegistry;
+import org.apache.kafka.clients.consumer.internals.SubscriptionState;
+import org.apache.kafka.common.IsolationLevel;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.compress.ZstdDictionaries;
+import org.apache.kafka.common.internals.ClusterResourceListeners;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.protocol.Errors;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.requests.FetchResponse;
+import org.apache.kafka.common.requests.RequestTestUtils;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.utils.LogContext;
+import org.apache.kafka.common.utils.MockTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.kafka.common.requests.FetchMetadata.INVALID_SESSION_ID;
+
+/**
+ * Compares the decoding of the fetched records by the thread polling the consumer with their decoding ahead of the
+ * poll on the decoder threads (see {@link ConsumerConfig#FETCH_DECODE_THREADS_CONFIG}), by the time to return all
+ * the records of a fetch and by the time of each poll.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FetcherDecodeBenchmark {
+    private static final String TOPIC = "topic";
+
+    @Param({"0", "4"})
+    private int decodeThreads;
+
+    @Param({"LZ4", "ZSTD"})
+    private CompressionType compressionType;
+
+    @Param({"16"})
+    private int partitionCount;
+
+    @Param({"2000"})
+    private int recordsPerPartition;
+
+    @Param({"500"})
+    private int maxPollRecords;
+
+    private final MockTime time = new MockTime();
+    private List<TopicPartition> partitions;
+    private LinkedHashMap<TopicPartition, FetchResponse.PartitionData<MemoryRecords>> fetchResponseData;
+    private SubscriptionState subscriptions;
+    private MockClient client;
+    private ConsumerNetworkClient consumerClient;
+    private Metrics metrics;
+    private Fetcher<String, String> fetcher;
+    private boolean fetchConsumed = true;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LogContext logContext = new LogContext();
+        subscriptions = new SubscriptionState(logContext, OffsetResetStrategy.EARLIEST);
+        ConsumerMetadata metadata = new ConsumerMetadata(0, Long.MAX_VALUE, false, false,
+            subscriptions, logContext, new ClusterResourceListeners());
+        client = new MockClient(time, metadata);
+        consumerClient = new ConsumerNetworkClient(logContext, client, metadata, time, 100, 1000, Integer.MAX_VALUE);
+        metrics = new Metrics(time);
+        fetcher = new Fetcher<>(
+            logContext,
+            consumerClient,
+            1,
+            ConsumerConfig.DEFAULT_FETCH_MAX_BYTES,
+            0,
+            Integer.MAX_VALUE,
+            maxPollRecords,
+            decodeThreads,
+            true,
+            ZstdDictionaries.EMPTY,
+            "",
+            new StringDeserializer(),
+            new StringDeserializer(),
+            metadata,
+            subscriptions,
+            metrics,
+            new FetcherMetricsRegistry("consumer"),
+            time,
+            100,
+            30000,
+            IsolationLevel.READ_UNCOMMITTED,
+            new ApiVersions());
+
+        partitions = new ArrayList<>(partitionCount);
+        fetchResponseData = new LinkedHashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < partitionCount; i++) {
+            TopicPartition tp = new TopicPartition(TOPIC, i);
+            partitions.add(tp);
+            fetchResponseData.put(tp, new FetchResponse.PartitionData<>(Errors.NONE, recordsPerPartition,
+                FetchResponse.INVALID_LAST_STABLE_OFFSET, 0L, null, records(random)));
+        }
+        subscriptions.assignFromUser(new HashSet<>(partitions));
+        client.updateMetadata(RequestTestUtils.metadataUpdateWith(1, Collections.singletonMap(TOPIC, partitionCount)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fetcher.close();
+        metrics.close();
+    }
+
+    /**
+     * The time to return all the records of a fetch, decoding them from the fetch response.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public int consumeFetch() {
+        prepareFetch();
+        int numRecords = 0;
+        // the fetch is consumed once a poll returns no records
+        int polledRecords = numRecords(fetcher.fetchedRecords());
+        while (polledRecords > 0) {
+            numRecords += polledRecords;
+            polledRecords = numRecords(fetcher.fetchedRecords());
+        }
+        return numRecords;
+    }
+
+    /**
+     * The time of each poll, a fetch being sent and its response received once the records of the previous fetch
+     * are all returned.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public int poll() {
+        if (fetchConsumed)
+            prepareFetch();
+        int numRecords = numRecords(fetcher.fetchedRecords());
+        fetchConsumed = numRecords == 0;
+        return numRecords;
+    }
+
+    private void prepareFetch() {
+        for (TopicPartition tp : partitions)
+            subscriptions.seek(tp, 0L);
+        fetcher.sendFetches();
+        client.prepareResponse(new FetchResponse<>(Errors.NONE, fetchResponseData, 0, INVALID_SESSION_ID));
+        consumerClient.poll(time.timer(0));
+    }
+
+    private MemoryRecords records(Random random) {
+        ByteBuffer buffer = ByteBuffer.allocate(recordsPerPartition * 300);
+        int recordsPerBatch = 100;
+        for (int offset = 0; offset < recordsPerPartition; offset += recordsPerBatch) {
+            MemoryRecordsBuilder builder = MemoryRecords.builder(buffer, compressionType, TimestampType.CREATE_TIME, offset);
+            for (int i = 0; i < recordsPerBatch; i++) {
+                // values of a few words from a small vocabulary, compressible like the usual record values
+                StringBuilder value = new StringBuilder();
+                for (int word = 0; word < 16; word++)
+                    value.append("word-").append(random.nextInt(64)).append(' ');
+                builder.append(time.milliseconds(), ("key-" + random.nextInt(1000)).getBytes(), value.toString().getBytes());
+            }
+            builder.close();
+        }
+        buffer.flip();
+        return MemoryRecords.readableRecords(buffer);
+    }
+
+    private static int numRecords(Map<TopicPartition, List<ConsumerRecord<String, String>>> recordsByPartition) {
+        int numRecords = 0;
+        for (List<ConsumerRecord<String, String>> records : recordsByPartition.values())
+            numRecords += records.size();
+        return numRecords;
+    }
+}
@@ -22,6 +22,7 @@ import kafka.cluster.BrokerEndPoint;
 import kafka.cluster.DelayedOperations;
 import kafka.cluster.IsrChangeListener;
 import kafka.cluster.Partition;
+import kafka.log.AbstractIndex;
 import kafka.log.CleanerConfig;
 import kafka.log.Defaults;
 import kafka.log.LogAppendInfo;
@@ -44,12 +45,14 @@ import kafka.server.checkpoints.OffsetCheckpoints;
 import kafka.utils.KafkaScheduler;
 import kafka.utils.Pool;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.compress.ZstdDictionaries;
 import org.apache.kafka.common.message.LeaderAndIsrRequestData;
 import org.apache.kafka.common.message.OffsetForLeaderEpochRequestData.OffsetForLeaderPartition;
 import org.apache.kafka.common.message.OffsetForLeaderEpochResponseData.EpochEndOffset;
 import org.apache.kafka.common.metrics.Metrics;
 import org.apache.kafka.common.protocol.Errors;
 import org.apache.kafka.common.record.BaseRecords;
+import org.apache.kafka.common.record.MemoryRecords;
 import org.apache.kafka.common.record.Records;
 import org.apache.kafka.common.record.RecordsSend;
 import org.apache.kafka.common.requests.FetchRequest;
@@ -87,6 +90,8 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 @State(Scope.Benchmark)
@@ -100,11 +105,16 @@ public class ReplicaFetcherThreadBenchmark {
     @Param({"100", "500", "1000", "5000"})
     private int partitionCount;
 
+    // the number of threads processing the partition data of the fetch responses, 0 to process it in the fetcher thread
+    @Param({"0", "4"})
+    private int partitionDataThreads;
+
     private ReplicaFetcherBenchThread fetcher;
     private LogManager logManager;
     private File logDir = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString());
     private KafkaScheduler scheduler = new KafkaScheduler(1, "scheduler", true);
     private Pool<TopicPartition, Partition> pool = new Pool<TopicPartition, Partition>(Option.empty());
+    private ExecutorService partitionDataExecutor;
 
     @Setup(Level.Trial)
     public void setup() throws IOException {
@@ -124,7 +134,7 @@ public class ReplicaFetcherThreadBenchmark {
                 JavaConverters.asScalaIteratorConverter(new ArrayList<File>().iterator()).asScala().toSeq(),
                 new scala.collection.mutable.HashMap<>(),
                 logConfig,
-                new CleanerConfig(0, 0, 0, 0, 0, 0.0, 0, false, "MD5"),
+                new CleanerConfig(0, 0, 0, 0, 0, 0.0, 0, false, "MD5", "heap", 1, 0),
                 1,
                 1000L,
                 10000L,
@@ -135,9 +145,17 @@ public class ReplicaFetcherThreadBenchmark {
                 new BrokerState(),
                 brokerTopicStats,
                 logDirFailureChannel,
-                Time.SYSTEM);
+                Time.SYSTEM,
+                0,
+                0,
+                0L,
+                1024 * 1024,
+                false,
+                AbstractIndex.DefaultWarmSectionBytes(),
+                ZstdDictionaries.EMPTY);
 
         LinkedHashMap<TopicPartition, FetchResponse.PartitionData<BaseRecords>> initialFetched = new LinkedHashMap<>();
+        scala.collection.mutable.Map<TopicPartition, FetchResponse.PartitionData<Records>> fetchedData = new scala.collection.mutable.HashMap<>();
         scala.collection.mutable.Map<TopicPartition, InitialFetchState> initialFetchStates = new scala.collection.mutable.HashMap<>();
         for (int i = 0; i < partitionCount; i++) {
             TopicPartition tp = new TopicPartition("topic", i);
@@ -176,11 +194,16 @@ public class ReplicaFetcherThreadBenchmark {
             };
             initialFetched.put(tp, new FetchResponse.PartitionData<>(Errors.NONE, 0, 0, 0,
                     new LinkedList<>(), fetched));
+            fetchedData.put(tp, new FetchResponse.PartitionData<>(Errors.NONE, 0, 0, 0,
+                    new LinkedList<>(), MemoryRecords.EMPTY));
         }
 
         ReplicaManager replicaManager = Mockito.mock(ReplicaManager.class);
         Mockito.when(replicaManager.brokerTopicStats()).thenReturn(brokerTopicStats);
-        fetcher = new ReplicaFetcherBenchThread(config, replicaManager, pool);
+        if (partitionDataThreads > 0)
+            partitionDataExecutor = Executors.newFixedThreadPool(partitionDataThreads);
+        fetcher = new ReplicaFetcherBenchThread(config, replicaManager, pool, fetchedData,
+                Option.apply(partitionDataExecutor));
         fetcher.addPartitions(initialFetchStates);
         // force a pass to move partitions to fetching state. We do this in the setup phase
         // so that we do not measure this time as part of the steady state work
@@ -193,6 +216,8 @@ public class ReplicaFetcherThreadBenchmark {
     public void tearDown() throws IOException {
         logManager.shutdown();
         scheduler.shutdown();
+        if (partitionDataExecutor != null)
+            partitionDataExecutor.shutdownNow();
         Utils.delete(logDir);
     }
 
@@ -233,11 +258,14 @@ public class ReplicaFetcherThreadBenchmark {
 
     static class ReplicaFetcherBenchThread extends ReplicaFetcherThread {
         private final Pool<TopicPartition, Partition> pool;
+        private final Map<TopicPartition, FetchResponse.PartitionData<Records>> fetchedData;
 
         ReplicaFetcherBenchThread(KafkaConfig config,
                                   ReplicaManager replicaManager,
                                   Pool<TopicPartition,
-                                  Partition> partitions) {
+                                  Partition> partitions,
+                                  Map<TopicPartition, FetchResponse.PartitionData<Records>> fetchedData,
+                                  Option<ExecutorService> partitionDataExecutor) {
             super("name",
                     3,
                     new BrokerEndPoint(3, "host", 3000),
@@ -261,9 +289,11 @@ public class ReplicaFetcherThreadBenchmark {
                             return false;
                         }
                     },
-                    Option.empty());
+                    Option.empty(),
+                    partitionDataExecutor);
             
             pool = partitions;
+            this.fetchedData = fetchedData;
         }
 
         @Override
@@ -318,7 +348,7 @@ public class ReplicaFetcherThreadBenchmark {
 
         @Override
         public Map<TopicPartition, FetchResponse.PartitionData<Records>> fetchFromLeader(FetchRequest.Builder fetchRequest) {
-            return new scala.collection.mutable.HashMap<>();
+            return fetchedData;
         }
     }
 }
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.jmh.log;
+
+import kafka.api.ApiVersion$;
+import kafka.log.AbstractIndex;
+import kafka.log.AppendOrigin;
+import kafka.log.Log;
+import kafka.log.LogConfig;
+import kafka.server.BrokerTopicStats;
+import kafka.server.LogDirFailureChannel;
+import kafka.utils.KafkaScheduler;
+import kafka.utils.TestUtils;
+import org.apache.kafka.common.compress.ZstdDictionaries;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.SimpleRecord;
+import org.apache.kafka.common.utils.Time;
+import org.apache.kafka.common.utils.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scala.Option;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to append compressed batches to a single partition as leader from a number of request handler
+ * threads. Each invocation appends the same number of batches, split across the threads.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LogAppendBenchmark {
+
+    private static final int BATCHES_PER_INVOCATION = 64;
+
+    @Param({"1", "2", "4", "8"})
+    private int numHandlerThreads;
+
+    // "producer" keeps the compression of the batches, which are then validated in place
+    @Param({"producer", "gzip"})
+    private String topicCompression;
+
+    @Param({"100"})
+    private int recordsPerBatch;
+
+    @Param({"256"})
+    private int recordSize;
+
+    private final BrokerTopicStats brokerTopicStats = new BrokerTopicStats();
+    private final LogDirFailureChannel logDirFailureChannel = new LogDirFailureChannel(10);
+    private KafkaScheduler scheduler;
+    private ExecutorService handlerThreads;
+    private ByteBuffer batch;
+    private File tempDir;
+    private Log log;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        scheduler = new KafkaScheduler(1, "scheduler", true);
+        scheduler.startup();
+        handlerThreads = Executors.newFixedThreadPool(numHandlerThreads);
+
+        Random random = new Random(0);
+        SimpleRecord[] records = new SimpleRecord[recordsPerBatch];
+        for (int i = 0; i < recordsPerBatch; i++) {
+            // half random bytes, half zeros, so that the records compress reasonably
+            byte[] value = new byte[recordSize];
+            for (int j = 0; j < recordSize / 2; j++)
+                value[j] = (byte) random.nextInt();
+            records[i] = new SimpleRecord(System.currentTimeMillis(), null, value);
+        }
+        batch = MemoryRecords.withRecords(CompressionType.LZ4, records).buffer();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        handlerThreads.shutdownNow();
+        scheduler.shutdown();
+    }
+
+    // the log is recreated for every iteration to bound its size
+    @Setup(Level.Iteration)
+    public void createLog() {
+        Properties logProps = new Properties();
+        logProps.put(LogConfig.CompressionTypeProp(), topicCompression);
+        tempDir = TestUtils.tempDir();
+        File logDir = new File(tempDir, "topic-0");
+        log = Log.apply(logDir, LogConfig.apply(logProps, new scala.collection.immutable.HashSet<>()), 0L, 0L,
+            scheduler, brokerTopicStats, Time.SYSTEM, Integer.MAX_VALUE, 10 * 60 * 1000, logDirFailureChannel,
+            true, Option.empty(), 0, Option.empty(), Option.empty(), AbstractIndex.DefaultWarmSectionBytes(),
+            ZstdDictionaries.EMPTY);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteLog() throws IOException {
+        log.close();
+        Utils.delete(tempDir);
+    }
+
+    @Benchmark
+    public long appendAsLeader() throws ExecutionException, InterruptedException {
+        List<Future<?>> futures = new ArrayList<>(numHandlerThreads);
+        for (int thread = 0; thread < numHandlerThreads; thread++) {
+            int numBatches = BATCHES_PER_INVOCATION / numHandlerThreads;
+            futures.add(handlerThreads.submit(() -> {
+                for (int i = 0; i < numBatches; i++) {
+                    // the batch is copied since it is modified when validated in place, as the buffer of a request is
+                    ByteBuffer requestBuffer = ByteBuffer.allocate(batch.remaining());
+                    requestBuffer.put(batch.duplicate()).flip();
+                    log.appendAsLeader(MemoryRecords.readableRecords(requestBuffer), 0,
+                        AppendOrigin.Client$.MODULE$, ApiVersion$.MODULE$.latestVersion());
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        return log.logEndOffset();
+    }
+}
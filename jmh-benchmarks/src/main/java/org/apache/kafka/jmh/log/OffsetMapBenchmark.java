@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.jmh.log;
+
+import kafka.log.OffHeapOffsetMap;
+import kafka.log.OffsetMap;
+import kafka.log.SkimpyOffsetMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares put and get throughput of the offset maps used by the log cleaner.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OffsetMapBenchmark {
+    /* each entry of either map takes 24 bytes: a 16 byte hash plus an 8 byte offset */
+    private static final int BYTES_PER_ENTRY = 24;
+
+    @Param({"heap", "off-heap"})
+    private String mapType;
+
+    @Param({"100000", "1000000"})
+    private int keyCount;
+
+    @Param({"16", "64"})
+    private int keySize;
+
+    @Param({"0.9"})
+    private double loadFactor;
+
+    private ByteBuffer[] keys;
+    private OffsetMap map;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(0);
+        keys = new ByteBuffer[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            byte[] key = new byte[keySize];
+            random.nextBytes(key);
+            keys[i] = ByteBuffer.wrap(key);
+        }
+
+        int memory = (int) (keyCount / loadFactor * BYTES_PER_ENTRY);
+        if (mapType.equals(OffsetMap.HeapType())) {
+            map = new SkimpyOffsetMap(memory, "MD5");
+        } else if (mapType.equals(OffsetMap.OffHeapType())) {
+            map = new OffHeapOffsetMap(memory, OffHeapOffsetMap.MaxSlotsPerChunk());
+        } else {
+            throw new IllegalArgumentException("Unsupported map type " + mapType);
+        }
+
+        for (int i = 0; i < keyCount; i++)
+            map.put(keys[i], i);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        map.close();
+    }
+
+    @Benchmark
+    public void put() {
+        int i = nextIndex();
+        map.put(keys[i], i);
+    }
+
+    @Benchmark
+    public long get() {
+        return map.get(keys[nextIndex()]);
+    }
+
+    private int nextIndex() {
+        int i = index;
+        index = i + 1 == keyCount ? 0 : i + 1;
+        return i;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.jmh.log;
+
+import kafka.log.AppendOrigin;
+import kafka.log.ProducerAppendInfo;
+import kafka.log.ProducerStateManager;
+import kafka.server.LogOffsetMetadata;
+import kafka.utils.TestUtils;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to write a producer state snapshot after some producers appended, and the time to reload the
+ * producer state from the snapshots until a producer can append and until the state of every producer is materialized.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProducerStateSnapshotBenchmark {
+
+    private static final TopicPartition TOPIC_PARTITION = new TopicPartition("topic", 0);
+    private static final int MAX_PRODUCER_ID_EXPIRATION_MS = Integer.MAX_VALUE;
+
+    @Param({"1000", "10000", "100000"})
+    private int numProducers;
+
+    @Param({"0", "8"})
+    private int maxIncrementalSnapshots;
+
+    // the number of producers appending between two snapshots
+    @Param({"100"})
+    private int numUpdatedProducers;
+
+    private File writeDir;
+    private File loadDir;
+    private ProducerStateManager stateManager;
+    private int[] sequences;
+    private long nextOffset;
+    private long loadEndOffset;
+    // the number of snapshots taken since the full snapshot taken in the setup
+    private long numSnapshots;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        writeDir = TestUtils.tempDir();
+        stateManager = newStateManager(writeDir);
+        sequences = new int[numProducers];
+        nextOffset = 0L;
+        for (int producerId = 0; producerId < numProducers; producerId++)
+            append(producerId);
+        stateManager.takeSnapshot();
+        numSnapshots = 0;
+
+        // the snapshots reloaded: a full snapshot followed by as many incremental snapshots as allowed
+        loadDir = TestUtils.tempDir();
+        ProducerStateManager loadStateManager = newStateManager(loadDir);
+        int[] loadSequences = new int[numProducers];
+        long offset = 0L;
+        for (int snapshot = 0; snapshot <= maxIncrementalSnapshots; snapshot++) {
+            int numAppends = snapshot == 0 ? numProducers : numUpdatedProducers;
+            for (int i = 0; i < numAppends; i++) {
+                int producerId = snapshot == 0 ? i : ThreadLocalRandom.current().nextInt(numProducers);
+                append(loadStateManager, producerId, loadSequences[producerId]++, offset++);
+            }
+            loadStateManager.takeSnapshot();
+        }
+        loadEndOffset = offset;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Utils.delete(writeDir);
+        Utils.delete(loadDir);
+    }
+
+    private ProducerStateManager newStateManager(File dir) {
+        return new ProducerStateManager(TOPIC_PARTITION, dir, MAX_PRODUCER_ID_EXPIRATION_MS, maxIncrementalSnapshots);
+    }
+
+    private void append(int producerId) {
+        append(stateManager, producerId, sequences[producerId]++, nextOffset++);
+    }
+
+    private static void append(ProducerStateManager stateManager, long producerId, int sequence, long offset) {
+        ProducerAppendInfo appendInfo = stateManager.prepareUpdate(producerId, AppendOrigin.Client$.MODULE$);
+        appendInfo.appendDataBatch((short) 0, sequence, sequence, System.currentTimeMillis(),
+            new LogOffsetMetadata(offset, -1L, -1), offset, false);
+        stateManager.update(appendInfo);
+        stateManager.updateMapEndOffset(offset + 1);
+    }
+
+    @Benchmark
+    public void writeSnapshot() {
+        for (int i = 0; i < numUpdatedProducers; i++)
+            append(ThreadLocalRandom.current().nextInt(numProducers));
+        stateManager.takeSnapshot();
+        numSnapshots++;
+
+        // delete the snapshots before a full snapshot, which does not rewrite the incremental snapshots
+        if (numSnapshots % (maxIncrementalSnapshots + 1) == 0)
+            stateManager.deleteSnapshotsBefore(nextOffset);
+    }
+
+    @Benchmark
+    public Object loadSnapshot() {
+        ProducerStateManager loadStateManager = newStateManager(loadDir);
+        loadStateManager.truncateAndReload(0L, loadEndOffset, System.currentTimeMillis());
+        return loadStateManager.lastEntry(ThreadLocalRandom.current().nextInt(numProducers));
+    }
+
+    @Benchmark
+    public int loadAndMaterializeSnapshot() {
+        ProducerStateManager loadStateManager = newStateManager(loadDir);
+        loadStateManager.truncateAndReload(0L, loadEndOffset, System.currentTimeMillis());
+        return loadStateManager.activeProducers().size();
+    }
+}
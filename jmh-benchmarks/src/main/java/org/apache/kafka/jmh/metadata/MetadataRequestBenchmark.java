@@ -35,11 +35,13 @@ import kafka.server.KafkaApis;
 import kafka.server.KafkaConfig;
 import kafka.server.KafkaConfig$;
 import kafka.server.MetadataCache;
+import kafka.server.MetadataResponseCache;
 import kafka.server.QuotaFactory;
 import kafka.server.ReplicaManager;
 import kafka.server.ReplicationQuotaManager;
 import kafka.zk.KafkaZkClient;
 import org.apache.kafka.common.memory.MemoryPool;
+import org.apache.kafka.common.message.MetadataResponseData.MetadataResponseTopic;
 import org.apache.kafka.common.message.UpdateMetadataRequestData.UpdateMetadataBroker;
 import org.apache.kafka.common.message.UpdateMetadataRequestData.UpdateMetadataEndpoint;
 import org.apache.kafka.common.message.UpdateMetadataRequestData.UpdateMetadataPartitionState;
@@ -69,6 +71,9 @@ import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Warmup;
 import scala.Option;
+import scala.collection.Seq;
+import scala.collection.immutable.Set;
+import scala.jdk.javaapi.CollectionConverters;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -91,6 +96,8 @@ public class MetadataRequestBenchmark {
     private int topicCount;
     @Param({"10", "20", "50"})
     private int partitionCount;
+    @Param({"0", "1000"})
+    private int metadataResponseCacheMaxEntries;
 
     private RequestChannel requestChannel = Mockito.mock(RequestChannel.class, Mockito.withSettings().stubOnly());
     private RequestChannel.Metrics requestChannelMetrics = Mockito.mock(RequestChannel.Metrics.class);
@@ -116,16 +123,23 @@ public class MetadataRequestBenchmark {
     private KafkaPrincipal principal = new KafkaPrincipal(KafkaPrincipal.USER_TYPE, "test-user");
     private KafkaApis kafkaApis;
     private RequestChannel.Request allTopicMetadataRequest;
+    private List<UpdateMetadataBroker> liveBrokers;
+    private UpdateMetadataRequest[] leaderChangeRequests;
+    private Set<String> singleTopic;
+    private ListenerName listenerName = ListenerName.forSecurityProtocol(SecurityProtocol.PLAINTEXT);
+    private int leaderChangeIndex;
 
     @Setup(Level.Trial)
     public void setup() {
         initializeMetadataCache();
         kafkaApis = createKafkaApis();
         allTopicMetadataRequest = buildAllTopicMetadataRequest();
+        leaderChangeRequests = buildLeaderChangeRequests();
+        singleTopic = CollectionConverters.asScala(Collections.singleton("topic-0")).toSet();
     }
 
     private void initializeMetadataCache() {
-        List<UpdateMetadataBroker> liveBrokers = new LinkedList<>();
+        liveBrokers = new LinkedList<>();
         List<UpdateMetadataPartitionState> partitionStates = new LinkedList<>();
 
         IntStream.range(0, 5).forEach(brokerId -> liveBrokers.add(
@@ -137,15 +151,7 @@ public class MetadataRequestBenchmark {
             String topicName = "topic-" + topicId;
 
             IntStream.range(0, partitionCount).forEach(partitionId -> {
-                partitionStates.add(
-                    new UpdateMetadataPartitionState().setTopicName(topicName)
-                        .setPartitionIndex(partitionId)
-                        .setControllerEpoch(1)
-                        .setLeader(partitionCount % 5)
-                        .setLeaderEpoch(0)
-                        .setIsr(Arrays.asList(0, 1, 3))
-                        .setZkVersion(1)
-                        .setReplicas(Arrays.asList(0, 1, 3)));
+                partitionStates.add(partitionState(topicName, partitionId, partitionCount % 5, 0));
             });
         });
 
@@ -156,6 +162,33 @@ public class MetadataRequestBenchmark {
         metadataCache.updateMetadata(100, updateMetadataRequest);
     }
 
+    private UpdateMetadataPartitionState partitionState(String topicName, int partitionId, int leader, int leaderEpoch) {
+        return new UpdateMetadataPartitionState().setTopicName(topicName)
+            .setPartitionIndex(partitionId)
+            .setControllerEpoch(1)
+            .setLeader(leader)
+            .setLeaderEpoch(leaderEpoch)
+            .setIsr(Arrays.asList(0, 1, 3))
+            .setZkVersion(1)
+            .setReplicas(Arrays.asList(0, 1, 3));
+    }
+
+    /**
+     * UpdateMetadata requests which each move the leadership of a single partition, as sent by the controller
+     * after a leader election.
+     */
+    private UpdateMetadataRequest[] buildLeaderChangeRequests() {
+        UpdateMetadataRequest[] requests = new UpdateMetadataRequest[topicCount];
+        for (int topicId = 0; topicId < topicCount; topicId++) {
+            UpdateMetadataPartitionState state = partitionState("topic-" + topicId, 0, topicId % 2 == 0 ? 0 : 1, 1);
+            requests[topicId] = new UpdateMetadataRequest.Builder(
+                ApiKeys.UPDATE_METADATA.latestVersion(),
+                1, 1, 1,
+                Collections.singletonList(state), liveBrokers, Collections.emptyMap()).build();
+        }
+        return requests;
+    }
+
     private List<UpdateMetadataEndpoint> endpoints(final int brokerId) {
         return Collections.singletonList(
             new UpdateMetadataEndpoint()
@@ -169,6 +202,8 @@ public class MetadataRequestBenchmark {
         Properties kafkaProps =  new Properties();
         kafkaProps.put(KafkaConfig$.MODULE$.ZkConnectProp(), "zk");
         kafkaProps.put(KafkaConfig$.MODULE$.BrokerIdProp(), brokerId + "");
+        kafkaProps.put(KafkaConfig$.MODULE$.MetadataResponseCacheMaxEntriesProp(), metadataResponseCacheMaxEntries + "");
+        KafkaConfig config = new KafkaConfig(kafkaProps);
         BrokerFeatures brokerFeatures = BrokerFeatures.createDefault();
         return new KafkaApis(requestChannel,
             replicaManager,
@@ -179,7 +214,7 @@ public class MetadataRequestBenchmark {
             forwardingManager,
             kafkaZkClient,
             brokerId,
-            new KafkaConfig(kafkaProps),
+            config,
             metadataCache,
             metrics,
             Option.empty(),
@@ -190,7 +225,8 @@ public class MetadataRequestBenchmark {
             new SystemTime(),
             null,
             brokerFeatures,
-            new FinalizedFeatureCache(brokerFeatures));
+            new FinalizedFeatureCache(brokerFeatures),
+            new MetadataResponseCache(metadataCache, config.metadataResponseCacheMaxEntries(), metrics));
     }
 
     @TearDown(Level.Trial)
@@ -215,6 +251,17 @@ public class MetadataRequestBenchmark {
         kafkaApis.handleTopicMetadataRequest(allTopicMetadataRequest);
     }
 
+    @Benchmark
+    public void testUpdateMetadataLeaderChange() {
+        metadataCache.updateMetadata(101, leaderChangeRequests[leaderChangeIndex]);
+        leaderChangeIndex = (leaderChangeIndex + 1) % leaderChangeRequests.length;
+    }
+
+    @Benchmark
+    public Seq<MetadataResponseTopic> testTopicMetadataForSingleTopic() {
+        return metadataCache.getTopicMetadata(singleTopic, listenerName, false, false);
+    }
+
     @Benchmark
     public String testRequestToJson() {
         return RequestConvertToJson.requestDesc(allTopicMetadataRequest.header(), allTopicMetadataRequest.requestLog(), allTopicMetadataRequest.isForwarded()).toString();
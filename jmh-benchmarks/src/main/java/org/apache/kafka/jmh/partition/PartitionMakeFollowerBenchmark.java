@@ -21,6 +21,7 @@ import kafka.api.ApiVersion$;
 import kafka.cluster.DelayedOperations;
 import kafka.cluster.IsrChangeListener;
 import kafka.cluster.Partition;
+import kafka.log.AbstractIndex;
 import kafka.log.CleanerConfig;
 import kafka.log.Defaults;
 import kafka.log.LogConfig;
@@ -33,6 +34,7 @@ import kafka.server.MetadataCache;
 import kafka.server.checkpoints.OffsetCheckpoints;
 import kafka.utils.KafkaScheduler;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.compress.ZstdDictionaries;
 import org.apache.kafka.common.message.LeaderAndIsrRequestData;
 import org.apache.kafka.common.record.CompressionType;
 import org.apache.kafka.common.record.MemoryRecords;
@@ -100,7 +102,7 @@ public class PartitionMakeFollowerBenchmark {
             JavaConverters.asScalaIteratorConverter(new ArrayList<File>().iterator()).asScala().toSeq(),
             new scala.collection.mutable.HashMap<>(),
             logConfig,
-            new CleanerConfig(0, 0, 0, 0, 0, 0.0, 0, false, "MD5"),
+            new CleanerConfig(0, 0, 0, 0, 0, 0.0, 0, false, "MD5", "heap", 1, 0),
             1,
             1000L,
             10000L,
@@ -111,7 +113,14 @@ public class PartitionMakeFollowerBenchmark {
             new BrokerState(),
             brokerTopicStats,
             logDirFailureChannel,
-            Time.SYSTEM);
+            Time.SYSTEM,
+            0,
+            0,
+            0L,
+            1024 * 1024,
+            false,
+            AbstractIndex.DefaultWarmSectionBytes(),
+            ZstdDictionaries.EMPTY);
 
         TopicPartition tp = new TopicPartition("topic", 0);
 
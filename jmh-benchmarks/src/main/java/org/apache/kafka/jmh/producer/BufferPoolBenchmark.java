@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.jmh.producer;
+
+import org.apache.kafka.clients.producer.internals.BufferPool;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.utils.Time;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocates and returns batch sized buffers from several threads at once, which is what the producer does when
+ * many application threads append to new batches while the sender thread deallocates the completed ones.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+public class BufferPoolBenchmark {
+
+    private static final long MAX_BLOCK_MS = 60_000L;
+
+    @Param({"16384"})
+    private int batchSize;
+
+    @Param({"33554432"})
+    private long totalMemory;
+
+    private Metrics metrics;
+    private BufferPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        metrics = new Metrics();
+        pool = new BufferPool(totalMemory, batchSize, metrics, Time.SYSTEM, "producer-metrics");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+        metrics.close();
+    }
+
+    @Benchmark
+    public ByteBuffer allocatePoolable() throws InterruptedException {
+        ByteBuffer buffer = pool.allocate(batchSize, MAX_BLOCK_MS);
+        pool.deallocate(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer allocateNonPoolable() throws InterruptedException {
+        ByteBuffer buffer = pool.allocate(batchSize * 2, MAX_BLOCK_MS);
+        pool.deallocate(buffer);
+        return buffer;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.jmh.producer;
+
+import org.apache.kafka.clients.ApiVersions;
+import org.apache.kafka.clients.ClientRequest;
+import org.apache.kafka.clients.ClientResponse;
+import org.apache.kafka.clients.Metadata;
+import org.apache.kafka.clients.MockClient;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.clients.producer.internals.BufferPool;
+import org.apache.kafka.clients.producer.internals.ProducerMetadata;
+import org.apache.kafka.clients.producer.internals.RecordAccumulator;
+import org.apache.kafka.clients.producer.internals.Sender;
+import org.apache.kafka.clients.producer.internals.SenderMetricsRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.internals.ClusterResourceListeners;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.Record;
+import org.apache.kafka.common.requests.RequestTestUtils;
+import org.apache.kafka.common.utils.KafkaThread;
+import org.apache.kafka.common.utils.LogContext;
+import org.apache.kafka.common.utils.Time;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends records from several threads at once to the few partitions of a topic, which is what the producer does when
+ * many application threads send records, while the sender thread drains the batches and sends them to a mock client.
+ * Compares appending to a single batch of each partition with appending to the batches of several stripes (see
+ * {@link ProducerConfig#BATCH_APPEND_STRIPES_CONFIG}).
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+public class RecordAccumulatorAppendBenchmark {
+
+    private static final String TOPIC = "topic";
+    private static final long MAX_BLOCK_MS = 60_000L;
+
+    @Param({"1", "4"})
+    private int appendStripes;
+
+    @Param({"NONE", "LZ4"})
+    private CompressionType compressionType;
+
+    @Param({"2"})
+    private int partitionCount;
+
+    @Param({"16384"})
+    private int batchSize;
+
+    @Param({"100"})
+    private int valueSize;
+
+    private final Time time = Time.SYSTEM;
+    private final List<TopicPartition> partitions = new ArrayList<>();
+    private Metrics metrics;
+    private RecordAccumulator accumulator;
+    private Sender sender;
+    private KafkaThread ioThread;
+    private byte[] value;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LogContext logContext = new LogContext();
+        metrics = new Metrics();
+        ProducerMetadata metadata = new ProducerMetadata(100L, Long.MAX_VALUE, 300_000L, logContext,
+            new ClusterResourceListeners(), time);
+        metadata.add(TOPIC, time.milliseconds());
+        CompletingClient client = new CompletingClient(time, metadata);
+        client.updateMetadata(RequestTestUtils.metadataUpdateWith(1, Collections.singletonMap(TOPIC, partitionCount)));
+        for (int i = 0; i < partitionCount; i++)
+            partitions.add(new TopicPartition(TOPIC, i));
+
+        ApiVersions apiVersions = new ApiVersions();
+        accumulator = new RecordAccumulator(logContext, batchSize, appendStripes, compressionType, Collections.emptyMap(), 0, 100L,
+            120_000,
+            metrics, "producer-metrics", time, apiVersions, null,
+            new BufferPool(32 * 1024 * 1024, batchSize, metrics, time, "producer-metrics"));
+        sender = new Sender(logContext, client, metadata, accumulator, false, 1024 * 1024, (short) 0, 0,
+            new SenderMetricsRegistry(metrics), time, 30_000, 100L, null, apiVersions);
+        ioThread = new KafkaThread("benchmark-producer-network-thread", sender, true);
+        ioThread.start();
+
+        value = new byte[valueSize];
+        new Random(42).nextBytes(value);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        sender.initiateClose();
+        ioThread.join();
+        metrics.close();
+    }
+
+    @Benchmark
+    public Future<RecordMetadata> append() throws InterruptedException {
+        TopicPartition tp = partitions.get(ThreadLocalRandom.current().nextInt(partitionCount));
+        long nowMs = time.milliseconds();
+        RecordAccumulator.RecordAppendResult result = accumulator.append(tp, nowMs, null, value, Record.EMPTY_HEADERS,
+            null, MAX_BLOCK_MS, false, nowMs);
+        // wake up the sender as the producer does
+        if (result.batchIsFull || result.newBatchCreated)
+            sender.wakeup();
+        return result.future;
+    }
+
+    /**
+     * A client completing the produce requests once they are sent, as the network client does with acks=0, which
+     * waits for the sender to be woken up when it has nothing to send instead of spinning.
+     */
+    private static class CompletingClient extends MockClient {
+        private boolean woken = false;
+
+        CompletingClient(Time time, Metadata metadata) {
+            super(time, metadata);
+        }
+
+        @Override
+        public void send(ClientRequest request, long now) {
+            responses().add(new ClientResponse(request.makeHeader(request.requestBuilder().latestAllowedVersion()),
+                request.callback(), request.destination(), request.createdTimeMs(), now, false, null, null, null));
+        }
+
+        @Override
+        public List<ClientResponse> poll(long timeoutMs, long now) {
+            synchronized (this) {
+                try {
+                    if (!woken && responses().isEmpty() && timeoutMs > 0)
+                        wait(timeoutMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                woken = false;
+            }
+            return super.poll(timeoutMs, now);
+        }
+
+        @Override
+        public synchronized void wakeup() {
+            woken = true;
+            notifyAll();
+            super.wakeup();
+        }
+    }
+}
@@ -22,6 +22,7 @@ import kafka.log.AppendOrigin;
 import kafka.log.LogValidator;
 import kafka.message.CompressionCodec;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.compress.ZstdDictionaries;
 import org.apache.kafka.common.record.CompressionType;
 import org.apache.kafka.common.record.MemoryRecords;
 import org.apache.kafka.common.record.TimestampType;
@@ -44,6 +45,10 @@ public class CompressedRecordBatchValidationBenchmark extends BaseRecordBatchBen
     @Param(value = {"LZ4", "SNAPPY", "GZIP", "ZSTD"})
     private CompressionType compressionType = CompressionType.LZ4;
 
+    // the batches are validated in place if the target compression type is the same, and recompressed otherwise
+    @Param(value = {"NONE", "LZ4", "SNAPPY", "GZIP", "ZSTD"})
+    private CompressionType targetCompressionType = CompressionType.LZ4;
+
     @Override
     CompressionType compressionType() {
         return compressionType;
@@ -55,10 +60,11 @@ public class CompressedRecordBatchValidationBenchmark extends BaseRecordBatchBen
         LogValidator.validateMessagesAndAssignOffsetsCompressed(records, new TopicPartition("a", 0),
                 new LongRef(startingOffset), Time.SYSTEM, System.currentTimeMillis(),
                 CompressionCodec.getCompressionCodec(compressionType.id),
-                CompressionCodec.getCompressionCodec(compressionType.id),
+                CompressionCodec.getCompressionCodec(targetCompressionType.id),
                 false,  messageVersion, TimestampType.CREATE_TIME, Long.MAX_VALUE, 0,
                 new AppendOrigin.Client$(),
                 ApiVersion.latestVersion(),
-                brokerTopicStats);
+                brokerTopicStats,
+                ZstdDictionaries.EMPTY);
     }
 }
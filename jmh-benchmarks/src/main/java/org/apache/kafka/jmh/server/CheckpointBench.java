@@ -18,6 +18,7 @@ package org.apache.kafka.jmh.server;
 
 import java.util.Properties;
 import kafka.cluster.Partition;
+import kafka.log.AbstractIndex;
 import kafka.log.CleanerConfig;
 import kafka.log.LogConfig;
 import kafka.log.LogManager;
@@ -107,7 +108,8 @@ public class CheckpointBench {
         this.logManager = TestUtils.createLogManager(JavaConverters.asScalaBuffer(files),
                 LogConfig.apply(), CleanerConfig.apply(1, 4 * 1024 * 1024L, 0.9d,
                         1024 * 1024, 32 * 1024 * 1024,
-                        Double.MAX_VALUE, 15 * 1000, true, "MD5"), time);
+                        Double.MAX_VALUE, 15 * 1000, true, "MD5", "heap", 1, 32 * 1024 * 1024L), time, false,
+                AbstractIndex.DefaultWarmSectionBytes());
         scheduler.startup();
         final BrokerTopicStats brokerTopicStats = new BrokerTopicStats();
         final MetadataCache metadataCache =
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kafka.jmh.server;
+
+import kafka.server.DelayedOperation;
+import kafka.server.DelayedOperationPurgatory;
+import kafka.server.DelayedOperationPurgatory$;
+import kafka.server.TopicPartitionOperationKey;
+import kafka.utils.timer.SystemTimer;
+import kafka.utils.timer.Timer;
+import org.apache.kafka.common.utils.Time;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import scala.Option;
+import scala.collection.Seq;
+import scala.jdk.javaapi.CollectionConverters;
+
+/**
+ * Measures the throughput of the delayed operation purgatory the way produce requests with acks=all use it: every
+ * operation waits for the high watermark of its partition to advance, and every advance of a high watermark checks
+ * the operations watching the partition. Also measures adding operations to, and removing them from, the timer.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 15)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+public class PurgatoryBenchmark {
+
+    private static final long DELAY_MS = 30_000L;
+
+    @Param({"1", "64"})
+    private int numPartitions;
+
+    @Param({"false", "true"})
+    private boolean coalesceCompletionChecks;
+
+    private DelayedOperationPurgatory<WaitForHighWatermark> purgatory;
+    private Timer timer;
+    private AtomicLong[] highWatermarks;
+    private TopicPartitionOperationKey[] keys;
+    private Seq<Object>[] watchKeys;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        purgatory = DelayedOperationPurgatory$.MODULE$.apply("Produce", 0, 1000, true, true, coalesceCompletionChecks);
+        timer = new SystemTimer("benchmark", 1, 20, Time.SYSTEM.hiResClockMs());
+        highWatermarks = new AtomicLong[numPartitions];
+        keys = new TopicPartitionOperationKey[numPartitions];
+        watchKeys = new Seq[numPartitions];
+        for (int i = 0; i < numPartitions; i++) {
+            highWatermarks[i] = new AtomicLong();
+            keys[i] = new TopicPartitionOperationKey("topic", i);
+            watchKeys[i] = CollectionConverters.asScala(Collections.<Object>singletonList(keys[i])).toSeq();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        purgatory.shutdown();
+        timer.shutdown();
+    }
+
+    @Benchmark
+    public int advanceHighWatermark() {
+        int partition = ThreadLocalRandom.current().nextInt(numPartitions);
+        AtomicLong highWatermark = highWatermarks[partition];
+        WaitForHighWatermark operation = new WaitForHighWatermark(highWatermark, highWatermark.get() + 1);
+        purgatory.tryCompleteElseWatch(operation, watchKeys[partition]);
+        highWatermark.incrementAndGet();
+        return purgatory.checkAndComplete(keys[partition]);
+    }
+
+    @Benchmark
+    public boolean addAndCancelTimerTask() {
+        WaitForHighWatermark operation = new WaitForHighWatermark(null, 0L);
+        timer.add(operation);
+        operation.cancel();
+        return operation.isCompleted();
+    }
+
+    private static class WaitForHighWatermark extends DelayedOperation {
+        private final AtomicLong highWatermark;
+        private final long requiredOffset;
+
+        WaitForHighWatermark(AtomicLong highWatermark, long requiredOffset) {
+            super(DELAY_MS, Option.empty());
+            this.highWatermark = highWatermark;
+            this.requiredOffset = requiredOffset;
+        }
+
+        @Override
+        public boolean tryComplete() {
+            return highWatermark.get() >= requiredOffset && forceComplete();
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        @Override
+        public void onExpiration() {
+        }
+    }
+}
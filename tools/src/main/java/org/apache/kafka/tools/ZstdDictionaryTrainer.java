@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.tools;
+
+import static net.sourceforge.argparse4j.impl.Arguments.store;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.compress.ZstdDictionary;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.utils.Exit;
+import org.apache.kafka.common.utils.Time;
+import org.apache.kafka.common.utils.Utils;
+
+/**
+ * Trains a zstd dictionary from the values of the last records of a topic, for the producers to compress the records
+ * of the topic with it, once the brokers and the consumers have loaded it.
+ */
+public class ZstdDictionaryTrainer {
+
+    public static void main(String[] args) throws Exception {
+        ArgumentParser parser = argParser();
+
+        try {
+            Namespace res = parser.parseArgs(args);
+
+            String topic = res.getString("topic");
+            int numSamples = res.getInt("numSamples");
+            int dictionarySize = res.getInt("dictionarySize");
+            long timeoutMs = res.getLong("timeoutMs");
+
+            Properties props = new Properties();
+            String consumerConfig = res.getString("consumerConfigFile");
+            if (consumerConfig != null)
+                props.putAll(Utils.loadProps(consumerConfig));
+            props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, res.getString("bootstrapServer"));
+            props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+
+            List<byte[]> samples;
+            try (KafkaConsumer<byte[], byte[]> consumer = new KafkaConsumer<>(props, new ByteArrayDeserializer(),
+                    new ByteArrayDeserializer())) {
+                samples = sample(consumer, topic, numSamples, timeoutMs);
+            }
+            if (samples.isEmpty())
+                throw new IllegalStateException("No record to train a dictionary from in topic " + topic);
+
+            byte[] dictionary = ZstdDictionary.train(samples, dictionarySize);
+            Files.write(Paths.get(res.getString("output")), dictionary);
+            System.out.printf("Trained the zstd dictionary %s of %d bytes from %d records of topic %s%n",
+                Integer.toUnsignedString(ZstdDictionary.load(dictionary).id()), dictionary.length, samples.size(), topic);
+        } catch (ArgumentParserException e) {
+            if (args.length == 0) {
+                parser.printHelp();
+                Exit.exit(0);
+            } else {
+                parser.handleError(e);
+                Exit.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Read the values of the last records of the partitions of a topic, up to the given number of records.
+     */
+    private static List<byte[]> sample(KafkaConsumer<byte[], byte[]> consumer, String topic, int numSamples,
+                                       long timeoutMs) {
+        List<TopicPartition> partitions = consumer.partitionsFor(topic).stream()
+            .map(partition -> new TopicPartition(topic, partition.partition()))
+            .collect(Collectors.toList());
+        if (partitions.isEmpty())
+            throw new IllegalArgumentException("Topic " + topic + " does not exist");
+        consumer.assign(partitions);
+
+        Map<TopicPartition, Long> beginningOffsets = consumer.beginningOffsets(partitions);
+        Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+        long samplesPerPartition = (numSamples + partitions.size() - 1) / partitions.size();
+        for (TopicPartition partition : partitions)
+            consumer.seek(partition, Math.max(beginningOffsets.get(partition), endOffsets.get(partition) - samplesPerPartition));
+
+        List<byte[]> samples = new ArrayList<>(numSamples);
+        long deadlineMs = Time.SYSTEM.milliseconds() + timeoutMs;
+        while (samples.size() < numSamples && !reachedEnd(consumer, partitions, endOffsets)
+                && Time.SYSTEM.milliseconds() < deadlineMs) {
+            for (ConsumerRecord<byte[], byte[]> record : consumer.poll(Duration.ofMillis(100))) {
+                if (record.value() != null && samples.size() < numSamples)
+                    samples.add(record.value());
+            }
+        }
+        return samples;
+    }
+
+    private static boolean reachedEnd(KafkaConsumer<byte[], byte[]> consumer, List<TopicPartition> partitions,
+                                      Map<TopicPartition, Long> endOffsets) {
+        for (TopicPartition partition : partitions) {
+            if (consumer.position(partition) < endOffsets.get(partition))
+                return false;
+        }
+        return true;
+    }
+
+    /** Get the command-line argument parser. */
+    private static ArgumentParser argParser() {
+        ArgumentParser parser = ArgumentParsers
+                .newArgumentParser("zstd-dictionary-trainer")
+                .defaultHelp(true)
+                .description("This tool trains a zstd dictionary from the last records of a topic. The producers compress the records " +
+                        "of the topic with the dictionary once it is given in their compression.zstd.dictionaries configuration, which they " +
+                        "must only do once the brokers and the consumers load it with their zstd.dictionary.files configuration.");
+
+        parser.addArgument("--bootstrap-server")
+                .action(store())
+                .required(true)
+                .type(String.class)
+                .metavar("HOST1:PORT1[,HOST2:PORT2[...]]")
+                .dest("bootstrapServer")
+                .help("REQUIRED: The server(s) to connect to. Comma-separated list of Kafka brokers in the form HOST1:PORT1,HOST2:PORT2,...");
+
+        parser.addArgument("--topic")
+                .action(store())
+                .required(true)
+                .type(String.class)
+                .metavar("TOPIC")
+                .help("train the dictionary from the records of this topic");
+
+        parser.addArgument("--output")
+                .action(store())
+                .required(true)
+                .type(String.class)
+                .metavar("DICTIONARY-FILE")
+                .help("write the dictionary to this file");
+
+        parser.addArgument("--num-samples")
+                .action(store())
+                .required(false)
+                .type(Integer.class)
+                .metavar("NUM-SAMPLES")
+                .dest("numSamples")
+                .setDefault(10000)
+                .help("the number of records to train the dictionary from, taken from the end of the partitions of the topic");
+
+        parser.addArgument("--dictionary-size")
+                .action(store())
+                .required(false)
+                .type(Integer.class)
+                .metavar("DICTIONARY-SIZE")
+                .dest("dictionarySize")
+                .setDefault(16 * 1024)
+                .help("the maximum size of the dictionary in bytes");
+
+        parser.addArgument("--timeout-ms")
+                .action(store())
+                .required(false)
+                .type(Long.class)
+                .metavar("TIMEOUT-MS")
+                .dest("timeoutMs")
+                .setDefault(60000L)
+                .help("the maximum time to read the records to train the dictionary from");
+
+        parser.addArgument("--consumer.config")
+                .action(store())
+                .required(false)
+                .type(String.class)
+                .metavar("CONFIG-FILE")
+                .dest("consumerConfigFile")
+                .help("consumer config properties file.");
+
+        return parser;
+    }
+}